@@ -17,15 +17,14 @@
 
 package Alignments;
 
-import Exceptions.UnexpectedError;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 
@@ -33,6 +32,14 @@ import java.util.Set;
  * Represents an "alignment", used very loosely.  Classes should extend this to
  * represent the different types of alignment, e.g. {@link DuplicationAlignment},
  * {@link FastaAlignment}.
+ * <br><br>
+ * The alignment is stored in a compact encoded form (taxa are stored as
+ * indices and states as small codes, column by column).  The sites returned
+ * by the alignment are lightweight views of this storage.  Alignments created
+ * by {@link #limitToTaxa(java.util.Collection)}, {@link #recode(java.util.Map)},
+ * {@link #limitToSites(int[])} and {@link #limitToClass(java.lang.String)} are
+ * views of the same storage rather than copies, and only find their unique
+ * sites if they are asked for.
  * 
  * @author Daniel Money
  * @version 2.0
@@ -40,24 +47,37 @@ import java.util.Set;
 public class Alignment implements Iterable<Site>
 {
     /**
-     * Default constructor.  Called by classed that extend this one.
-     * Classes that do extend this class should ensure that they populate data
-     * and taxa appropriately.
+     * Creates an alignment from encoded storage
+     * @param store The storage
      */
-    private Alignment()
+    Alignment(ColumnStore store)
     {
+        this.store = store;
+        this.hasClasses = (store.getLength() > 0) && (store.getClassCode(0) != -1);
         this.classSizes = null;
     }
     
     /**
-     * Creates an alignment
+     * Creates an alignment from encoded storage whose patterns have already
+     * been found
+     * @param store The storage
+     * @param pi The patterns in the storage
+     */
+    Alignment(ColumnStore store, PatternIndex pi)
+    {
+        this(store);
+        this.pi = pi;
+    }
+    
+    /**
+     * Creates an alignment.  The ambiguous states of the first site are used
+     * for the whole alignment.
      * @param data  A list of sites in the alignment
      * @throws Alignments.AlignmentException Thrown if the sites passed have different taxa 
      */
     public Alignment(List<Site> data) throws AlignmentException
     {
-	this.data = data;
-        this.taxa = data.get(0).getTaxa();
+        Set<String> taxa = data.get(0).getTaxa();
         this.hasClasses = data.get(0).getSiteClass() != null;
         for (Site s: data)
         {
@@ -70,16 +90,59 @@ public class Alignment implements Iterable<Site>
                 throw new AlignmentException("Some sites have a class, some don't");
             }
         }
+        this.store = encode(data);
         this.classSizes = null;
     }
 
+    private static ColumnStore encode(List<Site> data)
+    {
+        ColumnStore first = data.get(0).getStore();
+
+        //If the sites are already every column of one store in order just
+        //use that store
+        boolean whole = (first.getLength() == data.size());
+        for (int i = 0; whole && (i < data.size()); i++)
+        {
+            whole = (data.get(i).getStore() == first) && (data.get(i).getColumn() == i);
+        }
+        if (whole)
+        {
+            return first;
+        }
+
+        ColumnStore ns = new ColumnStore(first.getTaxa(), first.getAlphabet());
+        int n = ns.getNumberTaxa();
+        int[] codes = new int[n];
+        for (Site s: data)
+        {
+            ColumnStore os = s.getStore();
+            int c = s.getColumn();
+            if (ns.sameEncoding(os))
+            {
+                for (int i = 0; i < n; i++)
+                {
+                    codes[i] = os.getCode(c, i);
+                }
+            }
+            else
+            {
+                for (int i = 0; i < n; i++)
+                {
+                    codes[i] = ns.getAlphabet().encode(os.getState(c, os.getTaxonIndex(ns.getTaxon(i))));
+                }
+            }
+            ns.addColumn(codes, os.getSiteClass(c), os.getID(c));
+        }
+        return ns;
+    }
+
     /**
      * Gets the length of the aligmnet
      * @return The length of the alignment
      */
     public int getLength()
     {
-	return data.size();
+	return store.getLength();
     }
     
     /**
@@ -90,25 +153,24 @@ public class Alignment implements Iterable<Site>
      */
     public double averageLength(Set<String> gaps)
     {        
-        int i = 0;
-        try
+        Alphabet alphabet = store.getAlphabet();
+        boolean[] gap = new boolean[alphabet.size()];
+        for (int c = 0; c < gap.length; c++)
         {
-            for (Site s: data)
+            gap[c] = gaps.contains(alphabet.decode(c));
+        }
+        long i = 0;
+        for (int s = 0; s < store.getLength(); s++)
+        {
+            for (int t = 0; t < store.getNumberTaxa(); t++)
             {
-                for (String t: s.getTaxa())
+                if (!gap[store.getCode(s, t)])
                 {
-                    if (!gaps.contains(s.getRawCharacter(t)))
-                    {
-                        i++;
-                    }
+                    i++;
                 }
             }
         }
-        catch (AlignmentException ex)
-        {
-            throw new UnexpectedError(ex);
-        }
-        return (double) i / (double) taxa.size();
+        return (double) i / (double) store.getNumberTaxa();
     }
 
     /**
@@ -117,37 +179,79 @@ public class Alignment implements Iterable<Site>
      */
     public int getNumber()
     {
-        return taxa.size();
+        return store.getNumberTaxa();
     }
     
     /**
      * Returns a list of unique sites in the aligment.  Useful for calculating
-     * likelihoods as each site pattern only has to be calculated once.
+     * likelihoods as each site pattern only has to be calculated once.  Sites
+     * are in the order they first occur in the alignment.  Large alignments are
+     * compressed in parallel using the default engine's threads.
      * @return A set of unique sites
      */
     public List<UniqueSite> getUniqueSites()
     {
         if (us == null)
         {
-            Map<Site,Integer> counts = new HashMap<>();
-            for (Site s: data)
+            PatternIndex pi = getPatternIndex();
+            List<UniqueSite> u = new ArrayList<>(pi.getNumberPatterns());
+            for (int p = 0; p < pi.getNumberPatterns(); p++)
             {
-                if (counts.containsKey(s))
-                {
-                    counts.put(s,counts.get(s) + 1);
-                }
-                else
-                {
-                    counts.put(s,1);
-                }
+                u.add(new UniqueSite(new Site(store, pi.getFirst(p)), pi.getCount(p)));
             }
-            us = new ArrayList<>();
-            for (Entry<Site,Integer> e: counts.entrySet())
+            us = u;
+        }
+        return us;
+    }
+    
+    /**
+     * Gets which unique site a site in the alignment is.
+     * @param s The site in the alignment
+     * @return The position of the equivalent unique site in the list returned
+     * by {@link #getUniqueSites()}
+     */
+    public int getUniqueSiteIndex(int s)
+    {
+        if ((s < 0) || (s >= store.getLength()))
+        {
+            throw new IndexOutOfBoundsException("Site: " + s + ", Length: " + store.getLength());
+        }
+        return getPatternIndex().getPattern(s);
+    }
+    
+    /**
+     * Gets which unique site each site in the alignment is.
+     * @return Array where the i-th element is the position of the i-th site's
+     * unique site in the list returned by {@link #getUniqueSites()}
+     */
+    public int[] getUniqueSiteIndices()
+    {
+        return getPatternIndex().getPatterns();
+    }
+    
+    /**
+     * Gets the index of the patterns in the alignment, creating it if
+     * necessary.  Large alignments are compressed in parallel using the
+     * default engine.
+     * @return The index
+     */
+    PatternIndex getPatternIndex()
+    {
+        PatternIndex p = pi;
+        if (p == null)
+        {
+            synchronized (this)
             {
-                us.add(new UniqueSite(e.getKey(), e.getValue()));
+                p = pi;
+                if (p == null)
+                {
+                    p = new PatternIndex(store);
+                    p.update(store.getLength());
+                    pi = p;
+                }
             }
         }
-        return us;
+        return p;
     }
     
 
@@ -158,7 +262,11 @@ public class Alignment implements Iterable<Site>
      */
     public Site getSite(int s)
     {
-        return data.get(s);
+        if ((s < 0) || (s >= store.getLength()))
+        {
+            throw new IndexOutOfBoundsException("Site: " + s + ", Length: " + store.getLength());
+        }
+        return new Site(store, s);
     }
     
     /**
@@ -167,12 +275,34 @@ public class Alignment implements Iterable<Site>
      */
     public Set<String> getTaxa()
     {
-        return taxa;
+        return store.getTaxa();
     }
     
     public Iterator<Site> iterator()
     {
-        return data.iterator();
+        return new Iterator<Site>()
+        {
+            public boolean hasNext()
+            {
+                return i < store.getLength();
+            }
+
+            public Site next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                return new Site(store, i++);
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            private int i = 0;
+        };
     }
     
     /**
@@ -182,13 +312,11 @@ public class Alignment implements Iterable<Site>
      */
     public boolean check(Map<String,?> map)
     {
-        Set<String> aClass = new HashSet<>();
-        for (Site s: data)
+        if (!hasClasses)
         {
-            aClass.add(s.getSiteClass());
+            return (store.getLength() == 0) || map.containsKey(null);
         }
-        
-        for (String c: aClass)
+        for (String c: store.getClassTable())
         {
             if (!map.containsKey(c))
             {
@@ -206,14 +334,7 @@ public class Alignment implements Iterable<Site>
      */
     public Alignment recode(Map<String, String> recode)
     {
-        Alignment na = new Alignment();
-        na.data = new ArrayList<>();
-        na.taxa = taxa;
-        for (Site os: data)
-        {
-            na.data.add(os.recode(recode));
-        }
-        return na;
+        return recode(recode, new Ambiguous());
     }
     
     /**
@@ -226,14 +347,7 @@ public class Alignment implements Iterable<Site>
      */
     public Alignment recode(Map<String, String> recode, Ambiguous ambig)
     {
-        Alignment na = new Alignment();
-        na.data = new ArrayList<>();
-        na.taxa = taxa;
-        for (Site os: data)
-        {
-            na.data.add(os.recode(recode,ambig));
-        }
-        return na;
+        return new Alignment(store.view(null, null, new Alphabet(ambig), new HashMap<>(recode)));
     }
     
     /**
@@ -244,14 +358,56 @@ public class Alignment implements Iterable<Site>
      */
     public Alignment limitToTaxa(Collection<String> limit)
     {
-        Alignment na = new Alignment();
-        na.data = new ArrayList<>();
-        na.taxa.addAll(limit);
-        for (Site os: data)
+        int[] taxa = new int[store.getNumberTaxa()];
+        int n = 0;
+        for (int t = 0; t < store.getNumberTaxa(); t++)
         {
-            na.data.add(os.limitToTaxa(limit));
+            if (limit.contains(store.getTaxon(t)))
+            {
+                taxa[n++] = t;
+            }
         }
-        return na;      
+        return new Alignment(store.view(null, Arrays.copyOf(taxa, n), store.getAlphabet(), null));
+    }
+    
+    /**
+     * Returns a new Alignment which contains only some of the sites of this
+     * one
+     * @param sites The positions of the sites to include in the new alignment,
+     * in the order they should appear.  A site may be included more than once.
+     * @return The limited alignment
+     */
+    public Alignment limitToSites(int[] sites)
+    {
+        for (int s: sites)
+        {
+            if ((s < 0) || (s >= store.getLength()))
+            {
+                throw new IndexOutOfBoundsException("Site: " + s + ", Length: " + store.getLength());
+            }
+        }
+        return new Alignment(store.view(Arrays.copyOf(sites, sites.length), null, store.getAlphabet(), null));
+    }
+    
+    /**
+     * Returns a new Alignment which contains only the sites of this one that
+     * are in a given class
+     * @param cl The class
+     * @return The limited alignment
+     */
+    public Alignment limitToClass(String cl)
+    {
+        int[] sites = new int[store.getLength()];
+        int n = 0;
+        for (int s = 0; s < store.getLength(); s++)
+        {
+            String sc = store.getSiteClass(s);
+            if ((sc == null) ? (cl == null) : sc.equals(cl))
+            {
+                sites[n++] = s;
+            }
+        }
+        return new Alignment(store.view(Arrays.copyOf(sites, n), null, store.getAlphabet(), null));
     }
     
     /**
@@ -261,26 +417,22 @@ public class Alignment implements Iterable<Site>
      */
     public double getRawFreq(String character)
     {
-        int c = 0;
-        for (Site s: data)
+        int code = store.getAlphabet().getCode(character);
+        long c = 0;
+        if (code != -1)
         {
-            for (String t: taxa)
+            for (int s = 0; s < store.getLength(); s++)
             {
-                try
+                for (int t = 0; t < store.getNumberTaxa(); t++)
                 {
-                    if (s.getRawCharacter(t).equals(character))
+                    if (store.getCode(s, t) == code)
                     {
                         c++;
                     }
                 }
-                catch (AlignmentException e)
-                {
-                    //Should never reach here as we're looping over the known taxa hence...
-                    throw new UnexpectedError(e);
-                }
             }
         }
-        return (double) c / (double) (data.size() * taxa.size());
+        return (double) c / ((double) store.getLength() * (double) store.getNumberTaxa());
     }
     
     /**
@@ -292,19 +444,20 @@ public class Alignment implements Iterable<Site>
     {
         if (classSizes == null)
         {
-            classSizes = new HashMap<>();
-            for (Site s: data)
+            Map<String,Integer> sizes = new HashMap<>();
+            for (int s = 0; s < store.getLength(); s++)
             {
-                String sc = s.getSiteClass();
-                if (classSizes.containsKey(sc))
+                String sc = store.getSiteClass(s);
+                if (sizes.containsKey(sc))
                 {
-                    classSizes.put(sc,classSizes.get(sc) + 1);
+                    sizes.put(sc,sizes.get(sc) + 1);
                 }
                 else
                 {
-                    classSizes.put(sc, 1);
+                    sizes.put(sc, 1);
                 }
             }
+            classSizes = sizes;
         }
         if (classSizes.containsKey(cl))
         {
@@ -324,10 +477,10 @@ public class Alignment implements Iterable<Site>
      */
     public List<String> getSiteClasses()
     {
-        List<String> classes = new ArrayList<>(data.size());
-        for (Site s: data)
+        List<String> classes = new ArrayList<>(store.getLength());
+        for (int s = 0; s < store.getLength(); s++)
         {
-            classes.add(s.getSiteClass());
+            classes.add(store.getSiteClass(s));
         }
         return classes;
     }
@@ -373,24 +526,30 @@ public class Alignment implements Iterable<Site>
             return 0;
         }
     }
-    
+
     /**
-     * The list of sites in the alignment
+     * Gets the encoded storage behind this alignment
+     * @return The storage
      */
-    private List<Site> data = new ArrayList<>();
+    ColumnStore getStore()
+    {
+        return store;
+    }
     
     /**
-     * The list of taxa in the alignment
+     * The encoded sites in the alignment
      */
-    private Set<String> taxa = new HashSet<>();
+    private final ColumnStore store;
     
     /**
      * Whether the sites in this alignment contain class information
      */
-    private boolean hasClasses = false;
+    private final boolean hasClasses;
+    
+    private volatile List<UniqueSite> us;
     
-    private List<UniqueSite> us;
+    private volatile PatternIndex pi;
     
-    private Map<String,Integer> classSizes;
+    private volatile Map<String,Integer> classSizes;
     
 }
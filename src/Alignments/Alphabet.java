@@ -0,0 +1,190 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Alignments;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns the states seen in an alignment to small integer codes.  Also stores
+ * which states each state could represent, taking into account ambiguous data,
+ * both as a set of states and as a bitmask of codes.
+ * <br><br>
+ * New states can be added from several threads at once.  Codes are never
+ * reused or removed.
+ * @author Daniel Money
+ * @version 2.0
+ */
+final class Alphabet implements Serializable
+{
+    /**
+     * Creates an empty alphabet
+     * @param ambig Description of the ambiguous data
+     */
+    Alphabet(Ambiguous ambig)
+    {
+        this.ambig = ambig;
+        this.codes = new ConcurrentHashMap<>();
+        this.states = new String[0];
+        this.possible = new PossibleStates[0];
+    }
+
+    /**
+     * Gets the code for a state, adding the state to the alphabet if it is
+     * not already present
+     * @param state The state
+     * @return The code
+     */
+    int encode(String state)
+    {
+        Integer c = codes.get(state);
+        if (c != null)
+        {
+            return c;
+        }
+        return add(state);
+    }
+
+    private synchronized int add(String state)
+    {
+        Integer c = codes.get(state);
+        if (c != null)
+        {
+            return c;
+        }
+        int code = states.length;
+        //Copy on write so readers never need to lock.  Alphabets are small
+        //so this is cheap.
+        String[] ns = Arrays.copyOf(states, code + 1);
+        ns[code] = state;
+        PossibleStates[] np = Arrays.copyOf(possible, code + 1);
+        states = ns;
+        possible = np;
+        codes.put(state, code);
+        return code;
+    }
+
+    /**
+     * Gets the code for a state without adding it to the alphabet
+     * @param state The state
+     * @return The code or -1 if the state is not in the alphabet
+     */
+    int getCode(String state)
+    {
+        Integer c = codes.get(state);
+        if (c == null)
+        {
+            return -1;
+        }
+        return c;
+    }
+
+    /**
+     * Gets the state represented by a code
+     * @param code The code
+     * @return The state
+     */
+    String decode(int code)
+    {
+        return states[code];
+    }
+
+    /**
+     * Gets the number of states in the alphabet
+     * @return The number of states
+     */
+    int size()
+    {
+        return states.length;
+    }
+
+    /**
+     * Gets the states a code could represent taking into account ambiguous
+     * data.  The returned set should not be modified.
+     * @param code The code
+     * @return The set of states
+     */
+    Set<String> getPossible(int code)
+    {
+        return possible(code).states;
+    }
+
+    /**
+     * Gets the states a code could represent as a bitmask of codes
+     * @param code The code
+     * @return The bitmask.  Should not be modified.
+     */
+    BitSet getMask(int code)
+    {
+        return possible(code).mask;
+    }
+
+    private PossibleStates possible(int code)
+    {
+        PossibleStates p = possible[code];
+        if (p == null)
+        {
+            Set<String> s = Collections.unmodifiableSet(ambig.getPossible(states[code]));
+            BitSet m = new BitSet();
+            for (String ps: s)
+            {
+                m.set(encode(ps));
+            }
+            p = new PossibleStates(s, m);
+            //Re-read the array as encode may have replaced it.  If another
+            //thread has done the same calculation it doesn't matter which is
+            //kept.
+            possible[code] = p;
+        }
+        return p;
+    }
+
+    /**
+     * Gets the description of ambiguous data used by this alphabet
+     * @return The description of ambiguous data
+     */
+    Ambiguous getAmbiguous()
+    {
+        return ambig;
+    }
+
+    private static class PossibleStates implements Serializable
+    {
+        private PossibleStates(Set<String> states, BitSet mask)
+        {
+            this.states = states;
+            this.mask = mask;
+        }
+
+        private final Set<String> states;
+        private final BitSet mask;
+
+        private static final long serialVersionUID = 1;
+    }
+
+    private final Ambiguous ambig;
+    private final ConcurrentHashMap<String,Integer> codes;
+    private volatile String[] states;
+    private volatile PossibleStates[] possible;
+
+    private static final long serialVersionUID = 1;
+}
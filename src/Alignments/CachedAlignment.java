@@ -0,0 +1,419 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Alignments;
+
+import Exceptions.InputException;
+import Exceptions.OutputException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Static classes for reading/writing alignments in a binary cache format.
+ * Reading a large text alignment means parsing it and then finding the unique
+ * sites.  This format stores the result of doing that - the taxa, the
+ * encoded unique sites and how often they occur, the site classes and which
+ * unique site each site is - so an alignment that is used many times need only
+ * be parsed once.  The file is read using memory mapping so even very large
+ * alignments can be opened quickly.
+ * <br><br>
+ * Files in this format are also recognised by the <code>fromFile</code>
+ * methods of {@link FastaAlignment}, {@link PhylipAlignment},
+ * {@link GenericAlignment} and {@link DuplicationAlignment} so a cache can be
+ * used anywhere the original file could.
+ * <br><br>
+ * A cache can record the file it was created from (its path, size and
+ * modification time) and how that file was read so that
+ * {@link #isCurrent(File, File, String)} can tell whether the cache is still
+ * up to date or the source needs to be parsed again.
+ * <br><br>
+ * The format is not intended to be portable between versions of GeLL.  If the
+ * version does not match the file will not be read.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class CachedAlignment
+{
+    private CachedAlignment()
+    {
+
+    }
+
+    /**
+     * Reads an alignment from a cache file.  No states are ambiguous.
+     * @param f The input file
+     * @return The alignment
+     * @throws InputException Thrown if there is a problem reading the file or
+     * the file is not a cache file
+     */
+    public static Alignment fromFile(File f) throws InputException
+    {
+        return fromFile(f, new Ambiguous(new HashMap<String,Set<String>>()));
+    }
+
+    /**
+     * Reads an alignment with ambiguous data from a cache file
+     * @param f The input file
+     * @param ambig Description of the ambiguous data
+     * @return The alignment
+     * @throws InputException Thrown if there is a problem reading the file or
+     * the file is not a cache file
+     */
+    public static Alignment fromFile(File f, Ambiguous ambig) throws InputException
+    {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r"))
+        {
+            FileChannel ch = raf.getChannel();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(raf.getFD())));
+            if (in.readLong() != MAGIC)
+            {
+                throw new InputException(f.getAbsolutePath(),"Not Applicable","Not an alignment cache file",null);
+            }
+            int n = in.readInt();
+            int width = in.readInt();
+            int states = in.readInt();
+            int classes = in.readInt();
+            int patterns = in.readInt();
+            int columns = in.readInt();
+            boolean hasIDs = in.readBoolean();
+            long pos = in.readLong();
+            //Skip the description of the source
+            in.readLong();
+            in.readLong();
+            readStrings(in, 2);
+
+            String[] taxa = readStrings(in, n);
+            Alphabet alphabet = new Alphabet(ambig);
+            for (String s: readStrings(in, states))
+            {
+                alphabet.encode(s);
+            }
+            String[] classTable = readStrings(in, classes);
+
+            long codeBytes = (long) patterns * n * width;
+            long end = pos + 4L * (3L * patterns + columns) + codeBytes;
+            if (ch.size() < end)
+            {
+                throw new InputException(f.getAbsolutePath(),"Not Applicable","Alignment cache is truncated",null);
+            }
+
+            int[] patternClass = readInts(ch, pos, patterns);
+            pos += 4L * patterns;
+            int[] first = readInts(ch, pos, patterns);
+            pos += 4L * patterns;
+            int[] counts = readInts(ch, pos, patterns);
+            pos += 4L * patterns;
+            int[] columnMap = readInts(ch, pos, columns);
+            pos += 4L * columns;
+
+            String[] ids = null;
+            if (hasIDs)
+            {
+                ch.position(end);
+                ids = readStrings(new DataInputStream(new BufferedInputStream(new FileInputStream(raf.getFD()))), columns);
+            }
+
+            ColumnStore store = ColumnStore.fromPatterns(Arrays.asList(taxa), alphabet,
+                    width, patternClass, classTable, columnMap, ids);
+
+            //Map as many whole blocks of codes at a time as we can
+            long blockBytes = (long) ColumnStore.getBlockSize() * n * width;
+            int perMap = (int) Math.max(1, MAX_MAP / blockBytes);
+            int blocks = ColumnStore.getBlocks(patterns);
+            for (int b = 0; b < blocks; b += perMap)
+            {
+                long size = Math.min(codeBytes - b * blockBytes, perMap * blockBytes);
+                ByteBuffer buffer = ch.map(FileChannel.MapMode.READ_ONLY, pos + b * blockBytes, size);
+                for (int k = b; k < Math.min(blocks, b + perMap); k++)
+                {
+                    store.loadBlock(k, buffer);
+                }
+            }
+
+            return new Alignment(store, new PatternIndex(store, first, counts, columnMap));
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new InputException(f.getAbsolutePath(),"Not Applicable","File does not exist",e);
+        }
+        catch (IOException e)
+	{
+	    throw new InputException(f.getAbsolutePath(),"Not Applicable","Problem reading file",e);
+	}
+    }
+
+    /**
+     * Writes an alignment to a cache file.  No source is recorded so
+     * {@link #isCurrent(File, File, String)} will always return false for the
+     * file.
+     * @param a The alignment
+     * @param f The file to write to
+     * @throws OutputException Thrown if there is a problem writing the file
+     */
+    public static void writeFile(Alignment a, File f) throws OutputException
+    {
+        writeFile(a, f, null, null);
+    }
+
+    /**
+     * Writes an alignment to a cache file recording the file the alignment
+     * was read from
+     * @param a The alignment
+     * @param f The file to write to
+     * @param source The file the alignment was read from.  If null no source
+     * is recorded.
+     * @param type How the source was read, e.g. its format.  Compared by
+     * {@link #isCurrent(File, File, String)}.
+     * @throws OutputException Thrown if there is a problem writing the file
+     */
+    public static void writeFile(Alignment a, File f, File source, String type) throws OutputException
+    {
+        ColumnStore store = a.getStore();
+        PatternIndex pi = a.getPatternIndex();
+        Alphabet alphabet = store.getAlphabet();
+        int n = store.getNumberTaxa();
+        //Use the smallest width that can hold every code
+        int width = (alphabet.size() <= (1 << 8)) ? 1 : ((alphabet.size() <= (1 << 16)) ? 2 : 4);
+        int patterns = pi.getNumberPatterns();
+        int columns = store.getLength();
+
+        byte[][] taxa = new byte[n][];
+        for (int t = 0; t < n; t++)
+        {
+            taxa[t] = store.getTaxon(t).getBytes(StandardCharsets.UTF_8);
+        }
+        byte[][] states = new byte[alphabet.size()][];
+        for (int c = 0; c < states.length; c++)
+        {
+            states[c] = alphabet.decode(c).getBytes(StandardCharsets.UTF_8);
+        }
+        String[] ct = store.getClassTable();
+        byte[][] classes = new byte[ct.length][];
+        for (int c = 0; c < ct.length; c++)
+        {
+            classes[c] = ct[c].getBytes(StandardCharsets.UTF_8);
+        }
+        boolean hasIDs = false;
+        for (int c = 0; !hasIDs && (c < columns); c++)
+        {
+            hasIDs = (store.getID(c) != null);
+        }
+        byte[][] from = new byte[][] {
+            ((source == null) ? "" : source.getAbsolutePath()).getBytes(StandardCharsets.UTF_8),
+            ((type == null) ? "" : type).getBytes(StandardCharsets.UTF_8)};
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 20)))
+        {
+            long pos = HEADER + size(from) + size(taxa) + size(states) + size(classes);
+            out.writeLong(MAGIC);
+            out.writeInt(n);
+            out.writeInt(width);
+            out.writeInt(states.length);
+            out.writeInt(classes.length);
+            out.writeInt(patterns);
+            out.writeInt(columns);
+            out.writeBoolean(hasIDs);
+            out.writeLong(pos);
+            out.writeLong((source == null) ? -1 : source.length());
+            out.writeLong((source == null) ? -1 : source.lastModified());
+            writeStrings(out, from);
+            writeStrings(out, taxa);
+            writeStrings(out, states);
+            writeStrings(out, classes);
+
+            for (int p = 0; p < patterns; p++)
+            {
+                out.writeInt(store.getClassCode(pi.getFirst(p)));
+            }
+            for (int p = 0; p < patterns; p++)
+            {
+                out.writeInt(pi.getFirst(p));
+            }
+            for (int p = 0; p < patterns; p++)
+            {
+                out.writeInt(pi.getCount(p));
+            }
+            for (int c = 0; c < columns; c++)
+            {
+                out.writeInt(pi.getPattern(c));
+            }
+            //The codes of each unique site in the same layout as they are
+            //held in memory
+            for (int p = 0; p < patterns; p++)
+            {
+                int c = pi.getFirst(p);
+                for (int t = 0; t < n; t++)
+                {
+                    switch (width)
+                    {
+                        case 1:
+                            out.writeByte(store.getCode(c, t));
+                            break;
+                        case 2:
+                            out.writeChar(store.getCode(c, t));
+                            break;
+                        default:
+                            out.writeInt(store.getCode(c, t));
+                    }
+                }
+            }
+            if (hasIDs)
+            {
+                for (int c = 0; c < columns; c++)
+                {
+                    String id = store.getID(c);
+                    if (id == null)
+                    {
+                        out.writeInt(-1);
+                    }
+                    else
+                    {
+                        byte[] b = id.getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(b.length);
+                        out.write(b);
+                    }
+                }
+            }
+        }
+	catch (IOException e)
+	{
+	    throw new OutputException(f.getAbsolutePath(),"Unable to write out alignment cache",e);
+	}
+    }
+
+    /**
+     * Whether a file is an alignment cache file
+     * @param f The file
+     * @return Whether the file is a cache file.  False if the file can't be
+     * read.
+     */
+    static boolean isCache(File f)
+    {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(f)))
+        {
+            return in.readLong() == MAGIC;
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Whether a cache file is up to date with the file it was created from.
+     * This is the case if the cache was written by
+     * {@link #writeFile(Alignment, File, File, String)} from the same source
+     * path read in the same way and the source's size and modification time
+     * have not changed since.
+     * @param f The cache file
+     * @param source The file the alignment would otherwise be read from
+     * @param type How the source would be read, e.g. its format
+     * @return Whether the cache is up to date.  False if the cache does not
+     * exist, can't be read or is not a cache file.
+     */
+    public static boolean isCurrent(File f, File source, String type)
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f))))
+        {
+            if (in.readLong() != MAGIC)
+            {
+                return false;
+            }
+            //Skip the description of the alignment
+            in.readFully(new byte[4 * 6 + 1 + 8]);
+            long length = in.readLong();
+            long modified = in.readLong();
+            String[] from = readStrings(in, 2);
+            return source.exists() && from[0].equals(source.getAbsolutePath())
+                    && from[1].equals(type) && (length == source.length())
+                    && (modified == source.lastModified());
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    private static long size(byte[][] strings)
+    {
+        long s = 0;
+        for (byte[] b: strings)
+        {
+            s += 4 + b.length;
+        }
+        return s;
+    }
+
+    private static void writeStrings(DataOutputStream out, byte[][] strings) throws IOException
+    {
+        for (byte[] b: strings)
+        {
+            out.writeInt(b.length);
+            out.write(b);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in, int number) throws IOException
+    {
+        String[] s = new String[number];
+        for (int i = 0; i < number; i++)
+        {
+            int l = in.readInt();
+            if (l >= 0)
+            {
+                byte[] b = new byte[l];
+                in.readFully(b);
+                s[i] = new String(b, StandardCharsets.UTF_8);
+            }
+        }
+        return s;
+    }
+
+    private static int[] readInts(FileChannel ch, long pos, int number) throws IOException
+    {
+        int[] r = new int[number];
+        int perMap = (int) (MAX_MAP / 4);
+        for (int i = 0; i < number; i += perMap)
+        {
+            int l = Math.min(perMap, number - i);
+            IntBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, pos + 4L * i, 4L * l).asIntBuffer();
+            b.get(r, i, l);
+        }
+        return r;
+    }
+
+    //Magic number ("GeLLAC") followed by the format version
+    private static final long MAGIC = 0x47654c4c41430002L;
+    //Size of the fixed length part of the header
+    private static final long HEADER = 8 + 4 * 6 + 1 + 8 + 8 + 8;
+    //Largest amount of the file to map at once
+    private static final long MAX_MAP = 1L << 30;
+}
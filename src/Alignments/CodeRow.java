@@ -0,0 +1,98 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Alignments;
+
+import java.util.Arrays;
+
+/**
+ * A growable row of state codes, used to hold a sequence while a file is
+ * being read.  Codes are held as bytes unless a code too large for a byte is
+ * added.
+ * @author Daniel Money
+ * @version 2.0
+ */
+final class CodeRow
+{
+    /**
+     * Creates an empty row
+     */
+    CodeRow()
+    {
+        bytes = new byte[64];
+        ints = null;
+        length = 0;
+    }
+
+    /**
+     * Adds a code to the end of the row
+     * @param code The code
+     */
+    void add(int code)
+    {
+        if (ints == null)
+        {
+            if (code < 256)
+            {
+                if (length == bytes.length)
+                {
+                    bytes = Arrays.copyOf(bytes, length * 2);
+                }
+                bytes[length++] = (byte) code;
+                return;
+            }
+            ints = new int[bytes.length];
+            for (int i = 0; i < length; i++)
+            {
+                ints[i] = bytes[i] & 0xFF;
+            }
+            bytes = null;
+        }
+        if (length == ints.length)
+        {
+            ints = Arrays.copyOf(ints, length * 2);
+        }
+        ints[length++] = code;
+    }
+
+    /**
+     * Gets a code
+     * @param i The position in the row
+     * @return The code
+     */
+    int get(int i)
+    {
+        if (ints == null)
+        {
+            return bytes[i] & 0xFF;
+        }
+        return ints[i];
+    }
+
+    /**
+     * Gets the length of the row
+     * @return The length
+     */
+    int length()
+    {
+        return length;
+    }
+
+    private byte[] bytes;
+    private int[] ints;
+    private int length;
+}
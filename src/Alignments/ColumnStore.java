@@ -0,0 +1,1030 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Alignments;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Compact column-major storage of the states in an alignment.  Taxa are
+ * interned to indices and states to codes (see {@link Alphabet}).  Codes are
+ * stored as bytes while there are few enough states, widening to chars and
+ * then ints as needed.  Columns are stored in blocks so no single array has to
+ * hold the whole alignment.
+ * <br><br>
+ * {@link Site} and {@link UniqueSite} are views of a column in one of these.
+ * Columns can only be added, never changed, so views stay valid.  Adding
+ * columns is not thread safe; once all the columns have been added the store
+ * can be read from many threads.
+ * <br><br>
+ * A store can also hold each distinct column only once together with which
+ * of them each column is (see {@link #fromPatterns}).  This is how alignments
+ * read from a {@link CachedAlignment} are stored.
+ * <br><br>
+ * Finally a store can be a view of another store (see {@link #view}) limited
+ * to some of its columns and / or taxa and with its states recoded.  Nothing
+ * is copied - codes are looked up in the other store and recoded as needed.
+ * Columns can not be added to a view.
+ * @author Daniel Money
+ * @version 2.0
+ */
+final class ColumnStore implements Serializable
+{
+    /**
+     * Creates an empty store
+     * @param taxa The taxa in the order they should be stored
+     * @param alphabet The alphabet used to encode states
+     */
+    ColumnStore(Collection<String> taxa, Alphabet alphabet)
+    {
+        this.taxa = taxa.toArray(new String[taxa.size()]);
+        this.alphabet = alphabet;
+        taxonIndex = new HashMap<>(this.taxa.length * 2);
+        taxonHash = new int[this.taxa.length];
+        for (int i = 0; i < this.taxa.length; i++)
+        {
+            taxonIndex.put(this.taxa[i], i);
+            taxonHash[i] = this.taxa[i].hashCode();
+        }
+        taxaSet = Collections.unmodifiableSet(new LinkedHashSet<>(taxa));
+        n = this.taxa.length;
+        width = 1;
+        bytes = new byte[0][];
+        length = 0;
+        stored = 0;
+        columnMap = null;
+        classCodes = new int[0];
+        classTable = new String[0];
+        classIndex = new HashMap<>();
+        parent = null;
+        parentColumns = null;
+        parentTaxa = null;
+        recodeMaps = null;
+        recode = null;
+    }
+
+    //Creates a view - see view(...)
+    private ColumnStore(ColumnStore parent, int[] parentColumns, int[] parentTaxa,
+            Alphabet alphabet, List<Map<String,String>> recodeMaps)
+    {
+        if (parentTaxa == null)
+        {
+            //Same taxa so share the taxa tables
+            taxa = parent.taxa;
+            taxonIndex = parent.taxonIndex;
+            taxonHash = parent.taxonHash;
+            taxaSet = parent.taxaSet;
+        }
+        else
+        {
+            taxa = new String[parentTaxa.length];
+            taxonIndex = new HashMap<>(taxa.length * 2);
+            taxonHash = new int[taxa.length];
+            for (int i = 0; i < taxa.length; i++)
+            {
+                taxa[i] = parent.taxa[parentTaxa[i]];
+                taxonIndex.put(taxa[i], i);
+                taxonHash[i] = taxa[i].hashCode();
+            }
+            taxaSet = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(taxa)));
+        }
+        n = taxa.length;
+        this.alphabet = alphabet;
+        this.parent = parent;
+        this.parentColumns = parentColumns;
+        this.parentTaxa = parentTaxa;
+        this.recodeMaps = recodeMaps;
+        recode = new int[0];
+        if ((recodeMaps != null) && (parent.alphabet.size() > 0))
+        {
+            extendRecode(parent.alphabet.size() - 1);
+        }
+        length = (parentColumns == null) ? parent.length : parentColumns.length;
+        stored = length;
+        columnMap = null;
+        classIndex = null;
+    }
+
+    /**
+     * Creates a view of this store
+     * @param columns The columns of this store in the view, in the order they
+     * should appear.  If null every column is in the view.
+     * @param taxa The index of the taxa in this store to include in the view,
+     * in the order they should appear.  If null all the taxa are included.
+     * @param alphabet The alphabet used by the view.  If recode is null this
+     * should be the same as the alphabet of this store.
+     * @param recode Map from states in this store to states in the view.  States
+     * not in the map are unchanged.  If null states aren't recoded.
+     * @return The view
+     */
+    ColumnStore view(int[] columns, int[] taxa, Alphabet alphabet, Map<String,String> recode)
+    {
+        if (parent == null)
+        {
+            List<Map<String,String>> maps = null;
+            if (recode != null)
+            {
+                maps = Collections.singletonList(recode);
+            }
+            return new ColumnStore(this, columns, taxa, alphabet, maps);
+        }
+        //A view of a view is a view of the original store so lookups never
+        //go through more than one view
+        int[] pc = parentColumns;
+        if (columns != null)
+        {
+            pc = new int[columns.length];
+            for (int i = 0; i < columns.length; i++)
+            {
+                pc[i] = (parentColumns == null) ? columns[i] : parentColumns[columns[i]];
+            }
+        }
+        else if (pc == null && length != parent.length)
+        {
+            pc = identity(length);
+        }
+        int[] pt = parentTaxa;
+        if (taxa != null)
+        {
+            pt = new int[taxa.length];
+            for (int i = 0; i < taxa.length; i++)
+            {
+                pt[i] = (parentTaxa == null) ? taxa[i] : parentTaxa[taxa[i]];
+            }
+        }
+        List<Map<String,String>> maps = recodeMaps;
+        if (recode != null)
+        {
+            maps = new ArrayList<>();
+            if (recodeMaps != null)
+            {
+                maps.addAll(recodeMaps);
+            }
+            maps.add(recode);
+        }
+        return new ColumnStore(parent, pc, pt, alphabet, maps);
+    }
+
+    private static int[] identity(int length)
+    {
+        int[] r = new int[length];
+        for (int i = 0; i < length; i++)
+        {
+            r[i] = i;
+        }
+        return r;
+    }
+
+    /**
+     * Whether this store is a view of another store
+     * @return Whether this is a view
+     */
+    boolean isView()
+    {
+        return parent != null;
+    }
+
+    /**
+     * Creates a store containing a single column
+     * @param sites Map from taxa name to state
+     * @param ambig Description of the ambiguous data
+     * @param siteClass The class of the column, may be null
+     * @param id The ID of the column, may be null
+     * @return The store
+     */
+    static ColumnStore single(LinkedHashMap<String,String> sites, Ambiguous ambig, String siteClass, String id)
+    {
+        ColumnStore store = new ColumnStore(sites.keySet(), new Alphabet(ambig));
+        int[] codes = new int[store.n];
+        int i = 0;
+        for (Entry<String,String> e: sites.entrySet())
+        {
+            codes[i++] = store.alphabet.encode(e.getValue());
+        }
+        store.addColumn(codes, siteClass, id);
+        return store;
+    }
+
+    /**
+     * Creates a store that holds each distinct column once.  The codes of the
+     * distinct columns must then be loaded a block at a time using
+     * {@link #loadBlock(int, java.nio.ByteBuffer)}.  Used to read a
+     * {@link CachedAlignment}.
+     * @param taxa The taxa in the order they are stored
+     * @param alphabet The alphabet used to encode states
+     * @param width The number of bytes used for each code (1, 2 or 4)
+     * @param patternClass The class code of each distinct column (-1 for no
+     * class)
+     * @param classTable The classes the class codes refer to
+     * @param columnMap Which distinct column each column is
+     * @param ids The ID of each column.  May be null if no column has an ID.
+     * @return The store
+     */
+    static ColumnStore fromPatterns(Collection<String> taxa, Alphabet alphabet, int width,
+            int[] patternClass, String[] classTable, int[] columnMap, String[] ids)
+    {
+        ColumnStore store = new ColumnStore(taxa, alphabet);
+        int blocks = getBlocks(patternClass.length);
+        store.width = width;
+        switch (width)
+        {
+            case 1:
+                store.bytes = new byte[blocks][];
+                break;
+            case 2:
+                store.bytes = null;
+                store.chars = new char[blocks][];
+                break;
+            default:
+                store.bytes = null;
+                store.ints = new int[blocks][];
+        }
+        for (String c: classTable)
+        {
+            store.classCode(c);
+        }
+        store.classCodes = patternClass;
+        store.stored = patternClass.length;
+        store.columnMap = columnMap;
+        store.ids = ids;
+        store.length = columnMap.length;
+        return store;
+    }
+
+    /**
+     * Gets the number of blocks needed to store a number of columns
+     * @param columns The number of columns
+     * @return The number of blocks
+     */
+    static int getBlocks(int columns)
+    {
+        return (columns + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+    }
+
+    /**
+     * Gets the number of columns stored in each (full) block
+     * @return The number of columns
+     */
+    static int getBlockSize()
+    {
+        return BLOCK_SIZE;
+    }
+
+    /**
+     * Loads the codes of a block of a store created using
+     * {@link #fromPatterns}.  The codes are in the same layout as they are
+     * stored, that is one column after another, and are read in a single bulk
+     * copy.
+     * @param block The block
+     * @param codes Buffer to read the codes from.  Read from its current
+     * position which is moved to after the codes.
+     */
+    void loadBlock(int block, ByteBuffer codes)
+    {
+        int size = Math.min(BLOCK_SIZE, stored - (block << BLOCK_SHIFT)) * n;
+        switch (width)
+        {
+            case 1:
+                bytes[block] = new byte[size];
+                codes.get(bytes[block]);
+                break;
+            case 2:
+                chars[block] = new char[size];
+                codes.asCharBuffer().get(chars[block]);
+                codes.position(codes.position() + size * 2);
+                break;
+            default:
+                ints[block] = new int[size];
+                codes.asIntBuffer().get(ints[block]);
+                codes.position(codes.position() + size * 4);
+        }
+    }
+
+    /**
+     * Adds a column to the end of the store
+     * @param codes The code for each taxa in the order of the taxa in the store
+     * @param siteClass The class of the column, may be null
+     * @param id The ID of the column, may be null
+     * @return The index of the new column
+     */
+    int addColumn(int[] codes, String siteClass, String id)
+    {
+        int column = length;
+        int p = addStored(codes, siteClass);
+        if (columnMap != null)
+        {
+            if (column == columnMap.length)
+            {
+                columnMap = Arrays.copyOf(columnMap, Math.max(16, column + (column >> 1)));
+            }
+            columnMap[column] = p;
+        }
+
+        if (id != null)
+        {
+            if (ids == null)
+            {
+                ids = new String[Math.max(16, column + 1)];
+            }
+        }
+        if (ids != null)
+        {
+            if (column >= ids.length)
+            {
+                ids = Arrays.copyOf(ids, Math.max(column + 1, column + (column >> 1)));
+            }
+            ids[column] = id;
+        }
+
+        length = column + 1;
+        return column;
+    }
+
+    //Adds to the columns that are actually stored
+    private int addStored(int[] codes, String siteClass)
+    {
+        int column = stored;
+        int block = column >>> BLOCK_SHIFT;
+        int offset = (column & BLOCK_MASK) * n;
+        ensureBlock(block, offset + n);
+        for (int i = 0; i < n; i++)
+        {
+            int c = codes[i];
+            if (c >= maxCode())
+            {
+                widen(c);
+            }
+            switch (width)
+            {
+                case 1:
+                    bytes[block][offset + i] = (byte) c;
+                    break;
+                case 2:
+                    chars[block][offset + i] = (char) c;
+                    break;
+                default:
+                    ints[block][offset + i] = c;
+            }
+        }
+
+        if (column == classCodes.length)
+        {
+            classCodes = Arrays.copyOf(classCodes, Math.max(16, column * 2));
+        }
+        classCodes[column] = classCode(siteClass);
+
+        stored = column + 1;
+        return column;
+    }
+
+    private int classCode(String siteClass)
+    {
+        if (siteClass == null)
+        {
+            return -1;
+        }
+        Integer c = classIndex.get(siteClass);
+        if (c == null)
+        {
+            c = classTable.length;
+            classTable = Arrays.copyOf(classTable, c + 1);
+            classTable[c] = siteClass;
+            classIndex.put(siteClass, c);
+        }
+        return c;
+    }
+
+    //Makes sure there is space in the block for the next column.  Blocks
+    //start small and grow so that stores with few columns (such as those
+    //behind individually created sites) stay small.
+    private void ensureBlock(int block, int needed)
+    {
+        int size = BLOCK_SIZE * n;
+        switch (width)
+        {
+            case 1:
+                if (block >= bytes.length)
+                {
+                    bytes = Arrays.copyOf(bytes, Math.max(block + 1, bytes.length * 2));
+                }
+                if (bytes[block] == null)
+                {
+                    bytes[block] = new byte[initialSize(needed, size)];
+                }
+                else if (bytes[block].length < needed)
+                {
+                    bytes[block] = Arrays.copyOf(bytes[block], Math.min(size, Math.max(needed, bytes[block].length * 2)));
+                }
+                break;
+            case 2:
+                if (block >= chars.length)
+                {
+                    chars = Arrays.copyOf(chars, Math.max(block + 1, chars.length * 2));
+                }
+                if (chars[block] == null)
+                {
+                    chars[block] = new char[initialSize(needed, size)];
+                }
+                else if (chars[block].length < needed)
+                {
+                    chars[block] = Arrays.copyOf(chars[block], Math.min(size, Math.max(needed, chars[block].length * 2)));
+                }
+                break;
+            default:
+                if (block >= ints.length)
+                {
+                    ints = Arrays.copyOf(ints, Math.max(block + 1, ints.length * 2));
+                }
+                if (ints[block] == null)
+                {
+                    ints[block] = new int[initialSize(needed, size)];
+                }
+                else if (ints[block].length < needed)
+                {
+                    ints[block] = Arrays.copyOf(ints[block], Math.min(size, Math.max(needed, ints[block].length * 2)));
+                }
+        }
+    }
+
+    private int initialSize(int needed, int size)
+    {
+        //The first block starts small, later blocks are likely to be filled
+        //so start full size
+        if (stored == 0)
+        {
+            return needed;
+        }
+        return size;
+    }
+
+    private int maxCode()
+    {
+        switch (width)
+        {
+            case 1:
+                return 1 << 8;
+            case 2:
+                return 1 << 16;
+            default:
+                return Integer.MAX_VALUE;
+        }
+    }
+
+    //Copies the existing codes into wider arrays
+    private void widen(int code)
+    {
+        int nw = (code < (1 << 16)) ? 2 : 4;
+        if (nw == 2)
+        {
+            chars = new char[bytes.length][];
+            for (int b = 0; b < bytes.length; b++)
+            {
+                if (bytes[b] != null)
+                {
+                    chars[b] = new char[bytes[b].length];
+                    for (int i = 0; i < bytes[b].length; i++)
+                    {
+                        chars[b][i] = (char) (bytes[b][i] & 0xFF);
+                    }
+                }
+            }
+            bytes = null;
+        }
+        else
+        {
+            int blocks = (width == 1) ? bytes.length : chars.length;
+            ints = new int[blocks][];
+            for (int b = 0; b < blocks; b++)
+            {
+                if (width == 1 && bytes[b] != null)
+                {
+                    ints[b] = new int[bytes[b].length];
+                    for (int i = 0; i < bytes[b].length; i++)
+                    {
+                        ints[b][i] = bytes[b][i] & 0xFF;
+                    }
+                }
+                if (width == 2 && chars[b] != null)
+                {
+                    ints[b] = new int[chars[b].length];
+                    for (int i = 0; i < chars[b].length; i++)
+                    {
+                        ints[b][i] = chars[b][i];
+                    }
+                }
+            }
+            bytes = null;
+            chars = null;
+        }
+        width = nw;
+    }
+
+    /**
+     * Gets the code of a state
+     * @param column The column
+     * @param taxon The index of the taxa
+     * @return The code
+     */
+    int getCode(int column, int taxon)
+    {
+        if (parent != null)
+        {
+            int c = parent.getCode((parentColumns == null) ? column : parentColumns[column],
+                    (parentTaxa == null) ? taxon : parentTaxa[taxon]);
+            if (recodeMaps == null)
+            {
+                return c;
+            }
+            int[] r = recode;
+            if (c >= r.length)
+            {
+                r = extendRecode(c);
+            }
+            return r[c];
+        }
+        column = stored(column);
+        int block = column >>> BLOCK_SHIFT;
+        int i = (column & BLOCK_MASK) * n + taxon;
+        switch (width)
+        {
+            case 1:
+                return bytes[block][i] & 0xFF;
+            case 2:
+                return chars[block][i];
+            default:
+                return ints[block][i];
+        }
+    }
+
+    //Codes are recoded using a table that is extended as codes are seen (the
+    //alphabet of the original store may grow after the view is created)
+    private synchronized int[] extendRecode(int code)
+    {
+        if (code < recode.length)
+        {
+            return recode;
+        }
+        Alphabet pa = parent.getAlphabet();
+        int[] r = Arrays.copyOf(recode, Math.max(code + 1, pa.size()));
+        for (int c = recode.length; c < r.length; c++)
+        {
+            String s = pa.decode(c);
+            for (Map<String,String> m: recodeMaps)
+            {
+                if (m.containsKey(s))
+                {
+                    s = m.get(s);
+                }
+            }
+            r[c] = alphabet.encode(s);
+        }
+        recode = r;
+        return r;
+    }
+
+    //Gets the column in the parent store of a column in a view
+    private int parentColumn(int column)
+    {
+        return (parentColumns == null) ? column : parentColumns[column];
+    }
+
+    /**
+     * Gets the state of a taxa in a column
+     * @param column The column
+     * @param taxon The index of the taxa
+     * @return The state
+     */
+    String getState(int column, int taxon)
+    {
+        return alphabet.decode(getCode(column, taxon));
+    }
+
+    /**
+     * Gets the number of columns in the store
+     * @return The number of columns
+     */
+    int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Gets the number of taxa
+     * @return The number of taxa
+     */
+    int getNumberTaxa()
+    {
+        return n;
+    }
+
+    /**
+     * Gets the name of a taxa
+     * @param taxon The index of the taxa
+     * @return The name of the taxa
+     */
+    String getTaxon(int taxon)
+    {
+        return taxa[taxon];
+    }
+
+    /**
+     * Gets the index of a taxa
+     * @param taxon The name of the taxa
+     * @return The index of the taxa or -1 if the taxa is not in the store
+     */
+    int getTaxonIndex(String taxon)
+    {
+        Integer i = taxonIndex.get(taxon);
+        if (i == null)
+        {
+            return -1;
+        }
+        return i;
+    }
+
+    /**
+     * Gets the taxa in the store
+     * @return The taxa in the order they are stored.  Can not be modified.
+     */
+    Set<String> getTaxa()
+    {
+        return taxaSet;
+    }
+
+    /**
+     * Gets the alphabet used to encode states
+     * @return The alphabet
+     */
+    Alphabet getAlphabet()
+    {
+        return alphabet;
+    }
+
+    /**
+     * Gets the class of a column
+     * @param column The column
+     * @return The class, or null if the column has no class
+     */
+    String getSiteClass(int column)
+    {
+        if (parent != null)
+        {
+            return parent.getSiteClass(parentColumn(column));
+        }
+        int c = classCodes[stored(column)];
+        if (c == -1)
+        {
+            return null;
+        }
+        return classTable[c];
+    }
+
+    /**
+     * Gets the code of the class of a column
+     * @param column The column
+     * @return The code, or -1 if the column has no class
+     */
+    int getClassCode(int column)
+    {
+        if (parent != null)
+        {
+            return parent.getClassCode(parentColumn(column));
+        }
+        return classCodes[stored(column)];
+    }
+
+    /**
+     * Gets which of the columns actually stored a column is.  Unless the store
+     * holds each distinct column only once this is the column itself.
+     * @param column The column
+     * @return The stored column
+     */
+    int stored(int column)
+    {
+        if (columnMap == null)
+        {
+            return column;
+        }
+        return columnMap[column];
+    }
+
+    /**
+     * Gets the classes used in the store
+     * @return The classes in the order they were first seen
+     */
+    String[] getClassTable()
+    {
+        if (parent != null)
+        {
+            return parent.getClassTable();
+        }
+        return classTable;
+    }
+
+    /**
+     * Gets the ID of a column
+     * @param column The column
+     * @return The ID, or null if the column has no ID
+     */
+    String getID(int column)
+    {
+        if (parent != null)
+        {
+            return parent.getID(parentColumn(column));
+        }
+        if (ids == null)
+        {
+            return null;
+        }
+        return ids[column];
+    }
+
+    /**
+     * Whether this and another store use the same taxa in the same order and
+     * the same alphabet, in which case columns can be compared by their codes
+     * @param o The other store
+     * @return Whether codes can be compared directly
+     */
+    boolean sameEncoding(ColumnStore o)
+    {
+        return (alphabet == o.alphabet) && Arrays.equals(taxa, o.taxa);
+    }
+
+    /**
+     * Whether two columns contain the same states.  The class of the columns
+     * is not compared.
+     * @param c1 The first column
+     * @param o The store containing the second column
+     * @param c2 The second column
+     * @return Whether the columns contain the same states
+     */
+    boolean sameStates(int c1, ColumnStore o, int c2)
+    {
+        if ((this == o) || sameEncoding(o))
+        {
+            for (int i = 0; i < n; i++)
+            {
+                if (getCode(c1, i) != o.getCode(c2, i))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (n != o.n || !taxaSet.equals(o.taxaSet))
+        {
+            return false;
+        }
+        for (int i = 0; i < n; i++)
+        {
+            if (!getState(c1, i).equals(o.getState(c2, o.getTaxonIndex(taxa[i]))))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether two columns in this store contain the same states and have the
+     * same class
+     * @param c1 The first column
+     * @param c2 The second column
+     * @return Whether the columns are the same pattern
+     */
+    boolean samePattern(int c1, int c2)
+    {
+        if (parent != null)
+        {
+            if ((parentTaxa == null) && (recodeMaps == null))
+            {
+                return parent.samePattern(parentColumn(c1), parentColumn(c2));
+            }
+            if (getClassCode(c1) != getClassCode(c2))
+            {
+                return false;
+            }
+            for (int i = 0; i < n; i++)
+            {
+                if (getCode(c1, i) != getCode(c2, i))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        c1 = stored(c1);
+        c2 = stored(c2);
+        if (c1 == c2)
+        {
+            return true;
+        }
+        if (classCodes[c1] != classCodes[c2])
+        {
+            return false;
+        }
+        //Compare the packed codes directly
+        int b1 = c1 >>> BLOCK_SHIFT;
+        int o1 = (c1 & BLOCK_MASK) * n;
+        int b2 = c2 >>> BLOCK_SHIFT;
+        int o2 = (c2 & BLOCK_MASK) * n;
+        switch (width)
+        {
+            case 1:
+                byte[] x1 = bytes[b1];
+                byte[] x2 = bytes[b2];
+                for (int i = 0; i < n; i++)
+                {
+                    if (x1[o1 + i] != x2[o2 + i])
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            case 2:
+                char[] y1 = chars[b1];
+                char[] y2 = chars[b2];
+                for (int i = 0; i < n; i++)
+                {
+                    if (y1[o1 + i] != y2[o2 + i])
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                int[] z1 = ints[b1];
+                int[] z2 = ints[b2];
+                for (int i = 0; i < n; i++)
+                {
+                    if (z1[o1 + i] != z2[o2 + i])
+                    {
+                        return false;
+                    }
+                }
+                return true;
+        }
+    }
+
+    /**
+     * Gets a hash of the states in a column.  This is the same as the hash of
+     * a map from taxa name to state so is the same for equal columns in
+     * different stores.
+     * @param column The column
+     * @return The hash
+     */
+    int contentHash(int column)
+    {
+        int h = 0;
+        for (int i = 0; i < n; i++)
+        {
+            h += taxonHash[i] ^ alphabet.decode(getCode(column, i)).hashCode();
+        }
+        return h;
+    }
+
+    /**
+     * Gets a 64-bit hash of the codes and class of a column.  Quicker than
+     * {@link #contentHash(int)} and with far fewer collisions but only
+     * comparable between columns in the same store.  When codes are stored as
+     * bytes eight are hashed at a time.
+     * @param column The column
+     * @return The hash
+     */
+    long patternHash(int column)
+    {
+        if (parent != null)
+        {
+            if ((parentTaxa == null) && (recodeMaps == null))
+            {
+                return parent.patternHash(parentColumn(column));
+            }
+            long h = 0x9e3779b97f4a7c15L ^ getClassCode(column);
+            for (int i = 0; i < n; i++)
+            {
+                h = mix(h, getCode(column, i));
+            }
+            return finish(h);
+        }
+        column = stored(column);
+        int block = column >>> BLOCK_SHIFT;
+        int o = (column & BLOCK_MASK) * n;
+        long h = 0x9e3779b97f4a7c15L ^ classCodes[column];
+        switch (width)
+        {
+            case 1:
+                byte[] x = bytes[block];
+                int i = 0;
+                for (; i + 8 <= n; i += 8)
+                {
+                    int j = o + i;
+                    long k = (x[j] & 0xFFL) | ((x[j + 1] & 0xFFL) << 8) |
+                            ((x[j + 2] & 0xFFL) << 16) | ((x[j + 3] & 0xFFL) << 24) |
+                            ((x[j + 4] & 0xFFL) << 32) | ((x[j + 5] & 0xFFL) << 40) |
+                            ((x[j + 6] & 0xFFL) << 48) | ((x[j + 7] & 0xFFL) << 56);
+                    h = mix(h, k);
+                }
+                long k = 0;
+                for (int s = 0; i < n; i++, s += 8)
+                {
+                    k |= (x[o + i] & 0xFFL) << s;
+                }
+                h = mix(h, k);
+                break;
+            case 2:
+                char[] y = chars[block];
+                for (int c = 0; c < n; c++)
+                {
+                    h = mix(h, y[o + c]);
+                }
+                break;
+            default:
+                int[] z = ints[block];
+                for (int c = 0; c < n; c++)
+                {
+                    h = mix(h, z[o + c]);
+                }
+        }
+        return finish(h);
+    }
+
+    //Finalisation step from MurmurHash3 to spread the bits
+    private long finish(long h)
+    {
+        h ^= n;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    //The mixing step of the 64-bit MurmurHash3
+    private static long mix(long h, long k)
+    {
+        k *= 0x87c37b91114253d5L;
+        k = Long.rotateLeft(k, 31);
+        k *= 0x4cf5ad432745937fL;
+        h ^= k;
+        return Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+    }
+
+    private final String[] taxa;
+    private final Map<String,Integer> taxonIndex;
+    private final int[] taxonHash;
+    private final Set<String> taxaSet;
+    private final Alphabet alphabet;
+    private final int n;
+
+    private int width;
+    private byte[][] bytes;
+    private char[][] chars;
+    private int[][] ints;
+    private int length;
+    private int stored;
+    private int[] columnMap;
+
+    private int[] classCodes;
+    private String[] classTable;
+    private final Map<String,Integer> classIndex;
+    private String[] ids;
+
+    private final ColumnStore parent;
+    private final int[] parentColumns;
+    private final int[] parentTaxa;
+    private final List<Map<String,String>> recodeMaps;
+    private volatile int[] recode;
+
+    private static final int BLOCK_SHIFT = 12;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    private static final long serialVersionUID = 1;
+}
@@ -24,13 +24,12 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Set;
 
@@ -54,7 +53,8 @@ public class DuplicationAlignment
      * The first field is an ID for the family while subsequent fields are the
      * size of the family in the appropriate species.  A family name of <code>*class*</code> is
      * assumed not to be a taxa but rather gives the class of each site (which can be any
-     * string).
+     * string).  The file may be compressed with gzip
+     * or may be a {@link CachedAlignment} cache file.
      * @param f The input file
      * @return The alignment created from the file
      * @throws InputException Thrown if there is a problem with the input file
@@ -78,18 +78,25 @@ public class DuplicationAlignment
      */
     public static Alignment fromFile(File f, Ambiguous ambig) throws InputException, AlignmentException
     {
+        if (CachedAlignment.isCache(f))
+        {
+            return CachedAlignment.fromFile(f, ambig);
+        }
         Set<String> taxa = new HashSet<>();
-        List<Site> data = new ArrayList<>();
         boolean hasClasses = false;
 	BufferedReader ain;
 	try
 	{
-	    ain = new BufferedReader(new FileReader(f));
+	    ain = new BufferedReader(new InputStreamReader(LineReader.openStream(f)));
 	}
 	catch (FileNotFoundException e)
  	{
 	    throw new InputException(f.getAbsolutePath(),"Not Applicable","File does not exist",e);
 	}
+	catch (IOException e)
+	{
+	    throw new InputException(f.getAbsolutePath(),"Not Applicable","Problem reading file",e);
+	}
 	try
 	{
             String line = ain.readLine();
@@ -118,6 +125,17 @@ public class DuplicationAlignment
 
 	    int i = 0;
 
+            List<String> order = new ArrayList<>();
+            for (int j = 1; j < names.length; j++)
+            {
+                if (!names[j].equals("*Class*"))
+                {
+                    order.add(names[j]);
+                }
+            }
+            ColumnStore store = new ColumnStore(order, new Alphabet(ambig));
+            int[] sizes = new int[order.size()];
+
 	    while ((line = ain.readLine()) != null)
 	    {
 		i++;
@@ -126,20 +144,20 @@ public class DuplicationAlignment
 		{
 		    throw new AlignmentException("Family " + i, line, "Wrong number of species",null);
 		}
-                LinkedHashMap<String,String> sizes = new LinkedHashMap<>();
                 String c = null;
+                int k = 0;
                 for (int j = 1; j < split.length; j++)
                 {
                     if (!names[j].equals("*Class*"))
                     {
-                        sizes.put(names[j], split[j]);
+                        sizes[k++] = store.getAlphabet().encode(split[j]);
                     }
                     else
                     {
                         c = split[j];
                     }
                 }
-                data.add(new Site(split[0],sizes,ambig,c));
+                store.addColumn(sizes,c,split[0]);
 	    }
 	    ain.close();
             
@@ -147,7 +165,7 @@ public class DuplicationAlignment
             {
                 taxa.remove("*Class*");
             }
-            return new Alignment(data);
+            return new Alignment(store);
 	}
 	catch (IOException e)
 	{
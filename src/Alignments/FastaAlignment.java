@@ -21,17 +21,10 @@ import Exceptions.OutputException;
 import Exceptions.UnexpectedError;
 import java.io.File;
 import java.util.HashMap;
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map.Entry;
 import java.util.Set;
 
 /**
@@ -54,7 +47,8 @@ public class FastaAlignment
      * are ignored.  Comments, i.e. lines beginning with ";" are NOT supported.
      * A taxa name of <code>*class*</code> is
      * assumed not to be a taxa but rather gives the class of each site (which can be any
-     * single character).
+     * single character).  The file may be compressed with gzip
+     * or may be a {@link CachedAlignment} cache file.
      * @param f The input file
      * @return The alignment created from the file
      * @throws InputException Thrown if there is a problem with the input file
@@ -78,138 +72,79 @@ public class FastaAlignment
      */
     public static Alignment fromFile(File f, Ambiguous ambig) throws InputException, AlignmentException
     {
-	// Create the hashmap to store the sequences (seq name =>  sequence)
-        LinkedHashMap<String,String> seq = new LinkedHashMap<>();
-        String classLine = null;
-        Set<String> taxa = new HashSet<>();
-        List<Site> data = new ArrayList<>();
-        boolean hasClasses = false;
+        if (CachedAlignment.isCache(f))
+        {
+            return CachedAlignment.fromFile(f, ambig);
+        }
+        SequenceCollector sc = new SequenceCollector(ambig);
 
-	BufferedReader in;
+	LineReader in;
         try
         {
-            in = new BufferedReader(new FileReader(f));
+            in = LineReader.open(f);
         }
         catch (FileNotFoundException e)
         {
             throw new InputException(f.getAbsolutePath(),"Not Applicable","File does not exist",e);
         }
+        catch (IOException e)
+	{
+	    throw new InputException(f.getAbsolutePath(),"Not Applicable","Problem reading file",e);
+	}
         try
         {
-            String line;
-            int seqLength = -1;
-            String sequence = "";
             String name = null;
-            while ((line = in.readLine()) != null)
+            CodeRow sequence = null;
+            TokenCodes codes = null;
+            while (in.next())
             {
-                if (!line.equals(""))
+                byte[] b = in.getBuffer();
+                int start = in.getStart();
+                int end = in.getEnd();
+                if (start != end)
                 {
-                    if (line.startsWith(">"))
+                    if (b[start] == '>')
                     {
                         if (name != null)
                         {
-                            if (checkSequence(name,sequence,seqLength,classLine,taxa))
-                            {
-                                seq.put(name, sequence);
-                                seqLength = sequence.length();
-                            }
-                            else
+                            sc.add(name, sequence, null);
+                        }
+                        int e = start + 1;
+                        while ((e < end) && (b[e] != '|'))
+                        {
+                            e++;
+                        }
+                        name = in.getString(start + 1, e).trim();
+                        sequence = new CodeRow();
+                        codes = SequenceCollector.isClass(name) ? sc.getClasses() : sc.getStates();
+                    }
+                    else if (name != null)
+                    {
+                        //Encode the sequence directly from the bytes read
+                        for (int i = start; i < end; i++)
+                        {
+                            if (!LineReader.isWhitespace(b[i]))
                             {
-                                classLine = sequence;
-                                seqLength = sequence.length();
+                                sequence.add(codes.code(b[i]));
                             }
                         }
-                        sequence = "";
-                        String[] parts = line.split("\\|");
-                        name = parts[0].substring(1).trim();
                     }
-                    else
-                    {
-                        sequence = sequence + line;
-                    }               
                 }
             }
             in.close();
             
             if (name != null)
             {
-                if (checkSequence(name,sequence,seqLength,classLine,taxa))
-                {
-                    taxa.add(name);
-                    seq.put(name, sequence);
-                }
-                else
-                {
-                    hasClasses = true;
-                    classLine = sequence;
-                }
-            }
-            
-            if (taxa.size() < 2)
-            {
-                throw new AlignmentException("Taxa names", "N/A", "One or fewer taxa given",null);
+                sc.add(name, sequence, null);
             }
             
-            for (int i = 0; i < seqLength; i++)
-            {
-                LinkedHashMap<String,String> col = new LinkedHashMap<>();
-                for (Entry<String,String> e: seq.entrySet())
-                {
-                    col.put(e.getKey(),e.getValue().substring(i, i+1));
-                }
-                String c = null;
-                if (classLine != null)
-                {
-                    c = classLine.substring(i, i+1);
-                }
-                data.add(new Site(col,ambig,c));
-            }
-            return new Alignment(data);
+            return sc.build();
         }
         catch (IOException e)
 	{
 	    throw new InputException(f.getAbsolutePath(),"Not Applicable","Problem reading file",e);
 	}
     }
-    
-    private static boolean checkSequence(String name, String sequence, int seqLength, String classLine,
-            Set<String> taxa) throws AlignmentException
-    {
-        if (sequence.length() == 0)
-        {
-            throw new AlignmentException("Sequence " + name, "N/A", "No sequence given",null);
-        }
-        if ((seqLength != -1) && (sequence.length() != seqLength))
-        {
-            throw new AlignmentException("Sequence " + name, "N/A", "Wrong sequence length",null);
-        }
-        else
-        {
-            seqLength = sequence.length();
-        }
-        if (!name.equals("*Class*"))
-        {
-            if (!taxa.contains(name))
-            {
-                return true;
-            }
-            else
-            {
-                throw new AlignmentException("Taxa names", "N/A", "Repeated taxa name",null);
-            }
-        }
-        else
-        {
-            if (classLine == null)
-            {
-                return false;
-            }
-            else
-            {
-                throw new AlignmentException("Taxa names", "N/A", "Site class defined more than once",null);
-            }
-        }
-    }
 
     /**
      * Writes a alignment to a file in the format described in 
@@ -21,17 +21,10 @@ import Exceptions.OutputException;
 import Exceptions.UnexpectedError;
 import java.io.File;
 import java.util.HashMap;
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map.Entry;
 import java.util.Set;
 
 /**
@@ -53,7 +46,8 @@ public class GenericAlignment
      * by white space.  Allows the use of states that are multiple characters long
      * (e.g. codon).  Blank lines are ignored.  A taxa name of <code>*class*</code> is
      * assumed not to be a taxa but rather gives the class of each site (which can be any
-     * single character).
+     * single character).  The file may be compressed with gzip
+     * or may be a {@link CachedAlignment} cache file.
      * @param f The input file
      * @return The alignment created from the file
      * @throws InputException Thrown if there is a problem reading the file
@@ -77,96 +71,72 @@ public class GenericAlignment
      */
     public static Alignment fromFile(File f, Ambiguous ambig) throws InputException, AlignmentException
     {
-	// Create the hashmap to store the sequences (seq name =>  sequence)
-        LinkedHashMap<String,String[]> seq = new LinkedHashMap<>();
-        String[] classLine = null;
-        Set<String> taxa = new HashSet<>();
-        List<Site> data = new ArrayList<>();
+        if (CachedAlignment.isCache(f))
+        {
+            return CachedAlignment.fromFile(f, ambig);
+        }
+        SequenceCollector sc = new SequenceCollector(ambig);
 
-	BufferedReader in;
+	LineReader in;
         try
         {
-            in = new BufferedReader(new FileReader(f));
+            in = LineReader.open(f);
         }
         catch (FileNotFoundException e)
         {
             throw new InputException(f.getAbsolutePath(),"Not Applicable","File does not exist",e);
         }
+        catch (IOException e)
+	{
+	    throw new InputException(f.getAbsolutePath(),"Not Applicable","Problem reading file",e);
+	}
         try
         {
-            boolean paramLine = true;
-            String line;
-            int seqLength = -1;
-            while ((line = in.readLine()) != null)
+            while (in.next())
             {
-                if (!line.matches("\\s*"))
+                if (in.isBlank())
                 {
-                    String[] parts = line.split("\\s+");
-                    
-                    if (parts.length == 1)
-                    {
-                        throw new AlignmentException("Sequence " + parts[0], line, "No sequence given",null);
-                    }
-                    
-                    if ((seqLength != -1) && (parts.length - 1 != seqLength))
-                    {
-                        throw new AlignmentException("Sequence " + parts[0], line, "Wrong sequence length",null);
-                    }
-                    else
+                    continue;
+                }
+                byte[] b = in.getBuffer();
+                int i = in.getStart();
+                int end = in.getEnd();
+                while (LineReader.isWhitespace(b[i]))
+                {
+                    i++;
+                }
+                int ns = i;
+                while ((i < end) && !LineReader.isWhitespace(b[i]))
+                {
+                    i++;
+                }
+                String name = in.getString(ns, i);
+
+                //Each following whitespace separated token is a state which
+                //is encoded directly from the bytes read
+                TokenCodes codes = SequenceCollector.isClass(name) ? sc.getClasses() : sc.getStates();
+                CodeRow sequence = new CodeRow();
+                while (i < end)
+                {
+                    while ((i < end) && LineReader.isWhitespace(b[i]))
                     {
-                        seqLength = parts.length - 1;
+                        i++;
                     }
-                    if (!parts[0].equals("*Class*"))
+                    int ts = i;
+                    while ((i < end) && !LineReader.isWhitespace(b[i]))
                     {
-                        seq.put(parts[0], parts);
-                        if (!taxa.contains(parts[0]))
-                        {
-                            taxa.add(parts[0]);
-                        }
-                        else
-                        {
-                            throw new AlignmentException("Taxa names", line, "Repeated taxa name",null);
-                        }
+                        i++;
                     }
-                    else
+                    if (i > ts)
                     {
-                        if (classLine == null)
-                        {
-                            classLine = parts;
-                        }
-                        else
-                        {
-                            throw new AlignmentException("Taxa names", line, "Site class defined more than once",null);
-                        }
+                        sequence.add(codes.code(b, ts, i));
                     }
                 }
-                if (!line.matches("\\s*") && paramLine)
-                {
-                    paramLine = false;
-                }
+                sc.add(name, sequence, in);
             }
             in.close();
             
-            if (taxa.size() < 2)
-            {
-                throw new AlignmentException("Taxa names", "N/A", "One or fewer taxa given",null);
-            }
-            
-            for (int i = 0; i < seqLength; i++)
-            {
-                LinkedHashMap<String,String> col = new LinkedHashMap<>();
-                for (Entry<String,String[]> e: seq.entrySet())
-                {
-                    col.put(e.getKey(),e.getValue()[i+1]);
-                }
-                String c = null;
-                if (classLine != null)
-                {
-                    c = classLine[i+1];
-                }
-                data.add(new Site(col,ambig,c));
-            }
-            return new Alignment(data);
+            return sc.build();
         }
         catch (IOException e)
 	{
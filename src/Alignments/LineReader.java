@@ -0,0 +1,243 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Alignments;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a file a line at a time without creating a string for each line.
+ * Lines are returned as a range of bytes in an internal buffer which is only
+ * valid until the next line is read.  Files compressed with gzip are
+ * decompressed transparently.
+ * @author Daniel Money
+ * @version 2.0
+ */
+final class LineReader implements Closeable
+{
+    /**
+     * Creates a reader from an input stream
+     * @param in The input stream
+     */
+    LineReader(InputStream in)
+    {
+        this.in = in;
+        buffer = new byte[BUFFER_SIZE];
+        pos = 0;
+        limit = 0;
+        eof = false;
+    }
+
+    /**
+     * Opens a file for reading, decompressing it if it is compressed with gzip
+     * @param f The file
+     * @return A reader for the file
+     * @throws FileNotFoundException If the file does not exist
+     * @throws IOException If there is a problem reading the file
+     */
+    static LineReader open(File f) throws FileNotFoundException, IOException
+    {
+        return new LineReader(openStream(f));
+    }
+
+    /**
+     * Opens a file as a stream, decompressing it if it is compressed with gzip
+     * @param f The file
+     * @return A stream of the (decompressed) contents of the file
+     * @throws FileNotFoundException If the file does not exist
+     * @throws IOException If there is a problem reading the file
+     */
+    static InputStream openStream(File f) throws FileNotFoundException, IOException
+    {
+        BufferedInputStream bin = new BufferedInputStream(new FileInputStream(f), BUFFER_SIZE);
+        //Check for the gzip magic number
+        bin.mark(2);
+        int b1 = bin.read();
+        int b2 = bin.read();
+        bin.reset();
+        if ((b1 == 0x1f) && (b2 == 0x8b))
+        {
+            return new GZIPInputStream(bin, BUFFER_SIZE);
+        }
+        return bin;
+    }
+
+    /**
+     * Moves to the next line
+     * @return False if there are no more lines, else true
+     * @throws IOException If there is a problem reading the file
+     */
+    boolean next() throws IOException
+    {
+        pos = end;
+        //Skip the end of line character(s) from the last line
+        if ((pos < limit) && (buffer[pos] == '\n'))
+        {
+            pos++;
+        }
+        int i = pos;
+        while (true)
+        {
+            while (i < limit)
+            {
+                if (buffer[i] == '\n')
+                {
+                    start = pos;
+                    end = i;
+                    lineEnd = (end > start && buffer[end - 1] == '\r') ? end - 1 : end;
+                    return true;
+                }
+                i++;
+            }
+            if (eof)
+            {
+                if (pos < limit)
+                {
+                    start = pos;
+                    end = limit;
+                    lineEnd = (end > start && buffer[end - 1] == '\r') ? end - 1 : end;
+                    return true;
+                }
+                start = end = lineEnd = limit;
+                return false;
+            }
+            //Need more data.  Move the current partial line to the start of
+            //the buffer, growing it if the line fills it.
+            int len = limit - pos;
+            if (len == buffer.length)
+            {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            else if (pos > 0)
+            {
+                System.arraycopy(buffer, pos, buffer, 0, len);
+            }
+            pos = 0;
+            limit = len;
+            i = len;
+            end = 0;
+            int r = in.read(buffer, limit, buffer.length - limit);
+            if (r == -1)
+            {
+                eof = true;
+            }
+            else
+            {
+                limit += r;
+            }
+        }
+    }
+
+    /**
+     * Gets the buffer containing the current line
+     * @return The buffer
+     */
+    byte[] getBuffer()
+    {
+        return buffer;
+    }
+
+    /**
+     * Gets the position of the start of the current line in the buffer
+     * @return The position
+     */
+    int getStart()
+    {
+        return start;
+    }
+
+    /**
+     * Gets the position of the end of the current line in the buffer, that is
+     * the position after the last character excluding end of line characters
+     * @return The position
+     */
+    int getEnd()
+    {
+        return lineEnd;
+    }
+
+    /**
+     * Whether the current line is blank, that is contains only white space
+     * @return Whether the line is blank
+     */
+    boolean isBlank()
+    {
+        for (int i = start; i < lineEnd; i++)
+        {
+            if (!isWhitespace(buffer[i]))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the current line as a string.  Intended for use in error messages.
+     * @return The current line
+     */
+    String getLine()
+    {
+        return getString(start, lineEnd);
+    }
+
+    /**
+     * Gets part of the current line as a string
+     * @param from The start position in the buffer
+     * @param to The end position in the buffer
+     * @return The string
+     */
+    String getString(int from, int to)
+    {
+        return new String(buffer, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    /**
+     * Whether a byte represents white space
+     * @param b The byte
+     * @return Whether it is white space
+     */
+    static boolean isWhitespace(byte b)
+    {
+        return (b == ' ') || (b == '\t') || (b == '\r') || (b == '\n') || (b == '\f') || (b == 0x0B);
+    }
+
+    private final InputStream in;
+    private byte[] buffer;
+    private int pos;
+    private int limit;
+    private int start;
+    private int end;
+    private int lineEnd;
+    private boolean eof;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+}
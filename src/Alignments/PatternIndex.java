@@ -0,0 +1,404 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Alignments;
+
+import Exceptions.UnexpectedError;
+import Utils.Engine;
+import Utils.WorkerThreadFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The distinct patterns (unique sites) in the columns of a {@link ColumnStore}
+ * together with how often each occurs and which pattern each column is.
+ * Patterns are numbered in the order they first occur.
+ * <br><br>
+ * Large numbers of columns are compressed in parallel - each block of columns
+ * is compressed separately and then the blocks are merged in order so the
+ * result is the same as compressing the columns one at a time.  The index can
+ * be extended as columns are added to the store, in which case only the new
+ * columns are compressed.
+ * @author Daniel Money
+ * @version 2.0
+ */
+final class PatternIndex
+{
+    /**
+     * Creates an index which initially includes no columns
+     * @param store The store containing the columns
+     */
+    PatternIndex(ColumnStore store)
+    {
+        this.store = store;
+        table = new int[16];
+        Arrays.fill(table, -1);
+        hashes = new long[16];
+        first = new int[16];
+        counts = new int[16];
+        patterns = 0;
+        columnPattern = new int[0];
+        columns = 0;
+        shared = false;
+    }
+
+    /**
+     * Creates an index from patterns that have already been found, for
+     * example when reading a {@link CachedAlignment}
+     * @param store The store containing the columns
+     * @param first The first column that is each pattern
+     * @param counts How often each pattern occurs
+     * @param columnPattern Which pattern each column is.  Is not copied
+     * unless the index is extended.
+     */
+    PatternIndex(ColumnStore store, int[] first, int[] counts, int[] columnPattern)
+    {
+        this.store = store;
+        this.first = first;
+        this.counts = counts;
+        this.columnPattern = columnPattern;
+        patterns = first.length;
+        columns = columnPattern.length;
+        shared = true;
+        //The hash table is only needed if more columns are added so is
+        //created then
+        table = null;
+        hashes = null;
+    }
+
+    /**
+     * Extends the index to include more columns of the store, using the
+     * default engine's threads if there are enough columns to make it
+     * worthwhile
+     * @param length The number of columns the index should include
+     */
+    synchronized void update(int length)
+    {
+        ExecutorService es = null;
+        int threads = 1;
+        //Don't use the threads if we're already running on one as that
+        //could deadlock
+        if ((length - columns >= PARALLEL_MIN) && !WorkerThreadFactory.inWorker())
+        {
+            Engine engine = Engine.getDefault();
+            threads = engine.getThreads();
+            if (threads > 1)
+            {
+                es = engine.getExecutor();
+            }
+        }
+        update(length, es, threads);
+    }
+
+    /**
+     * Extends the index to include more columns of the store
+     * @param length The number of columns the index should include
+     * @param es The executor to do the compression on.  If null it is done on
+     * the current thread.
+     * @param threads The number of threads used by the executor
+     */
+    synchronized void update(int length, ExecutorService es, int threads)
+    {
+        if (length <= columns)
+        {
+            return;
+        }
+        if (table == null)
+        {
+            hashes = new long[Math.max(16, first.length)];
+            for (int p = 0; p < patterns; p++)
+            {
+                hashes[p] = store.patternHash(first[p]);
+            }
+            first = Arrays.copyOf(first, hashes.length);
+            counts = Arrays.copyOf(counts, hashes.length);
+            table = rehash(hashes, patterns, Integer.highestOneBit(Math.max(8, patterns)) * 4);
+        }
+        if (shared || (length > columnPattern.length))
+        {
+            columnPattern = Arrays.copyOf(columnPattern, Math.max(length, columnPattern.length + (columnPattern.length >> 1)));
+            shared = false;
+        }
+        if (es == null)
+        {
+            for (int c = columns; c < length; c++)
+            {
+                columnPattern[c] = add(store.patternHash(c), c, 1);
+            }
+        }
+        else
+        {
+            parallelUpdate(length, es, threads);
+        }
+        columns = length;
+    }
+
+    private void parallelUpdate(int length, ExecutorService es, int threads)
+    {
+        //Split the new columns into blocks, a few per thread so they balance
+        int size = Math.max(BLOCK_MIN, (length - columns) / (threads * 4) + 1);
+        List<Block> blocks = new ArrayList<>();
+        for (int s = columns; s < length; s += size)
+        {
+            blocks.add(new Block(s, Math.min(length, s + size)));
+        }
+        try
+        {
+            invoke(es, blocks);
+
+            //Merge the blocks in order so patterns stay in the order they
+            //first occur
+            for (Block b: blocks)
+            {
+                b.map = new int[b.patterns];
+                for (int p = 0; p < b.patterns; p++)
+                {
+                    b.map[p] = add(b.hashes[p], b.first[p], b.counts[p]);
+                }
+                b.merge = true;
+            }
+
+            invoke(es, blocks);
+        }
+        catch (InterruptedException ex)
+        {
+            throw new UnexpectedError(ex);
+        }
+    }
+
+    private static void invoke(ExecutorService es, List<Block> blocks) throws InterruptedException
+    {
+        for (Future<Void> f: es.invokeAll(blocks))
+        {
+            try
+            {
+                f.get();
+            }
+            catch (ExecutionException ex)
+            {
+                throw new UnexpectedError(ex.getCause());
+            }
+        }
+    }
+
+    //Adds count occurences of a pattern first seen at the given column and
+    //returns the pattern number
+    private int add(long h, int column, int count)
+    {
+        int mask = table.length - 1;
+        int i = (int) h & mask;
+        int p;
+        while ((p = table[i]) != -1)
+        {
+            if ((hashes[p] == h) && store.samePattern(first[p], column))
+            {
+                counts[p] += count;
+                return p;
+            }
+            i = (i + 1) & mask;
+        }
+        if (patterns == first.length)
+        {
+            hashes = Arrays.copyOf(hashes, patterns * 2);
+            first = Arrays.copyOf(first, patterns * 2);
+            counts = Arrays.copyOf(counts, patterns * 2);
+        }
+        p = patterns++;
+        hashes[p] = h;
+        first[p] = column;
+        counts[p] = count;
+        table[i] = p;
+        //Keep the table at most half full
+        if (patterns * 2 > table.length)
+        {
+            table = rehash(hashes, patterns, table.length * 2);
+        }
+        return p;
+    }
+
+    private static int[] rehash(long[] hashes, int patterns, int size)
+    {
+        int[] t = new int[size];
+        Arrays.fill(t, -1);
+        int mask = size - 1;
+        for (int q = 0; q < patterns; q++)
+        {
+            int j = (int) hashes[q] & mask;
+            while (t[j] != -1)
+            {
+                j = (j + 1) & mask;
+            }
+            t[j] = q;
+        }
+        return t;
+    }
+
+    /**
+     * Gets the number of distinct patterns
+     * @return The number of patterns
+     */
+    synchronized int getNumberPatterns()
+    {
+        return patterns;
+    }
+
+    /**
+     * Gets the first column that is a pattern
+     * @param p The pattern
+     * @return The column
+     */
+    synchronized int getFirst(int p)
+    {
+        return first[p];
+    }
+
+    /**
+     * Gets how often a pattern occurs
+     * @param p The pattern
+     * @return The number of columns that are this pattern
+     */
+    synchronized int getCount(int p)
+    {
+        return counts[p];
+    }
+
+    /**
+     * Gets which pattern a column is
+     * @param column The column
+     * @return The pattern
+     */
+    synchronized int getPattern(int column)
+    {
+        return columnPattern[column];
+    }
+
+    /**
+     * Gets the number of columns included in the index
+     * @return The number of columns
+     */
+    synchronized int getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * Gets which pattern each column is
+     * @return Array of the pattern of each column included in the index
+     */
+    synchronized int[] getPatterns()
+    {
+        return Arrays.copyOf(columnPattern, columns);
+    }
+
+    /**
+     * Compresses a block of columns on its own and then, once the blocks have
+     * been merged, converts the block's pattern numbers to the merged ones
+     */
+    private class Block implements Callable<Void>
+    {
+        private Block(int start, int end)
+        {
+            this.start = start;
+            this.end = end;
+            merge = false;
+        }
+
+        public Void call()
+        {
+            if (merge)
+            {
+                for (int c = start; c < end; c++)
+                {
+                    columnPattern[c] = map[columnPattern[c]];
+                }
+                return null;
+            }
+            int[] t = new int[16];
+            Arrays.fill(t, -1);
+            hashes = new long[16];
+            first = new int[16];
+            counts = new int[16];
+            patterns = 0;
+            for (int c = start; c < end; c++)
+            {
+                long h = store.patternHash(c);
+                int mask = t.length - 1;
+                int i = (int) h & mask;
+                int p;
+                while ((p = t[i]) != -1)
+                {
+                    if ((hashes[p] == h) && store.samePattern(first[p], c))
+                    {
+                        break;
+                    }
+                    i = (i + 1) & mask;
+                }
+                if (p != -1)
+                {
+                    counts[p]++;
+                }
+                else
+                {
+                    if (patterns == first.length)
+                    {
+                        hashes = Arrays.copyOf(hashes, patterns * 2);
+                        first = Arrays.copyOf(first, patterns * 2);
+                        counts = Arrays.copyOf(counts, patterns * 2);
+                    }
+                    p = patterns++;
+                    hashes[p] = h;
+                    first[p] = c;
+                    counts[p] = 1;
+                    t[i] = p;
+                    if (patterns * 2 > t.length)
+                    {
+                        t = rehash(hashes, patterns, t.length * 2);
+                    }
+                }
+                columnPattern[c] = p;
+            }
+            return null;
+        }
+
+        private final int start;
+        private final int end;
+        private boolean merge;
+        private long[] hashes;
+        private int[] first;
+        private int[] counts;
+        private int patterns;
+        private int[] map;
+    }
+
+    private final ColumnStore store;
+    private int[] table;
+    private long[] hashes;
+    private int[] first;
+    private int[] counts;
+    private int patterns;
+    private int[] columnPattern;
+    private int columns;
+    private boolean shared;
+
+    private static final int PARALLEL_MIN = 1 << 16;
+    private static final int BLOCK_MIN = 1 << 12;
+}
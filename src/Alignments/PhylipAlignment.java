@@ -21,17 +21,10 @@ import Exceptions.OutputException;
 import Exceptions.UnexpectedError;
 import java.io.File;
 import java.util.HashMap;
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map.Entry;
 import java.util.Set;
 
 /**
@@ -54,7 +47,8 @@ public class PhylipAlignment
      * considered the taxa's name.  Anything after the first whitespace is the sequence.
      * Whitespace in the sequence is ignored.  A taxa name of <code>*class*</code> is
      * assumed not to be a taxa but rather gives the class of each site (which can be any
-     * single character).
+     * single character).  The file may be compressed with gzip
+     * or may be a {@link CachedAlignment} cache file.
      * @param f The input file
      * @return The alignment created from the file
      * @throws InputException Thrown if there is a problem reading the file
@@ -78,98 +72,70 @@ public class PhylipAlignment
      */
     public static Alignment fromFile(File f, Ambiguous ambig) throws InputException, AlignmentException
     {
-	// Create the hashmap to store the sequences (seq name =>  sequence)
-        LinkedHashMap<String,String> seq = new LinkedHashMap<>();
-        String classLine = null;
-        Set<String> taxa = new HashSet<>();
-        List<Site> data = new ArrayList<>();
+        if (CachedAlignment.isCache(f))
+        {
+            return CachedAlignment.fromFile(f, ambig);
+        }
+        SequenceCollector sc = new SequenceCollector(ambig);
 
-	BufferedReader in;
+	LineReader in;
         try
         {
-            in = new BufferedReader(new FileReader(f));
+            in = LineReader.open(f);
         }
         catch (FileNotFoundException e)
         {
             throw new InputException(f.getAbsolutePath(),"Not Applicable","File does not exist",e);
         }
+        catch (IOException e)
+	{
+	    throw new InputException(f.getAbsolutePath(),"Not Applicable","Problem reading file",e);
+	}
         try
         {
             boolean paramLine = true;
-            String line;
-            int seqLength = -1;
-            while ((line = in.readLine()) != null)
+            while (in.next())
             {
-                //if (!line.equals("") && !paramLine)
-                if (!line.matches("\\s*") && !paramLine)
+                if (in.isBlank())
                 {
-                    String[] parts = line.split("\\s+", 2);
-                    
-                    if (parts.length == 1)
-                    {
-                        throw new AlignmentException("Sequence " + parts[0], line, "No sequence given",null);
-                    }
-                    
-                    String sequence = parts[1].replaceAll("\\s+", "");
-                    if ((seqLength != -1) && (sequence.length() != seqLength))
-                    {
-                        throw new AlignmentException("Sequence " + parts[0], line, "Wrong sequence length",null);
-                    }
-                    else
-                    {
-                        seqLength = sequence.length();
-                    }
-                    if (!parts[0].equals("*Class*"))
-                    {
-                        seq.put(parts[0], sequence);
-                        if (!taxa.contains(parts[0]))
-                        {
-                            taxa.add(parts[0]);
-                        }
-                        else
-                        {
-                            throw new AlignmentException("Taxa names", line, "Repeated taxa name",null);
-                        }
-                    }
-                    else
-                    {
-                        if (classLine == null)
-                        {
-                            classLine = parts[1];
-                        }
-                        else
-                        {
-                            throw new AlignmentException("Taxa names", line, "Site class defined more than once",null);
-                        }
-                    }
+                    continue;
                 }
-                if (!line.matches("\\s*") && paramLine)
+                if (paramLine)
                 {
                     paramLine = false;
+                    continue;
                 }
-            }
-            in.close();
-            
-            if (taxa.size() < 2)
-            {
-                throw new AlignmentException("Taxa names", "N/A", "One or fewer taxa given",null);
-            }
-            
-            for (int i = 0; i < seqLength; i++)
-            {
-                LinkedHashMap<String,String> col = new LinkedHashMap<>();
-                for (Entry<String,String> e: seq.entrySet())
+                byte[] b = in.getBuffer();
+                int i = in.getStart();
+                int end = in.getEnd();
+                //The name is everything up to the first whitespace
+                while (LineReader.isWhitespace(b[i]))
                 {
-                    col.put(e.getKey(),e.getValue().substring(i, i+1));
+                    i++;
                 }
-                String c = null;
-                if (classLine != null)
+                int ns = i;
+                while ((i < end) && !LineReader.isWhitespace(b[i]))
                 {
-                    c = classLine.substring(i, i+1);
+                    i++;
                 }
-                data.add(new Site(col,ambig,c));
+                String name = in.getString(ns, i);
+
+                //The rest of the line, ignoring whitespace, is the sequence
+                //which is encoded directly from the bytes read
+                TokenCodes codes = SequenceCollector.isClass(name) ? sc.getClasses() : sc.getStates();
+                CodeRow sequence = new CodeRow();
+                for (; i < end; i++)
+                {
+                    if (!LineReader.isWhitespace(b[i]))
+                    {
+                        sequence.add(codes.code(b[i]));
+                    }
+                }
+                sc.add(name, sequence, in);
             }
-            return new Alignment(data);
+            in.close();
+            
+            return sc.build();
         }
         catch (IOException e)
 	{
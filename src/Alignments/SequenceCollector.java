@@ -0,0 +1,169 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Alignments;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the encoded sequences read by the sequence alignment parsers,
+ * checks them and turns them into an alignment.  Used by
+ * {@link FastaAlignment}, {@link PhylipAlignment} and {@link GenericAlignment}.
+ * @author Daniel Money
+ * @version 2.0
+ */
+final class SequenceCollector
+{
+    /**
+     * Default constructor
+     * @param ambig Description of the ambiguous data
+     */
+    SequenceCollector(Ambiguous ambig)
+    {
+        states = new TokenCodes(new Alphabet(ambig));
+        classes = new TokenCodes(new Alphabet(new Ambiguous()));
+        names = new ArrayList<>();
+        rows = new ArrayList<>();
+        taxa = new HashSet<>();
+        classRow = null;
+        seqLength = -1;
+    }
+
+    /**
+     * Gets the codes to use for states
+     * @return The codes
+     */
+    TokenCodes getStates()
+    {
+        return states;
+    }
+
+    /**
+     * Gets the codes to use for the site classes
+     * @return The codes
+     */
+    TokenCodes getClasses()
+    {
+        return classes;
+    }
+
+    /**
+     * Whether a name is the special name used to give the class of each site
+     * @param name The name
+     * @return Whether it is the class name
+     */
+    static boolean isClass(String name)
+    {
+        return name.equals("*Class*");
+    }
+
+    /**
+     * Adds a sequence.  If the name is the special class name (see
+     * {@link #isClass(java.lang.String)}) the row should have been encoded
+     * using {@link #getClasses()}, else using {@link #getStates()}.
+     * @param name The name of the sequence
+     * @param row The encoded sequence
+     * @param line The reader positioned at the line the sequence was read
+     * from, used to report the text if there is a problem.  If null the text
+     * is reported as not applicable.
+     * @throws AlignmentException If the sequence is empty, the wrong length,
+     * repeats a name or is a second class sequence
+     */
+    void add(String name, CodeRow row, LineReader line) throws AlignmentException
+    {
+        if (row.length() == 0)
+        {
+            throw new AlignmentException("Sequence " + name, text(line), "No sequence given",null);
+        }
+        if ((seqLength != -1) && (row.length() != seqLength))
+        {
+            throw new AlignmentException("Sequence " + name, text(line), "Wrong sequence length",null);
+        }
+        seqLength = row.length();
+        if (!isClass(name))
+        {
+            if (!taxa.add(name))
+            {
+                throw new AlignmentException("Taxa names", text(line), "Repeated taxa name",null);
+            }
+            names.add(name);
+            rows.add(row);
+        }
+        else
+        {
+            if (classRow == null)
+            {
+                classRow = row;
+            }
+            else
+            {
+                throw new AlignmentException("Taxa names", text(line), "Site class defined more than once",null);
+            }
+        }
+    }
+
+    private static String text(LineReader line)
+    {
+        if (line == null)
+        {
+            return "N/A";
+        }
+        return line.getLine();
+    }
+
+    /**
+     * Creates the alignment from the sequences
+     * @return The alignment
+     * @throws AlignmentException If fewer than two sequences have been added
+     */
+    Alignment build() throws AlignmentException
+    {
+        if (names.size() < 2)
+        {
+            throw new AlignmentException("Taxa names", "N/A", "One or fewer taxa given",null);
+        }
+        //Turn the rows into columns
+        ColumnStore store = new ColumnStore(names, states.getAlphabet());
+        CodeRow[] r = rows.toArray(new CodeRow[rows.size()]);
+        int[] col = new int[r.length];
+        for (int i = 0; i < seqLength; i++)
+        {
+            for (int j = 0; j < r.length; j++)
+            {
+                col[j] = r[j].get(i);
+            }
+            String c = null;
+            if (classRow != null)
+            {
+                c = classes.getAlphabet().decode(classRow.get(i));
+            }
+            store.addColumn(col, c, null);
+        }
+        return new Alignment(store);
+    }
+
+    private final TokenCodes states;
+    private final TokenCodes classes;
+    private final List<String> names;
+    private final List<CodeRow> rows;
+    private final Set<String> taxa;
+    private CodeRow classRow;
+    private int seqLength;
+}
@@ -21,17 +21,21 @@ import Likelihood.SiteLikelihood.LikelihoodException;
 import Likelihood.SiteLikelihood.NodeLikelihood;
 import Trees.Tree;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 /**
  * Represents a "site" in an "alignment".  Both terms used generously.
  * When comparing sites the site ID is ignored so as to allowed counting
  * of unique sites for caclulation purposes.
+ * <br><br>
+ * A site is a lightweight view of a column in the compact storage used by
+ * {@link Alignment}.  Sites created directly have their own single column
+ * storage.
  * @author Daniel Money
  * @version 2.0
  */
@@ -126,10 +130,7 @@ public class Site implements Serializable
      */
     public Site(String id, LinkedHashMap<String,String> sites, Ambiguous ambig, String siteClass)
     {
-        this.sites = sites;
-        this.ambig = ambig;
-        this.siteClass = siteClass;
-        this.id = id;
+        this(ColumnStore.single(sites, ambig, siteClass, id), 0);
     }
     
     /**
@@ -138,23 +139,36 @@ public class Site implements Serializable
      */
     public Site(Site s)
     {
-        this.sites = s.sites;
-        this.ambig = s.ambig;
-        this.siteClass = s.siteClass;
-        this.id = s.id;
+        this(s.store, s.column);
+    }
+
+    /**
+     * Creates a site that is a view of a column in a store
+     * @param store The store
+     * @param column The column
+     */
+    Site(ColumnStore store, int column)
+    {
+        this.store = store;
+        this.column = column;
     }
     
     /**
      * Gets the possible characters for a given taxa.  This returns a set as it
      * takes into account ambiguous data.  For example if N is defined to be
      * A, C, T or G then this function will return a set containing A, C, T and
-     * G if the raw data contains a N
+     * G if the raw data contains a N.  The returned set should not be modified.
      * @param taxa Taxa to return the character for
      * @return The character for the given taxa
      */
     public Set<String> getCharacter(String taxa)
     {
-        return ambig.getPossible(sites.get(taxa));
+        int t = store.getTaxonIndex(taxa);
+        if (t == -1)
+        {
+            return store.getAlphabet().getAmbiguous().getPossible(null);
+        }
+        return store.getAlphabet().getPossible(store.getCode(column, t));
     }
     
     /**
@@ -166,14 +180,14 @@ public class Site implements Serializable
      */
     public String getRawCharacter(String taxa) throws AlignmentException
     {
-        String rc = sites.get(taxa);
-        if (rc == null)
+        int t = store.getTaxonIndex(taxa);
+        if (t == -1)
         {
             throw new AlignmentException("No such taxa: " + taxa);            
         }
         else
         {
-            return rc;
+            return store.getState(column, t);
         }
     }
     
@@ -183,16 +197,16 @@ public class Site implements Serializable
      */
     public int getNum()
     {
-        return sites.size();
+        return store.getNumberTaxa();
     }
     
     /**
      * Get the set of taxa
-     * @return Set containing taxa names
+     * @return Set containing taxa names.  Can not be modified.
      */
     public Set<String> getTaxa()
     {
-        return sites.keySet();
+        return store.getTaxa();
     }
     
     /**
@@ -201,7 +215,7 @@ public class Site implements Serializable
      */
     public String getSiteClass()
     {
-        return siteClass;
+        return store.getSiteClass(column);
     }
     
     public boolean equals(Object o)
@@ -212,17 +226,16 @@ public class Site implements Serializable
         }
         
         Site c = (Site) o;
-        boolean sc = false;
-        if ((siteClass == null) && (c.siteClass == null))
-        {
-            sc = true;
-        }
-        if ((siteClass != null) && (c.siteClass != null))
+        if ((store == c.store) && (column == c.column))
         {
-            sc = siteClass.equals(c.siteClass);
+            return true;
         }
+
+        String sc = getSiteClass();
+        String csc = c.getSiteClass();
+        boolean scm = (sc == null) ? (csc == null) : sc.equals(csc);
         
-        return (sc && sites.equals(c.sites));
+        return (scm && store.sameStates(column, c.store, c.column));
     }
     
     /**
@@ -231,20 +244,28 @@ public class Site implements Serializable
      */
     public String getID()
     {
-        return id;
+        return store.getID(column);
     }
 
     public int hashCode()
     {
-        return sites.hashCode();
+        //Same as the hash of a map from taxa to state.  Cached as sites are
+        //used as keys in maps.
+        int h = hash;
+        if (h == 0)
+        {
+            h = store.contentHash(column);
+            hash = h;
+        }
+        return h;
     }
     
     public String toString()
     {
         StringBuilder ret = new StringBuilder();
-        for (Entry<String,String> s: sites.entrySet())
+        for (int i = 0; i < store.getNumberTaxa(); i++)
         {
-            ret.append(s.getValue());
+            ret.append(store.getState(column, i));
             ret.append(" ");
         }
         ret.delete(ret.length()-1, ret.length());
@@ -289,20 +310,7 @@ public class Site implements Serializable
      */
     public Site recode(Map<String,String> recode)
     {
-        LinkedHashMap<String,String> ns = new LinkedHashMap<>();
-        for (Entry<String,String> s: sites.entrySet())
-        {
-            if (recode.containsKey(s.getValue()))
-            {
-                ns.put(s.getKey(),recode.get(s.getValue()));
-            }
-            else
-            {
-                ns.put(s.getKey(),s.getValue());
-            }
-        }
-        //return new Site(ns,ambig,siteClass);
-        return new Site(ns,siteClass);
+        return recode(recode, new Ambiguous());
     }
 
     /**
@@ -315,19 +323,8 @@ public class Site implements Serializable
      */    
     public Site recode(Map<String,String> recode, Ambiguous ambig)
     {
-        LinkedHashMap<String,String> ns = new LinkedHashMap<>();
-        for (Entry<String,String> s: sites.entrySet())
-        {
-            if (recode.containsKey(s.getValue()))
-            {
-                ns.put(s.getKey(),recode.get(s.getValue()));
-            }
-            else
-            {
-                ns.put(s.getKey(),s.getValue());
-            }
-        }
-        return new Site(ns,ambig,siteClass);
+        //A view of the same column in the same store
+        return new Site(store.view(null, null, new Alphabet(ambig), new HashMap<>(recode)), column);
     }
     
     /**
@@ -338,15 +335,16 @@ public class Site implements Serializable
      */    
     public Site limitToTaxa(Collection<String> limit)
     {
-        LinkedHashMap<String,String> ns = new LinkedHashMap<>();
-        for (Entry<String,String> s: sites.entrySet())
+        int[] taxa = new int[store.getNumberTaxa()];
+        int n = 0;
+        for (int i = 0; i < store.getNumberTaxa(); i++)
         {
-            if (limit.contains(s.getKey()))
+            if (limit.contains(store.getTaxon(i)))
             {
-                ns.put(s.getKey(), s.getValue());
+                taxa[n++] = i;
             }
         }
-        return new Site(ns,ambig,siteClass);        
+        return new Site(store.view(null, Arrays.copyOf(taxa, n), store.getAlphabet(), null), column);
     }
     
     /**
@@ -355,13 +353,30 @@ public class Site implements Serializable
      */
     public Ambiguous getAmbiguous()
     {
-        return ambig;
+        return store.getAlphabet().getAmbiguous();
+    }
+
+    /**
+     * Gets the store this site is a view of
+     * @return The store
+     */
+    ColumnStore getStore()
+    {
+        return store;
+    }
+
+    /**
+     * Gets the column in the store this site is a view of
+     * @return The column
+     */
+    int getColumn()
+    {
+        return column;
     }
     
-    private static final long serialVersionUID = 2;
+    private static final long serialVersionUID = 3;
     
-    private LinkedHashMap<String,String> sites;
-    private Ambiguous ambig;
-    private String siteClass;
-    private String id;
+    private final ColumnStore store;
+    private final int column;
+    private transient int hash;
 }
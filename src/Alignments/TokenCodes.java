@@ -0,0 +1,159 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Alignments;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Looks up the code of a state directly from the bytes read from a file so
+ * that a string only needs to be created the first time each state is seen.
+ * Single byte states are looked up in a table, longer states in a hash table.
+ * @author Daniel Money
+ * @version 2.0
+ */
+final class TokenCodes
+{
+    /**
+     * Default constructor
+     * @param alphabet The alphabet used to encode states
+     */
+    TokenCodes(Alphabet alphabet)
+    {
+        this.alphabet = alphabet;
+        single = new int[256];
+        Arrays.fill(single, -1);
+        keys = new byte[16][];
+        values = new int[16];
+        size = 0;
+    }
+
+    /**
+     * Gets the code of a state
+     * @param b Buffer containing the state
+     * @param from Start of the state in the buffer
+     * @param to End of the state in the buffer (exclusive)
+     * @return The code
+     */
+    int code(byte[] b, int from, int to)
+    {
+        if (to - from == 1)
+        {
+            return code(b[from]);
+        }
+        int h = 0x811c9dc5;
+        for (int i = from; i < to; i++)
+        {
+            h = (h ^ b[i]) * 0x01000193;
+        }
+        int mask = keys.length - 1;
+        int i = h & mask;
+        while (keys[i] != null)
+        {
+            if (same(keys[i], b, from, to))
+            {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        byte[] key = Arrays.copyOfRange(b, from, to);
+        int c = alphabet.encode(new String(key, StandardCharsets.UTF_8));
+        keys[i] = key;
+        values[i] = c;
+        size++;
+        if (size * 2 > keys.length)
+        {
+            rehash();
+        }
+        return c;
+    }
+
+    /**
+     * Gets the code of a single byte state
+     * @param b The state
+     * @return The code
+     */
+    int code(byte b)
+    {
+        int c = single[b & 0xFF];
+        if (c == -1)
+        {
+            c = alphabet.encode(new String(new byte[]{b}, StandardCharsets.ISO_8859_1));
+            single[b & 0xFF] = c;
+        }
+        return c;
+    }
+
+    /**
+     * Gets the alphabet used to encode states
+     * @return The alphabet
+     */
+    Alphabet getAlphabet()
+    {
+        return alphabet;
+    }
+
+    private static boolean same(byte[] key, byte[] b, int from, int to)
+    {
+        if (key.length != to - from)
+        {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++)
+        {
+            if (key[i] != b[from + i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash()
+    {
+        byte[][] ok = keys;
+        int[] ov = values;
+        keys = new byte[ok.length * 2][];
+        values = new int[ok.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < ok.length; j++)
+        {
+            if (ok[j] != null)
+            {
+                int h = 0x811c9dc5;
+                for (byte x: ok[j])
+                {
+                    h = (h ^ x) * 0x01000193;
+                }
+                int i = h & mask;
+                while (keys[i] != null)
+                {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = ok[j];
+                values[i] = ov[j];
+            }
+        }
+    }
+
+    private final Alphabet alphabet;
+    private final int[] single;
+    private byte[][] keys;
+    private int[] values;
+    private int size;
+}
@@ -30,6 +30,7 @@ import Models.RateCategory.RateException;
 import Parameters.Parameters.ParameterException;
 import Trees.Tree;
 import Trees.TreeException;
+import Utils.Engine;
 import java.util.Map;
 
 /**
@@ -61,6 +62,21 @@ public abstract class AncestralJoint
     public abstract Alignment calculate(Parameters params) throws RateException, ModelException, AncestralException, TreeException, ParameterException, AlignmentException, LikelihoodException;
 
     abstract Site calculateSite(Site s, Probabilities P) throws AncestralException, TreeException, LikelihoodException, RateException;
+
+    /**
+     * Sets the engine used for calculations.  By default the default engine
+     * ({@link Engine#getDefault()}) is used.
+     * @param engine The engine to use
+     */
+    public void setEngine(Engine engine)
+    {
+        this.engine = engine;
+    }
+
+    /**
+     * The engine used for calculations
+     */
+    protected Engine engine = Engine.getDefault();
     
     /**
      * Returns an object of this class that can be used for joint reconstruction.
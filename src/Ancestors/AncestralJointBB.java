@@ -209,7 +209,7 @@ public class AncestralJointBB extends AncestralJoint
         Map<String,Probabilities> P = new HashMap<>();
         for (Entry<String,Model> e: m.entrySet())
         {
-            P.put(e.getKey(),new Probabilities(e.getValue(),t.get(e.getKey()),p));
+            P.put(e.getKey(),new Probabilities(e.getValue().snapshot(p, engine),t.get(e.getKey()),p));
         }
 
         //Get unqiue sites in the alignment and calculator a reconstuction for each
@@ -250,7 +250,7 @@ public class AncestralJointBB extends AncestralJoint
         
         //Calculate the site likelihood
         //SiteLikelihood sl = (new SiteCalculator(t,P,assignment.getInitialNodeLikelihoods(t, ca, P.getMap()))).calculate();
-        SiteLikelihood sl = calculateSite(t.get(ca.getSiteClass()),P,assignment.getInitialNodeLikelihoods(t.get(ca.getSiteClass()), ca, P.getMap()));
+        SiteLikelihood sl = calculateSite(t.get(ca.getSiteClass()),P,assignment.getInitialNodeLikelihoods(t.get(ca.getSiteClass()), ca, P.getMap(), engine));
 	RateCategory br = null;
         //And then use this to find the rate category that contributes the most likelihood
 	Real brs = null;
@@ -322,7 +322,7 @@ public class AncestralJointBB extends AncestralJoint
 	{
             //Calculate the likelihood of that reconstruction
             //Real s = (new SiteCalculator(t,P,assign.getInitialNodeLikelihoods(t, site, P.getMap()))).calculate().getLikelihood();
-            Real s = calculateSite(t.get(site.getSiteClass()),P,assign.getInitialNodeLikelihoods(t.get(site.getSiteClass()), site, P.getMap())).getLikelihood();
+            Real s = calculateSite(t.get(site.getSiteClass()),P,assign.getInitialNodeLikelihoods(t.get(site.getSiteClass()), site, P.getMap(), engine)).getLikelihood();
             //If it's better than the bext reconstruction we've encountered so far
             //update the best and return it
 	    if ((best.score == null) || s.greaterThan(best.score))
@@ -343,7 +343,7 @@ public class AncestralJointBB extends AncestralJoint
         //all possible states at unassigned nodes using the normal (quick) likelihood
         //calculation method.
         //Real bound = (new SiteCalculator(t,P,assign.getInitialNodeLikelihoods(t, site, P.getMap()))).calculate().getLikelihood();
-        Real bound = calculateSite(t.get(site.getSiteClass()),P,assign.getInitialNodeLikelihoods(t.get(site.getSiteClass()), site, P.getMap())).getLikelihood();
+        Real bound = calculateSite(t.get(site.getSiteClass()),P,assign.getInitialNodeLikelihoods(t.get(site.getSiteClass()), site, P.getMap(), engine)).getLikelihood();
 
 
         //If the bounded value is less the best econstruction we've aleady found
@@ -492,7 +492,7 @@ public class AncestralJointBB extends AncestralJoint
             //category multiplied by the probility of being in that category
         }
         //return an object containg the results for that site
-        return new SiteLikelihood(rateLikelihoods, tp);
+        return new SiteLikelihood(rateLikelihoods, tp, engine.getRealType());
     }
 
     private class Best
@@ -36,6 +36,7 @@ import Parameters.Parameters.ParameterException;
 import Trees.Branch;
 import Trees.Tree;
 import Trees.TreeException;
+import Utils.Engine;
 import Utils.SetUtils;
 import Utils.SetUtils.SetHasMultipleElementsException;
 import java.util.ArrayList;
@@ -174,7 +175,7 @@ public class AncestralJointDP extends AncestralJoint
         Map<String,Probabilities> P = new HashMap<>();
         for (Entry<String,Model> e: m.entrySet())
         {
-            P.put(e.getKey(),new Probabilities(e.getValue(),t.get(e.getKey()),params));
+            P.put(e.getKey(),new Probabilities(e.getValue().snapshot(params, engine),t.get(e.getKey()),params));
         }
  
         //Get unqiue sites in the alignment and calculator a reconstuction for each
@@ -196,6 +197,7 @@ public class AncestralJointDP extends AncestralJoint
 	
     Site calculateSite(Site s, Probabilities P) throws AncestralException, TreeException, RateException
     {
+        RealType type = engine.getAncestralRealType();
         HashMap<String,Map<String,Real>> L = new HashMap<>();
 	HashMap<String,Map<String,String>> C = new HashMap<>();
 	
@@ -301,17 +303,16 @@ public class AncestralJointDP extends AncestralJoint
     
     /**
      * Sets the real type to be used during calculations, either {@link SmallDouble}
-     * or {@link StandardDouble}
+     * or {@link StandardDouble}.  Changes the setting on the default engine,
+     * see {@link Engine#setAncestralRealType(Maths.RealFactory.RealType)}.
      * @param type The double type to use
      * @see Likelihood.SiteLikelihood#realType(Maths.RealFactory.RealType) 
      */
     public static void realType(RealType type)
     {
-        AncestralJointDP.type = type;
+        Engine.getDefault().setAncestralRealType(type);
     }
     
-    private static RealType type = RealType.STANDARD_DOUBLE;
-    
     /**
      * Thrown if the model has multiple rate categories as this methodology
      * doesn't work on models with multiple rate categories.
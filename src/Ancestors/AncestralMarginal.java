@@ -34,6 +34,7 @@ import Parameters.Parameters.ParameterException;
 import Trees.Branch;
 import Trees.Tree;
 import Trees.TreeException;
+import Utils.Engine;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -179,7 +180,7 @@ public class AncestralMarginal
         Map<String,Probabilities> P = new HashMap<>();
         for (Entry<String,Model> e: m.entrySet())
         {
-            P.put(e.getKey(), new Probabilities(e.getValue(),t.get(e.getKey()),params));
+            P.put(e.getKey(), new Probabilities(e.getValue().snapshot(params, engine),t.get(e.getKey()),params));
         }
 	
         //Get unqiue sites in the alignment and calculator a reconstuction for each
@@ -194,6 +195,16 @@ public class AncestralMarginal
 	return new Result(ret,a);
     }
 
+    /**
+     * Sets the engine used for calculations.  By default the default engine
+     * ({@link Engine#getDefault()}) is used.
+     * @param engine The engine to use
+     */
+    public void setEngine(Engine engine)
+    {
+        this.engine = engine;
+    }
+
     /**
      * Calculates a reconstruction for a single site.  Is more low level than
      * the {@link #calculate(Parameters.Parameters)} as it ignores the alignment
@@ -251,12 +262,12 @@ public class AncestralMarginal
             Map<String,NodeLikelihood> l = new HashMap<>();
             for (String n: t.get(s.getSiteClass()).getLeaves())
             {
-                l.put(n, new NodeLikelihood(P.getMap(), s.getCharacter(n)));
+                l.put(n, new NodeLikelihood(P.getMap(), s.getCharacter(n), engine));
             }
 
             for (String n: t.get(s.getSiteClass()).getInternal())
             {
-                l.put(n, new NodeLikelihood(P.getMap()));
+                l.put(n, new NodeLikelihood(P.getMap(), engine));
             }
 
             //Traverse the normal branches in the same manner as for a normal
@@ -331,11 +342,11 @@ public class AncestralMarginal
             {
                 if (sl.get(st) == null)
                 {
-                    sl.put(st, rr.get(r).getLikelihood(st).multiply(m.get(s.getSiteClass()).getFreq(r)));
+                    sl.put(st, rr.get(r).getLikelihood(st).multiply(P.getRateP(r)));
                 }
                 else
                 {
-                    sl.put(st, sl.get(st).add(rr.get(r).getLikelihood(st).multiply(m.get(s.getSiteClass()).getFreq(r))));
+                    sl.put(st, sl.get(st).add(rr.get(r).getLikelihood(st).multiply(P.getRateP(r))));
                 }
             }
             if (total == null)
@@ -362,6 +373,7 @@ public class AncestralMarginal
     private Alignment a;
     private Map<String,Model> m;
     private Map<String,Tree> t;
+    private Engine engine = Engine.getDefault();
 
     /**
      * Returns an object of this class that can be used for marginal 
@@ -21,6 +21,7 @@ import Alignments.Site;
 import Likelihood.SiteLikelihood.LikelihoodException;
 import Likelihood.SiteLikelihood.NodeLikelihood;
 import Trees.Tree;
+import Utils.Engine;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -93,11 +94,27 @@ public class Assignment
      * @throws Likelihood.SiteLikelihood.LikelihoodException Thrown if all states are initialised to a zero likelihood 
      */
     public Map<String, NodeLikelihood> getInitialNodeLikelihoods(Tree t,  Site s, Map<String,Integer> map) throws LikelihoodException    
+    {
+        return getInitialNodeLikelihoods(t, s, map, Engine.getDefault());
+    }
+
+    /**
+     * Creates initial node likelihoods using this assignment.  Internal nodes
+     * with an assignment are set so only that state is allowed.
+     * @param t The tree to create the node likelihood for.
+     * @param s The site being reconstructed
+     * @param map A map from state to position in array
+     * @param engine The engine whose real type should be used
+     * @return An Map of NodeLikelihoods which can be used to initialise
+     * likelihood calculations
+     * @throws Likelihood.SiteLikelihood.LikelihoodException Thrown if all states are initialised to a zero likelihood 
+     */
+    public Map<String, NodeLikelihood> getInitialNodeLikelihoods(Tree t,  Site s, Map<String,Integer> map, Engine engine) throws LikelihoodException    
     {        
         Map<String, NodeLikelihood> nodeLikelihoods = new HashMap<>(t.getNumberBranches() + 1);
         for (String l: t.getLeaves())
         {
-            nodeLikelihoods.put(l, new NodeLikelihood(map, s.getCharacter(l)));
+            nodeLikelihoods.put(l, new NodeLikelihood(map, s.getCharacter(l), engine));
         }
 
         //And now internal nodes
@@ -105,11 +122,11 @@ public class Assignment
         {
             if (getAssignment(i) != null)
             {
-                nodeLikelihoods.put(i, new NodeLikelihood(map, getAssignment(i)));
+                nodeLikelihoods.put(i, new NodeLikelihood(map, getAssignment(i), engine));
             }
             else
             {
-                nodeLikelihoods.put(i, new NodeLikelihood(map));
+                nodeLikelihoods.put(i, new NodeLikelihood(map, engine));
             }
             
         }
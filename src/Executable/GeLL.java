@@ -19,6 +19,7 @@ package Executable;
 
 import Alignments.Alignment;
 import Alignments.Ambiguous;
+import Alignments.CachedAlignment;
 import Alignments.DuplicationAlignment;
 import Alignments.GenericAlignment;
 import Alignments.PhylipAlignment;
@@ -113,9 +114,25 @@ public class GeLL
                 // LIKELIHOOD
                 if (settings.hasGroup("Likelihood"))
                 {
-                    a = getAlignment(settings.getSetting("Likelihood", "AlignmentType"),
-                            settings.getSetting("Likelihood", "Alignment"),
-                            settings.getSetting("Likelihood","Ambig"));
+                    String cache = settings.getSetting("Likelihood", "AlignmentCache");
+                    String type = settings.getSetting("Likelihood", "AlignmentType");
+                    String file = settings.getSetting("Likelihood", "Alignment");
+                    //Only use the cache if it was made from the alignment
+                    //as it is now
+                    if ((cache != null) && CachedAlignment.isCurrent(new File(cache), new File(file), type))
+                    {
+                        a = getAlignment("Cached", cache,
+                                settings.getSetting("Likelihood","Ambig"));
+                    }
+                    else
+                    {
+                        a = getAlignment(type, file,
+                                settings.getSetting("Likelihood","Ambig"));
+                        if (cache != null)
+                        {
+                            CachedAlignment.writeFile(a, new File(cache), new File(file), type);
+                        }
+                    }
 
                     if (settings.getSetting("Likelihood", "Missing") != null)
                     {
@@ -261,6 +278,7 @@ public class GeLL
             ps.addOptionalSetting("Likelihood", "CheckpointFreq", null);
             ps.addOptionalSetting("Likelihood", "Restart", null);
             ps.addOptionalSetting("Likelihood", "Ambig", null);
+            ps.addOptionalSetting("Likelihood", "AlignmentCache", null);
             ps.addOptionalSetting("Likelihood", "Missing", null);
             ps.addOptionalSetting("Likelihood", "MissingAmbig", null);
             ps.addOptionalSetting("Likelihood", "OptimizeTree", "True");
@@ -353,6 +371,11 @@ public class GeLL
             SquareMatrix.setExpMethod(SquareMatrix.Calculation.EIGEN);
             mat = true;
         }
+        if (setting.equals("Auto"))
+        {
+            SquareMatrix.setExpMethod(SquareMatrix.Calculation.AUTO);
+            mat = true;
+        }
         if (!mat)
         {
             throw new SettingException("Invalid MatrixExponentation option");
@@ -414,6 +437,10 @@ public class GeLL
         {
             a = GenericAlignment.fromFile(new File(file));
         }
+        if (type.equals("Cached"))
+        {
+            a = CachedAlignment.fromFile(new File(file));
+        }
         if (a == null)
         {
             throw new SettingException("Invalid AlignmentType Setting");
@@ -460,6 +487,18 @@ public class GeLL
                 missing = GenericAlignment.fromFile(new File(file));
             }
         }
+        if (type.equals("Cached"))
+        {
+            if (ambig != null)
+            {
+                missing = CachedAlignment.fromFile(new File(file),
+                        Ambiguous.fromFile(new File(ambig)));
+            }
+            else
+            {
+                missing = CachedAlignment.fromFile(new File(file));
+            }
+        }
         if (missing == null)
         {
             throw new SettingException("Invalid AlignmentType Setting");
@@ -711,7 +750,8 @@ public class GeLL
                 throw new SettingException("No alignment type to use");
             }
         }
-        if (type.equals("Duplication") || type.equals("Sequence") || type.equals("Generic"))
+        if (type.equals("Duplication") || type.equals("Sequence") || type.equals("Generic")
+                || type.equals("Cached"))
         {
             return type;
         }
@@ -732,6 +772,10 @@ public class GeLL
         {
             PhylipAlignment.writeFile(a, new File(file));
         }
+        if (type.equals("Cached"))
+        {
+            CachedAlignment.writeFile(a, new File(file));
+        }
     }
     
     private static Parameters getParameters(String pi, Tree t, String optimize) throws GeneralException
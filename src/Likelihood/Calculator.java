@@ -23,6 +23,7 @@ import Exceptions.UnexpectedError;
 import Likelihood.SiteLikelihood.NodeLikelihood;
 import Models.Model;
 import Models.Model.ModelException;
+import Models.ModelSnapshot;
 import Models.RateCategory.RateException;
 import Optimizers.Optimizable;
 import Parameters.Parameter;
@@ -31,15 +32,17 @@ import Parameters.Parameters.ParameterException;
 import Trees.Branch;
 import Trees.Tree;
 import Trees.TreeException;
-import Utils.DaemonThreadFactory;
+import Utils.Engine;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Abstract class for calculating a likelihood.  Likelihood calculators should
@@ -83,6 +86,171 @@ public abstract class Calculator<R extends Likelihood> implements Optimizable<R>
      * or NaN) log likelihood is calculated 
      */
     public R calculate(Parameters p) throws TreeException, RateException, ModelException, ParameterException, CalculatorException
+    {
+        addBranchLengths(p);
+
+        Map<Site,SiteLikelihood> sites = siteCalculate(p);
+        
+        return combineSites(sites, p);
+    }
+
+    /**
+     * Calculates the likelihood for many sets of parameters together.  This
+     * gives the same results as calling {@link #calculate(Parameters.Parameters)}
+     * for each set of parameters in turn but is quicker, especially when the
+     * parameter sets are close to each other (as in a line search or when
+     * calculating a gradient).  Parts of the model and P-matrices that are the
+     * same for more than one set of parameters are only calculated once and
+     * the work for all the parameter sets is spread across the threads together.
+     * @param ps The parameters to be used in the calculations
+     * @return A list of likelihood objects in the same order as the parameters
+     * @throws TreeException Thrown if there is a problem with the Tree (e.g. if
+     * there is a branch with no length given in parameters)
+     * @throws Models.RateCategory.RateException Thrown if there is an issue with
+     * a rate category in the model (e.g. a badly formatted rate).
+     * @throws Models.Model.ModelException Thrown if there is a problem with the
+     * model (e.g. the rate categories differ in their states)
+     * @throws Parameters.Parameters.ParameterException Thrown if there is a problem
+     * with the parameters (e.g. a required parameter is not present)
+     * @throws Likelihood.Calculator.CalculatorException If an unexpected (i.e. positive
+     * or NaN) log likelihood is calculated 
+     */
+    public List<R> calculate(List<Parameters> ps) throws TreeException, RateException, ModelException, ParameterException, CalculatorException
+    {
+        return calculate(ps, engine.getKeepNodeLikelihoods());
+    }
+
+    /**
+     * Calculates the likelihood for many sets of parameters together, as
+     * {@link #calculate(java.util.List)}, choosing whether node likelihoods
+     * are kept for just these calculations.  Not keeping them can save
+     * significant amounts of memory when many results are held at once and
+     * only the likelihoods are needed, for example when calculating a gradient.
+     * @param ps The parameters to be used in the calculations
+     * @param keep Whether to keep the node likelihoods
+     * @return A list of likelihood objects in the same order as the parameters
+     * @throws TreeException Thrown if there is a problem with the Tree (e.g. if
+     * there is a branch with no length given in parameters)
+     * @throws Models.RateCategory.RateException Thrown if there is an issue with
+     * a rate category in the model (e.g. a badly formatted rate).
+     * @throws Models.Model.ModelException Thrown if there is a problem with the
+     * model (e.g. the rate categories differ in their states)
+     * @throws Parameters.Parameters.ParameterException Thrown if there is a problem
+     * with the parameters (e.g. a required parameter is not present)
+     * @throws Likelihood.Calculator.CalculatorException If an unexpected (i.e. positive
+     * or NaN) log likelihood is calculated 
+     */
+    public List<R> calculate(List<Parameters> ps, boolean keep) throws TreeException, RateException, ModelException, ParameterException, CalculatorException
+    {
+        for (Parameters p: ps)
+        {
+            addBranchLengths(p);
+        }
+
+        List<Map<Site,SiteLikelihood>> sites = siteCalculate(ps, keep);
+
+        List<R> ret = new ArrayList<>(ps.size());
+        for (int i = 0; i < ps.size(); i++)
+        {
+            ret.add(combineSites(sites.get(i), ps.get(i)));
+        }
+        return ret;
+    }
+
+    /**
+     * Calculates the likelihood of an optimizable function for many sets of
+     * parameters.  If the function is a calculator the likelihoods are
+     * calculated together using {@link #calculate(java.util.List)}, otherwise
+     * {@link Optimizable#calculate(Parameters.Parameters)} is called on each set
+     * of parameters in turn.
+     * @param <R> The type of likelihood returned
+     * @param o The function
+     * @param ps The parameters to be used in the calculations
+     * @return A list of likelihood objects in the same order as the parameters
+     * @throws GeneralException Thrown if there is an error calculating the
+     * likelihoods
+     */
+    public static <R extends Likelihood> List<R> calculate(Optimizable<R> o, List<Parameters> ps) throws GeneralException
+    {
+        if (o instanceof Calculator)
+        {
+            return ((Calculator<R>) o).calculate(ps);
+        }
+        List<R> ret = new ArrayList<>(ps.size());
+        for (Parameters p: ps)
+        {
+            ret.add(o.calculate(p));
+        }
+        return ret;
+    }
+
+    /**
+     * Calculates the likelihood of an optimizable function for many sets of
+     * parameters, as {@link #calculate(Optimizers.Optimizable, java.util.List)},
+     * choosing whether node likelihoods are kept if the function is a
+     * calculator.
+     * @param <R> The type of likelihood returned
+     * @param o The function
+     * @param ps The parameters to be used in the calculations
+     * @param keep Whether to keep the node likelihoods
+     * @return A list of likelihood objects in the same order as the parameters
+     * @throws GeneralException Thrown if there is an error calculating the
+     * likelihoods
+     */
+    public static <R extends Likelihood> List<R> calculate(Optimizable<R> o, List<Parameters> ps, boolean keep) throws GeneralException
+    {
+        if (o instanceof Calculator)
+        {
+            return ((Calculator<R>) o).calculate(ps, keep);
+        }
+        return calculate(o, ps);
+    }
+
+    /**
+     * Calculates just the log likelihood of an optimizable function for many
+     * sets of parameters.  If the function is a calculator the parameters are
+     * calculated in groups of as many as the calculator's engine has threads,
+     * without keeping node likelihoods, so only that many full results are
+     * held in memory at once however many sets of parameters there are.
+     * @param o The function
+     * @param ps The parameters to be used in the calculations
+     * @return The log likelihoods in the same order as the parameters
+     * @throws GeneralException Thrown if there is an error calculating the
+     * likelihoods
+     */
+    public static double[] logLikelihoods(Optimizable<?> o, List<Parameters> ps) throws GeneralException
+    {
+        int group = ps.size();
+        if (o instanceof Calculator)
+        {
+            group = Math.max(1, ((Calculator<?>) o).getEngine().getThreads());
+        }
+        double[] ret = new double[ps.size()];
+        for (int start = 0; start < ps.size(); start += group)
+        {
+            List<? extends Likelihood> ls = calculate(o, ps.subList(start, Math.min(ps.size(), start + group)), false);
+            for (int i = 0; i < ls.size(); i++)
+            {
+                ret[start + i] = ls.get(i).getLikelihood();
+            }
+        }
+        return ret;
+    }
+
+    private void addBranchLengths(Parameters p) throws TreeException, ParameterException
+    {
+        addBranchLengths(t, p);
+    }
+
+    /**
+     * Adds parameters for any branch lengths missing from a set of parameters
+     * @param t Map from site class to tree
+     * @param p The parameters
+     * @throws TreeException If there is a problem with a tree
+     * @throws Parameters.Parameters.ParameterException If there is a problem
+     * adding a parameter
+     */
+    static void addBranchLengths(Map<String,Tree> t, Parameters p) throws TreeException, ParameterException
     {
         //If the parameters setting doesn't include branch lengths parameters then
         //add them from the tree.  The paramter / branch length interaction is a
@@ -107,10 +275,6 @@ public abstract class Calculator<R extends Likelihood> implements Optimizable<R>
                 }
             }
         }
-        
-        Map<Site,SiteLikelihood> sites = siteCalculate(p);
-        
-        return combineSites(sites, p);
     }
     
     /**
@@ -147,6 +311,29 @@ public abstract class Calculator<R extends Likelihood> implements Optimizable<R>
      * problem with a passed parameter
      */
     public abstract SiteLikelihood calculateSite(Site s, Tree t, Parameters p, Probabilities tp, Map<String,NodeLikelihood> nl) throws ParameterException;
+
+    /**
+     * Calculate the likelihood for a single site choosing whether node
+     * likelihoods are kept.  By default calls
+     * {@link #calculateSite(Alignments.Site, Trees.Tree, Parameters.Parameters, Likelihood.Probabilities, java.util.Map)}
+     * which uses the engine's setting, subclasses should override this if
+     * they can do otherwise.
+     * @param s The site to calculate the likelihood for
+     * @param t The tree to use in calculating the likelihood
+     * @param p The parameters to use in calculating the likelihood
+     * @param tp Pre-calculated transition probabilities to be used in the
+     * calculation
+     * @param nl The starting node-likelihoods
+     * @param keep Whether to keep the node likelihoods
+     * @return An instance of {@link SiteLikelihood} given the likelihood and
+     * any other information
+     * @throws Parameters.Parameters.ParameterException Thrown if there is a
+     * problem with a passed parameter
+     */
+    protected SiteLikelihood calculateSite(Site s, Tree t, Parameters p, Probabilities tp, Map<String,NodeLikelihood> nl, boolean keep) throws ParameterException
+    {
+        return calculateSite(s, t, p, tp, nl);
+    }
     
     /**
      * Calculates the likelihood for each site
@@ -164,6 +351,99 @@ public abstract class Calculator<R extends Likelihood> implements Optimizable<R>
      * or NaN) log likelihood is calculated 
      */
     protected Map<Site,SiteLikelihood> siteCalculate(Parameters p) throws TreeException, RateException, ModelException, ParameterException, CalculatorException
+    {
+        return siteCalculate(Collections.singletonList(p)).get(0);
+    }
+
+    /**
+     * Calculates the likelihood for each site for many sets of parameters
+     * @param ps The parameters to be used in the calculations
+     * @return A list of maps from site to result in the same order as the
+     * parameters
+     * @throws TreeException Thrown if there is a problem with the Tree (e.g. if
+     * there is a branch with no length given in parameters)
+     * @throws Models.RateCategory.RateException Thrown if there is an issue with
+     * a rate category in the model (e.g. a badly formatted rate).
+     * @throws Models.Model.ModelException Thrown if there is a problem with the
+     * model (e.g. the rate categories differ in their states)
+     * @throws Parameters.Parameters.ParameterException Thrown if there is a problem
+     * with the parameters (e.g. a required parameter is not present)
+     * @throws Likelihood.Calculator.CalculatorException If an unexpected (i.e. positive
+     * or NaN) log likelihood is calculated 
+     */
+    protected List<Map<Site,SiteLikelihood>> siteCalculate(List<Parameters> ps) throws TreeException, RateException, ModelException, ParameterException, CalculatorException
+    {
+        return siteCalculate(ps, engine.getKeepNodeLikelihoods());
+    }
+
+    /**
+     * Calculates the likelihood for each site for many sets of parameters
+     * choosing whether node likelihoods are kept
+     * @param ps The parameters to be used in the calculations
+     * @param keep Whether to keep the node likelihoods
+     * @return A list of maps from site to result in the same order as the
+     * parameters
+     * @throws TreeException Thrown if there is a problem with the Tree (e.g. if
+     * there is a branch with no length given in parameters)
+     * @throws Models.RateCategory.RateException Thrown if there is an issue with
+     * a rate category in the model (e.g. a badly formatted rate).
+     * @throws Models.Model.ModelException Thrown if there is a problem with the
+     * model (e.g. the rate categories differ in their states)
+     * @throws Parameters.Parameters.ParameterException Thrown if there is a problem
+     * with the parameters (e.g. a required parameter is not present)
+     * @throws Likelihood.Calculator.CalculatorException If an unexpected (i.e. positive
+     * or NaN) log likelihood is calculated 
+     */
+    protected List<Map<Site,SiteLikelihood>> siteCalculate(List<Parameters> ps, boolean keep) throws TreeException, RateException, ModelException, ParameterException, CalculatorException
+    {
+        return siteCalculate(ps, null, keep);
+    }
+
+    /**
+     * Calculates the likelihood of some of the sites for many sets of
+     * parameters
+     * @param ps The parameters to be used in the calculations
+     * @param subset The sites to calculate the likelihood of.  Each must be
+     * included in the site node likelihoods.  If null all sites are calculated.
+     * @return A list of maps from site to result in the same order as the
+     * parameters
+     * @throws TreeException Thrown if there is a problem with the Tree (e.g. if
+     * there is a branch with no length given in parameters)
+     * @throws Models.RateCategory.RateException Thrown if there is an issue with
+     * a rate category in the model (e.g. a badly formatted rate).
+     * @throws Models.Model.ModelException Thrown if there is a problem with the
+     * model (e.g. the rate categories differ in their states)
+     * @throws Parameters.Parameters.ParameterException Thrown if there is a problem
+     * with the parameters (e.g. a required parameter is not present)
+     * @throws Likelihood.Calculator.CalculatorException If an unexpected (i.e. positive
+     * or NaN) log likelihood is calculated 
+     */
+    protected List<Map<Site,SiteLikelihood>> siteCalculate(List<Parameters> ps, Collection<? extends Site> subset) throws TreeException, RateException, ModelException, ParameterException, CalculatorException
+    {
+        return siteCalculate(ps, subset, engine.getKeepNodeLikelihoods());
+    }
+
+    /**
+     * Calculates the likelihood of some of the sites for many sets of
+     * parameters choosing whether node likelihoods are kept
+     * @param ps The parameters to be used in the calculations
+     * @param subset The sites to calculate the likelihood of.  Each must be
+     * included in the site node likelihoods.  If null all sites are calculated.
+     * @param keep Whether to keep the node likelihoods
+     * @return A list of maps from site to result in the same order as the
+     * parameters
+     * @throws TreeException Thrown if there is a problem with the Tree (e.g. if
+     * there is a branch with no length given in parameters)
+     * @throws Models.RateCategory.RateException Thrown if there is an issue with
+     * a rate category in the model (e.g. a badly formatted rate).
+     * @throws Models.Model.ModelException Thrown if there is a problem with the
+     * model (e.g. the rate categories differ in their states)
+     * @throws Parameters.Parameters.ParameterException Thrown if there is a problem
+     * with the parameters (e.g. a required parameter is not present)
+     * @throws Likelihood.Calculator.CalculatorException If an unexpected (i.e. positive
+     * or NaN) log likelihood is calculated 
+     */
+    protected List<Map<Site,SiteLikelihood>> siteCalculate(List<Parameters> ps, Collection<? extends Site> subset, boolean keep) throws TreeException, RateException, ModelException, ParameterException, CalculatorException
     {
         //Doing threaded calculation can be slower in small cases due to the
         //overhead in creating threads.  However haven't tested when this is the
@@ -171,50 +451,68 @@ public abstract class Calculator<R extends Likelihood> implements Optimizable<R>
         //now always doing it threaded.
         try
         {
-            //Calculate all the probabilites associated with this model, tree and
-            //set of parameters
-            Map<String,Probabilities> tp = new HashMap<>(m.size());
-            for (Entry<String,Model> e: m.entrySet())
+            Map<Site,Map<String,NodeLikelihood>> snl = this.snl;
+            if (subset != null)
             {
-                tp.put(e.getKey(), new Probabilities(e.getValue(),t.get(e.getKey()),p));
+                Map<Site,Map<String,NodeLikelihood>> some = new HashMap<>(subset.size());
+                for (Site s: subset)
+                {
+                    some.put(s, snl.get(s));
+                }
+                snl = some;
             }
-            
+
+            //Calculate all the probabilites associated with this model, tree and
+            //each set of parameters
+            List<Map<String,Probabilities>> tps = probabilities(ps);
+
+            List<Map<Site, SiteLikelihood>> ret = new ArrayList<>(ps.size());
             if (thread)
             {
                 //For each unique site in both the alignment and unobserved sites
-                //create a callable object to calculate it and send it to
-                // be executed.
-                Map<Site, SiteCalculator> sites = new HashMap<>(snl.size());
-
+                //and each set of parameters create a callable object to calculate
+                //it and send them all to be executed together.
+                List<Map<Site, SiteCalculator>> sites = new ArrayList<>(ps.size());
                 List<SiteCalculator> scs = new ArrayList<>();
-                for (Entry<Site,Map<String,NodeLikelihood>> e: snl.entrySet())
+                for (int i = 0; i < ps.size(); i++)
                 {
-                    SiteCalculator temp = new SiteCalculator(e.getKey(),t.get(e.getKey().getSiteClass()),p,
-                            tp.get(e.getKey().getSiteClass()),
-                            e.getValue());
-                    scs.add(temp);
-                    sites.put(e.getKey(), temp);
+                    Map<Site, SiteCalculator> ss = new HashMap<>(snl.size());
+                    for (Entry<Site,Map<String,NodeLikelihood>> e: snl.entrySet())
+                    {
+                        SiteCalculator temp = new SiteCalculator(e.getKey(),t.get(e.getKey().getSiteClass()),ps.get(i),
+                                tps.get(i).get(e.getKey().getSiteClass()),
+                                e.getValue(),keep);
+                        scs.add(temp);
+                        ss.put(e.getKey(), temp);
+                    }
+                    sites.add(ss);
                 }
 
-                es.invokeAll(scs);
+                engine.getExecutor().invokeAll(scs);
 
-                Map<Site, SiteLikelihood> ret = new HashMap<>(snl.size());
-                for (Entry<Site,SiteCalculator> e: sites.entrySet())
+                for (Map<Site, SiteCalculator> ss: sites)
                 {
-                    ret.put(e.getKey(),e.getValue().getResult());
+                    Map<Site, SiteLikelihood> r = new HashMap<>(snl.size());
+                    for (Entry<Site,SiteCalculator> e: ss.entrySet())
+                    {
+                        r.put(e.getKey(),e.getValue().getResult());
+                    }
+                    ret.add(r);
                 }
-
-                return ret;
             }
             else
             {
-                Map<Site, SiteLikelihood> ret = new HashMap<>(snl.size());
-                for (Entry<Site,Map<String,NodeLikelihood>> e: snl.entrySet())
+                for (int i = 0; i < ps.size(); i++)
                 {
-                    ret.put(e.getKey(), calculateSite(e.getKey(),t.get(e.getKey().getSiteClass()),p,tp.get(e.getKey().getSiteClass()),e.getValue()));
+                    Map<Site, SiteLikelihood> r = new HashMap<>(snl.size());
+                    for (Entry<Site,Map<String,NodeLikelihood>> e: snl.entrySet())
+                    {
+                        r.put(e.getKey(), calculateSite(e.getKey(),t.get(e.getKey().getSiteClass()),ps.get(i),tps.get(i).get(e.getKey().getSiteClass()),e.getValue(),keep));
+                    }
+                    ret.add(r);
                 }
-                return ret;
             }
+            return ret;
         }
 
         catch(InterruptedException | ResultNotComputed ex)
@@ -223,6 +521,103 @@ public abstract class Calculator<R extends Likelihood> implements Optimizable<R>
             throw new UnexpectedError(ex);
         }
     }
+
+    /**
+     * Adds to the site node likelihoods.  Should not be called while a
+     * calculation is in progress.
+     * @param add Map from site to the initial likelihood values for each
+     * state at each node of that site
+     */
+    protected synchronized void addSiteNodeLikelihoods(Map<Site,Map<String,NodeLikelihood>> add)
+    {
+        //Copy rather than add in place so a calculation that has already
+        //got the map isn't affected
+        HashMap<Site,Map<String,NodeLikelihood>> c = new HashMap<>(snl);
+        c.putAll(add);
+        snl = c;
+    }
+
+    private List<Map<String,Probabilities>> probabilities(List<Parameters> ps) throws TreeException, RateException, ModelException, ParameterException, InterruptedException
+    {
+        //Evaluate the models in order so each snapshot can reuse the parts of
+        //the previous one that haven't changed
+        List<Map<String,ModelSnapshot>> snapshots = new ArrayList<>(ps.size());
+        for (Parameters p: ps)
+        {
+            Map<String,ModelSnapshot> ms = new HashMap<>(m.size());
+            for (Entry<String,Model> e: m.entrySet())
+            {
+                ms.put(e.getKey(), e.getValue().snapshot(p, engine));
+            }
+            snapshots.add(ms);
+        }
+
+        List<Map<String,Probabilities>> tps = new ArrayList<>(ps.size());
+        if (!thread || (ps.size() * m.size() == 1))
+        {
+            for (int i = 0; i < ps.size(); i++)
+            {
+                Map<String,Probabilities> tp = new HashMap<>(m.size());
+                for (Entry<String,ModelSnapshot> e: snapshots.get(i).entrySet())
+                {
+                    tp.put(e.getKey(), new Probabilities(e.getValue(),t.get(e.getKey()),ps.get(i)));
+                }
+                tps.add(tp);
+            }
+            return tps;
+        }
+
+        //Calculating the P-matrices is most of the work when there are few
+        //sites so do it in parallel as well
+        List<Map<String,Future<Probabilities>>> futures = new ArrayList<>(ps.size());
+        for (int i = 0; i < ps.size(); i++)
+        {
+            Map<String,Future<Probabilities>> fs = new HashMap<>(m.size());
+            for (final Entry<String,ModelSnapshot> e: snapshots.get(i).entrySet())
+            {
+                final Parameters p = ps.get(i);
+                fs.put(e.getKey(), engine.getExecutor().submit(new Callable<Probabilities>()
+                {
+                    public Probabilities call() throws TreeException, RateException, ParameterException
+                    {
+                        return new Probabilities(e.getValue(),t.get(e.getKey()),p);
+                    }
+                }));
+            }
+            futures.add(fs);
+        }
+
+        for (Map<String,Future<Probabilities>> fs: futures)
+        {
+            Map<String,Probabilities> tp = new HashMap<>(m.size());
+            for (Entry<String,Future<Probabilities>> e: fs.entrySet())
+            {
+                try
+                {
+                    tp.put(e.getKey(), e.getValue().get());
+                }
+                catch (ExecutionException ex)
+                {
+                    Throwable c = ex.getCause();
+                    if (c instanceof TreeException)
+                    {
+                        throw (TreeException) c;
+                    }
+                    if (c instanceof RateException)
+                    {
+                        throw (RateException) c;
+                    }
+                    if (c instanceof ParameterException)
+                    {
+                        throw (ParameterException) c;
+                    }
+                    throw new UnexpectedError(c);
+                }
+            }
+            tps.add(tp);
+        }
+        return tps;
+    }
     
     /**
      * Set whether threaded calculations should be performed
@@ -240,18 +635,40 @@ public abstract class Calculator<R extends Likelihood> implements Optimizable<R>
     public abstract int getAlignmentLength();
 
     /**
-     * Set the number of threads to be used during the calculations
+     * Sets the engine used for calculations.  The engine provides the threads
+     * used and the numerical settings.  By default the default engine
+     * ({@link Engine#getDefault()}) is used.  The site node likelihoods
+     * should use the real type of the engine so subclasses that create them
+     * should recreate them if the real type changes.
+     * @param engine The engine to use
+     */
+    public void setEngine(Engine engine)
+    {
+        this.engine = engine;
+    }
+
+    /**
+     * Gets the engine used for calculations
+     * @return The engine
+     */
+    public Engine getEngine()
+    {
+        return engine;
+    }
+
+    /**
+     * Set the number of threads to be used during the calculations.  Changes
+     * the setting on the default engine, see {@link Engine#setThreads(int)}.
      * @param number Number of threads
      */
     public static void setNoThreads(int number)
     {
-        es = Executors.newFixedThreadPool(number, new DaemonThreadFactory());
+        Engine.getDefault().setThreads(number);
     }
     
-    private static ExecutorService es = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
-            new DaemonThreadFactory());
-    
     private boolean thread = true;
+
+    private Engine engine = Engine.getDefault();
     
     /**
      * The site node likelihoods.  That is the initial likelihood values
@@ -286,18 +703,34 @@ public abstract class Calculator<R extends Likelihood> implements Optimizable<R>
          * See {@link Site#getInitialNodeLikelihoods(Trees.Tree, java.util.Map)}.
          */
         public SiteCalculator(Site s, Tree t, Parameters p, Probabilities tp, Map<String,NodeLikelihood> nl)
+        {
+            this(s, t, p, tp, nl, engine.getKeepNodeLikelihoods());
+        }
+
+        /**
+         * Constructor choosing whether node likelihoods are kept
+         * @param s The site to calculate the likelihood for
+         * @param t The tree to be used in the calculation
+         * @param p The parameters to be used in the calculation
+         * @param tp Pre-computed datastructure containing probabilities
+         * @param nl Initialised node likelihoods based on the site.
+         * See {@link Site#getInitialNodeLikelihoods(Trees.Tree, java.util.Map)}.
+         * @param keep Whether to keep the node likelihoods
+         */
+        public SiteCalculator(Site s, Tree t, Parameters p, Probabilities tp, Map<String,NodeLikelihood> nl, boolean keep)
         {
             this.s = s;
             this.t = t;
             this.p = p;
             this.tp = tp;
             this.nl = nl;
+            this.keep = keep;
             result = null;
         }
         
         public SiteLikelihood call() throws ParameterException
         {
-            result = calculateSite(s,t,p,tp,nl);
+            result = calculateSite(s,t,p,tp,nl,keep);
             return result;
             //result = calculate();
             //return result;            
@@ -327,6 +760,7 @@ public abstract class Calculator<R extends Likelihood> implements Optimizable<R>
         private Probabilities tp;
         private SiteLikelihood result;
         private Map<String,NodeLikelihood> nl;
+        private boolean keep;
     }
     
     static class ResultNotComputed extends Exception
@@ -26,6 +26,8 @@ import Parameters.Parameters;
 import Parameters.Parameters.ParameterException;
 import Trees.TreeException;
 import Utils.Range;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Used to calculate confidence intervals for a parameter.  Due to computational
@@ -147,10 +149,14 @@ public class ConfidenceInterval
 	double x1 = a + R * (b - a);
 	double x2 = b - R * (b - a);
 
+        //Calculate the two starting points together
 	p.setValue(param,x1);
-	double x1val = l.calculate(p).getLikelihood();
+        Parameters p1 = p.clone();
 	p.setValue(param,x2);
-	double x2val = l.calculate(p).getLikelihood();
+        Parameters p2 = p.clone();
+        List<StandardLikelihood> start = l.calculate(Arrays.asList(p1, p2));
+	double x1val = start.get(0).getLikelihood();
+	double x2val = start.get(1).getLikelihood();
 
 	while (Math.abs(x1val - target) > Math.pow(10,-7))
 	{
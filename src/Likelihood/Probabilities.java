@@ -18,8 +18,10 @@
 package Likelihood;
 
 import Maths.SquareMatrix;
+import Models.CategorySnapshot;
 import Models.Model;
 import Models.Model.ModelException;
+import Models.ModelSnapshot;
 import Models.RateCategory;
 import Models.RateCategory.RateException;
 import Parameters.Parameters;
@@ -53,12 +55,29 @@ public class Probabilities
      */
     public Probabilities(Model m, Tree t, Parameters p) throws TreeException,
             RateException, ModelException, ParameterException
+    {
+        this(m.snapshot(p), t, p);
+    }
+
+    /**
+     * Constructor that uses an already evaluated model.  As the snapshot
+     * never changes many instances, for different parameters, can be created
+     * at the same time.
+     * @param m The evaluated model
+     * @param t The tree
+     * @param p The parameters (only used for branch lengths)
+     * @throws TreeException Thrown if there is a problem with the tree.
+     * @throws Models.RateCategory.RateException Thrown if there is an issue
+     * calculating a P-matrix.
+     * @throws Parameters.Parameters.ParameterException Thrown if there is a problem
+     * with the parameters (e.g. a branch length is not present) 
+     */
+    public Probabilities(ModelSnapshot m, Tree t, Parameters p) throws TreeException,
+            RateException, ParameterException
     {
         //Create a new tree with the branch lengths given in p.  This is a bit
         //odd and could do with changing but it works for now.
         Tree nt = new Tree(t,p);
-        //Set the parameters in the model
-        m.setParameters(p);
         rateClasses = m.getRates();
         map = m.getMap();
         P = new HashMap<>(rateClasses.size());
@@ -69,6 +88,7 @@ public class Probabilities
         //Calculate and store the various probabilities
         for (RateCategory rc: m)
         {
+            CategorySnapshot cs = m.get(rc);
             Map<Branch,SquareMatrix> bP = new HashMap<>(nt.getNumberBranches());
             for (Branch b: nt)
             {
@@ -76,11 +96,11 @@ public class Probabilities
                 {
                     throw new TreeException("Can't do Likelihood calculations with negative branch lengths");
                 }
-                bP.put(b, rc.getP(b.getLength()));
+                bP.put(b, cs.getP(b.getLength()));
             }
             P.put(rc, new RateProbabilities(bP));
-            freq.put(rc,rc.getFreq());
-            roots.put(rc,rc.getRoot());
+            freq.put(rc,cs.getFreq());
+            roots.put(rc,cs.getRoot());
             rateP.put(rc,m.getFreq(rc));
         }
     }
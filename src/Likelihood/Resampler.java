@@ -0,0 +1,132 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Likelihood;
+
+import java.util.Random;
+
+/**
+ * Creates resampled weights for unique sites, for example for bootstrapping
+ * or jackknifing.  Rather than creating a new alignment for each replicate the
+ * weights can be passed to {@link StandardCalculator#setWeights(double[])} so
+ * the same calculator can be used for every replicate.  Each weight is how
+ * often that unique site occurs in the replicate.
+ * <br><br>
+ * Sampling a site takes the same time however many unique sites there are.
+ * Instances can be used by more than one thread at once as long as each uses
+ * its own {@link Random}.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class Resampler
+{
+    /**
+     * Creates a resampler for unique sites that occur the given number of
+     * times, e.g. from {@link StandardCalculator#getCounts()}
+     * @param counts How often each unique site occurs
+     */
+    public Resampler(int[] counts)
+    {
+        patterns = counts.length;
+        int n = 0;
+        for (int c: counts)
+        {
+            n += c;
+        }
+        //Which unique site each site is, so a site can be picked in constant
+        //time
+        sites = new int[n];
+        int j = 0;
+        for (int p = 0; p < counts.length; p++)
+        {
+            for (int i = 0; i < counts[p]; i++)
+            {
+                sites[j++] = p;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of sites
+     * @return The number of sites
+     */
+    public int getLength()
+    {
+        return sites.length;
+    }
+
+    /**
+     * Gets the weights for a bootstrap replicate the same length as the
+     * original data
+     * @param random The random number generator to use
+     * @return The weight of each unique site
+     */
+    public double[] bootstrap(Random random)
+    {
+        return bootstrap(sites.length, random);
+    }
+
+    /**
+     * Gets the weights for a bootstrap replicate of a given length.  Sites are
+     * sampled with replacement.
+     * @param length The number of sites in the replicate
+     * @param random The random number generator to use
+     * @return The weight of each unique site
+     */
+    public double[] bootstrap(int length, Random random)
+    {
+        double[] w = new double[patterns];
+        for (int i = 0; i < length; i++)
+        {
+            w[sites[random.nextInt(sites.length)]]++;
+        }
+        return w;
+    }
+
+    /**
+     * Gets the weights for a delete-d jackknife replicate.  The given number of
+     * sites are removed, chosen without replacement.
+     * @param delete The number of sites to remove
+     * @param random The random number generator to use
+     * @return The weight of each unique site
+     */
+    public double[] jackknife(int delete, Random random)
+    {
+        double[] w = new double[patterns];
+        for (int s: sites)
+        {
+            w[s]++;
+        }
+        //Floyd's algorithm picks distinct sites without shuffling them all
+        int n = sites.length;
+        boolean[] removed = new boolean[n];
+        for (int j = n - Math.min(delete, n); j < n; j++)
+        {
+            int r = random.nextInt(j + 1);
+            if (removed[r])
+            {
+                r = j;
+            }
+            removed[r] = true;
+            w[sites[r]]--;
+        }
+        return w;
+    }
+
+    private final int patterns;
+    private final int[] sites;
+}
@@ -7,6 +7,7 @@ import Maths.RealFactory.RealType;
 import Maths.SmallDouble;
 import Maths.StandardDouble;
 import Models.RateCategory;
+import Utils.Engine;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -27,6 +28,17 @@ public class SiteLikelihood implements Serializable
      * @param P A Probabilities object from which the frequency of each rate will be fetched
      */
     public SiteLikelihood(Map<RateCategory,RateLikelihood> rateLikelihoods, Probabilities P)
+    {
+        this(rateLikelihoods, P, Engine.getDefault().getRealType());
+    }
+
+    /**
+     * Constructor where the real type to use is given
+     * @param rateLikelihoods The likelihood of the individual rates at that site
+     * @param P A Probabilities object from which the frequency of each rate will be fetched
+     * @param type The real type used in the calculation
+     */
+    public SiteLikelihood(Map<RateCategory,RateLikelihood> rateLikelihoods, Probabilities P, RealType type)
     {
         rateProbability = new HashMap<>();
         l = RealFactory.getReal(type,0.0);
@@ -108,32 +120,31 @@ public class SiteLikelihood implements Serializable
      */
     public static void keepNodeLikelihoods(boolean keep)
     {
-        publicKeepNL = keep;
-        keepNL = publicKeepNL && optKeepNL;
+        Engine.getDefault().setKeepNodeLikelihoods(keep);
     }
     
     /**
-     * Similar to {@link #keepNodeLikelihoods(boolean)} but if set to false
-     * overrides the setting set by that function.  Intended to only be used
-     * by optimizers so that the node likelihoods calculated while optimizing
-     * aren't kept.  I.e. should be set to false before optimizing and back to
-     * true for the final calculation.
-     * @param keep Whether to keep the ndoe likelihoods
+     * Previously allowed optimizers to stop node likelihoods being kept while
+     * optimizing.  This never had any effect and now does nothing; use
+     * {@link Engine#setKeepNodeLikelihoods(boolean)} instead.
+     * @param keep Ignored
+     * @deprecated Has no effect
      */
+    @Deprecated
     public static void optKeepNL(boolean keep)
     {
-        keepNL = true;
     }
     
     /**
      * Sets the real type to be used during calculations, either {@link SmallDouble}
-     * or {@link StandardDouble}.
+     * or {@link StandardDouble}.  Changes the setting on the default engine,
+     * see {@link Engine#setRealType(Maths.RealFactory.RealType)}.
      * @param type The double type to use
      * @see Ancestors.AncestralJointDP#realType(Maths.RealFactory.RealType) 
      */
     public static void realType(RealType type)
     {
-        SiteLikelihood.type = type;
+        Engine.getDefault().setRealType(type);
     }
 
     private Map<RateCategory,RateLikelihood> rateLikelihoods;
@@ -141,12 +152,6 @@ public class SiteLikelihood implements Serializable
     private Map<RateCategory,Real> rateProbability;
     private RateCategory maxCat;
     private static final long serialVersionUID = 1;
-    
-    private static boolean keepNL = true;
-    private static boolean publicKeepNL = true;
-    private static boolean optKeepNL = true;
-        
-    private static RealType type = RealType.STANDARD_DOUBLE;
 
     /**
      * Stores the result of the likelihood calculations for a single site <I> and </I>
@@ -162,9 +167,20 @@ public class SiteLikelihood implements Serializable
          * @param nodeLikelihoods The invidual node likelihoods for this site and rate
          */
         public RateLikelihood(Real l, Map<String, NodeLikelihood> nodeLikelihoods)
+        {
+            this(l, nodeLikelihoods, Engine.getDefault().getKeepNodeLikelihoods());
+        }
+
+        /**
+         * Constructor where whether to keep the node likelihoods is given
+         * @param l The likelihood for this site and rate
+         * @param nodeLikelihoods The invidual node likelihoods for this site and rate
+         * @param keep Whether to keep the node likelihoods
+         */
+        public RateLikelihood(Real l, Map<String, NodeLikelihood> nodeLikelihoods, boolean keep)
         {
             this.l = l;
-            if (keepNL)
+            if (keep)
             {
                 this.nodeLikelihoods = nodeLikelihoods;
             }
@@ -235,6 +251,19 @@ public class SiteLikelihood implements Serializable
          */
         public NodeLikelihood(Map<String,Integer> states) throws LikelihoodException
         {
+            this(states, Engine.getDefault());
+        }
+
+        /**
+         * Constructor where all sates are allowed at a node
+         * @param states Map from a state to it's position in the array
+         * @param engine The engine whose real type should be used
+         * @throws Likelihood.SiteLikelihood.LikelihoodException Thrown if a node is initalised to every state having zero probability
+         *      (most probably due to the state at the node not being in the model).  
+         */
+        public NodeLikelihood(Map<String,Integer> states, Engine engine) throws LikelihoodException
+        {
+            RealType type = engine.getRealType();
             likelihoods = new Real[states.size()];
             this.states = states;
             for (int i = 0; i < states.size(); i ++)
@@ -252,6 +281,20 @@ public class SiteLikelihood implements Serializable
          */
         public NodeLikelihood(Map<String,Integer> states, Set<String> allowedStates) throws LikelihoodException
         {
+            this(states, allowedStates, Engine.getDefault());
+        }
+
+        /**
+         * Constructor where only some states are allowed at a node
+         * @param states Map from a state to it's position in the array
+         * @param allowedStates The allowed states at this state
+         * @param engine The engine whose real type should be used
+         * @throws Likelihood.SiteLikelihood.LikelihoodException Thrown if a node is initalised to every state having zero probability
+         *      (most probably due to the state at the node not being in the model).  
+         */
+        public NodeLikelihood(Map<String,Integer> states, Set<String> allowedStates, Engine engine) throws LikelihoodException
+        {
+            RealType type = engine.getRealType();
             likelihoods = new Real[states.size()];
             this.states = states;
             boolean onz = false;
@@ -283,6 +326,20 @@ public class SiteLikelihood implements Serializable
          */
         public NodeLikelihood(Map<String,Integer> states, String allowedState) throws LikelihoodException
         {
+            this(states, allowedState, Engine.getDefault());
+        }
+
+        /**
+         * Constructor where only a single state is allowed at a node
+         * @param states Map from a state to it's position in the array
+         * @param allowedState The allowed state at this state
+         * @param engine The engine whose real type should be used
+         * @throws Likelihood.SiteLikelihood.LikelihoodException Thrown if a node is initalised to every state having zero probability
+         *      (most probably due to the state at the node not being in the model).  
+         */
+        public NodeLikelihood(Map<String,Integer> states, String allowedState, Engine engine) throws LikelihoodException
+        {
+            RealType type = engine.getRealType();
             likelihoods = new Real[states.size()];
             this.states = states;
             boolean onz = false;
@@ -314,7 +371,7 @@ public class SiteLikelihood implements Serializable
         {
             return new NodeLikelihood(likelihoods, states);
         }
-        
+
         /**
          * This is a fudge to stop to allow this code to be reused in some
          * of the ancestor classes.  Should be no reason to use.
@@ -21,6 +21,7 @@ import Alignments.Alignment;
 import Alignments.AlignmentException;
 import Alignments.Site;
 import Alignments.UniqueSite;
+import Exceptions.UnexpectedError;
 import Likelihood.Calculator.CalculatorException;
 import Likelihood.Probabilities.RateProbabilities;
 import Likelihood.SiteLikelihood.LikelihoodException;
@@ -29,11 +30,17 @@ import Likelihood.SiteLikelihood.RateLikelihood;
 import Maths.Real;
 import Maths.SquareMatrix;
 import Models.Model;
+import Models.Model.ModelException;
 import Models.RateCategory;
+import Models.RateCategory.RateException;
 import Parameters.Parameters;
+import Parameters.Parameters.ParameterException;
 import Trees.Branch;
 import Trees.Tree;
 import Trees.TreeException;
+import Utils.Engine;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -188,6 +195,10 @@ public class StandardCalculator extends Calculator<StandardLikelihood>
         this.a = a;
         this.t = t;
         this.missing = unobserved;
+        this.sites = a.getUniqueSites();
+        this.added = new ArrayList<>();
+        this.siteIndex = null;
+        this.weights = null;
         if (!a.check(m))
         {
             throw new AlignmentException("Alignment contains classes for which no model has been defined");
@@ -199,12 +210,14 @@ public class StandardCalculator extends Calculator<StandardLikelihood>
     }
     
 
-    public StandardLikelihood combineSites(Map<Site,SiteLikelihood> sites, Parameters p) throws CalculatorException
+    public StandardLikelihood combineSites(Map<Site,SiteLikelihood> siteResults, Parameters p) throws CalculatorException
     {        
         //The total ikelihood
         double l = 0.0;
         //Stores the likelihood of sites in the alignment
-        Map<Site,SiteLikelihood> siteLikelihoods = new HashMap<>(a.getUniqueSites().size());
+        List<UniqueSite> sites = this.sites;
+        Weights w = weights;
+        Map<Site,SiteLikelihood> siteLikelihoods = new HashMap<>(sites.size());
         //Stores the likelihood of unobserved states
         Map<Site,SiteLikelihood> missingLikelihoods;
         if (missing != null)
@@ -219,11 +232,18 @@ public class StandardCalculator extends Calculator<StandardLikelihood>
         //Get the result for each site and calculate the total likelihood (l)
         //of the alignemnt taking into account how often each unique site occurs
         //for (Entry<Site, SiteCalculator> e: sites.entrySet())
-        for (UniqueSite us: a.getUniqueSites())
+        //(or its weight if weights have been set)
+        for (int i = 0; i < sites.size(); i++)
         {
-            SiteLikelihood sl = sites.get(us);
-            siteLikelihoods.put(us,sl);
-            l += us.getCount() * sl.getLikelihood().ln();
+            UniqueSite us = sites.get(i);
+            double c = (w == null) ? us.getCount() : w.weights[i];
+            //Sites with zero weight aren't calculated
+            if (c != 0.0)
+            {
+                SiteLikelihood sl = siteResults.get(us);
+                siteLikelihoods.put(us,sl);
+                l += c * sl.getLikelihood().ln();
+            }
         }
             
         //Get the result for each site and calculate the total likelihood (m)
@@ -233,7 +253,7 @@ public class StandardCalculator extends Calculator<StandardLikelihood>
         {
             for (UniqueSite us: missing.getUniqueSites())
             {
-                SiteLikelihood sl = sites.get(us);
+                SiteLikelihood sl = siteResults.get(us);
                 missingLikelihoods.put(us,sl);
                 String sc = us.getSiteClass();
                 if (ml.containsKey(sc))
@@ -249,7 +269,7 @@ public class StandardCalculator extends Calculator<StandardLikelihood>
             //again per Felsenstein 1992
             for (String sc: ml.keySet())
             {
-                l = l - (a.getClassSize(sc) * ml.get(sc).ln1m());
+                l = l - (getClassSize(sc, w) * ml.get(sc).ln1m());
             }
         }
         if (l > 0)
@@ -264,6 +284,27 @@ public class StandardCalculator extends Calculator<StandardLikelihood>
     }
     
     public SiteLikelihood calculateSite(Site s, Tree t, Parameters p, Probabilities tp, Map<String,NodeLikelihood> nl)
+    {
+        return calculateSite(t, tp, nl, getEngine().getKeepNodeLikelihoods(), getEngine());
+    }
+
+    protected SiteLikelihood calculateSite(Site s, Tree t, Parameters p, Probabilities tp, Map<String,NodeLikelihood> nl, boolean keep)
+    {
+        return calculateSite(t, tp, nl, keep, getEngine());
+    }
+
+    /**
+     * Calculates the likelihood of a single site.  Used by
+     * {@link #calculateSite(Alignments.Site, Trees.Tree, Parameters.Parameters, Likelihood.Probabilities, java.util.Map)}
+     * and by {@link StreamingCalculator}.
+     * @param t The tree
+     * @param tp Pre-calculated transition probabilities
+     * @param nl The initial node likelihoods of the site
+     * @param keep Whether to keep the node likelihoods
+     * @param engine The engine giving the numerical settings to use
+     * @return The likelihood of the site
+     */
+    static SiteLikelihood calculateSite(Tree t, Probabilities tp, Map<String,NodeLikelihood> nl, boolean keep, Engine engine)
     {    
             List<Branch> branches = t.getBranches();
             Map<RateCategory,RateLikelihood> rateLikelihoods = new HashMap<>(tp.getRateCategory().size());
@@ -329,21 +370,271 @@ public class StandardCalculator extends Calculator<StandardLikelihood>
                 ratetotal = tp.getRoot(rc).calculate(rootL);
 
                 //Store the results for that rate
-                rateLikelihoods.put(rc, new RateLikelihood(ratetotal,nodeLikelihoods));
+                rateLikelihoods.put(rc, new RateLikelihood(ratetotal,nodeLikelihoods,keep));
                 //Update the total site likelihood with the likelihood for the rate
                 //category multiplied by the probility of being in that category
             }
             //return an object containg the results for that site
-            return new SiteLikelihood(rateLikelihoods, tp);
+            return new SiteLikelihood(rateLikelihoods, tp, engine.getRealType());
     }
     
+    /**
+     * Adds sites to those the likelihood is calculated for, for example when
+     * new data is added to an alignment.  Sites that are the same as a site
+     * already included only increase how often that site occurs so only sites
+     * that are new patterns increase the work done by each calculation.  The
+     * added sites must be for the same taxa as the original alignment.
+     * @param more The sites to add
+     * @throws AlignmentException Thrown if the sites are for different taxa
+     * or a model or tree isn't given for each site class
+     * @throws Likelihood.SiteLikelihood.LikelihoodException Thrown if a node is initialised to every state having zero probability
+     *      (most probably due to the state at the node not being in the model).
+     */
+    public synchronized void addSites(Alignment more) throws AlignmentException, LikelihoodException
+    {
+        if (!more.getTaxa().equals(a.getTaxa()))
+        {
+            throw new AlignmentException("Added sites are for different taxa to the alignment");
+        }
+        if (!more.check(m))
+        {
+            throw new AlignmentException("Alignment contains classes for which no model has been defined");
+        }
+        if (!more.check(t))
+        {
+            throw new AlignmentException("Alignment contains classes for which no tree has been defined");
+        }
+        if (siteIndex == null)
+        {
+            siteIndex = new HashMap<>(sites.size());
+            for (int i = 0; i < sites.size(); i++)
+            {
+                siteIndex.put(sites.get(i), i);
+            }
+        }
+
+        //Work on a copy so calculations already in progress aren't affected
+        List<UniqueSite> ns = new ArrayList<>(sites);
+        Map<Site,Map<String,NodeLikelihood>> nsnl = new HashMap<>();
+        for (UniqueSite us: more.getUniqueSites())
+        {
+            Integer i = siteIndex.get(us);
+            if (i != null)
+            {
+                UniqueSite o = ns.get(i);
+                ns.set(i, new UniqueSite(o, o.getCount() + us.getCount()));
+            }
+            else
+            {
+                siteIndex.put(us, ns.size());
+                ns.add(us);
+                if (!snl.containsKey(us))
+                {
+                    String sc = us.getSiteClass();
+                    nsnl.put(us, getInitialNodeLikelihoods(us, m.get(sc), t.get(sc), getEngine()));
+                }
+            }
+        }
+        addSiteNodeLikelihoods(nsnl);
+        added.add(more);
+        weights = null;
+        sites = ns;
+    }
+
+    /**
+     * Gets how often each unique site occurs.  The unique sites are in the
+     * order returned by {@link Alignment#getUniqueSites()} for the alignment
+     * followed by any new unique sites added by
+     * {@link #addSites(Alignments.Alignment)} in the order they were added.
+     * @return How often each unique site occurs
+     */
+    public int[] getCounts()
+    {
+        List<UniqueSite> s = sites;
+        int[] c = new int[s.size()];
+        for (int i = 0; i < c.length; i++)
+        {
+            c[i] = s.get(i).getCount();
+        }
+        return c;
+    }
+
+    /**
+     * Sets a weight for each unique site which is used instead of how often
+     * the site occurs when combining the site likelihoods.  For example
+     * weights from {@link Resampler} give the likelihood of a bootstrap
+     * replicate without creating a new alignment or calculator.  Weights are
+     * in the same order as {@link #getCounts()}.  Sites with zero weight are
+     * not calculated, so there will be no result for them in the returned
+     * likelihoods.  Any weights are removed when sites are added.  Should not
+     * be called while a calculation is in progress.
+     * @param w The weights.  If null how often each site occurs is used.
+     * @throws Likelihood.Calculator.CalculatorException Thrown if the number
+     * of weights is not the same as the number of unique sites or a weight is
+     * negative
+     */
+    public synchronized void setWeights(double[] w) throws CalculatorException
+    {
+        if (w == null)
+        {
+            weights = null;
+            return;
+        }
+        List<UniqueSite> s = sites;
+        if (w.length != s.size())
+        {
+            throw new CalculatorException("Number of weights does not match the number of unique sites");
+        }
+        List<Site> active = new ArrayList<>(s.size());
+        Map<String,Double> classSizes = new HashMap<>();
+        for (int i = 0; i < w.length; i++)
+        {
+            if (!(w[i] >= 0.0))
+            {
+                throw new CalculatorException("Negative site weight");
+            }
+            if (w[i] > 0.0)
+            {
+                UniqueSite us = s.get(i);
+                active.add(us);
+                Double c = classSizes.get(us.getSiteClass());
+                classSizes.put(us.getSiteClass(), (c == null) ? w[i] : c + w[i]);
+            }
+        }
+        //Unobserved sites are always needed
+        if (missing != null)
+        {
+            active.addAll(missing.getUniqueSites());
+        }
+        weights = new Weights(w.clone(), active, classSizes);
+    }
+
+    protected List<Map<Site,SiteLikelihood>> siteCalculate(List<Parameters> ps, boolean keep) throws TreeException, RateException, ModelException, ParameterException, CalculatorException
+    {
+        Weights w = weights;
+        if (w == null)
+        {
+            return super.siteCalculate(ps, keep);
+        }
+        //Only calculate sites with a non-zero weight
+        return siteCalculate(ps, w.active, keep);
+    }
+
+    /**
+     * Adds sites to those the likelihood is calculated for (see
+     * {@link #addSites(Alignments.Alignment)}) and returns the likelihood
+     * including them for the same parameters as a previous result.  Only the
+     * sites that weren't included in the previous result are calculated.  The
+     * returned likelihood's parameters are a good starting point for
+     * re-optimising the parameters, for example using a
+     * {@link Optimizers.GoldenSection} with a tighter start (see
+     * {@link Optimizers.GoldenSection#setStart(double, double)}).
+     * @param more The sites to add
+     * @param previous A previous result from this calculator
+     * @return The likelihood of all the sites for the previous result's
+     * parameters
+     * @throws AlignmentException Thrown if the sites are for different taxa
+     * or a model or tree isn't given for each site class
+     * @throws Likelihood.SiteLikelihood.LikelihoodException Thrown if a node is initialised to every state having zero probability
+     *      (most probably due to the state at the node not being in the model).
+     * @throws TreeException Thrown if there is a problem with the Tree
+     * @throws Models.RateCategory.RateException Thrown if there is an issue with
+     * a rate category in the model
+     * @throws Models.Model.ModelException Thrown if there is a problem with the
+     * model
+     * @throws Parameters.Parameters.ParameterException Thrown if there is a problem
+     * with the parameters
+     * @throws Likelihood.Calculator.CalculatorException If an unexpected (i.e. positive
+     * or NaN) log likelihood is calculated
+     */
+    public StandardLikelihood addSites(Alignment more, StandardLikelihood previous) throws AlignmentException, LikelihoodException,
+            TreeException, RateException, ModelException, ParameterException, CalculatorException
+    {
+        addSites(more);
+        Parameters p = previous.getParameters();
+        Map<Site,SiteLikelihood> r = new HashMap<>(snl.size());
+        r.putAll(previous.getSiteLikelihoods());
+        if (previous.getMissingLikelihoods() != null)
+        {
+            r.putAll(previous.getMissingLikelihoods());
+        }
+        List<Site> todo = new ArrayList<>();
+        for (Site s: snl.keySet())
+        {
+            if (!r.containsKey(s))
+            {
+                todo.add(s);
+            }
+        }
+        r.putAll(siteCalculate(Collections.singletonList(p), todo).get(0));
+        return combineSites(r, p);
+    }
+
+    /**
+     * Sets the engine used for calculations.  If the engine uses a different
+     * real type to the current engine the initial node likelihoods are
+     * recreated using that type.
+     * @param engine The engine to use
+     */
+    @Override
+    public synchronized void setEngine(Engine engine)
+    {
+        boolean recreate = (engine.getRealType() != getEngine().getRealType());
+        super.setEngine(engine);
+        if (recreate)
+        {
+            HashMap<Site,Map<String,NodeLikelihood>> nsnl = new HashMap<>(snl.size());
+            try
+            {
+                for (Site s: snl.keySet())
+                {
+                    String sc = s.getSiteClass();
+                    nsnl.put(s, getInitialNodeLikelihoods(s, m.get(sc), t.get(sc), engine));
+                }
+            }
+            catch (LikelihoodException e)
+            {
+                //Shouldn't happen as these sites have already been initialised
+                //once without a problem
+                throw new UnexpectedError(e);
+            }
+            snl = nsnl;
+        }
+    }
+
     public int getAlignmentLength()
     {
-        return a.getLength();
+        int l = a.getLength();
+        for (Alignment al: added)
+        {
+            l += al.getLength();
+        }
+        return l;
+    }
+
+    private double getClassSize(String sc, Weights w)
+    {
+        if (w != null)
+        {
+            Double s = w.classSizes.get(sc);
+            return (s == null) ? 0.0 : s;
+        }
+        int s = a.getClassSize(sc);
+        for (Alignment al: added)
+        {
+            s += al.getClassSize(sc);
+        }
+        return s;
     }
     
     private Alignment a;
     private Alignment missing;
+    //The unique sites of the alignment and any added sites
+    private volatile List<UniqueSite> sites;
+    private final List<Alignment> added;
+    //Position of each unique site in sites.  Only created if sites are added.
+    private Map<Site,Integer> siteIndex;
+    private volatile Weights weights;
     
     
     private static HashMap<Site,Map<String,NodeLikelihood>> getInitialNodeLikelihoods(Map<String,Model> m, Alignment a, Map<String,Tree> t, Alignment missing) 
@@ -352,41 +643,43 @@ public class StandardCalculator extends Calculator<StandardLikelihood>
         HashMap<Site,Map<String,NodeLikelihood>> snl = new HashMap<>();
         for (UniqueSite s: a.getUniqueSites())
         {
-            Tree tt = t.get(s.getSiteClass());
-            Map<String, NodeLikelihood> nodeLikelihoods = new HashMap<>(tt.getNumberBranches() + 1);
-            for (String l: tt.getLeaves())
-            {
-                nodeLikelihoods.put(l, new NodeLikelihood(m.get(s.getSiteClass()).getMap(), s.getCharacter(l)));
-            }
-
-            //And now internal nodes using
-            for (String i: tt.getInternal())
-            {
-                nodeLikelihoods.put(i, new NodeLikelihood(m.get(s.getSiteClass()).getMap()));
-            }
-            snl.put(s, nodeLikelihoods);
+            snl.put(s, getInitialNodeLikelihoods(s, m.get(s.getSiteClass()), t.get(s.getSiteClass()), Engine.getDefault()));
         }
         if (missing != null)
         {
             for (UniqueSite s: missing.getUniqueSites())
             {
-                Tree tt = t.get(s.getSiteClass());
-                Map<String, NodeLikelihood> nodeLikelihoods = new HashMap<>(tt.getNumberBranches() + 1);
-                for (String l: tt.getLeaves())
-                {
-                    nodeLikelihoods.put(l, new NodeLikelihood(m.get(s.getSiteClass()).getMap(), s.getCharacter(l)));
-                }
-
-                //And now internal nodes using
-                for (String i: tt.getInternal())
-                {
-                    nodeLikelihoods.put(i, new NodeLikelihood(m.get(s.getSiteClass()).getMap()));
-                }
-                snl.put(s, nodeLikelihoods);
+                snl.put(s, getInitialNodeLikelihoods(s, m.get(s.getSiteClass()), t.get(s.getSiteClass()), Engine.getDefault()));
             }
         }
         return snl;
     }
+
+    /**
+     * Creates the initial node likelihoods for a site
+     * @param s The site
+     * @param m The model for the site
+     * @param tt The tree for the site
+     * @param engine The engine whose real type should be used
+     * @return Map from node to initial likelihoods
+     * @throws Likelihood.SiteLikelihood.LikelihoodException Thrown if a node is
+     * initialised to every state having zero probability
+     */
+    static Map<String, NodeLikelihood> getInitialNodeLikelihoods(Site s, Model m, Tree tt, Engine engine) throws LikelihoodException
+    {
+        Map<String, NodeLikelihood> nodeLikelihoods = new HashMap<>(tt.getNumberBranches() + 1);
+        for (String l: tt.getLeaves())
+        {
+            nodeLikelihoods.put(l, new NodeLikelihood(m.getMap(), s.getCharacter(l), engine));
+        }
+
+        //And now internal nodes using
+        for (String i: tt.getInternal())
+        {
+            nodeLikelihoods.put(i, new NodeLikelihood(m.getMap(), engine));
+        }
+        return nodeLikelihoods;
+    }
     
     private static Map<String,Model> makeModelMap(Model m)
     {
@@ -421,4 +714,21 @@ public class StandardCalculator extends Calculator<StandardLikelihood>
         }
         return tm;
     }
+
+    //The weight of each unique site together with what's needed to use them
+    private static class Weights
+    {
+        private Weights(double[] weights, List<Site> active, Map<String,Double> classSizes)
+        {
+            this.weights = weights;
+            this.active = active;
+            this.classSizes = classSizes;
+        }
+
+        private final double[] weights;
+        //Sites that need calculating
+        private final List<Site> active;
+        //Total weight of each site class
+        private final Map<String,Double> classSizes;
+    }
 }
@@ -80,6 +80,25 @@ public class StandardLikelihood extends Likelihood implements Serializable
         }
     }
     
+    /**
+     * Gets the likelihood results for every site
+     * @return Map from site to likelihood results
+     */
+    Map<Site,SiteLikelihood> getSiteLikelihoods()
+    {
+        return siteLikelihoods;
+    }
+
+    /**
+     * Gets the likelihood results for every missing site
+     * @return Map from missing site to likelihood results.  Null if there
+     * were no missing sites.
+     */
+    Map<Site,SiteLikelihood> getMissingLikelihoods()
+    {
+        return missingLikelihoods;
+    }
+
     private Map<Site,SiteLikelihood> siteLikelihoods;
     private Map<Site,SiteLikelihood> missingLikelihoods;
     
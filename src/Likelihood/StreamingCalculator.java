@@ -0,0 +1,582 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Likelihood;
+
+import Alignments.Alignment;
+import Alignments.AlignmentException;
+import Alignments.Site;
+import Alignments.UniqueSite;
+import Exceptions.OutputException;
+import Exceptions.UnexpectedError;
+import Likelihood.SiteLikelihood.LikelihoodException;
+import Likelihood.SiteLikelihood.NodeLikelihood;
+import Models.Model;
+import Models.Model.ModelException;
+import Models.RateCategory.RateException;
+import Parameters.Parameters;
+import Parameters.Parameters.ParameterException;
+import Trees.Tree;
+import Trees.TreeException;
+import Utils.DaemonThreadFactory;
+import Utils.Engine;
+import Utils.WorkerThreadFactory;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculates the likelihood of each site in a (potentially very long) sequence
+ * of sites for a single, fixed, set of parameters without holding the whole
+ * alignment or every site pattern in memory.
+ * <br><br>
+ * Sites are read in chunks.  Each site is looked up in a cache of recently
+ * seen patterns and the patterns in a chunk that aren't in the cache are
+ * calculated on the engine's threads.  The likelihood of each site is then
+ * passed, in order, to a {@link SiteWriter} which runs on its own thread.  If
+ * the writer falls behind reading stops until it catches up so memory use
+ * depends on the chunk size, cache size and queue size but not on the number
+ * of sites.  As the parameters are fixed the transition probabilities are
+ * calculated once and used for every chunk.
+ * <br><br>
+ * Can also calculate the likelihood of overlapping windows of an alignment
+ * (see {@link #calculateWindows(Alignments.Alignment, int, int)}).
+ * <br><br>
+ * Unobserved data (see {@link StandardCalculator}) is not supported.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class StreamingCalculator
+{
+    /**
+     * Creates a calculator for sites that have no class
+     * @param m The model
+     * @param t The tree
+     * @param p The parameters
+     * @throws TreeException If there is a problem with the tree
+     * @throws Models.RateCategory.RateException If there is a problem with a
+     * rate category in the model
+     * @throws Models.Model.ModelException If there is a problem with the model
+     * @throws Parameters.Parameters.ParameterException If a required parameter
+     * is missing
+     */
+    public StreamingCalculator(Model m, Tree t, Parameters p) throws TreeException, RateException, ModelException, ParameterException
+    {
+        this(single(m), single(t), p, Engine.getDefault());
+    }
+
+    /**
+     * Creates a calculator.  There should be one model and tree per site
+     * class.
+     * @param m Map from site class to model
+     * @param t Map from site class to tree
+     * @param p The parameters
+     * @param engine The engine to use for the calculations
+     * @throws TreeException If there is a problem with a tree
+     * @throws Models.RateCategory.RateException If there is a problem with a
+     * rate category in a model
+     * @throws Models.Model.ModelException If there is a problem with a model
+     * @throws Parameters.Parameters.ParameterException If a required parameter
+     * is missing
+     */
+    public StreamingCalculator(Map<String,Model> m, Map<String,Tree> t, Parameters p, Engine engine)
+            throws TreeException, RateException, ModelException, ParameterException
+    {
+        this.m = m;
+        this.t = t;
+        this.engine = engine;
+        Calculator.addBranchLengths(t, p);
+        //Parameters are fixed so the probabilities are only calculated once
+        tps = new HashMap<>(m.size());
+        for (Entry<String,Model> e: m.entrySet())
+        {
+            if (!t.containsKey(e.getKey()))
+            {
+                throw new TreeException("No tree for site class " + e.getKey());
+            }
+            tps.put(e.getKey(), new Probabilities(e.getValue().snapshot(p, engine), t.get(e.getKey()), p));
+        }
+        chunkSize = 1 << 16;
+        cacheSize = 1 << 18;
+        queueSize = 4;
+    }
+
+    /**
+     * Sets the number of sites read in each chunk.  Default is 65536.
+     * @param chunkSize The number of sites
+     */
+    public void setChunkSize(int chunkSize)
+    {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Sets the maximum number of site patterns to remember the likelihood of.
+     * When full the least recently seen pattern is forgotten.  Default is
+     * 262144.
+     * @param cacheSize The number of patterns
+     */
+    public void setCacheSize(int cacheSize)
+    {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Sets the number of calculated chunks that can be waiting to be written
+     * before reading stops.  Default is 4.
+     * @param queueSize The number of chunks
+     */
+    public void setQueueSize(int queueSize)
+    {
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Calculates the likelihood of each site
+     * @param sites The sites, for example an {@link Alignments.Alignment}
+     * @param out Where to write the likelihood of each site
+     * @return The total log likelihood of the sites
+     * @throws AlignmentException If a site's class has no model
+     * @throws Likelihood.SiteLikelihood.LikelihoodException If a node of a site
+     * is initialised to every state having zero probability
+     * @throws OutputException If the writer has a problem
+     */
+    public double calculate(Iterable<Site> sites, SiteWriter out) throws AlignmentException, LikelihoodException, OutputException
+    {
+        return calculate(sites.iterator(), out);
+    }
+
+    /**
+     * Calculates the likelihood of each site
+     * @param sites Iterator over the sites
+     * @param out Where to write the likelihood of each site
+     * @return The total log likelihood of the sites
+     * @throws AlignmentException If a site's class has no model
+     * @throws Likelihood.SiteLikelihood.LikelihoodException If a node of a site
+     * is initialised to every state having zero probability
+     * @throws OutputException If the writer has a problem
+     */
+    public double calculate(Iterator<Site> sites, SiteWriter out) throws AlignmentException, LikelihoodException, OutputException
+    {
+        Map<Site,Double> cache = new PatternCache(cacheSize);
+        Writer writer = new Writer(out, queueSize);
+        Thread wt = new DaemonThreadFactory().newThread(writer);
+        wt.start();
+
+        double total = 0.0;
+        long position = 0;
+        try
+        {
+            while (sites.hasNext())
+            {
+                //Read the chunk, taking the likelihood of patterns that have
+                //been seen before from the cache and finding the patterns
+                //that need calculating
+                List<Site> chunk = new ArrayList<>(chunkSize);
+                List<SiteTask> pending = new ArrayList<>(chunkSize);
+                Map<Site,SiteTask> tasks = new LinkedHashMap<>();
+                double[] l = new double[chunkSize];
+                while (sites.hasNext() && (chunk.size() < chunkSize))
+                {
+                    Site s = sites.next();
+                    Double r = cache.get(s);
+                    SiteTask st = null;
+                    if (r != null)
+                    {
+                        l[chunk.size()] = r;
+                    }
+                    else
+                    {
+                        st = tasks.get(s);
+                        if (st == null)
+                        {
+                            st = task(s);
+                            tasks.put(s, st);
+                        }
+                    }
+                    chunk.add(s);
+                    pending.add(st);
+                }
+
+                run(new ArrayList<>(tasks.values()));
+                for (Entry<Site,SiteTask> e: tasks.entrySet())
+                {
+                    cache.put(e.getKey(), e.getValue().result);
+                }
+
+                l = Arrays.copyOf(l, chunk.size());
+                for (int i = 0; i < l.length; i++)
+                {
+                    if (pending.get(i) != null)
+                    {
+                        l[i] = pending.get(i).result;
+                    }
+                    total += l[i];
+                }
+
+                //Blocks if the writer has fallen behind
+                writer.put(new Chunk(position, chunk, l));
+                position += l.length;
+            }
+            writer.put(Chunk.END);
+            wt.join();
+        }
+        catch (InterruptedException ex)
+        {
+            throw new UnexpectedError(ex);
+        }
+        finally
+        {
+            writer.stop();
+        }
+        writer.check();
+        return total;
+    }
+
+    /**
+     * Calculates the likelihood of each window of an alignment.  The i-th
+     * window starts at site i * step and is window sites long.  Only windows
+     * that fit entirely within the alignment are included.
+     * <br><br>
+     * Each unique site in the alignment is calculated once and the
+     * likelihood of each window is found from the previous one by adding the
+     * sites that enter it and removing those that leave so the time taken
+     * depends on the length of the alignment rather than the number of
+     * windows times their length.
+     * @param a The alignment
+     * @param window The number of sites in each window
+     * @param step The number of sites between the start of each window
+     * @return The log likelihood of each window
+     * @throws AlignmentException If a site's class has no model or the window
+     * or step is less than one
+     * @throws Likelihood.SiteLikelihood.LikelihoodException If a node of a site
+     * is initialised to every state having zero probability
+     */
+    public double[] calculateWindows(Alignment a, int window, int step) throws AlignmentException, LikelihoodException
+    {
+        if ((window < 1) || (step < 1))
+        {
+            throw new AlignmentException("Window and step must both be at least one");
+        }
+        int length = a.getLength();
+        if (length < window)
+        {
+            return new double[0];
+        }
+
+        //Each unique site is only calculated once
+        List<UniqueSite> us = a.getUniqueSites();
+        List<SiteTask> tasks = new ArrayList<>(us.size());
+        for (UniqueSite s: us)
+        {
+            tasks.add(task(s));
+        }
+        try
+        {
+            run(tasks);
+        }
+        catch (InterruptedException ex)
+        {
+            throw new UnexpectedError(ex);
+        }
+        double[] pl = new double[tasks.size()];
+        for (int i = 0; i < pl.length; i++)
+        {
+            pl[i] = tasks.get(i).result;
+        }
+
+        int[] sites = a.getUniqueSiteIndices();
+        double[] l = new double[(length - window) / step + 1];
+        double sum = 0.0;
+        int start = 0;
+        int end = 0;
+        for (int w = 0; w < l.length; w++)
+        {
+            int ns = w * step;
+            if (ns >= end)
+            {
+                //No overlap with the previous window so start again
+                sum = 0.0;
+                start = ns;
+                end = ns;
+            }
+            for (; start < ns; start++)
+            {
+                sum -= pl[sites[start]];
+            }
+            for (; end < ns + window; end++)
+            {
+                sum += pl[sites[end]];
+            }
+            l[w] = sum;
+        }
+        return l;
+    }
+
+    private SiteTask task(Site s) throws AlignmentException, LikelihoodException
+    {
+        String c = s.getSiteClass();
+        if (!m.containsKey(c))
+        {
+            throw new AlignmentException("Alignment contains classes for which no model has been defined");
+        }
+        return new SiteTask(t.get(c), tps.get(c), StandardCalculator.getInitialNodeLikelihoods(s, m.get(c), t.get(c), engine));
+    }
+
+    private void run(List<SiteTask> tasks) throws InterruptedException
+    {
+        //Don't use the threads if there's only one or we're already running
+        //on one as that could deadlock
+        if ((engine.getThreads() == 1) || (tasks.size() < 2) || WorkerThreadFactory.inWorker())
+        {
+            for (SiteTask st: tasks)
+            {
+                st.call();
+            }
+            return;
+        }
+        for (Future<Void> f: engine.getExecutor().invokeAll(tasks))
+        {
+            try
+            {
+                f.get();
+            }
+            catch (ExecutionException ex)
+            {
+                throw new UnexpectedError(ex.getCause());
+            }
+        }
+    }
+
+    /**
+     * Creates a writer that prints the position (starting at zero) and log
+     * likelihood of each site, separated by a tab, one site per line
+     * @param out The stream to print to
+     * @return The writer
+     */
+    public static SiteWriter toPrintStream(final PrintStream out)
+    {
+        return new SiteWriter()
+        {
+            public void write(long position, Site s, double l) throws OutputException
+            {
+                out.print(position);
+                out.print('\t');
+                out.println(l);
+            }
+
+            public void close() throws OutputException
+            {
+                out.flush();
+                if (out.checkError())
+                {
+                    throw new OutputException("N/A", "Unable to write site likelihoods", null);
+                }
+            }
+        };
+    }
+
+    private static <V> Map<String,V> single(V v)
+    {
+        Map<String,V> map = new HashMap<>();
+        map.put(null, v);
+        return map;
+    }
+
+    private final Map<String,Model> m;
+    private final Map<String,Tree> t;
+    private final Map<String,Probabilities> tps;
+    private final Engine engine;
+    private int chunkSize;
+    private int cacheSize;
+    private int queueSize;
+
+    /**
+     * Receives the likelihood of each site in the order the sites were read.
+     * Called from a single thread which is not the thread that called
+     * {@link StreamingCalculator#calculate(java.util.Iterator, Likelihood.StreamingCalculator.SiteWriter)}.
+     */
+    public interface SiteWriter
+    {
+        /**
+         * Called with the likelihood of each site
+         * @param position The position of the site, starting at zero
+         * @param s The site
+         * @param l The log likelihood of the site
+         * @throws OutputException If there is a problem writing
+         */
+        public void write(long position, Site s, double l) throws OutputException;
+
+        /**
+         * Called after the last site has been written
+         * @throws OutputException If there is a problem writing
+         */
+        public void close() throws OutputException;
+    }
+
+    private class SiteTask implements Callable<Void>
+    {
+        private SiteTask(Tree t, Probabilities tp, Map<String,NodeLikelihood> nl)
+        {
+            this.t = t;
+            this.tp = tp;
+            this.nl = nl;
+        }
+
+        public Void call()
+        {
+            //Only the likelihood is used so never keep the node likelihoods
+            result = StandardCalculator.calculateSite(t, tp, nl, false, engine).getLikelihood().ln();
+            //The initial node likelihoods aren't needed any more
+            nl = null;
+            return null;
+        }
+
+        private final Tree t;
+        private final Probabilities tp;
+        private Map<String,NodeLikelihood> nl;
+        private double result;
+    }
+
+    //Remembers the likelihood of the most recently used patterns
+    private static class PatternCache extends LinkedHashMap<Site,Double>
+    {
+        private PatternCache(int size)
+        {
+            super(16, 0.75f, true);
+            this.size = size;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<Site,Double> eldest)
+        {
+            return size() > size;
+        }
+
+        private final int size;
+
+        private static final long serialVersionUID = 1;
+    }
+
+    private static class Chunk
+    {
+        private Chunk(long position, List<Site> sites, double[] l)
+        {
+            this.position = position;
+            this.sites = sites;
+            this.l = l;
+        }
+
+        private final long position;
+        private final List<Site> sites;
+        private final double[] l;
+
+        private static final Chunk END = new Chunk(-1, null, null);
+    }
+
+    //Writes chunks from a bounded queue on its own thread
+    private static class Writer implements Runnable
+    {
+        private Writer(SiteWriter out, int size)
+        {
+            this.out = out;
+            queue = new ArrayBlockingQueue<>(size);
+            error = null;
+            stopped = false;
+        }
+
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    Chunk c = queue.take();
+                    if (c == Chunk.END)
+                    {
+                        break;
+                    }
+                    for (int i = 0; i < c.l.length; i++)
+                    {
+                        out.write(c.position + i, c.sites.get(i), c.l[i]);
+                    }
+                }
+                out.close();
+            }
+            catch (OutputException ex)
+            {
+                error = ex;
+            }
+            catch (InterruptedException ex)
+            {
+                //Only happens if the calculation has been abandoned
+            }
+            finally
+            {
+                stopped = true;
+            }
+        }
+
+        //Waits for space in the queue, giving up if the writer has stopped
+        private void put(Chunk c) throws InterruptedException, OutputException
+        {
+            while (!queue.offer(c, 100, TimeUnit.MILLISECONDS))
+            {
+                if (stopped)
+                {
+                    check();
+                    throw new UnexpectedError();
+                }
+            }
+        }
+
+        //If the calculation is abandoned make sure the writer doesn't wait
+        //for ever
+        private void stop()
+        {
+            if (!stopped)
+            {
+                queue.clear();
+                queue.offer(Chunk.END);
+            }
+        }
+
+        private void check() throws OutputException
+        {
+            if (error != null)
+            {
+                throw error;
+            }
+        }
+
+        private final SiteWriter out;
+        private final BlockingQueue<Chunk> queue;
+        private volatile OutputException error;
+        private volatile boolean stopped;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Maths;
+
+/**
+ * A function parser that can also evaluate its functions on an array of
+ * primitive doubles.  Implementing this is optional but avoids boxing the
+ * inputs when the function is evaluated as part of a {@link FunctionProgram}.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public interface ArrayFunctionParser extends FunctionParser
+{
+    /**
+     * A function that evaluates all the functions implemented
+     * @param function The function name
+     * @param variables An array of inputs in the order they appear in the function
+     *      call
+     * @return The numerical result of the function
+     * @throws WrongNumberOfVariables Thrown when the incorrect number of inputs
+     *      to that function is passed.
+     * @throws NoSuchFunction Thrown when the class can't parse a function of
+     *      that name
+     */
+    public double evaluate(String function, double[] variables) throws WrongNumberOfVariables, NoSuchFunction;
+}
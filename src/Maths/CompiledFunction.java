@@ -39,6 +39,27 @@ public interface CompiledFunction
      * @return The list of variable names tyhat need to be passed
      */
     public Set<String> neededParams();
+    /**
+     * Computes the result of the function and its directional derivative
+     * using forward mode automatic differentiation.  To get the derivative with
+     * respect to a single variable pass a map containing only that variable
+     * with a value of 1.0.
+     * @param values Map from variable name to value
+     * @param derivatives Map from variable name to the derivative of that
+     * variable.  Variables not in the map are taken to have a derivative of 0.
+     * @return The value and derivative of the function
+     * @throws NoSuchVariable Thrown if values does not contain a needed variable
+     */
+    public Dual computeDual(Map<String,Double> values, Map<String,Double> derivatives) throws NoSuchVariable;
+    /**
+     * Adds this function to a program that evaluates several functions together
+     * @param builder The builder of the program
+     * @return The number of the operation in the program that gives this
+     * function's result
+     * @throws NoSuchVariable Thrown if the builder has not been given a slot for
+     * a needed variable
+     */
+    public int addTo(FunctionProgram.Builder builder) throws NoSuchVariable;
     
     /**
      * Represents a variable - simply returns the value of the variable
@@ -66,6 +87,24 @@ public interface CompiledFunction
             }
         }
         
+        public int addTo(FunctionProgram.Builder builder) throws NoSuchVariable
+        {
+            return builder.variable(v);
+        }
+        
+        public Dual computeDual(Map<String,Double> values, Map<String,Double> derivatives) throws NoSuchVariable
+        {
+            if (values.containsKey(v))
+            {
+                Double d = derivatives.get(v);
+                return new Dual(values.get(v), (d == null) ? 0.0 : d);
+            }
+            else
+            {
+                throw new NoSuchVariable(v);
+            }
+        }
+        
         public Set<String> neededParams()
         {
             Set<String> ret = new TreeSet<>();
@@ -94,6 +133,25 @@ public interface CompiledFunction
         {
             return d;
         }
+
+        /**
+         * Gets the value of the constant
+         * @return The value
+         */
+        public double getValue()
+        {
+            return d;
+        }
+        
+        public int addTo(FunctionProgram.Builder builder)
+        {
+            return builder.constant(d);
+        }
+        
+        public Dual computeDual(Map<String,Double> values, Map<String,Double> derivatives)
+        {
+            return new Dual(d, 0.0);
+        }
         
         public Set<String> neededParams()
         {
@@ -124,6 +182,18 @@ public interface CompiledFunction
             return a.compute(values) + b.compute(values);
         }
         
+        public int addTo(FunctionProgram.Builder builder) throws NoSuchVariable
+        {
+            return builder.arithmetic(FunctionProgram.ADD, a.addTo(builder), b.addTo(builder));
+        }
+        
+        public Dual computeDual(Map<String,Double> values, Map<String,Double> derivatives) throws NoSuchVariable
+        {
+            Dual da = a.computeDual(values, derivatives);
+            Dual db = b.computeDual(values, derivatives);
+            return new Dual(da.getValue() + db.getValue(), da.getDerivative() + db.getDerivative());
+        }
+        
         public Set<String> neededParams()
         {
             Set<String> ret = a.neededParams();
@@ -156,6 +226,18 @@ public interface CompiledFunction
             return a.compute(values) - b.compute(values);
         }
         
+        public int addTo(FunctionProgram.Builder builder) throws NoSuchVariable
+        {
+            return builder.arithmetic(FunctionProgram.SUBTRACT, a.addTo(builder), b.addTo(builder));
+        }
+        
+        public Dual computeDual(Map<String,Double> values, Map<String,Double> derivatives) throws NoSuchVariable
+        {
+            Dual da = a.computeDual(values, derivatives);
+            Dual db = b.computeDual(values, derivatives);
+            return new Dual(da.getValue() - db.getValue(), da.getDerivative() - db.getDerivative());
+        }
+        
         public Set<String> neededParams()
         {
             Set<String> ret = a.neededParams();
@@ -188,6 +270,19 @@ public interface CompiledFunction
             return a.compute(values) * b.compute(values);
         }
         
+        public int addTo(FunctionProgram.Builder builder) throws NoSuchVariable
+        {
+            return builder.arithmetic(FunctionProgram.MULTIPLY, a.addTo(builder), b.addTo(builder));
+        }
+        
+        public Dual computeDual(Map<String,Double> values, Map<String,Double> derivatives) throws NoSuchVariable
+        {
+            Dual da = a.computeDual(values, derivatives);
+            Dual db = b.computeDual(values, derivatives);
+            return new Dual(da.getValue() * db.getValue(),
+                    da.getDerivative() * db.getValue() + da.getValue() * db.getDerivative());
+        }
+        
         public Set<String> neededParams()
         {
             Set<String> ret = a.neededParams();
@@ -220,6 +315,20 @@ public interface CompiledFunction
             return a.compute(values) / b.compute(values);
         }
         
+        public int addTo(FunctionProgram.Builder builder) throws NoSuchVariable
+        {
+            return builder.arithmetic(FunctionProgram.DIVIDE, a.addTo(builder), b.addTo(builder));
+        }
+        
+        public Dual computeDual(Map<String,Double> values, Map<String,Double> derivatives) throws NoSuchVariable
+        {
+            Dual da = a.computeDual(values, derivatives);
+            Dual db = b.computeDual(values, derivatives);
+            double vb = db.getValue();
+            return new Dual(da.getValue() / vb,
+                    (da.getDerivative() * vb - da.getValue() * db.getDerivative()) / (vb * vb));
+        }
+        
         public Set<String> neededParams()
         {
             Set<String> ret = a.neededParams();
@@ -252,6 +361,32 @@ public interface CompiledFunction
             return Math.pow(a.compute(values), b.compute(values));
         }
         
+        public int addTo(FunctionProgram.Builder builder) throws NoSuchVariable
+        {
+            return builder.arithmetic(FunctionProgram.POWER, a.addTo(builder), b.addTo(builder));
+        }
+        
+        public Dual computeDual(Map<String,Double> values, Map<String,Double> derivatives) throws NoSuchVariable
+        {
+            Dual da = a.computeDual(values, derivatives);
+            Dual db = b.computeDual(values, derivatives);
+            double va = da.getValue();
+            double vb = db.getValue();
+            double v = Math.pow(va, vb);
+            //Treat each part seperately so a constant exponent works for
+            //non-positive a and a constant base doesn't need a^(b-1)
+            double d = 0.0;
+            if (da.getDerivative() != 0.0)
+            {
+                d += vb * Math.pow(va, vb - 1.0) * da.getDerivative();
+            }
+            if (db.getDerivative() != 0.0)
+            {
+                d += v * Math.log(va) * db.getDerivative();
+            }
+            return new Dual(v, d);
+        }
+        
         public Set<String> neededParams()
         {
             Set<String> ret = a.neededParams();
@@ -305,6 +440,52 @@ public interface CompiledFunction
             }
         }
         
+        public int addTo(FunctionProgram.Builder builder) throws NoSuchVariable
+        {
+            int[] in = new int[inputs.length];
+            for (int i = 0; i < inputs.length; i++)
+            {
+                in[i] = inputs[i].addTo(builder);
+            }
+            return builder.function(p, name, in);
+        }
+        
+        public Dual computeDual(Map<String,Double> values, Map<String,Double> derivatives) throws NoSuchVariable
+        {
+            double[] vars = new double[inputs.length];
+            double[] ds = new double[inputs.length];
+            for (int i = 0; i < inputs.length; i++)
+            {
+                Dual di = inputs[i].computeDual(values, derivatives);
+                vars[i] = di.getValue();
+                ds[i] = di.getDerivative();
+            }
+            try
+            {
+                Double[] boxed = new Double[inputs.length];
+                for (int i = 0; i < inputs.length; i++)
+                {
+                    boxed[i] = vars[i];
+                }
+                double v = p.evaluate(name, boxed);
+                double d = 0.0;
+                for (int i = 0; i < inputs.length; i++)
+                {
+                    //Only need the partial derivative if the input changes
+                    if (ds[i] != 0.0)
+                    {
+                        d += partial(vars, i) * ds[i];
+                    }
+                }
+                return new Dual(v, d);
+            }
+            catch (WrongNumberOfVariables | NoSuchFunction e)
+            {
+                //Should never get here
+                return new Dual(0.0, 0.0);
+            }
+        }
+        
         public Set<String> neededParams()
         {
             Set<String> ret = new TreeSet<>();
@@ -315,6 +496,45 @@ public interface CompiledFunction
             return ret;
         }
         
+        //Partial derivative with respect to one input.  Uses the parser if it
+        //can provide it, else central differences.
+        private double partial(double[] vars, int input) throws WrongNumberOfVariables, NoSuchFunction
+        {
+            if (p instanceof DifferentiableFunctionParser)
+            {
+                return ((DifferentiableFunctionParser) p).partial(name, vars, input);
+            }
+            return centralDifference(p, name, vars, input);
+        }
+
+        /**
+         * Calculates the partial derivative of a function numerically using
+         * central differences
+         * @param p The function parser
+         * @param name The name of the function
+         * @param vars The inputs to the function
+         * @param input The (0-indexed) input to differentiate with respect to
+         * @return The partial derivative
+         * @throws WrongNumberOfVariables Thrown when the incorrect number of inputs
+         *      to that function is passed.
+         * @throws NoSuchFunction Thrown when the parser can't parse a function of
+         *      that name
+         */
+        public static double centralDifference(FunctionParser p, String name, double[] vars, int input) throws WrongNumberOfVariables, NoSuchFunction
+        {
+            double h = 1e-6 * Math.max(Math.abs(vars[input]), 1.0);
+            Double[] up = new Double[vars.length];
+            Double[] down = new Double[vars.length];
+            for (int i = 0; i < vars.length; i++)
+            {
+                up[i] = vars[i];
+                down[i] = vars[i];
+            }
+            up[input] = vars[input] + h;
+            down[input] = vars[input] - h;
+            return (p.evaluate(name, up) - p.evaluate(name, down)) / (up[input] - down[input]);
+        }
+
         private FunctionParser p;
         private String name;
         private CompiledFunction[] inputs;
@@ -0,0 +1,43 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Maths;
+
+/**
+ * A function parser that can also give the partial derivatives of its
+ * functions.  Implementing this is optional - derivatives of functions from
+ * other parsers are calculated numerically by central differences.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public interface DifferentiableFunctionParser extends FunctionParser
+{
+    /**
+     * Calculates the partial derivative of a function with respect to one of
+     * its inputs
+     * @param function The function name
+     * @param variables An array of inputs in the order they appear in the function
+     *      call
+     * @param input The (0-indexed) input to differentiate with respect to
+     * @return The partial derivative
+     * @throws WrongNumberOfVariables Thrown when the incorrect number of inputs
+     *      to that function is passed.
+     * @throws NoSuchFunction Thrown when the class can't parse a function of
+     *      that name
+     */
+    public double partial(String function, double[] variables, int input) throws WrongNumberOfVariables, NoSuchFunction;
+}
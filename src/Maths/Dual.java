@@ -0,0 +1,60 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Maths;
+
+/**
+ * A dual number, i.e. the value of a function together with its derivative
+ * in some direction.  Returned by
+ * {@link CompiledFunction#computeDual(java.util.Map, java.util.Map)}.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public final class Dual
+{
+    /**
+     * Default constructor
+     * @param value The value
+     * @param derivative The derivative
+     */
+    public Dual(double value, double derivative)
+    {
+        this.value = value;
+        this.derivative = derivative;
+    }
+
+    /**
+     * Gets the value
+     * @return The value
+     */
+    public double getValue()
+    {
+        return value;
+    }
+
+    /**
+     * Gets the derivative
+     * @return The derivative
+     */
+    public double getDerivative()
+    {
+        return derivative;
+    }
+
+    private final double value;
+    private final double derivative;
+}
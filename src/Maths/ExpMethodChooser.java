@@ -0,0 +1,368 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Maths;
+
+import Maths.EigenvalueDecomposition.ConvergenceException;
+import Maths.SquareMatrix.Calculation;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses the matrix exponentiation method for a series of related matrices,
+ * typically the successive rate matrices of one rate category as its
+ * parameters change.  Used when the exponentiation method is set to
+ * {@link Calculation#AUTO}.
+ * <br><br>
+ * The size, norm, sparsity and reversibility of the first matrix are used to
+ * make the choice straight away where the answer is clear.  A reversible
+ * matrix has real eigenvalues and is similar to a symmetric matrix so for
+ * large reversible matrices the eigendecomposition method is used.  For tiny
+ * or very sparse matrices with a small norm the Taylor method needs few
+ * multiplications and little scaling so it is used.  Otherwise the two
+ * methods are tried alternately on the first few matrices and the one
+ * with the lowest measured cost per matrix is used from then on.  Each matrix
+ * is timed through the {@link Sample} returned by
+ * {@link #choose(Maths.SquareMatrix)} so matrices can be exponentiated by
+ * different threads at the same time.  A matrix's cost is the time recorded
+ * for it up until the next matrix is requested.  The time taken by
+ * {@link #choose(Maths.SquareMatrix)} should be included in the first time
+ * passed to the sample as for the eigendecomposition method that includes the
+ * decomposition.  Whenever the eigendecomposition method is about to be used
+ * the matrix is checked for complex eigenvalues (which that method does not
+ * handle) and if any are found, or the decomposition does not converge, the
+ * Taylor method is used from then on.  The method chosen, and the reason it
+ * was chosen along with the properties of the first matrix, can be retrieved
+ * once a choice has been made.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class ExpMethodChooser implements Serializable
+{
+    /**
+     * Gets the method to use for a new matrix
+     * @param m The matrix
+     * @return The sample used to time exponentiating the matrix and which
+     * gives the method to use
+     */
+    public synchronized Sample choose(SquareMatrix m)
+    {
+        if (properties == null)
+        {
+            properties = describe(m);
+            prior();
+        }
+
+        Calculation c = chosen;
+        boolean trial = false;
+        if (c == null)
+        {
+            c = (taylorStarted <= eigenStarted) ? Calculation.TAYLOR : Calculation.EIGEN;
+            trial = true;
+        }
+
+        //The eigendecomposition method is only valid for real eigenvalues.  Need
+        //to check every matrix as this may depend on the parameters but the
+        //decomposition is cached so is not wasted.
+        if (c == Calculation.EIGEN)
+        {
+            try
+            {
+                if (!m.hasRealEigenvalues(1e-10 * Math.max(m.norm(), 1.0)))
+                {
+                    choose(Calculation.TAYLOR, "complex eigenvalues so eigendecomposition method not valid");
+                    return new Sample(this, chosen, false);
+                }
+            }
+            catch (ConvergenceException ex)
+            {
+                choose(Calculation.TAYLOR, "eigendecomposition does not converge");
+                return new Sample(this, chosen, false);
+            }
+        }
+
+        //A matrix's time is the time taken up to when the next matrix is
+        //requested
+        for (Sample s: open)
+        {
+            close(s);
+        }
+        open.clear();
+
+        Sample s = new Sample(this, c, trial);
+        if (trial)
+        {
+            //The first matrix for each method is likely to be slowed by JIT
+            //compilation so isn't used
+            if (c == Calculation.TAYLOR)
+            {
+                s.warmup = (taylorStarted++ < WARMUP);
+            }
+            else
+            {
+                s.warmup = (eigenStarted++ < WARMUP);
+            }
+            open.add(s);
+        }
+        return s;
+    }
+
+    /**
+     * Gets the method that has been chosen
+     * @return The method or null if no choice has been made yet
+     */
+    public synchronized Calculation getChosen()
+    {
+        return chosen;
+    }
+
+    /**
+     * Gets a description of why the method was chosen
+     * @return The reason or null if no choice has been made yet
+     */
+    public synchronized String getReason()
+    {
+        return reason;
+    }
+
+    //Records the properties of the first matrix
+    private String describe(SquareMatrix m)
+    {
+        double[][] a = m.getArray();
+        size = a.length;
+        norm = m.norm();
+        int zeros = 0;
+        for (int i = 0; i < size; i++)
+        {
+            for (int j = 0; j < size; j++)
+            {
+                if (a[i][j] == 0.0)
+                {
+                    zeros++;
+                }
+            }
+        }
+        zero = (size == 0) ? 0.0 : (double) zeros / (size * size);
+        reversible = reversible(a);
+        return String.format("size %d, norm %.3g, %d%% zero%s", size, norm,
+                (int) (100 * zero), reversible ? ", reversible" : "");
+    }
+
+    //Makes the choice without timing if the properties of the first matrix
+    //make it clear which method is best
+    private void prior()
+    {
+        if (reversible && (size >= EIGEN_SIZE))
+        {
+            choose(Calculation.EIGEN, "large reversible matrix");
+        }
+        else if (((size <= TAYLOR_SIZE) || (zero >= TAYLOR_ZERO)) && (norm <= TAYLOR_NORM))
+        {
+            choose(Calculation.TAYLOR, (size <= TAYLOR_SIZE) ? "tiny matrix with small norm"
+                    : "sparse matrix with small norm");
+        }
+    }
+
+    //Whether there is a positive pi with pi_i a_ij = pi_j a_ji for every i
+    //and j, i.e. the matrix is reversible and so has real eigenvalues.  Finds
+    //pi by walking out from each state in turn over the non-zero entries and
+    //then checks every pair.
+    private static boolean reversible(double[][] a)
+    {
+        int n = a.length;
+        double[] pi = new double[n];
+        boolean[] found = new boolean[n];
+        int[] queue = new int[n];
+        for (int s = 0; s < n; s++)
+        {
+            if (found[s])
+            {
+                continue;
+            }
+            found[s] = true;
+            pi[s] = 1.0;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = s;
+            while (head < tail)
+            {
+                int i = queue[head++];
+                for (int j = 0; j < n; j++)
+                {
+                    if (!found[j] && (a[i][j] != 0.0) && (a[j][i] != 0.0))
+                    {
+                        double ratio = a[i][j] / a[j][i];
+                        if (!(ratio > 0.0))
+                        {
+                            return false;
+                        }
+                        found[j] = true;
+                        pi[j] = pi[i] * ratio;
+                        queue[tail++] = j;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = i + 1; j < n; j++)
+            {
+                double ij = pi[i] * a[i][j];
+                double ji = pi[j] * a[j][i];
+                if (Math.abs(ij - ji) > REVERSIBLE_TOLERANCE * Math.max(Math.abs(ij), Math.abs(ji)))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    //Adds the time taken on a trial matrix to the total for its method
+    private void close(Sample s)
+    {
+        s.closed = true;
+        if ((chosen != null) || s.warmup)
+        {
+            return;
+        }
+        if (s.method == Calculation.TAYLOR)
+        {
+            taylorTime += s.total;
+            taylorCount++;
+        }
+        else
+        {
+            eigenTime += s.total;
+            eigenCount++;
+        }
+
+        if ((taylorCount >= TRIALS) && (eigenCount >= TRIALS))
+        {
+            double taylor = (double) taylorTime / taylorCount;
+            double eigen = (double) eigenTime / eigenCount;
+            String timing = String.format("measured %.3gms Taylor, %.3gms eigendecomposition per matrix",
+                    taylor / 1e6, eigen / 1e6);
+            if (taylor <= eigen)
+            {
+                choose(Calculation.TAYLOR, timing);
+            }
+            else
+            {
+                choose(Calculation.EIGEN, timing);
+            }
+        }
+    }
+
+    private void choose(Calculation c, String why)
+    {
+        chosen = c;
+        reason = properties + ": " + why;
+    }
+
+    private Calculation chosen = null;
+    private String reason = null;
+    private String properties = null;
+    private int size;
+    private double norm;
+    private double zero;
+    private boolean reversible;
+    private int taylorStarted = 0;
+    private int eigenStarted = 0;
+    private long taylorTime = 0;
+    private long eigenTime = 0;
+    private int taylorCount = 0;
+    private int eigenCount = 0;
+    private transient List<Sample> open = new ArrayList<>();
+
+    //Number of matrices to time with each method before choosing
+    private static final int TRIALS = 3;
+    //Number of matrices for each method that are ignored before timing
+    private static final int WARMUP = 1;
+    //Reversible matrices at least this size use the eigendecomposition method
+    private static final int EIGEN_SIZE = 20;
+    //Matrices with a norm at most this that are at most this size or have
+    //at least this proportion of zeros use the Taylor method
+    private static final double TAYLOR_NORM = 4.0;
+    private static final int TAYLOR_SIZE = 3;
+    private static final double TAYLOR_ZERO = 0.75;
+    //Relative tolerance when checking for reversibility
+    private static final double REVERSIBLE_TOLERANCE = 1e-8;
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        open = new ArrayList<>();
+    }
+
+    private static final long serialVersionUID = 1;
+
+    /**
+     * Times the exponentiations of one matrix.  Should only be used by one
+     * thread at a time.
+     */
+    public static final class Sample
+    {
+        private Sample(ExpMethodChooser chooser, Calculation method, boolean trial)
+        {
+            this.chooser = chooser;
+            this.method = method;
+            this.trial = trial;
+            warmup = false;
+            closed = false;
+            total = 0;
+        }
+
+        /**
+         * Gets the method to use for this matrix
+         * @return The method
+         */
+        public Calculation getMethod()
+        {
+            return method;
+        }
+
+        /**
+         * Adds to the time taken for this matrix
+         * @param nanos Time taken in nanoseconds
+         */
+        public void time(long nanos)
+        {
+            if (trial)
+            {
+                synchronized (chooser)
+                {
+                    if (!closed)
+                    {
+                        total += nanos;
+                    }
+                }
+            }
+        }
+
+        private final ExpMethodChooser chooser;
+        private final Calculation method;
+        private final boolean trial;
+        private boolean warmup;
+        private boolean closed;
+        private long total;
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Maths;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates a group of compiled functions (for example every entry of a rate
+ * matrix) as a single program.  The functions are combined into one directed
+ * acyclic graph so a sub-expression that appears in more than one function, or
+ * more than once in the same function, is only evaluated once.  Arithmetic
+ * on constants is done when the program is built.
+ * <br><br>
+ * Variables are read from a fixed position in an array of values.
+ * Functions defined by a {@link FunctionParser} are assumed to always return the
+ * same result for the same inputs but are never evaluated when the program is
+ * built.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class FunctionProgram
+{
+    private FunctionProgram(Builder b)
+    {
+        size = b.op.size();
+        ops = new int[size];
+        as = new int[size];
+        bs = new int[size];
+        initial = new double[size];
+        parsers = new FunctionParser[size];
+        names = new String[size];
+        args = new int[size][];
+        for (int i = 0; i < size; i++)
+        {
+            ops[i] = b.op.get(i);
+            as[i] = b.a.get(i);
+            bs[i] = b.b.get(i);
+            initial[i] = b.constant.get(i);
+        }
+        for (Map.Entry<Integer,FunctionCall> e: b.calls.entrySet())
+        {
+            parsers[e.getKey()] = e.getValue().p;
+            names[e.getKey()] = e.getValue().name;
+            args[e.getKey()] = e.getValue().args;
+        }
+        outputs = new int[b.outputs.size()];
+        for (int i = 0; i < outputs.length; i++)
+        {
+            outputs[i] = b.outputs.get(i);
+        }
+    }
+
+    /**
+     * Evaluates every function in the program
+     * @param values The value of each variable, indexed by the slot it was
+     * given when the program was built
+     * @param out Array to store the results in, in the order the functions were
+     * added to the program
+     */
+    public void compute(double[] values, double[] out)
+    {
+        double[] r = initial.clone();
+        for (int i = 0; i < size; i++)
+        {
+            switch (ops[i])
+            {
+                case VARIABLE:
+                    r[i] = values[as[i]];
+                    break;
+                case ADD:
+                    r[i] = r[as[i]] + r[bs[i]];
+                    break;
+                case SUBTRACT:
+                    r[i] = r[as[i]] - r[bs[i]];
+                    break;
+                case MULTIPLY:
+                    r[i] = r[as[i]] * r[bs[i]];
+                    break;
+                case DIVIDE:
+                    r[i] = r[as[i]] / r[bs[i]];
+                    break;
+                case POWER:
+                    r[i] = Math.pow(r[as[i]], r[bs[i]]);
+                    break;
+                case FUNCTION:
+                    r[i] = function(i, r);
+                    break;
+                default:
+                    //Constants are already in r
+            }
+        }
+        for (int i = 0; i < outputs.length; i++)
+        {
+            out[i] = r[outputs[i]];
+        }
+    }
+
+    /**
+     * Gets the number of functions in the program
+     * @return The number of functions
+     */
+    public int outputs()
+    {
+        return outputs.length;
+    }
+
+    /**
+     * Gets the number of distinct operations in the program once common
+     * sub-expressions have been combined and constants folded
+     * @return The number of operations
+     */
+    public int operations()
+    {
+        return size;
+    }
+
+    private double function(int i, double[] r)
+    {
+        int[] in = args[i];
+        try
+        {
+            if (parsers[i] instanceof ArrayFunctionParser)
+            {
+                double[] vars = new double[in.length];
+                for (int j = 0; j < in.length; j++)
+                {
+                    vars[j] = r[in[j]];
+                }
+                return ((ArrayFunctionParser) parsers[i]).evaluate(names[i], vars);
+            }
+            else
+            {
+                Double[] vars = new Double[in.length];
+                for (int j = 0; j < in.length; j++)
+                {
+                    vars[j] = r[in[j]];
+                }
+                return parsers[i].evaluate(names[i], vars);
+            }
+        }
+        catch (WrongNumberOfVariables | NoSuchFunction e)
+        {
+            //Should never get here as this was checked when the function
+            //was compiled
+            return 0.0;
+        }
+    }
+
+    private final int size;
+    private final int[] ops;
+    private final int[] as;
+    private final int[] bs;
+    private final double[] initial;
+    private final FunctionParser[] parsers;
+    private final String[] names;
+    private final int[][] args;
+    private final int[] outputs;
+
+    static final int CONSTANT = 0;
+    static final int VARIABLE = 1;
+    static final int ADD = 2;
+    static final int SUBTRACT = 3;
+    static final int MULTIPLY = 4;
+    static final int DIVIDE = 5;
+    static final int POWER = 6;
+    static final int FUNCTION = 7;
+
+    /**
+     * Builds a {@link FunctionProgram}.  Each operation is given a number and
+     * an operation that is identical to one already added is given the existing
+     * number rather than being added again.
+     */
+    public static class Builder
+    {
+        /**
+         * Default constructor
+         * @param slots Map from variable name to position in the values array
+         */
+        public Builder(Map<String,Integer> slots)
+        {
+            this.slots = slots;
+        }
+
+        /**
+         * Adds a function to the program.  Its result will be at the next
+         * position in the array of results.
+         * @param f The function
+         * @throws NoSuchVariable Thrown if the function uses a variable that
+         * has not been given a slot
+         */
+        public void add(CompiledFunction f) throws NoSuchVariable
+        {
+            outputs.add(f.addTo(this));
+        }
+
+        /**
+         * Builds the program
+         * @return The program
+         */
+        public FunctionProgram build()
+        {
+            return new FunctionProgram(this);
+        }
+
+        /**
+         * Adds a constant.  Used by {@link CompiledFunction#addTo(Maths.FunctionProgram.Builder)}.
+         * @param d The value of the constant
+         * @return The number of the operation
+         */
+        int constant(double d)
+        {
+            //Use the bits so that NaN and -0.0 are handled correctly
+            return node(CONSTANT, 0, 0, d, Arrays.asList(CONSTANT, Double.doubleToLongBits(d)));
+        }
+
+        /**
+         * Adds a variable.  Used by {@link CompiledFunction#addTo(Maths.FunctionProgram.Builder)}.
+         * @param v The name of the variable
+         * @return The number of the operation
+         * @throws NoSuchVariable Thrown if the variable has not been given a slot
+         */
+        int variable(String v) throws NoSuchVariable
+        {
+            if (!slots.containsKey(v))
+            {
+                throw new NoSuchVariable(v);
+            }
+            int slot = slots.get(v);
+            return node(VARIABLE, slot, 0, 0.0, Arrays.asList(VARIABLE, slot));
+        }
+
+        /**
+         * Adds an arithmetic operation.  Used by {@link CompiledFunction#addTo(Maths.FunctionProgram.Builder)}.
+         * @param o The operation, one of the operation constants in {@link FunctionProgram}
+         * @param a The number of the operation giving a in a o b
+         * @param b The number of the operation giving b in a o b
+         * @return The number of the operation
+         */
+        int arithmetic(int o, int a, int b)
+        {
+            if ((op.get(a) == CONSTANT) && (op.get(b) == CONSTANT))
+            {
+                double ca = constant.get(a);
+                double cb = constant.get(b);
+                switch (o)
+                {
+                    case ADD:
+                        return constant(ca + cb);
+                    case SUBTRACT:
+                        return constant(ca - cb);
+                    case MULTIPLY:
+                        return constant(ca * cb);
+                    case DIVIDE:
+                        return constant(ca / cb);
+                    case POWER:
+                        return constant(Math.pow(ca, cb));
+                }
+            }
+            return node(o, a, b, 0.0, Arrays.asList(o, a, b));
+        }
+
+        /**
+         * Adds a function defined by a function parser.  Used by
+         * {@link CompiledFunction#addTo(Maths.FunctionProgram.Builder)}.
+         * @param p The function parser
+         * @param name The name of the function
+         * @param inputs The numbers of the operations giving the inputs
+         * @return The number of the operation
+         */
+        int function(FunctionParser p, String name, int[] inputs)
+        {
+            List<Object> key = new ArrayList<>();
+            key.add(FUNCTION);
+            key.add(p);
+            key.add(name);
+            for (int i: inputs)
+            {
+                key.add(i);
+            }
+            Integer existing = index.get(key);
+            if (existing != null)
+            {
+                return existing;
+            }
+            int n = node(FUNCTION, 0, 0, 0.0, key);
+            calls.put(n, new FunctionCall(p, name, inputs));
+            return n;
+        }
+
+        private int node(int o, int a, int b, double c, List<?> key)
+        {
+            Integer existing = index.get(key);
+            if (existing != null)
+            {
+                return existing;
+            }
+            int n = op.size();
+            op.add(o);
+            this.a.add(a);
+            this.b.add(b);
+            constant.add(c);
+            index.put(key, n);
+            return n;
+        }
+
+        private final Map<String,Integer> slots;
+        private final Map<List<?>,Integer> index = new HashMap<>();
+        private final Map<Integer,FunctionCall> calls = new HashMap<>();
+        private final List<Integer> op = new ArrayList<>();
+        private final List<Integer> a = new ArrayList<>();
+        private final List<Integer> b = new ArrayList<>();
+        private final List<Double> constant = new ArrayList<>();
+        private final List<Integer> outputs = new ArrayList<>();
+    }
+
+    private static class FunctionCall
+    {
+        private FunctionCall(FunctionParser p, String name, int[] args)
+        {
+            this.p = p;
+            this.name = name;
+            this.args = args;
+        }
+
+        private final FunctionParser p;
+        private final String name;
+        private final int[] args;
+    }
+}
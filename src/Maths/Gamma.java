@@ -17,6 +17,8 @@
 
 package Maths;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Provides methods associated with the gamma distribution.
  * Provides two static functions, one for calculating the inverse chi-squared
@@ -27,6 +29,47 @@ package Maths;
  */
 public class Gamma
 {
+    /**
+     * Returns the rate of a single rate category as per {@link #rates(double, int)}.
+     * The rates for the last few values of alpha are cached for each number of
+     * categories, so repeated calls for the same alpha are quick.  The cache
+     * can safely be used by several threads at once.
+     * @param alpha The alpha value
+     * @param category The category (1-indexed)
+     * @param categories The number of rate categories
+     * @return The rate for the category
+     */
+    public static double rate(double alpha, int category, int categories)
+    {
+        Integer key = categories;
+        CachedRates[] recent = ratesCache.get(key);
+        if (recent != null)
+        {
+            for (CachedRates c: recent)
+            {
+                if (Double.doubleToLongBits(c.alpha) == Double.doubleToLongBits(alpha))
+                {
+                    return c.rates[category - 1];
+                }
+            }
+        }
+        //Optimisers sweep alpha, only ever coming back to recent values, so
+        //just keep the most recent few.  The array is never changed once it
+        //is in the cache so readers don't need to lock.  If another thread
+        //replaces it in the meantime one of the new values is lost, which
+        //only costs a recalculation.
+        double[] r = rates(alpha, categories);
+        int size = (recent == null) ? 1 : Math.min(recent.length + 1, RECENT);
+        CachedRates[] updated = new CachedRates[size];
+        updated[0] = new CachedRates(alpha, r);
+        if (recent != null)
+        {
+            System.arraycopy(recent, 0, updated, 1, size - 1);
+        }
+        ratesCache.put(key, updated);
+        return r[category - 1];
+    }
+
     /**
      * Returns the rates that should be used for a set number of rate categories
      * and a set value of alpha as per the methodology of Yang 1993
@@ -299,4 +342,19 @@ public class Gamma
     
     private static final double OFLO = 10e30;
     private static final double E = 10e-6;
+
+    private static class CachedRates
+    {
+        private CachedRates(double alpha, double[] rates)
+        {
+            this.alpha = alpha;
+            this.rates = rates;
+        }
+
+        private final double alpha;
+        private final double[] rates;
+    }
+
+    private static final int RECENT = 8;
+    private static final ConcurrentHashMap<Integer,CachedRates[]> ratesCache = new ConcurrentHashMap<>();
 }
@@ -0,0 +1,60 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Maths;
+
+/**
+ * Exception that is thrown when an equation is not syntactically valid.  Is a
+ * {@link NoSuchFunction} so code that only expects the exceptions thrown by
+ * earlier versions of {@link MathsParse} still handles it.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class InvalidEquation extends NoSuchFunction
+{
+    /**
+     * Default constructor
+     * @param equation The equation
+     * @param position The (0-indexed) position in the equation of the problem
+     * @param problem Description of the problem
+     */
+    public InvalidEquation(String equation, int position, String problem)
+    {
+        super(equation);
+        message = problem + " at position " + (position + 1) + " in \"" + equation + "\"";
+        this.position = position;
+    }
+
+    public String getMessage()
+    {
+        return message;
+    }
+
+    /**
+     * Gets the position of the problem
+     * @return The (0-indexed) position in the equation
+     */
+    public int getPosition()
+    {
+        return position;
+    }
+
+    private final String message;
+    private final int position;
+
+    private static final long serialVersionUID = 1;
+}
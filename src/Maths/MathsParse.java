@@ -29,18 +29,18 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Class used to parse an equation represented by a string and return the result.
- * Variables are represented by a letter followed by any number of alphanumeric
- * characters.  Multiply (represented by "*" should be stated explicitly, e.g. 
- * a * b NOT a b or ab (the later of which would be parsed as a single variable).
+ * Variables are represented by a letter or underscore followed by any number of
+ * alphanumeric or underscore characters.  Multiply (represented by "*" should be
+ * stated explicitly, e.g. a * b NOT a b or ab (the later of which would be parsed
+ * as a single variable).  The usual precedence applies (^ then * and / then + and
+ * -) and all operators are left associative, including ^, so a^b^c is (a^b)^c.
+ * A leading minus sign negates what follows it, with -a^b being -(a^b).
  * Functions should be represented by "f[a,b,...]" where f is the function name 
- * and a,b etc. are inputs.  Inputs cannot contain other functions but can otherwise
- * contain an expression. The following functions are defined by default:
+ * and a,b etc. are inputs, which may be any expression. The following functions
+ * are defined by default:
  * <ul>
  *  <li>ln[a] - The natural logarithm</li>
  *  <li>g[a,b,c] - The rate modifier of the bth class of c classes using a gamma
@@ -83,7 +83,8 @@ public class MathsParse
      * @param values Map from a string to a double that represents the value of
      * any variables in the equation
      * @return The result of the equation
-     * @throws NoSuchFunction If the equation uses an undefined function
+     * @throws NoSuchFunction If the equation uses an undefined function or
+     * is not syntactically valid, in which case it is an {@link InvalidEquation}
      * @throws WrongNumberOfVariables If the equation uses a function and passes
      * it the wrong number of variables
      * @throws NoSuchVariable Thrown if values does not contain a needed variable  
@@ -101,376 +102,322 @@ public class MathsParse
      * time if it is to be called multiple times
      * @param equation The equation to parse
      * @return Compiled function that can be used to calculate the functions value
-     * @throws NoSuchFunction If the equation uses an undefined function
+     * @throws NoSuchFunction If the equation uses an undefined function or
+     * is not syntactically valid, in which case it is an {@link InvalidEquation}
+     * which gives the position of the problem
      * @throws WrongNumberOfVariables If the equation uses a function and passes
      * it the wrong number of variables
      */
     public CompiledFunction compileFunction(String equation) throws NoSuchFunction, WrongNumberOfVariables
     {
-        //Keeps track of already evaluated parts of the equation.
-        //Parts of the equation that have been evaluated are replaced with
-        //{id} and this map keeps track of what the value of that sting is.
-        //Done this way so as not to lose precission by writing value as text
-        //in equation.
-        HashMap<String,CompiledFunction> results = new HashMap<>();
-        
-        //Keeps track of the next unused id for use in the above.
-	int id = 0;
-        
-	//Remove spaces
-	equation = equation.replaceAll(" ", "");
+        return new Parser(equation).parse();
+    }
 
-	/************************************
-	 * START SCIENTIFIC NOTATION        *
-	 ************************************/
-        
-        //Gets rid of any scientific notation in the string by "evaluating" it as
-        //otherwise the 'e' will cause problems later
-	Pattern p = Pattern.compile("\\d+\\.\\d+[eE]-?\\d+");
-	Matcher m = p.matcher(equation);
-	while (m.find())
-	{
-            results.put("{" + id + "}", new Constant(Double.parseDouble(m.group())));
-	    equation = equation.substring(0,m.start()) + "{" + id + "}" + equation.substring(m.end());
-	    id++;
+    //Splits an equation into tokens and then builds the compiled function by
+    //precedence climbing.  Both are done in a single pass.
+    private class Parser
+    {
+        private Parser(String equation) throws InvalidEquation
+        {
+            this.equation = equation;
+            tokenise();
+        }
 
-	    m = p.matcher(equation);
-	}
-	
-	/************************************
-	 * START BRACKETS                   *
-	 ************************************/
-	
-        //Keeps a running track of how many unclosed brackets have been encountered
-        int numb = 0;
-        
-        //Keeps track of the position of the earliest unmatched bracket
-        int start = 0;
-        
-        //Keeps track of the current position in the string
-        int pos = 0;
-        
-        //Parse the string keeping track of the outermost unmatched start bracket...
-	while (pos < equation.length())
-	{
-	    if (equation.charAt(pos) == '(')
-	    {
-		if (numb == 0)
-		{
-		    start = pos;
-		}
-		numb++;
-	    }
-            //When we match the outermost bracket recursively evaluate what's in
-            //the bracket and replace in the equation.
-	    if (equation.charAt(pos) == ')')
-	    {
-		numb--;
-		if (numb == 0)
-		{
-		    results.put("{" + id + "}",compileFunction(equation.substring(start+1,pos)));
-		    equation = equation.substring(0,Math.max(0,start)) + "{" + id + "}" + equation.substring(pos+1);
-		    id++;
-		    pos = 0;
-		}
-	    }
-	    pos++;
-	}
-	
-	/************************************
-	 * START FUNCTIONS                  *
-	 ************************************/
+        private CompiledFunction parse() throws NoSuchFunction, WrongNumberOfVariables, InvalidEquation
+        {
+            CompiledFunction f = expression(0);
+            if (type() != END)
+            {
+                throw error("Unexpected '" + token().text + "'");
+            }
+            return f;
+        }
 
-         //While we have unevaluated functions (i.e. we still have one or more '['
-         //present in the string
-	 while (equation.indexOf('[') > -1)
-	 {
-             //Find and evaluate the inputs to the function
-	    String[] inputs = equation.substring(equation.indexOf('[')+1,equation.indexOf(']')).split(",");
-	    CompiledFunction[] vs = new CompiledFunction[inputs.length];
-	    for (int j = 0; j < inputs.length; j++)
-	    {
-		vs[j] = compileFunction(inputs[j]);
-	    }
-	    
-            //Find the string to the left of the [
-	    String fLeft = equation.substring(0,equation.indexOf('['));
-	    
-            //And then find the right most operator in that string
-	    int ls = -1;
-	    ls = Math.max(ls,fLeft.lastIndexOf('+'));
-	    ls = Math.max(ls,fLeft.lastIndexOf('-'));
-	    ls = Math.max(ls,fLeft.lastIndexOf('*'));
-	    ls = Math.max(ls,fLeft.lastIndexOf('/'));
-	    ls = Math.max(ls,fLeft.lastIndexOf('('));
-	    ls = Math.max(ls,fLeft.lastIndexOf('^'));
-	    	    
-            //And whats between that operator and the [ must be the function name
-	    String name = fLeft.substring(ls+1);
+        //Parses a run of binary operators of at least the given precedence.
+        //All operators are left associative, including ^, as they always have
+        //been in GeLL.
+        private CompiledFunction expression(int minPrecedence) throws NoSuchFunction, WrongNumberOfVariables, InvalidEquation
+        {
+            CompiledFunction left = unary();
+            int p;
+            while ((p = precedence(type())) >= minPrecedence)
+            {
+                char op = type();
+                next();
+                CompiledFunction right = expression(p + 1);
+                left = binary(op, left, right);
+            }
+            return left;
+        }
 
-            //Evaluate the function, store the result and replace in the equation
-	    if (functions.containsKey(name))
-	    {
-		//results.put("{" + id + "}",functions.get(name).evaluate(name,vs));
-                results.put("{" + id + "}",new Function(functions.get(name),name,vs));
-	    }
-	    else
-	    {
-		throw new NoSuchFunction(name);
-	    }
-	    equation = equation.substring(0,Math.max(0,ls+1)) + "{" + id + "}" + equation.substring(equation.indexOf(']')+1);
-	    id++;
-	 }
-	
-	/************************************
-	 * START POWERS                     *
-	 ************************************/
-        
-        //Keeps the location of the operator for powers, multiply/divide and
-        //plus/minus
-        int f;
-	
-        //While there are unevcaluated power operations
-	while ((f = equation.indexOf('^')) > -1)
-	{
-            //Find the string to the left and the right of the operator
-	    String fLeft = equation.substring(0,f);
-	    String fRight = equation.substring(f+1);
-	    
-            //Find the right most operator in the left string
-	    int ls = -1;
-	    ls = Math.max(ls,fLeft.lastIndexOf('+'));
-	    ls = Math.max(ls,fLeft.lastIndexOf('-'));
-	    ls = Math.max(ls,fLeft.lastIndexOf('*'));
-	    ls = Math.max(ls,fLeft.lastIndexOf('/'));
-	    
-            //And then what's between the operator and the ^ must be the a in a^b
-	    String left = fLeft.substring(ls+1);
-            //Calculate the value of a (stored in lv)
-	    CompiledFunction lv;
-            //If it's a variable or an already evaluate string get the result
-	    if (left.matches("\\{\\d+\\}"))
-	    {
-		lv = results.get(left);
-	    }
-            else if (left.matches(VAR))
+        //Unary minus binds less tightly than ^ so -a^2 is -(a^2)
+        private CompiledFunction unary() throws NoSuchFunction, WrongNumberOfVariables, InvalidEquation
+        {
+            if (type() == '-')
             {
-                lv = new Variable(left);
+                next();
+                CompiledFunction f = expression(precedence('^'));
+                if (f instanceof Constant)
+                {
+                    return new Constant(-((Constant) f).getValue());
+                }
+                return new Subtract(new Constant(0.0), f);
             }
-            //Else parse as a double
-	    else
-	    {
-		lv = new Constant(Double.valueOf(left));//Double.valueOf(left);
-	    }
-	    
-            //Do the same for the right side of the string, i.e. the b in a^b
-	    int re = fRight.length();
-	    if (Math.min(re,fRight.indexOf('+'))>-1) {re = Math.min(re,fRight.indexOf('+'));}
-	    if (Math.min(re,fRight.indexOf('-'))>-1) {re = Math.min(re,fRight.indexOf('-'));}
-	    if (Math.min(re,fRight.indexOf('*'))>-1) {re = Math.min(re,fRight.indexOf('*'));}
-	    if (Math.min(re,fRight.indexOf('/'))>-1) {re = Math.min(re,fRight.indexOf('/'));}
-	    if (Math.min(re,fRight.indexOf('^'))>-1) {re = Math.min(re,fRight.indexOf('^'));}
-	    
-	    String right = fRight.substring(0,re);
-	    CompiledFunction rv;
-	    if (right.matches("\\{\\d+\\}"))
-	    {
-		rv = results.get(right);
-	    }
-            else if (right.matches(VAR))
+            if (type() == '+')
             {
-                rv = new Variable(right);
+                next();
+                return expression(precedence('^'));
             }
-	    else
-	    {
-		rv = new Constant(Double.valueOf(right));
-	    }
-	    
-            //Calculate the result, store it and replace it in the string
-            results.put("{" + id + "}",new Power(lv,rv));
-	    equation = equation.substring(0,Math.max(0,ls+1)) + "{" + id + "}" + equation.substring(f + re + 1);
-	    id++;
-	}
-	
-	/************************************
-	 * START MULTIPLY / DIVIDE          *
-	 ************************************/
-	
-        //This works essentially the same as the power section except we need
-        //to know whether we're doing multiply or divide and the location of the
-        //first instance of either
-	while ((equation.indexOf('*') > -1) || (equation.indexOf('/') > -1))
-	{
-	    boolean div;
-            // Calculate where the first multiply or divide is and what one it is
-	    int ft; if (equation.indexOf('*') > - 1) {ft = equation.indexOf('*');} else {ft = Integer.MAX_VALUE;}
-	    int fd; if (equation.indexOf('/') > - 1) {fd = equation.indexOf('/');} else {fd = Integer.MAX_VALUE;}
-	    if (fd < ft)
-	    {
-		div = true;
-		f = fd;
-	    }
-	    else
-	    {
-		div = false;
-		f = ft;
-	    }
-	    String fLeft = equation.substring(0,f);
-	    String fRight = equation.substring(f+1);
-	    
-	    int ls = -1;
-	    ls = Math.max(ls,fLeft.lastIndexOf('+'));
-	    ls = Math.max(ls,fLeft.lastIndexOf('-'));
-	    
-	    String left = fLeft.substring(ls+1);
-	    CompiledFunction lv;
-	    if (left.matches("\\{\\d+\\}"))
-	    {
-		lv = results.get(left);
-	    }
-            else if (left.matches(VAR))
+            return primary();
+        }
+
+        private CompiledFunction primary() throws NoSuchFunction, WrongNumberOfVariables, InvalidEquation
+        {
+            Token t = token();
+            switch (t.type)
             {
-                lv = new Variable(left);
+                case NUMBER:
+                    next();
+                    return new Constant(t.value);
+                case NAME:
+                    next();
+                    if (type() == '[')
+                    {
+                        return function(t);
+                    }
+                    return new Variable(t.text);
+                case '(':
+                    next();
+                    CompiledFunction f = expression(0);
+                    expect(')');
+                    return f;
+                case END:
+                    throw error("Unexpected end of equation");
+                default:
+                    throw error("Unexpected '" + t.text + "'");
             }
-	    else
-	    {
-		lv = new Constant(Double.valueOf(left));
-	    }
-	    
-	    int re = fRight.length();
-	    if (Math.min(re,fRight.indexOf('+'))>-1) {re = Math.min(re,fRight.indexOf('+'));}
-	    if (Math.min(re,fRight.indexOf('-'))>-1) {re = Math.min(re,fRight.indexOf('-'));}
-	    if (Math.min(re,fRight.indexOf('*'))>-1) {re = Math.min(re,fRight.indexOf('*'));}
-	    if (Math.min(re,fRight.indexOf('/'))>-1) {re = Math.min(re,fRight.indexOf('/'));}
-	    
-	    String right = fRight.substring(0,re);
-	    CompiledFunction rv;
-	    if (right.matches("\\{\\d+\\}"))
-	    {
-		rv = results.get(right);
-	    }
-            else if (right.matches(VAR))
+        }
+
+        private CompiledFunction function(Token name) throws NoSuchFunction, WrongNumberOfVariables, InvalidEquation
+        {
+            //Skip the [
+            next();
+            List<CompiledFunction> inputs = new ArrayList<>();
+            inputs.add(expression(0));
+            while (type() == ',')
             {
-                rv = new Variable(right);
+                next();
+                inputs.add(expression(0));
             }
-	    else
-	    {
-		rv = new Constant(Double.valueOf(right));
-	    }
-	    
-	    if (div)
-	    {
-		results.put("{" + id + "}",new Divide(lv,rv));
-	    }
-	    else
-	    {
-                results.put("{" + id + "}",new Multiply(lv,rv));
-	    }
-	    equation = equation.substring(0,Math.max(0,ls)) + "{" + id + "}" + equation.substring(f + re + 1);
-	    id++;
-	}
-	
-	/************************************
-	 * START PLUS / MINUS               *
-	 ************************************/
-	
-        //Same as multiply / divide
-	while ((equation.indexOf('+') > -1) || (equation.indexOf('-') > -1))
-	{
-	    boolean minus;
-	    int fp; if (equation.indexOf('+') > - 1) {fp = equation.indexOf('+');} else {fp = Integer.MAX_VALUE;}
-	    int fm; if (equation.indexOf('-') > - 1) {fm = equation.indexOf('-');} else {fm = Integer.MAX_VALUE;}
-	    if (fm < fp)
-	    {
-		minus = true;
-		f = fm;
-	    }
-	    else
-	    {
-		minus = false;
-		f = fp;
-	    }
-	    String fLeft = equation.substring(0,f);
-	    String fRight = equation.substring(f+1);
-	    
-	    int ls = -1;
-	    ls = Math.max(ls,fLeft.lastIndexOf('+'));
-	    ls = Math.max(ls,fLeft.lastIndexOf('-'));
-	    
-	    String left = fLeft.substring(ls+1);
-	    CompiledFunction lv;
-	    if (left.matches("\\{\\d+\\}"))
-	    {
-		lv = results.get(left);
-	    }
-            else if (left.matches(VAR))
+            expect(']');
+
+            if (!functions.containsKey(name.text))
             {
-                lv = new Variable(left);
+                throw new NoSuchFunction(name.text);
             }
-	    else
-	    {
-		lv = new Constant(Double.valueOf(left));
-	    }
-	    
-	    int re = fRight.length();
-	    if (Math.min(re,fRight.indexOf('+'))>-1) {re = Math.min(re,fRight.indexOf('+'));}
-	    if (Math.min(re,fRight.indexOf('-'))>-1) {re = Math.min(re,fRight.indexOf('-'));}
-	    if (Math.min(re,fRight.indexOf('*'))>-1) {re = Math.min(re,fRight.indexOf('*'));}
-	    if (Math.min(re,fRight.indexOf('/'))>-1) {re = Math.min(re,fRight.indexOf('/'));}
-	    
-	    String right = fRight.substring(0,re);
-	    CompiledFunction rv;
-	    if (right.matches("\\{\\d+\\}"))
-	    {
-		rv = results.get(right);
-	    }
-            else if (right.matches(VAR))
+            return new Function(functions.get(name.text), name.text,
+                    inputs.toArray(new CompiledFunction[inputs.size()]));
+        }
+
+        //Constant folding - if both sides are constant do the calculation now
+        private CompiledFunction binary(char op, CompiledFunction a, CompiledFunction b)
+        {
+            if ((a instanceof Constant) && (b instanceof Constant))
             {
-                rv = new Variable(right);
+                double ca = ((Constant) a).getValue();
+                double cb = ((Constant) b).getValue();
+                switch (op)
+                {
+                    case '+':
+                        return new Constant(ca + cb);
+                    case '-':
+                        return new Constant(ca - cb);
+                    case '*':
+                        return new Constant(ca * cb);
+                    case '/':
+                        return new Constant(ca / cb);
+                    default:
+                        return new Constant(Math.pow(ca, cb));
+                }
             }
-	    else
-	    {
-		rv = new Constant(Double.valueOf(right));
-	    }
-	    
-	    if (minus)
-	    {
-                results.put("{" + id + "}",new Subtract(lv,rv));
-	    }
-	    else
-	    {
-                results.put("{" + id + "}",new Add(lv,rv));
-	    }
-	    equation = equation.substring(0,Math.max(0,ls)) + "{" + id + "}" + equation.substring(f + re + 1);
-	    id++;
-	}
-        
-	/************************************
-	 * RETURN                           *
-	 ************************************/        
-        
-        //Whats left will either be a variable or previously evaluated string
-        //in which case returnt the value of that
-	if (equation.matches("\\{\\d+\\}"))
-	{
-	    return results.get(equation);
-	}
-        
-        if (equation.matches(VAR))
+            switch (op)
+            {
+                case '+':
+                    return new Add(a, b);
+                case '-':
+                    return new Subtract(a, b);
+                case '*':
+                    return new Multiply(a, b);
+                case '/':
+                    return new Divide(a, b);
+                default:
+                    return new Power(a, b);
+            }
+        }
+
+        private int precedence(char op)
         {
-            return new Variable(equation);
+            switch (op)
+            {
+                case '+':
+                case '-':
+                    return 1;
+                case '*':
+                case '/':
+                    return 2;
+                case '^':
+                    return 3;
+                default:
+                    return -1;
+            }
         }
-        //Or a number (if that's all that was passed) so parse and return
-	else
-	{
-            return new Constant(Double.parseDouble(equation));
-	}
+
+        private void expect(char type) throws InvalidEquation
+        {
+            if (type() != type)
+            {
+                if (type() == END)
+                {
+                    throw error("Expected '" + type + "' but reached end of equation");
+                }
+                throw error("Expected '" + type + "' but found '" + token().text + "'");
+            }
+            next();
+        }
+
+        private void tokenise() throws InvalidEquation
+        {
+            tokens = new ArrayList<>();
+            int len = equation.length();
+            int i = 0;
+            while (i < len)
+            {
+                char c = equation.charAt(i);
+                int start = i;
+                if (Character.isWhitespace(c))
+                {
+                    i++;
+                }
+                else if (isDigit(c) || ((c == '.') && (i + 1 < len) && isDigit(equation.charAt(i + 1))))
+                {
+                    while ((i < len) && isDigit(equation.charAt(i)))
+                    {
+                        i++;
+                    }
+                    if ((i < len) && (equation.charAt(i) == '.'))
+                    {
+                        i++;
+                        while ((i < len) && isDigit(equation.charAt(i)))
+                        {
+                            i++;
+                        }
+                    }
+                    //Only treat e as an exponent if it's followed by a number
+                    if ((i < len) && ((equation.charAt(i) == 'e') || (equation.charAt(i) == 'E')))
+                    {
+                        int e = i + 1;
+                        if ((e < len) && ((equation.charAt(e) == '-') || (equation.charAt(e) == '+')))
+                        {
+                            e++;
+                        }
+                        if ((e < len) && isDigit(equation.charAt(e)))
+                        {
+                            i = e;
+                            while ((i < len) && isDigit(equation.charAt(i)))
+                            {
+                                i++;
+                            }
+                        }
+                    }
+                    String text = equation.substring(start, i);
+                    tokens.add(new Token(NUMBER, text, Double.parseDouble(text), start));
+                }
+                else if (Character.isLetter(c) || (c == '_'))
+                {
+                    while ((i < len) && (Character.isLetterOrDigit(equation.charAt(i)) || (equation.charAt(i) == '_')))
+                    {
+                        i++;
+                    }
+                    tokens.add(new Token(NAME, equation.substring(start, i), 0.0, start));
+                }
+                else if ("+-*/^()[],".indexOf(c) > -1)
+                {
+                    i++;
+                    tokens.add(new Token(c, String.valueOf(c), 0.0, start));
+                }
+                else
+                {
+                    throw new InvalidEquation(equation, start, "Unexpected character '" + c + "'");
+                }
+            }
+            tokens.add(new Token(END, "", 0.0, len));
+            current = 0;
+        }
+
+        private boolean isDigit(char c)
+        {
+            return (c >= '0') && (c <= '9');
+        }
+
+        private Token token()
+        {
+            return tokens.get(current);
+        }
+
+        private char type()
+        {
+            return tokens.get(current).type;
+        }
+
+        private void next()
+        {
+            current++;
+        }
+
+        private InvalidEquation error(String problem)
+        {
+            return new InvalidEquation(equation, token().position, problem);
+        }
+
+        private final String equation;
+        private List<Token> tokens;
+        private int current;
+    }
+
+    private static class Token
+    {
+        private Token(char type, String text, double value, int position)
+        {
+            this.type = type;
+            this.text = text;
+            this.value = value;
+            this.position = position;
+        }
+
+        private final char type;
+        private final String text;
+        private final double value;
+        private final int position;
     }
 
+    private static final char NUMBER = 'n';
+    private static final char NAME = 'v';
+    private static final char END = 'e';
+
     //FunctionParser that evaluates ln and gamma as discussed in class javadoc
-    private class BuiltIn implements FunctionParser
+    private class BuiltIn implements ArrayFunctionParser, DifferentiableFunctionParser
     {
 	public double evaluate(String name, Double[] vs) throws NoSuchFunction, WrongNumberOfVariables
+	{
+            double[] d = new double[vs.length];
+            for (int i = 0; i < vs.length; i++)
+            {
+                d[i] = vs[i];
+            }
+            return evaluate(name, d);
+	}
+
+	public double evaluate(String name, double[] vs) throws NoSuchFunction, WrongNumberOfVariables
 	{
 	    if (name.equalsIgnoreCase("ln"))
 	    {
@@ -487,26 +434,41 @@ public class MathsParse
 	    {
 		if (vs.length == 3)
 		{
-                    // If the cache contains values for the correct number of categories
-                    if (gammaCacheCats == vs[2].intValue())
-                    {
-                        //If it doesn't contain the cached valued calculate it and add it
-                        //to the cache
-                        if (!gammaCache.containsKey(vs[0]))
-                        {
-                            gammaCache.put(vs[0], Gamma.rates(vs[0],vs[2].intValue()));
-                        }
-                        //Return the cached values
-                        return gammaCache.get(vs[0])[vs[1].intValue()-1];
-                    }
-                    else
+                    return Gamma.rate(vs[0], (int) vs[1], (int) vs[2]);
+		}
+		else
+		{
+		    throw new WrongNumberOfVariables(name,3,vs.length);
+		}
+	    }
+	    throw new NoSuchFunction(name);
+	}
+        
+	public double partial(String name, double[] vs, int input) throws NoSuchFunction, WrongNumberOfVariables
+	{
+	    if (name.equalsIgnoreCase("ln"))
+	    {
+		if (vs.length == 1)
+		{
+		    return 1.0 / vs[0];
+		}
+		else
+		{
+		    throw new WrongNumberOfVariables(name,1,vs.length);
+		}
+	    }
+	    if (name.equalsIgnoreCase("g"))
+	    {
+		if (vs.length == 3)
+		{
+                    //The category and number of categories are whole numbers
+                    //so treat the rate as constant with respect to them.  There's
+                    //no closed form for alpha so use central differences.
+                    if (input != 0)
                     {
-                        //Since we now want a cahce with a different number of categories
-                        //create a new cache, calculate, add and return the value.
-                        gammaCache = new TreeMap<>();
-                        gammaCache.put(vs[0], Gamma.rates(vs[0],vs[2].intValue()));
-                        return gammaCache.get(vs[0])[vs[1].intValue()-1];
+                        return 0.0;
                     }
+                    return Function.centralDifference(this, name, vs, input);
 		}
 		else
 		{
@@ -536,13 +498,7 @@ public class MathsParse
 	    list.add("g");
 	    return list;
 	}
-        
-        //NEED TO THINK ABOUT WHAT WOULD HAPPEN IF PASSED DIFFERENT GAMMA BIN SIZE!
-        private TreeMap<Double,double[]> gammaCache = new TreeMap<>();
-        private int gammaCacheCats;
     }
 
     private HashMap<String,FunctionParser> functions;
-
-    private static final String VAR = "[a-zA-Z_][a-zA-Z0-9]*";
 }
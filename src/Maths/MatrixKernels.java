@@ -0,0 +1,204 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Maths;
+
+/**
+ * Low level matrix kernels used by {@link SquareMatrix}.  Matrices are stored
+ * as flat row-major arrays of doubles (element (i,j) of an n &times; n matrix
+ * is at position i * n + j) and results are written into caller supplied
+ * arrays so that no allocation is done by the kernels themselves.  Per-thread
+ * scratch space is available from {@link #workspace(int)}.
+ * @author Daniel Money
+ * @version 2.0
+ */
+final class MatrixKernels
+{
+    private MatrixKernels()
+    {
+        //All static methods so no need for a constructor
+    }
+
+    /**
+     * Multiplies two matrices (a &times; b) storing the result in r.  r must not
+     * be the same array as a or b.
+     * @param a The first matrix
+     * @param b The second matrix
+     * @param r Array to store the result in
+     * @param n The size of the matrices
+     */
+    static void multiply(double[] a, double[] b, double[] r, int n)
+    {
+        multiplyTile(a, b, r, n, 0, n, 0, n);
+    }
+
+    /**
+     * Calculates the tile of a &times; b made up of rows rowFrom (inclusive)
+     * to rowTo (exclusive) and columns colFrom (inclusive) to colTo (exclusive),
+     * storing it in the same tile of r.  Used so that different tiles can be
+     * calculated by different threads.  r must not be the same array as a or b.
+     * @param a The first matrix
+     * @param b The second matrix
+     * @param r Array to store the result in
+     * @param n The size of the matrices
+     * @param rowFrom The first row to calculate
+     * @param rowTo One past the last row to calculate
+     * @param colFrom The first column to calculate
+     * @param colTo One past the last column to calculate
+     */
+    static void multiplyTile(double[] a, double[] b, double[] r, int n, int rowFrom, int rowTo, int colFrom, int colTo)
+    {
+        for (int i = rowFrom; i < rowTo; i++)
+        {
+            int in = i * n;
+            for (int j = colFrom; j < colTo; j++)
+            {
+                r[in + j] = 0.0;
+            }
+        }
+        //i-k-j order so the inner loop runs along rows of both b and r.  Blocking
+        //over k and j keeps the part of b being used in cache for larger matrices.
+        for (int kk = 0; kk < n; kk += BLOCK)
+        {
+            int kmax = Math.min(kk + BLOCK, n);
+            for (int jj = colFrom; jj < colTo; jj += BLOCK)
+            {
+                int jmax = Math.min(jj + BLOCK, colTo);
+                for (int i = rowFrom; i < rowTo; i++)
+                {
+                    int in = i * n;
+                    for (int k = kk; k < kmax; k++)
+                    {
+                        double aik = a[in + k];
+                        int kn = k * n;
+                        for (int j = jj; j < jmax; j++)
+                        {
+                            r[in + j] += aik * b[kn + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates y = y + c &times; x
+     * @param c The scalar
+     * @param x The matrix to be added
+     * @param y The matrix to be added to
+     * @param len The number of elements in the matrices
+     */
+    static void axpy(double c, double[] x, double[] y, int len)
+    {
+        for (int i = 0; i < len; i++)
+        {
+            y[i] += c * x[i];
+        }
+    }
+
+    /**
+     * Sets r to the identity matrix
+     * @param r The array to set
+     * @param n The size of the matrix
+     */
+    static void identity(double[] r, int n)
+    {
+        for (int i = 0; i < n * n; i++)
+        {
+            r[i] = 0.0;
+        }
+        for (int i = 0; i < n; i++)
+        {
+            r[i * n + i] = 1.0;
+        }
+    }
+
+    /**
+     * Copies a 2D array into a flat row-major array
+     * @param m The 2D array
+     * @param r The flat array to copy into
+     */
+    static void flatten(double[][] m, double[] r)
+    {
+        int n = m.length;
+        for (int i = 0; i < n; i++)
+        {
+            System.arraycopy(m[i], 0, r, i * n, n);
+        }
+    }
+
+    /**
+     * Creates a new 2D array from a flat row-major array
+     * @param f The flat array
+     * @param n The size of the matrix
+     * @return The new 2D array
+     */
+    static double[][] unflatten(double[] f, int n)
+    {
+        double[][] r = new double[n][n];
+        for (int i = 0; i < n; i++)
+        {
+            System.arraycopy(f, i * n, r[i], 0, n);
+        }
+        return r;
+    }
+
+    /**
+     * Gets the scratch space for the current thread, making sure each of its
+     * buffers can hold an n &times; n matrix.  The same buffers are returned
+     * on every call from the same thread so callers must be finished with
+     * them before calling any method that may itself use them.
+     * @param n The size of the matrices that will be worked on
+     * @return The current thread's workspace
+     */
+    static Workspace workspace(int n)
+    {
+        Workspace w = workspaces.get();
+        w.ensure(n * n);
+        return w;
+    }
+
+    /**
+     * Per-thread scratch buffers
+     */
+    static class Workspace
+    {
+        private void ensure(int size)
+        {
+            if ((x == null) || (x.length < size))
+            {
+                x = new double[size];
+                y = new double[size];
+                z = new double[size];
+            }
+        }
+
+        double[] x;
+        double[] y;
+        double[] z;
+    }
+
+    private static final int BLOCK = 64;
+
+    private static final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>()
+    {
+        protected Workspace initialValue()
+        {
+            return new Workspace();
+        }
+    };
+}
@@ -19,17 +19,15 @@ package Maths;
 
 import Exceptions.UnexpectedError;
 import Maths.EigenvalueDecomposition.ConvergenceException;
+import Maths.MatrixKernels.Workspace;
 import Utils.Array2D;
-import Utils.DaemonThreadFactory;
+import Utils.Engine;
+import Utils.WorkerThreadFactory;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Represents a square matrix.  
@@ -46,6 +44,11 @@ import java.util.concurrent.Future;
  * array would need to be converted to a SquareNatrix and then the array retrived
  * from the result.  The equivilant public functions are simple wrappers around
  * these functions.
+ *
+ * The matrix exponentials work on flat row-major copies of the matrix using
+ * the kernels in MatrixKernels and the calling thread's scratch buffers so
+ * that the only array allocated per call is the result.  fMultiply is the
+ * flat equivilant of aMultiply.
  */
 
 public class SquareMatrix implements Serializable
@@ -74,78 +77,43 @@ public class SquareMatrix implements Serializable
      */
     public SquareMatrix square()
     {
-	return SquareMatrix.newWithoutCheck(aMultiply(m, m));
+	return SquareMatrix.newWithoutCheck(aMultiply(m, m, Engine.getDefault()));
     }
 
-    private double[][] aMultiply(double[][] a, double[][] b)
+    private double[][] aMultiply(double[][] a, double[][] b, Engine engine)
+    {
+        Workspace w = MatrixKernels.workspace(dim);
+        MatrixKernels.flatten(a, w.x);
+        MatrixKernels.flatten(b, w.y);
+        fMultiply(w.x, w.y, w.z, engine);
+        return MatrixKernels.unflatten(w.z, dim);
+    }
+
+    private void fMultiply(double[] a, double[] b, double[] r, Engine engine)
     {
-        double[][] r = new double[dim][dim];
-        
         //If the matrix is small then the overhead in doing multithread coputation
-        //is greater than the time saved so only use mulithreaded for large matrices
-        //10 is a random guess and should probably be tuned
-        if (dim > 10)
+        //is greater than the time saved so only use mulithreaded for large matrices.
+        //Also stay serial if we're running in a likelihood worker thread as
+        //then the cores are already busy and more threads would just compete
+        //with the workers.
+        if ((dim >= parallelThreshold) && !WorkerThreadFactory.inWorker())
         {
-            //Parallel computation of matrix multiplication using the
-            //number of thread given by noThreads which defaults to the number
-            //of processors as reported by Java
-            try
+            TileMult task = new TileMult(a, b, r, 0, dim, 0, dim);
+            //If we're already in a fork join pool (e.g. from a nested call)
+            //then just fork in it rather than submitting to ours
+            if (ForkJoinTask.inForkJoinPool())
             {
-                List<ThreadedMult> tasks = new ArrayList<>();
-                for (int i=0; i < dim; i++)
-                {
-                    tasks.add(new ThreadedMult(a, b, i));
-                }
-                List<Future<double[]>> list = es.invokeAll(tasks);
-
-                //Retrieve and combine the results
-                for (int i=0; i < dim; i++)
-                {
-                    try
-                    {
-                        r[i] = list.get(i).get();
-                    }
-                    catch(ExecutionException ex)
-                    {
-                        Throwable cause = ex.getCause();
-                        if (cause instanceof RuntimeException)
-                        {
-                            throw (RuntimeException) cause;
-                        }
-                        if (cause instanceof Error)
-                        {
-                            throw (Error) cause;
-                        }
-                        //As call() does not throw any exceptions that must be caught
-                        //we should only have RuntimeExceptions or Errors
-                        //and so never reach here!
-                        //But just in case...
-                        throw new UnexpectedError(ex);
-                    }
-                }
+                task.invoke();
             }
-            catch(InterruptedException ex)
+            else
             {
-                //Don't think this should happen but in case it does...
-                throw new UnexpectedError(ex);
+                engine.getMatrixPool().invoke(task);
             }
         }
         else
         {
-            for (int i = 0; i < dim; i++)
-            {
-                for (int j = 0; j < dim; j++)
-                {
-                    r[i][j] = 0;
-                    for (int k = 0; k < dim; k++)
-                    {
-                        r[i][j] = r[i][j] + a[i][k] * b[k][j];
-                    }
-                }
-            }
+            MatrixKernels.multiply(a, b, r, dim);
         }
-        
-        return r;
     }
 
     private double[][] aAdd(double[][] M, double[][] N)
@@ -235,12 +203,26 @@ public class SquareMatrix implements Serializable
      * @throws SquareMatrixException Thrown if the matrices are not the same size
      */
     public SquareMatrix multiply(SquareMatrix o) throws SquareMatrixException
+    {
+        return multiply(o, Engine.getDefault());
+    }
+
+    /**
+     * Multiplies this matrix by another (this &times; o) and returns a new
+     * matrix as a result.  If the matrix is large enough to be multiplied in
+     * parallel the given engine's pool is used.
+     * @param o The matrix to multiply by
+     * @param engine The engine
+     * @return The resulting matrix
+     * @throws SquareMatrixException Thrown if the matrices are not the same size
+     */
+    public SquareMatrix multiply(SquareMatrix o, Engine engine) throws SquareMatrixException
     {
 	if (this.dim != o.dim)
 	{
 	    throw new SquareMatrixException("Matrices can not be added together - different sizes");
 	}
-	return SquareMatrix.newWithoutCheck(aMultiply(m, o.getArray()));
+	return SquareMatrix.newWithoutCheck(aMultiply(m, o.getArray(), engine));
     }
 
     /**
@@ -252,6 +234,82 @@ public class SquareMatrix implements Serializable
      *      as the Eigenvalues can't be computed
      */
     public SquareMatrix expMult(double x) throws SquareMatrixException
+    {
+        return expMult(x, Engine.getDefault());
+    }
+
+    /**
+     * Calculates e^Ax where A is this matrix and returns a new matrix as the result
+     * using the exponentiation settings of the given engine.
+     * @param x x in the above equation
+     * @param engine The engine
+     * @return The resulting matrix
+     * @throws SquareMatrixException Thrown if the calculation can't be performed
+     *      as the Eigenvalues can't be computed
+     */
+    public SquareMatrix expMult(double x, Engine engine) throws SquareMatrixException
+    {
+        return expMult(x, engine.getExpMethod(), engine);
+    }
+
+    /**
+     * Calculates e^Ax where A is this matrix and returns a new matrix as the result
+     * using the given method.  Used when the method has been chosen for this
+     * particular matrix, see {@link ExpMethodChooser}.  {@link Calculation#AUTO}
+     * uses the Taylor method as on its own a matrix has no history to choose
+     * from.
+     * @param x x in the above equation
+     * @param method The method to use
+     * @return The resulting matrix
+     * @throws SquareMatrixException Thrown if the calculation can't be performed
+     *      as the Eigenvalues can't be computed
+     */
+    public SquareMatrix expMult(double x, Calculation method) throws SquareMatrixException
+    {
+        return expMult(x, method, Engine.getDefault());
+    }
+
+    /**
+     * As {@link #expMult(double, Maths.SquareMatrix.Calculation)} but using the
+     * minimum number of repeated squarings and, if the matrix is large enough
+     * to be multiplied in parallel, the pool of the given engine rather than
+     * of the default engine.
+     * @param x x in the above equation
+     * @param method The method to use
+     * @param engine The engine
+     * @return The resulting matrix
+     * @throws SquareMatrixException Thrown if the calculation can't be performed
+     *      as the Eigenvalues can't be computed
+     */
+    public SquareMatrix expMult(final double x, final Calculation method, final Engine engine) throws SquareMatrixException
+    {
+        //Run the whole calculation in the engine's pool so each multiplication
+        //can fork in it rather than being submitted seperately
+        if ((dim < parallelThreshold) || ForkJoinTask.inForkJoinPool() || WorkerThreadFactory.inWorker())
+        {
+            return expMultDirect(x, method, engine);
+        }
+        try
+        {
+            return engine.getMatrixPool().invoke(ForkJoinTask.adapt(new Callable<SquareMatrix>()
+            {
+                public SquareMatrix call() throws SquareMatrixException
+                {
+                    return expMultDirect(x, method, engine);
+                }
+            }));
+        }
+        catch (RuntimeException e)
+        {
+            if (e.getCause() instanceof SquareMatrixException)
+            {
+                throw (SquareMatrixException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private SquareMatrix expMultDirect(double x, Calculation method, Engine engine) throws SquareMatrixException
     {
         //Detect the case where x == 0 and if so return the identity matrix
 	if (x == 0.0)
@@ -275,68 +333,77 @@ public class SquareMatrix implements Serializable
 	}
 
         // If x != 0 call the appropiate method
-	switch (expMethod)
+	switch (method)
 	{
 	    case TAYLOR:
-		return expMult_Taylor(x);
+            case AUTO:
+		return taylor(x, engine.getForce(), engine);
 	    case EIGEN:
-		return expMult_Eigen(x);
+		return expMult_Eigen(x, engine);
 	    case TAYLOR_NC:
 	    default:
-		return scalarMultiply(x).exp();
+		return scalarMultiply(x).exp_TaylorNoCache(engine);
 	}
     }
 
-    private SquareMatrix expMult_Taylor(double mult)
+    private SquareMatrix taylor(double mult, int min, Engine engine)
     {
         //Powers are cached to save computation time while computing
         //the exponentional.  If we don't have cached results saved then compute them...
 	if (powers == null)
 	{
-	    cacheSquared();
+	    cacheSquared(engine);
 	}
 
         //Work out how many repeated squaring steps we should use to ensure stability
 	int t = 0;
 	double imult = mult * Math.pow(2.0,pdiv);
-	for (; (imult * (norm()/Math.pow(2.0,pdiv))) > 1.0 ; imult = imult / 2)
+        double scaledNorm = pnorm / Math.pow(2.0,pdiv);
+	for (; (imult * scaledNorm) > 1.0 ; imult = imult / 2)
 	{
 	    t++;
 	}
 
         //If the number is less than the minimum then up to the minimum
-	while (t < force)
+	while (t < min)
 	{
 	    imult = imult / 2;
 	    t++;
 	}
 
-        //Create the result matrix with the identity matrix since e^Ax = I + A + A^2/2...
-	double[][] R = new double[dim][dim];
-	for (int i = 0; i < dim; i++)
-	{
-            R[i][i] = 1.0;
-	}
+        //Work in the current thread's scratch space so the only allocation
+        //is the final result.  Start with the identity matrix since
+        //e^Ax = I + A + A^2/2...
+        Workspace w = MatrixKernels.workspace(dim);
+        double[] R = w.x;
+        double[] S = w.y;
+        MatrixKernels.identity(R, dim);
 
-        //Calculate the Taylor expansion using the already stored values of A, A^2,
+        //Add the Taylor expansion using the already stored values of A, A^2,
         //A^3 etc.  imult is the factor neccessary for the repeated squaring step.
         //imult only accounts for the number of extra steps need to meet the minimum
-        //as other steps were taken into account at the cachuing stage.
-	for (int i = numIt; i > 0; i--)
+        //as other steps were taken into account at the cachuing stage.  The
+        //coefficient imult^i / i! is updated from the previous one each time.
+        double c = 1.0;
+	for (int i = 1; i <= numIt; i++)
 	{
-	    R = aAdd(R, aSMultiply(powers[i], (ifac(i)*Math.pow(imult,i))));
+            c = c * imult / i;
+            MatrixKernels.axpy(c, powers[i], R, dim * dim);
 	}
 
-        //Do the repeated squaring
+        //Do the repeated squaring, swapping between the two buffers
 	for (int i = 0; i < t; i++)
 	{
-	    R = aMultiply(R,R);
+            fMultiply(R, R, S, engine);
+            double[] tmp = R;
+            R = S;
+            S = tmp;
 	}
 
-	return SquareMatrix.newWithoutCheck(R);
+	return SquareMatrix.newWithoutCheck(MatrixKernels.unflatten(R, dim));
     }
 
-    private SquareMatrix expMult_Eigen(double mult) throws SquareMatrixException
+    private SquareMatrix expMult_Eigen(double mult, Engine engine) throws SquareMatrixException
     {
         //Compute the matrix exponentation using the standard eigenvalue method
         //caches the eigen decomposition and relate dpropertied (p, pi, d) and
@@ -345,9 +412,12 @@ public class SquareMatrix implements Serializable
 	{
 	    try
 	    {
-		p = eigVectors();
-		pi = p.inverse();
-		d = eigValuesDiag();
+                SquareMatrix v = eigVectors();
+                p = new double[dim * dim];
+                MatrixKernels.flatten(v.getArray(), p);
+                pi = new double[dim * dim];
+                MatrixKernels.flatten(v.inverse().getArray(), pi);
+                d = eigValues();
 	    }
 	    catch (ConvergenceException e)
 	    {
@@ -355,18 +425,27 @@ public class SquareMatrix implements Serializable
 	    }
 	}
 
-	SquareMatrix de = d.diagExp(mult);
+        //p * diag(e^(d * mult)) just scales the columns of p so can be done
+        //without a full multiplication
+        Workspace w = MatrixKernels.workspace(dim);
+        double[] pd = w.x;
+        double[] res = w.y;
+        double[] e = w.z;
+        for (int j = 0; j < dim; j++)
+        {
+            e[j] = Math.exp(d[j] * mult);
+        }
+        for (int i = 0; i < dim; i++)
+        {
+            int in = i * dim;
+            for (int j = 0; j < dim; j++)
+            {
+                pd[in + j] = p[in + j] * e[j];
+            }
+        }
+        fMultiply(pd, pi, res, engine);
 
-	SquareMatrix res;
-	try
-	{
-	     res = p.multiply(de).multiply(pi);
-	}
-	catch (SquareMatrixException e)
-	{
-	    throw new InternalError();
-	}
-	return res;
+	return SquareMatrix.newWithoutCheck(MatrixKernels.unflatten(res, dim));
     }
 
 
@@ -379,204 +458,125 @@ public class SquareMatrix implements Serializable
      */
     public SquareMatrix exp() throws SquareMatrixException
     {
-	switch (expMethod)
+        return exp(Engine.getDefault());
+    }
+
+    /**
+     * Calculates e^A where A is the current matrix and returns a new matrix as
+     * the result using the exponentiation settings of the given engine
+     * @param engine The engine
+     * @return The reuslting matrix
+     * @throws SquareMatrixException Thrown if the calculation can't be performed
+     *      as the Eigenvalues can't be computed
+     */
+    public SquareMatrix exp(Engine engine) throws SquareMatrixException
+    {
+	switch (engine.getExpMethod())
 	{
 	    case TAYLOR:
-		return exp_Taylor();
+            case AUTO:
+		return exp_Taylor(engine);
 	    case EIGEN:
-		return exp_Eigen();
+		return exp_Eigen(engine);
 	    case TAYLOR_NC:
 	    default:
-		return exp_TaylorNoCache();
+		return exp_TaylorNoCache(engine);
 	}
     }
 
-    private void cacheSquared()
+    private void cacheSquared(Engine engine)
     {
         // Work out how many repeated suaring steps will be neccessary for
         // stable claculation then cache pwers of that matrix.
+        pnorm = norm();
 	int t = 0;
-	for (double norm = norm(); norm > 1.0; norm = norm / 2)
+	for (double norm = pnorm; norm > 1.0; norm = norm / 2)
 	{
 	    t++;
 	}
 
 	pdiv = t;
 
-	powers = new double[numIt+1][][];
+	powers = new double[numIt+1][];
 
-	double[][] P = new double[dim][dim];
-	for (int i = 0; i < dim; i++)
+	double[] P = new double[dim * dim];
+        MatrixKernels.flatten(m, P);
+        double div = Math.pow(2.0,-t);
+	for (int i = 0; i < P.length; i++)
 	{
-	    for (int j = 0; j < dim; j++)
-	    {
-		P[i][j] = m[i][j] * Math.pow(2.0,-t);
-	    }
+            P[i] = P[i] * div;
 	}
         
 	powers[1] = P;
 
 	for (int i = 2; i <= numIt; i++)
 	{
-	    powers[i] = aMultiply(powers[i-1],powers[1]);
+            powers[i] = new double[dim * dim];
+	    fMultiply(powers[i-1],powers[1],powers[i],engine);
 	}
     }
 
-    private SquareMatrix exp_Taylor()
+    private SquareMatrix exp_Taylor(Engine engine)
     {
         //Normal matrix exponentation using the Taylor method with caching
-	if (powers == null)
-	{
-	    cacheSquared();
-	}
-
-	int t = 0;
-	for (double norm = norm(); norm > 1.0; norm = norm / 2)
-	{
-	    t++;
-	}
-
-        double[][] R = new double[dim][dim];
-	for (int i = 0; i < dim; i++)
-	{
-	    for (int j = 0; j < dim; j++)
-	    {
-		if (i == j)
-		{
-		    R[i][j] = 1.0;
-		}
-		else
-		{
-		    R[i][j] = 0.0;
-		}
-	    }
-	}
-
-	for (int i = numIt; i > 0; i--)
-	{
-	    R = aAdd(R, aSMultiply(powers[i], ifac(i)));
-	}
-
-	for (int i = 0; i < t; i++)
-	{
-	    R = aMultiply(R,R);
-	}
-
-	return SquareMatrix.newWithoutCheck(R);
+        return taylor(1.0, 0, engine);
     }
 
-    private double ifac(int n)
-    {
-        //Calculate sthe inverse factorial, that is 1/n!  Used in the Taylor
-        //expansion
-	int t = 1;
-	for (int i = 2; i <=n; i++)
-	{
-	    t = t * i;
-	}
-	return 1.0 / (double) t;
-    }
-
-    private SquareMatrix exp_Eigen() throws SquareMatrixException
+    private SquareMatrix exp_Eigen(Engine engine) throws SquareMatrixException
     {
         //Compute the matrix exponentation using the standard eigenvalue method,
         //again with caching
-        if (p == null)
-	{
-	    try
-	    {
-		p = eigVectors();
-		pi = p.inverse();
-		d = eigValuesDiag();
-	    }
-	    catch (ConvergenceException e)
-	    {
-		throw new SquareMatrixException("Cannot calculate eigenvector - no convergence");
-	    }
-	}
-
-	SquareMatrix de = d.diagExp(1.0);
-
-	SquareMatrix res;
-	try
-	{
-	     res = p.multiply(de).multiply(pi);
-	}
-	catch (SquareMatrixException e)
-	{
-	    throw new InternalError();
-	}
-	return res;
+        return expMult_Eigen(1.0, engine);
     }
 
-    private SquareMatrix exp_TaylorNoCache()
+    private SquareMatrix exp_TaylorNoCache(Engine engine)
     {
         //Normal, simple taylor expansion with no caching.  Can be useful for debugging.
-	double e = 0;
-	double[][] M = new double[dim][dim];
-	double[][] R = new double[dim][dim];
-	double[][] P = new double[dim][dim];
-	for (int i = 0; i < dim; i++)
-	{
-	    for (int j = 0; j < dim; j++)
-	    {
-		if (i == j)
-		{
-		    R[i][j] = 1.0;
-		}
-		else
-		{
-		    R[i][j] = 0.0;
-		}
-		M[i][j] = m[i][j];
-	    }
-	}
-
+        //Scale the matrix down so its norm is less than one...
+        int e = 0;
+        double div = 1.0;
 	for (double norm = norm(); norm > 1; norm = norm / 2)
 	{
-	    M = aSDivide(M, 2);
+            div = div / 2.0;
 	    e++;
 	}
 
-	for (int i = 0; i < dim; i++)
-	{
-	    for (int j = 0; j < dim; j++)
-	    {
-		P[i][j] = M[i][j];
-	    }
-	}
+        Workspace w = MatrixKernels.workspace(dim);
+        double[] M = w.x;
+        double[] R = w.y;
+        double[] S = w.z;
+        MatrixKernels.flatten(m, M);
+        for (int i = 0; i < dim * dim; i++)
+        {
+            M[i] = M[i] * div;
+        }
 
-	int t = 1;
-	for (int i = 1; i <= numIt; i++)
+        //...evaluate the series by Horner's method, i.e.
+        //I + M(I + M/2(I + M/3(...(I + M/numIt))))...
+        MatrixKernels.identity(R, dim);
+	for (int i = numIt; i > 0; i--)
 	{
-	    t = t * i;
-	    R = aAdd(R, aSDivide(P, t));
-	    P = aMultiply(P, M);
+            fMultiply(M, R, S, engine);
+            for (int j = 0; j < dim * dim; j++)
+            {
+                R[j] = S[j] / i;
+            }
+            for (int j = 0; j < dim; j++)
+            {
+                R[j * dim + j] += 1.0;
+            }
 	}
 
+        //...and then square back up
 	for (int i = 0; i < e; i++)
 	{
-	    R = aMultiply(R, R);
+            fMultiply(R, R, S, engine);
+            double[] tmp = R;
+            R = S;
+            S = tmp;
 	}
 
-	return SquareMatrix.newWithoutCheck(R);
-    }
-
-    private SquareMatrix diagExp(double mult)
-    {
-        //Raises the values on the diagonal to a power.  Used to raise the
-        //eigenvalues to a power when they're estored on the diagonal and used
-        //when calculating matrix exponentation using eigendecomposition methods
-        double[][] ed = new double[m.length][m.length];
-	for (int i = 0; i < m.length; i++)
-	{
-	    for (int j = 0; j < m.length; j++)
-	    {
-		ed[i][j] = 0.0;
-	    }
-	    ed[i][i] = Math.exp(m[i][i] * mult);
-	}
-	return SquareMatrix.newWithoutCheck(ed);
+	return SquareMatrix.newWithoutCheck(MatrixKernels.unflatten(R, dim));
     }
 
     /**
@@ -711,12 +711,22 @@ public class SquareMatrix implements Serializable
     }
 
     /**
-     * Sets the method to be used for Exponentiation
+     * Sets the method to be used for Exponentiation by the default
+     * {@link Engine}
      * @param i The method to be used
      */
     public static void setExpMethod(Calculation i)
     {
-	expMethod = i;
+	Engine.getDefault().setExpMethod(i);
+    }
+
+    /**
+     * Gets the method currently set to be used for Exponentiation
+     * @return The method
+     */
+    public static Calculation getExpMethod()
+    {
+        return Engine.getDefault().getExpMethod();
     }
 
     /**
@@ -726,7 +736,7 @@ public class SquareMatrix implements Serializable
      */
     public static void setForce(int f)
     {
-	force = f;
+	Engine.getDefault().setForce(f);
     }
     
     /**
@@ -735,8 +745,7 @@ public class SquareMatrix implements Serializable
      */
     public static void setNoThreads(int number)
     {
-        //noThreads = number;
-        es = Executors.newFixedThreadPool(number, new DaemonThreadFactory());
+        Engine.getDefault().setMatrixThreads(number);
     }
     
     public boolean equals(Object ob)
@@ -826,6 +835,29 @@ public class SquareMatrix implements Serializable
 	return ed.getD();
     }
 
+    /**
+     * Whether all the eigenvalues of the matrix are real.  The actual
+     * decomposition is cached as for {@link #eigValues()}.
+     * @param tol Tolerance below which an imaginary part is treated as zero
+     * @return True if all the eigenvalues are real
+     * @throws ConvergenceException Thrown if the eigendeompisition does not converge
+     */
+    boolean hasRealEigenvalues(double tol) throws ConvergenceException
+    {
+	if (ed == null)
+	{
+	    ed = new EigenvalueDecomposition(this);
+	}
+        for (double i: ed.getImagEigenvalues())
+        {
+            if (Math.abs(i) > tol)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Transposes the matrix and returns a new matrix as the result
      * @return The resulting matrix
@@ -897,28 +929,33 @@ public class SquareMatrix implements Serializable
 
     private int dim;
 
-    private SquareMatrix p;
+    private double[] p;
 
-    private SquareMatrix pi;
+    private double[] pi;
 
-    private SquareMatrix d;
+    private double[] d;
 
     private EigenvalueDecomposition ed;
 
     private LUDecomposition lu;
 
-    private double[][][] powers;
+    private double[][] powers;
 
     private int pdiv;
+
+    private double pnorm;
     
     private static final int numIt = 12;
 
-    private static Calculation expMethod = Calculation.TAYLOR;
 
-    private static int force = 0;
     
-    private static ExecutorService es = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
-            new DaemonThreadFactory());
+
+    //Below this size multiplication is always done serially.  Determined
+    //by timing on a range of rate matrices.
+    private static final int parallelThreshold = 64;
+
+    //Tiles are split until they have no more than this many entries
+    private static final int tileSize = 64 * 64;
     
     /**
      * Enumeration of the possible ways of calculating the matrix exponential
@@ -936,7 +973,12 @@ public class SquareMatrix implements Serializable
         /**
          * Use the Taylor expansion method without caching (useful for debugging)
          */
-        TAYLOR_NC
+        TAYLOR_NC,
+        /**
+         * Choose between the eigendecomposition and Taylor methods separately
+         * for each rate category.  See {@link ExpMethodChooser}.
+         */
+        AUTO
     }
 
     /**
@@ -962,37 +1004,50 @@ public class SquareMatrix implements Serializable
     
     private static final long serialVersionUID = 1;
     
-    private class ThreadedMult implements Callable<double[]>
+    private class TileMult extends RecursiveAction
     {
-        private ThreadedMult(double[][] a, double[][] b, int i)
+        private TileMult(double[] a, double[] b, double[] r, int rowFrom, int rowTo, int colFrom, int colTo)
         {
             this.a = a;
             this.b = b;
-            this.i = i;
+            this.r = r;
+            this.rowFrom = rowFrom;
+            this.rowTo = rowTo;
+            this.colFrom = colFrom;
+            this.colTo = colTo;
         }
-        
-        public double[] call()
-        {
-            int n = a.length;
-            double[] r = new double[n];
-
 
-            for (int j = 0; j < n; j++)
+        protected void compute()
+        {
+            int rows = rowTo - rowFrom;
+            int cols = colTo - colFrom;
+            if (rows * cols <= tileSize)
             {
-                r[j] = 0;
-
-                for (int k = 0; k < n; k++)
-                {
-                    r[j] += a[i][k] * b[k][j];
-                }
+                MatrixKernels.multiplyTile(a, b, r, dim, rowFrom, rowTo, colFrom, colTo);
+            }
+            else if (rows >= cols)
+            {
+                int mid = rowFrom + rows / 2;
+                invokeAll(new TileMult(a, b, r, rowFrom, mid, colFrom, colTo),
+                        new TileMult(a, b, r, mid, rowTo, colFrom, colTo));
+            }
+            else
+            {
+                int mid = colFrom + cols / 2;
+                invokeAll(new TileMult(a, b, r, rowFrom, rowTo, colFrom, mid),
+                        new TileMult(a, b, r, rowFrom, rowTo, mid, colTo));
             }
-            
-            return r;
         }
-        
-        private double[][] a;
-        private double[][] b;
-        private int i;
+
+        private double[] a;
+        private double[] b;
+        private double[] r;
+        private int rowFrom;
+        private int rowTo;
+        private int colFrom;
+        private int colTo;
+
+        private static final long serialVersionUID = 1;
     }
     
     /**
@@ -0,0 +1,509 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ModelTest;
+
+import Alignments.Alignment;
+import Alignments.UniqueSite;
+import Exceptions.UnexpectedError;
+import Likelihood.Resampler;
+import Likelihood.SiteLikelihood.LikelihoodException;
+import Likelihood.StandardLikelihood;
+import Utils.Engine;
+import Utils.WorkerThreadFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Class for comparing how well several trees fit an alignment using the
+ * Kishino-Hasegawa (KH), Shimodaira-Hasegawa (SH) and approximately unbiased
+ * (AU, Shimodaira 2002) tests.  The trees should already have been fitted, each
+ * with its own calculator, on the same alignment.
+ * <br><br>
+ * Bootstrap replicates are evaluated using resampling of estimated
+ * log-likelihoods (RELL) so the parameters aren't re-optimised for each
+ * replicate - the likelihood of a replicate is just the sum of the likelihood
+ * of the sites sampled for it.  The AU test uses replicates at several scales
+ * (sizes relative to the alignment) and the KH, SH and bootstrap probability
+ * use replicates the same size as the alignment.  Replicates are evaluated in
+ * parallel.
+ * <br><br>
+ * Unobserved data corrections are not included in the likelihoods used.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class TopologyTest
+{
+    /**
+     * Performs the tests using the default scales (0.5 to 1.4 in steps of
+     * 0.1) and the default engine's threads
+     * @param a The alignment the trees were fitted to
+     * @param results The fitted result for each tree
+     * @param reps The number of replicates at each scale
+     * @throws Likelihood.SiteLikelihood.LikelihoodException If a result doesn't
+     * include a site in the alignment
+     */
+    public TopologyTest(Alignment a, List<StandardLikelihood> results, int reps) throws LikelihoodException
+    {
+        this(getPatternLikelihoods(a, results), getCounts(a), reps, SCALES, new Random(), Engine.getDefault());
+    }
+
+    /**
+     * Performs the tests on per unique site log likelihoods
+     * @param patternLikelihoods The log likelihood of each unique site for each
+     * tree, indexed by tree and then unique site.  See
+     * {@link #getPatternLikelihoods(Alignments.Alignment, Likelihood.StandardLikelihood)}.
+     * @param counts How often each unique site occurs
+     * @param reps The number of replicates at each scale
+     * @param scales The size of the replicates relative to the alignment for
+     * the AU test.  Replicates the same size as the alignment are always used
+     * for the other tests.
+     * @param random The random number generator to use
+     * @param engine The engine whose threads are used
+     */
+    public TopologyTest(double[][] patternLikelihoods, int[] counts, int reps, double[] scales,
+            Random random, Engine engine)
+    {
+        this.pl = patternLikelihoods;
+        this.reps = reps;
+        trees = pl.length;
+        resampler = new Resampler(counts);
+
+        l = new double[trees];
+        best = 0;
+        for (int i = 0; i < trees; i++)
+        {
+            for (int p = 0; p < counts.length; p++)
+            {
+                l[i] += counts[p] * pl[i][p];
+            }
+            if (l[i] > l[best])
+            {
+                best = i;
+            }
+        }
+
+        //Replicates the same size as the alignment
+        double[][] unit = new double[reps][];
+        int[] unitBest = run(1.0, unit, random, engine);
+        bp = new double[trees];
+        for (int i = 0; i < trees; i++)
+        {
+            bp[i] = (double) unitBest[i] / reps;
+        }
+        kh = kh(unit);
+        sh = sh(unit);
+
+        //And at each scale for AU
+        double[][] scaleBP = new double[scales.length][trees];
+        for (int k = 0; k < scales.length; k++)
+        {
+            int[] sb = (scales[k] == 1.0) ? unitBest : run(scales[k], null, random, engine);
+            for (int i = 0; i < trees; i++)
+            {
+                scaleBP[k][i] = (double) sb[i] / reps;
+            }
+        }
+        au = new double[trees];
+        for (int i = 0; i < trees; i++)
+        {
+            au[i] = au(scales, scaleBP, i);
+        }
+    }
+
+    /**
+     * Gets the log likelihood of each unique site in an alignment from a
+     * result, in the order returned by {@link Alignment#getUniqueSites()}
+     * @param a The alignment
+     * @param result The result
+     * @return The log likelihood of each unique site
+     * @throws Likelihood.SiteLikelihood.LikelihoodException If the result
+     * doesn't include a site in the alignment
+     */
+    public static double[] getPatternLikelihoods(Alignment a, StandardLikelihood result) throws LikelihoodException
+    {
+        List<UniqueSite> us = a.getUniqueSites();
+        double[] r = new double[us.size()];
+        for (int p = 0; p < r.length; p++)
+        {
+            r[p] = result.getSiteLikelihood(us.get(p)).getLikelihood().ln();
+        }
+        return r;
+    }
+
+    private static double[][] getPatternLikelihoods(Alignment a, List<StandardLikelihood> results) throws LikelihoodException
+    {
+        double[][] r = new double[results.size()][];
+        for (int i = 0; i < r.length; i++)
+        {
+            r[i] = getPatternLikelihoods(a, results.get(i));
+        }
+        return r;
+    }
+
+    private static int[] getCounts(Alignment a)
+    {
+        List<UniqueSite> us = a.getUniqueSites();
+        int[] c = new int[us.size()];
+        for (int p = 0; p < c.length; p++)
+        {
+            c[p] = us.get(p).getCount();
+        }
+        return c;
+    }
+
+    /**
+     * Gets the log likelihood of each tree
+     * @return The log likelihoods, in the order the trees were given
+     */
+    public double[] getLikelihoods()
+    {
+        return l.clone();
+    }
+
+    /**
+     * Gets the tree with the highest likelihood
+     * @return The position of the tree in the order the trees were given
+     */
+    public int getBest()
+    {
+        return best;
+    }
+
+    /**
+     * Gets the bootstrap probability of each tree.  That is the proportion of
+     * replicates in which the tree has the highest likelihood.
+     * @return The bootstrap probabilities, in the order the trees were given
+     */
+    public double[] getBP()
+    {
+        return bp.clone();
+    }
+
+    /**
+     * Gets the p-value of the KH test of each tree against the tree with the
+     * highest likelihood.  Is 1.0 for the tree with the highest likelihood.
+     * @return The p-values, in the order the trees were given
+     */
+    public double[] getKH()
+    {
+        return kh.clone();
+    }
+
+    /**
+     * Gets the p-value of the SH test for each tree
+     * @return The p-values, in the order the trees were given
+     */
+    public double[] getSH()
+    {
+        return sh.clone();
+    }
+
+    /**
+     * Gets the p-value of the AU test for each tree
+     * @return The p-values, in the order the trees were given
+     */
+    public double[] getAU()
+    {
+        return au.clone();
+    }
+
+    //Evaluates the replicates at one scale.  Returns how often each tree is
+    //best and, if store is not null, stores the likelihood of each tree for
+    //each replicate in it.
+    private int[] run(double scale, double[][] store, Random random, Engine engine)
+    {
+        int length = (int) Math.round(scale * resampler.getLength());
+        int threads = WorkerThreadFactory.inWorker() ? 1 : engine.getThreads();
+        //Blocks are a fixed size and their seeds are drawn here so the
+        //result doesn't depend on the number of threads
+        List<Block> blocks = new ArrayList<>();
+        for (int s = 0; s < reps; s += BLOCK_SIZE)
+        {
+            blocks.add(new Block(s, Math.min(reps, s + BLOCK_SIZE), length, random.nextLong(), store));
+        }
+
+        try
+        {
+            if (threads == 1)
+            {
+                for (Block b: blocks)
+                {
+                    b.call();
+                }
+            }
+            else
+            {
+                for (Future<Void> f: engine.getExecutor().invokeAll(blocks))
+                {
+                    f.get();
+                }
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            throw new UnexpectedError(ex);
+        }
+        catch (ExecutionException ex)
+        {
+            throw new UnexpectedError(ex.getCause());
+        }
+
+        int[] count = new int[trees];
+        for (Block b: blocks)
+        {
+            for (int i = 0; i < trees; i++)
+            {
+                count[i] += b.best[i];
+            }
+        }
+        return count;
+    }
+
+    private double[] kh(double[][] unit)
+    {
+        double[] p = new double[trees];
+        for (int i = 0; i < trees; i++)
+        {
+            if (i == best)
+            {
+                p[i] = 1.0;
+                continue;
+            }
+            //Centre the replicate differences on zero
+            double mean = 0.0;
+            for (double[] r: unit)
+            {
+                mean += r[best] - r[i];
+            }
+            mean = mean / reps;
+            double d = l[best] - l[i];
+            int c = 0;
+            for (double[] r: unit)
+            {
+                if (r[best] - r[i] - mean >= d)
+                {
+                    c++;
+                }
+            }
+            p[i] = (double) c / reps;
+        }
+        return p;
+    }
+
+    private double[] sh(double[][] unit)
+    {
+        //Centre each tree's replicate likelihoods on zero
+        double[] mean = new double[trees];
+        for (double[] r: unit)
+        {
+            for (int i = 0; i < trees; i++)
+            {
+                mean[i] += r[i];
+            }
+        }
+        for (int i = 0; i < trees; i++)
+        {
+            mean[i] = mean[i] / reps;
+        }
+
+        int[] c = new int[trees];
+        for (double[] r: unit)
+        {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < trees; i++)
+            {
+                max = Math.max(max, r[i] - mean[i]);
+            }
+            for (int i = 0; i < trees; i++)
+            {
+                if (max - (r[i] - mean[i]) >= l[best] - l[i])
+                {
+                    c[i]++;
+                }
+            }
+        }
+        double[] p = new double[trees];
+        for (int i = 0; i < trees; i++)
+        {
+            p[i] = (double) c[i] / reps;
+        }
+        return p;
+    }
+
+    //Fits sigma * z = v + c * sigma^2 by weighted least squares where
+    //sigma^2 = 1 / scale and z is the normal quantile of one minus the
+    //bootstrap probability at that scale.  The AU p-value is then
+    //1 - Phi(v - c) (Shimodaira 2002).
+    private double au(double[] scales, double[][] scaleBP, int tree)
+    {
+        double sw = 0.0, sx = 0.0, sy = 0.0, sxx = 0.0, sxy = 0.0;
+        int used = 0;
+        for (int k = 0; k < scales.length; k++)
+        {
+            double b = scaleBP[k][tree];
+            //Scales where the tree is always or never best tell us nothing
+            //about the curve
+            if ((b <= 0.0) || (b >= 1.0))
+            {
+                continue;
+            }
+            double s2 = 1.0 / scales[k];
+            double z = normalQuantile(1.0 - b);
+            double phi = Math.exp(-0.5 * z * z) / Math.sqrt(2.0 * Math.PI);
+            //Inverse of the binomial variance of sigma * z
+            double w = reps * phi * phi / (s2 * b * (1.0 - b));
+            double x = s2;
+            double y = Math.sqrt(s2) * z;
+            sw += w;
+            sx += w * x;
+            sy += w * y;
+            sxx += w * x * x;
+            sxy += w * x * y;
+            used++;
+        }
+        if (used < 3)
+        {
+            //Can't reliably fit the curve so fall back on the bootstrap
+            //probability
+            return bp[tree];
+        }
+        double det = sw * sxx - sx * sx;
+        if (det <= 0.0)
+        {
+            return bp[tree];
+        }
+        double c = (sw * sxy - sx * sy) / det;
+        double v = (sy - c * sx) / sw;
+        return 1.0 - normalCDF(v - c);
+    }
+
+    //Standard normal cumulative distribution function.  Uses the
+    //complementary error function approximation from Numerical Recipes which
+    //has a relative error of less than 1.2e-7.
+    private static double normalCDF(double x)
+    {
+        double z = Math.abs(x) / Math.sqrt(2.0);
+        double t = 1.0 / (1.0 + 0.5 * z);
+        double erfc = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418 +
+                t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587 +
+                t * (-0.82215223 + t * 0.17087277)))))))));
+        return (x >= 0.0) ? 1.0 - 0.5 * erfc : 0.5 * erfc;
+    }
+
+    //Inverse of the standard normal cumulative distribution function using
+    //Acklam's rational approximation (relative error less than 1.2e-9)
+    private static double normalQuantile(double p)
+    {
+        if (p < P_LOW)
+        {
+            double q = Math.sqrt(-2.0 * Math.log(p));
+            return (((((C[0] * q + C[1]) * q + C[2]) * q + C[3]) * q + C[4]) * q + C[5]) /
+                    ((((D[0] * q + D[1]) * q + D[2]) * q + D[3]) * q + 1.0);
+        }
+        if (p > 1.0 - P_LOW)
+        {
+            return -normalQuantile(1.0 - p);
+        }
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((A[0] * r + A[1]) * r + A[2]) * r + A[3]) * r + A[4]) * r + A[5]) * q /
+                (((((B[0] * r + B[1]) * r + B[2]) * r + B[3]) * r + B[4]) * r + 1.0);
+    }
+
+    /**
+     * Evaluates a block of replicates
+     */
+    private class Block implements Callable<Void>
+    {
+        private Block(int start, int end, int length, long seed, double[][] store)
+        {
+            this.start = start;
+            this.end = end;
+            this.length = length;
+            this.seed = seed;
+            this.store = store;
+            best = new int[trees];
+        }
+
+        public Void call()
+        {
+            Random random = new Random(seed);
+            for (int r = start; r < end; r++)
+            {
+                double[] w = resampler.bootstrap(length, random);
+                double[] rl = new double[trees];
+                int b = 0;
+                for (int i = 0; i < trees; i++)
+                {
+                    double[] pli = pl[i];
+                    double s = 0.0;
+                    for (int p = 0; p < w.length; p++)
+                    {
+                        s += w[p] * pli[p];
+                    }
+                    rl[i] = s;
+                    if (s > rl[b])
+                    {
+                        b = i;
+                    }
+                }
+                best[b]++;
+                if (store != null)
+                {
+                    store[r] = rl;
+                }
+            }
+            return null;
+        }
+
+        private final int start;
+        private final int end;
+        private final int length;
+        private final long seed;
+        private final double[][] store;
+        private final int[] best;
+    }
+
+    private final double[][] pl;
+    private final int reps;
+    private final int trees;
+    private final Resampler resampler;
+    private final double[] l;
+    private int best;
+    private final double[] bp;
+    private final double[] kh;
+    private final double[] sh;
+    private final double[] au;
+
+    private static final double[] SCALES = {0.5, 0.6, 0.7, 0.8, 0.9, 1.0, 1.1, 1.2, 1.3, 1.4};
+    private static final int BLOCK_SIZE = 256;
+
+    private static final double P_LOW = 0.02425;
+    private static final double[] A = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+            1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+    private static final double[] B = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+            6.680131188771972e+01, -1.328068155288572e+01};
+    private static final double[] C = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+            -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+    private static final double[] D = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134111349656e+00,
+            3.754408661907416e+00};
+}
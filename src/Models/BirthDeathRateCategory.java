@@ -0,0 +1,229 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Models;
+
+import Exceptions.UnexpectedError;
+import Maths.CompiledFunction;
+import Maths.EigenvalueDecomposition;
+import Maths.EigenvalueDecomposition.ConvergenceException;
+import Maths.SquareMatrix;
+import Maths.SquareMatrix.SquareMatrixException;
+import Utils.Engine;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A rate category for birth-death(-immigration) style models, i.e. those where
+ * the only non-zero rates are between neighbouring states.  Such a chain is
+ * always reversible and its stationary distribution follows directly from the
+ * detailed balance equations.  The rate matrix is therefore similar to a
+ * symmetric tridiagonal matrix whose eigendecomposition is real and orthogonal.
+ * This decomposition is calculated once per parameter set and then each
+ * P-matrix is calculated directly from it, avoiding the general matrix
+ * exponentiation and stationary distribution methods.
+ * <br><br>
+ * The root distribution is always the stationary distribution.  An exception
+ * is thrown when the P-matrix or stationary distribution is requested if the
+ * rate matrix, once evaluated, is not of birth-death form.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class BirthDeathRateCategory extends RateCategory
+{
+    /**
+     * Constructor
+     * @param rates Array representing the rate matrix.  Only entries immediately
+     * above or below the diagonal should evaluate to a non-zero value.
+     * @param map Map from State to position in matrix (0-index).  For example
+     * map would contain A -> 0 if state A was in the first position (column and
+     * row of the matrix.
+     * @throws Models.RateCategory.RateException  If the rate matrix is not square
+     */
+    public BirthDeathRateCategory(String[][] rates, HashMap<String, Integer> map) throws RateException
+    {
+        super(rates, FrequencyType.STATIONARY, map);
+    }
+
+    private BirthDeathRateCategory(CompiledFunction[][] rates, Map<String, Integer> map)
+    {
+        super(rates, FrequencyType.STATIONARY, null, map);
+    }
+
+    protected RateCategory newInstance(CompiledFunction[][] rates, FrequencyType freqType, CompiledFunction[] freq, Map<String, Integer> map)
+    {
+        return new BirthDeathRateCategory(rates, map);
+    }
+
+    protected double[] stationary(SquareMatrix matrix, Engine engine) throws RateException
+    {
+        //Straight from detailed balance, pi[k+1] / pi[k] = q[k][k+1] / q[k+1][k]
+        double[] lp = logStationary(matrix.getArray());
+        double max = Double.NEGATIVE_INFINITY;
+        for (double l: lp)
+        {
+            max = Math.max(max, l);
+        }
+        double[] f = new double[lp.length];
+        double total = 0.0;
+        for (int i = 0; i < lp.length; i++)
+        {
+            f[i] = Math.exp(lp[i] - max);
+            total += f[i];
+        }
+        for (int i = 0; i < f.length; i++)
+        {
+            f[i] = f[i] / total;
+        }
+        return f;
+    }
+
+    protected PCalculator pCalculator(SquareMatrix scaled, double[] freq, Engine engine) throws RateException
+    {
+        return new BirthDeathCalculator(scaled);
+    }
+
+    private static class BirthDeathCalculator implements PCalculator
+    {
+        private BirthDeathCalculator(SquareMatrix sm) throws RateException
+        {
+            decompose(sm);
+        }
+
+        public SquareMatrix getP(double length) throws RateException
+        {
+            int n = values.length;
+            double[] e = new double[n];
+            for (int k = 0; k < n; k++)
+            {
+                e[k] = Math.exp(values[k] * length);
+            }
+
+            //V diag(e) V' is symmetric so only need to calculate half of it
+            double[][] P = new double[n][n];
+            for (int i = 0; i < n; i++)
+            {
+                double[] vi = vectors[i];
+                for (int j = i; j < n; j++)
+                {
+                    double[] vj = vectors[j];
+                    double s = 0.0;
+                    for (int k = 0; k < n; k++)
+                    {
+                        s += vi[k] * e[k] * vj[k];
+                    }
+                    //Rounding can give very small negative values where the true
+                    //probability is effectively zero
+                    P[i][j] = Math.max(0.0, s * half[j] / half[i]);
+                    P[j][i] = Math.max(0.0, s * half[i] / half[j]);
+                }
+            }
+
+            try
+            {
+                return new SquareMatrix(P);
+            }
+            catch (SquareMatrixException ex)
+            {
+                //P is square by construction
+                throw new UnexpectedError(ex);
+            }
+        }
+
+        private void decompose(SquareMatrix sm) throws RateException
+        {
+            double[][] q = sm.getArray();
+            int n = q.length;
+
+            //Q = D^-1 S D where D = diag(sqrt(pi)) and S is symmetric tridiagonal
+            //with off-diagonal entries sqrt(q[k][k+1] * q[k+1][k])
+            double[] lp = logStationary(q);
+            double mid = 0.0;
+            for (double l: lp)
+            {
+                mid += l;
+            }
+            mid = mid / n;
+            half = new double[n];
+            for (int i = 0; i < n; i++)
+            {
+                half[i] = Math.exp((lp[i] - mid) / 2.0);
+            }
+
+            double[][] s = new double[n][n];
+            for (int i = 0; i < n; i++)
+            {
+                s[i][i] = q[i][i];
+                if (i + 1 < n)
+                {
+                    s[i][i+1] = Math.sqrt(q[i][i+1] * q[i+1][i]);
+                    s[i+1][i] = s[i][i+1];
+                }
+            }
+
+            try
+            {
+                EigenvalueDecomposition ed = new EigenvalueDecomposition(new SquareMatrix(s));
+                vectors = ed.getV().getArray();
+                values = ed.getRealEigenvalues();
+            }
+            catch (ConvergenceException ex)
+            {
+                throw new RateException("Problem calculating P matrix - eigenvalue calculation does not converge");
+            }
+            catch (SquareMatrixException ex)
+            {
+                //s is square by construction
+                throw new UnexpectedError(ex);
+            }
+        }
+
+        private double[][] vectors;
+        private double[] values;
+        private double[] half;
+    }
+
+    private static double[] logStationary(double[][] q) throws RateException
+    {
+        int n = q.length;
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                if ((Math.abs(i - j) > 1) && (q[i][j] != 0.0))
+                {
+                    throw new RateException("Rate matrix is not of birth-death form - "
+                            + "non-zero rate between non-neighbouring states " + i + " and " + j);
+                }
+            }
+        }
+
+        double[] lp = new double[n];
+        for (int k = 0; k + 1 < n; k++)
+        {
+            if (!(q[k][k+1] > 0.0) || !(q[k+1][k] > 0.0))
+            {
+                throw new RateException("Rate matrix is not of birth-death form - "
+                        + "rates between states " + k + " and " + (k+1) + " must both be positive");
+            }
+            lp[k+1] = lp[k] + Math.log(q[k][k+1]) - Math.log(q[k+1][k]);
+        }
+        return lp;
+    }
+
+    private static final long serialVersionUID = 1;
+}
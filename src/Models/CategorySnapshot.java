@@ -0,0 +1,171 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Models;
+
+import Likelihood.Root;
+import Maths.SquareMatrix;
+import Models.RateCategory.PCalculator;
+import Models.RateCategory.RateException;
+import Utils.Engine;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link RateCategory} evaluated at one set of parameters.  Holds the rate
+ * matrix, scaled rate matrix and root frequencies and stores the P-matrices
+ * calculated from them.  A snapshot never changes once created (other than to
+ * store P-matrices) so can be used by more than one thread at the same time.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public final class CategorySnapshot
+{
+    CategorySnapshot(RateCategory category, SquareMatrix m, SquareMatrix sm, double[] f, double scale, Engine engine)
+    {
+        this.engine = engine;
+        this.category = category;
+        this.m = m;
+        this.sm = sm;
+        this.f = f;
+        this.scale = scale;
+        cache = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets the rate category this is a snapshot of
+     * @return The rate category
+     */
+    public RateCategory getCategory()
+    {
+        return category;
+    }
+
+    /**
+     * Gets the (unscaled) rate matrix
+     * @return The rate matrix
+     */
+    public SquareMatrix getMatrix()
+    {
+        return m;
+    }
+
+    /**
+     * Gets the scaled rate matrix
+     * @return The scaled rate matrix
+     */
+    public SquareMatrix getScaledMatrix()
+    {
+        return sm;
+    }
+
+    /**
+     * Gets the scale the rate matrix has been multiplied by
+     * @return The scale
+     */
+    public double getScale()
+    {
+        return scale;
+    }
+
+    /**
+     * Gets the root frequencies
+     * @return An array containing the root frequencies.  Order is that given by
+     * the map returned by {@link RateCategory#getMap()}.
+     */
+    public double[] getFreq()
+    {
+        return (f == null) ? null : f.clone();
+    }
+
+    /**
+     * Get a root object that can be used to calculate the total likelihood
+     * from the root node likelihoods or provide the frequencies of the various
+     * states at the root
+     * @return A root object
+     */
+    public Root getRoot()
+    {
+        return category.root(f);
+    }
+
+    /**
+     * Gets the total (unscaled) rate of the rate category
+     * @return The total rate
+     */
+    public double getTotalRate()
+    {
+        return RateCategory.totalRate(m, f);
+    }
+
+    /**
+     * Gets the P-matrix for a given length
+     * @param length The length
+     * @return The probability matrix.   Order is that given by the map returned
+     * by {@link RateCategory#getMap()}.
+     * @throws Models.RateCategory.RateException Thrown if the matrix cannot be
+     * calculated.  
+     */
+    public SquareMatrix getP(double length) throws RateException
+    {
+        SquareMatrix P = cache.get(length);
+        if (P != null)
+        {
+            return P;
+        }
+        //The calculator (and the matrix it uses) may cache intermediate results
+        //so only let one thread use it at a time
+        synchronized (this)
+        {
+            P = cache.get(length);
+            if (P == null)
+            {
+                if (calculator == null)
+                {
+                    calculator = category.pCalculator(sm, f, engine);
+                }
+                P = calculator.getP(length);
+                cache.put(length, P);
+            }
+            return P;
+        }
+    }
+
+    /**
+     * Creates a snapshot with the rate matrix multiplied by a scale.
+     * @param scale The scale
+     * @return The scaled snapshot
+     */
+    CategorySnapshot scale(double scale)
+    {
+        return new CategorySnapshot(category, m, m.scalarMultiply(scale), f, scale, engine);
+    }
+
+    double[] freq()
+    {
+        return f;
+    }
+
+    private final RateCategory category;
+    private final SquareMatrix m;
+    private final SquareMatrix sm;
+    private final double[] f;
+    private final double scale;
+    private final Engine engine;
+    private final Map<Double,SquareMatrix> cache;
+    private PCalculator calculator;
+}
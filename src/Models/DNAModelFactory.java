@@ -41,6 +41,7 @@ public class DNAModelFactory
     {
         this.model = model;
         this.numCats = 1;
+        this.closedForm = false;
     }
     
     /**
@@ -51,6 +52,21 @@ public class DNAModelFactory
      * @throws Models.Model.ModelException
      */
     public DNAModelFactory(DNAModel model, int numCats) throws ModelException
+    {
+        this(model, numCats, false);
+    }
+
+    /**
+     * Constructor so that calls to {@link #getModel()} and {@link #getParameters()}
+     * return the appropriate model or the appropriate parameters.
+     * @param model The model
+     * @param numCats The number of categories for the model
+     * @param closedForm Whether models other than GTR should use
+     * {@link HKYRateCategory} which calculates P-matrices using the closed form
+     * solution rather than by matrix exponentiation
+     * @throws Models.Model.ModelException
+     */
+    public DNAModelFactory(DNAModel model, int numCats, boolean closedForm) throws ModelException
     {
         this.model = model;
         if (numCats < 1)
@@ -58,6 +74,7 @@ public class DNAModelFactory
             throw new ModelException("Models must have at least one category");
         }
         this.numCats = numCats;
+        this.closedForm = closedForm;
     }
     
     /**
@@ -71,11 +88,37 @@ public class DNAModelFactory
         return JukesCantor();
     }
 
+    /**
+     * Creates an instance of a Jukes-Cantor model
+     * @param p Parameters structure to add the model parameters to (none in
+     * this case but for consistency this is left here)
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     */
+    public static Model JukesCantor(Parameters p, boolean closedForm)
+    {
+        return JukesCantor(closedForm);
+    }
+
     /**
      * Creates an instance of a Jukes-Cantor model
      * @return The model
      */
     public static Model JukesCantor()
+    {
+        return JukesCantor(false);
+    }
+
+    /**
+     * Creates an instance of a Jukes-Cantor model
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     */
+    public static Model JukesCantor(boolean closedForm)
     {
         String[][] ma = new String[4][4];
         ma[0][0] = "-"; ma[0][1] = "1.0"; ma[0][2] = "1.0"; ma[0][3] = "1.0";
@@ -93,7 +136,7 @@ public class DNAModelFactory
 
         try
         {
-            return new Model(new RateCategory(ma,freq,map));
+            return new Model(rateCategory(ma,freq,map,closedForm));
         }
         catch (RateException ex)
         {
@@ -118,6 +161,24 @@ public class DNAModelFactory
         return JukesCantor_Gamma(numCats);
     }
 
+    /**
+     * Creates an instance of a Jukes-Cantor model with gamma-distributed rate
+     * across sites
+     * @param p Parameters structure to add the model parameters to 
+     * @param numCats The number of gamma categories to use
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     * @throws Parameters.Parameters.ParameterException Thrown if the name of one
+     * of the parameters to be added by this method is already in use.
+     */
+    public static Model JukesCantor_Gamma(Parameters p, int numCats, boolean closedForm) throws ParameterException
+    {
+        p.addParameters(JukesCantor_Gamma_Parameters());
+        return JukesCantor_Gamma(numCats, closedForm);
+    }
+
     /**
      * Creates an instance of a Jukes-Cantor model with gamma-distributed rate
      * across sites
@@ -125,6 +186,20 @@ public class DNAModelFactory
      * @return The model
      */    
     public static Model JukesCantor_Gamma(int numCats)
+    {
+        return JukesCantor_Gamma(numCats, false);
+    }
+
+    /**
+     * Creates an instance of a Jukes-Cantor model with gamma-distributed rate
+     * across sites
+     * @param numCats The number of gamma categories to use
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     */    
+    public static Model JukesCantor_Gamma(int numCats, boolean closedForm)
     {
         String[][] ma = new String[4][4];
         ma[0][0] = "-"; ma[0][1] = "1.0"; ma[0][2] = "1.0"; ma[0][3] = "1.0";
@@ -142,7 +217,7 @@ public class DNAModelFactory
 
         try
         {
-            return Model.gammaRates(new RateCategory(ma,freq,map),"g",numCats);
+            return Model.gammaRates(rateCategory(ma,freq,map,closedForm),"g",numCats);
         }
         catch (RateException ex)
         {
@@ -183,12 +258,40 @@ public class DNAModelFactory
         p.addParameters(Kimura_Parameters());
         return Kimura();
     }
+
+    /**
+     * Creates an instance of a Kimura 2-paramter model
+     * @param p Parameters structure to add the model parameters to 
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     * @throws Parameters.Parameters.ParameterException Thrown if the name of one
+     * of the parameters to be added by this method is already in use.
+     */
+    public static Model Kimura(Parameters p, boolean closedForm) throws ParameterException
+    {
+        p.addParameters(Kimura_Parameters());
+        return Kimura(closedForm);
+    }
     
     /**
      * Creates an instance of a Kimura 2-paramter model
      * @return The model
      */
     public static Model Kimura()
+    {
+        return Kimura(false);
+    }
+
+    /**
+     * Creates an instance of a Kimura 2-paramter model
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     */
+    public static Model Kimura(boolean closedForm)
     {
         String[][] ma = new String[4][4];
         ma[0][0] = "-"; ma[0][1] = "k"; ma[0][2] = "1.0"; ma[0][3] = "1.0";
@@ -206,7 +309,7 @@ public class DNAModelFactory
         
         try
         {
-            return new Model(new RateCategory(ma,freq,map));
+            return new Model(rateCategory(ma,freq,map,closedForm));
         }
         catch (RateException ex)
         {
@@ -230,6 +333,24 @@ public class DNAModelFactory
         p.addParameters(Kimura_Gamma_Parameters());
         return Kimura_Gamma(numCats);
     }
+
+    /**
+     * Creates an instance of a Kimura 2-parameter model with gamma-distributed rate
+     * across sites
+     * @param p Parameters structure to add the model parameters to 
+     * @param numCats The number of gamma categories to use
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     * @throws Parameters.Parameters.ParameterException Thrown if the name of one
+     * of the parameters to be added by this method is already in use.
+     */
+    public static Model Kimura_Gamma(Parameters p, int numCats, boolean closedForm) throws ParameterException
+    {
+        p.addParameters(Kimura_Gamma_Parameters());
+        return Kimura_Gamma(numCats, closedForm);
+    }
     
     /**
      * Creates an instance of a Kimura 2-parameter model with gamma-distributed rate
@@ -238,6 +359,20 @@ public class DNAModelFactory
      * @return The model
      */
     public static Model Kimura_Gamma(int numCats)
+    {
+        return Kimura_Gamma(numCats, false);
+    }
+
+    /**
+     * Creates an instance of a Kimura 2-parameter model with gamma-distributed rate
+     * across sites
+     * @param numCats The number of gamma categories to use
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     */
+    public static Model Kimura_Gamma(int numCats, boolean closedForm)
     {
         String[][] ma = new String[4][4];
         ma[0][0] = "-"; ma[0][1] = "k"; ma[0][2] = "1.0"; ma[0][3] = "1.0";
@@ -255,7 +390,7 @@ public class DNAModelFactory
 
         try
         {
-            return Model.gammaRates(new RateCategory(ma,freq,map),"g",numCats);
+            return Model.gammaRates(rateCategory(ma,freq,map,closedForm),"g",numCats);
         }
         catch (RateException ex)
         {
@@ -305,12 +440,40 @@ public class DNAModelFactory
         p.addParameters(Felsenstein81_Parameters());
         return Felsenstein81();
     }
+
+    /**
+     * Creates an instance of a Felsenstein 81 model
+     * @param p Parameters structure to add the model parameters to 
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     * @throws Parameters.Parameters.ParameterException Thrown if the name of one
+     * of the parameters to be added by this method is already in use.
+     */
+    public static Model Felsenstein81(Parameters p, boolean closedForm) throws ParameterException
+    {
+        p.addParameters(Felsenstein81_Parameters());
+        return Felsenstein81(closedForm);
+    }
     
     /**
      * Creates an instance of a Felsenstein 81 model
      * @return The model
      */
     public static Model Felsenstein81()
+    {
+        return Felsenstein81(false);
+    }
+
+    /**
+     * Creates an instance of a Felsenstein 81 model
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     */
+    public static Model Felsenstein81(boolean closedForm)
     {
         String[][] ma = new String[4][4];
         ma[0][0] = "-"; ma[0][1] = "pC"; ma[0][2] = "pA"; ma[0][3] = "pG";
@@ -328,7 +491,7 @@ public class DNAModelFactory
         
         try
         {
-            return new Model(new RateCategory(ma,freq,map));
+            return new Model(rateCategory(ma,freq,map,closedForm));
         }
         catch (RateException ex)
         {
@@ -353,6 +516,24 @@ public class DNAModelFactory
         return Felsenstein81_Gamma(numCats);
     }
 
+    /**
+     * Creates an instance of a JFelsenstein 81 model with gamma-distributed rate
+     * across sites
+     * @param p Parameters structure to add the model parameters to 
+     * @param numCats The number of gamma categories to use
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     * @throws Parameters.Parameters.ParameterException Thrown if the name of one
+     * of the parameters to be added by this method is already in use.
+     */
+    public static Model Felsenstein81_Gamma(Parameters p, int numCats, boolean closedForm) throws ParameterException
+    {
+        p.addParameters(Felsenstein81_Gamma_Parameters());
+        return Felsenstein81_Gamma(numCats, closedForm);
+    }
+
     /**
      * Creates an instance of a JFelsenstein 81 model with gamma-distributed rate
      * across sites
@@ -360,6 +541,20 @@ public class DNAModelFactory
      * @return The model
      */
     public static Model Felsenstein81_Gamma(int numCats)
+    {
+        return Felsenstein81_Gamma(numCats, false);
+    }
+
+    /**
+     * Creates an instance of a JFelsenstein 81 model with gamma-distributed rate
+     * across sites
+     * @param numCats The number of gamma categories to use
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     */
+    public static Model Felsenstein81_Gamma(int numCats, boolean closedForm)
     {
         String[][] ma = new String[4][4];
         ma[0][0] = "-"; ma[0][1] = "pC"; ma[0][2] = "pA"; ma[0][3] = "pG";
@@ -377,7 +572,7 @@ public class DNAModelFactory
         
         try
         {
-            return Model.gammaRates(new RateCategory(ma,freq,map),"g",numCats);
+            return Model.gammaRates(rateCategory(ma,freq,map,closedForm),"g",numCats);
         }
         catch (RateException ex)
         {
@@ -429,6 +624,22 @@ public class DNAModelFactory
     {
         p.addParameters(HKY_Parameters());
         return HKY();
+    }
+
+    /**
+     * Creates an instance of a HKY model
+     * @param p Parameters structure to add the model parameters to 
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     * @throws Parameters.Parameters.ParameterException Thrown if the name of one
+     * of the parameters to be added by this method is already in use.
+     */
+    public static Model HKY(Parameters p, boolean closedForm) throws ParameterException
+    {
+        p.addParameters(HKY_Parameters());
+        return HKY(closedForm);
     }            
             
     /**
@@ -436,6 +647,18 @@ public class DNAModelFactory
      * @return The model
      */
     public static Model HKY()
+    {
+        return HKY(false);
+    }
+
+    /**
+     * Creates an instance of a HKY model
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     */
+    public static Model HKY(boolean closedForm)
     {
         String[][] ma = new String[4][4];
         ma[0][0] = "-"; ma[0][1] = "k*pC"; ma[0][2] = "pA"; ma[0][3] = "pG";
@@ -453,7 +676,7 @@ public class DNAModelFactory
 
         try
         {
-            return new Model(new RateCategory(ma,freq,map));
+            return new Model(rateCategory(ma,freq,map,closedForm));
         }
         catch (RateException ex)
         {
@@ -477,6 +700,24 @@ public class DNAModelFactory
         p.addParameters(HKY_Gamma_Parameters());
         return HKY_Gamma(numCats);
     }
+
+    /**
+     * Creates an instance of a HKY model with gamma-distributed rate
+     * across sites
+     * @param p Parameters structure to add the model parameters to 
+     * @param numCats The number of gamma categories to use
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     * @throws Parameters.Parameters.ParameterException Thrown if the name of one
+     * of the parameters to be added by this method is already in use.
+     */
+    public static Model HKY_Gamma(Parameters p, int numCats, boolean closedForm) throws ParameterException
+    {
+        p.addParameters(HKY_Gamma_Parameters());
+        return HKY_Gamma(numCats, closedForm);
+    }
     
     /**
      * Creates an instance of a HKY model with gamma-distributed rate
@@ -485,6 +726,20 @@ public class DNAModelFactory
      * @return The model
      */
     public static Model HKY_Gamma(int numCats)
+    {
+        return HKY_Gamma(numCats, false);
+    }
+
+    /**
+     * Creates an instance of a HKY model with gamma-distributed rate
+     * across sites
+     * @param numCats The number of gamma categories to use
+     * @param closedForm Whether to use {@link HKYRateCategory} which calculates
+     * P-matrices using the closed form solution rather than by matrix
+     * exponentiation
+     * @return The model
+     */
+    public static Model HKY_Gamma(int numCats, boolean closedForm)
     {
         String[][] ma = new String[4][4];
         ma[0][0] = "-"; ma[0][1] = "k*pC"; ma[0][2] = "pA"; ma[0][3] = "pG";
@@ -502,7 +757,7 @@ public class DNAModelFactory
 
         try
         {
-            return Model.gammaRates(new RateCategory(ma,freq,map),"g",numCats);
+            return Model.gammaRates(rateCategory(ma,freq,map,closedForm),"g",numCats);
         }
         catch (RateException ex)
         {
@@ -688,15 +943,15 @@ public class DNAModelFactory
             switch (model)
             {
                 case F81:
-                    return Felsenstein81_Gamma(numCats);
+                    return Felsenstein81_Gamma(numCats, closedForm);
                 case GTR:
                     return GTR_Gamma(numCats);
                 case HKY:
-                    return HKY_Gamma(numCats);
+                    return HKY_Gamma(numCats, closedForm);
                 case JC:
-                    return JukesCantor_Gamma(numCats);
+                    return JukesCantor_Gamma(numCats, closedForm);
                 case K2P:
-                    return Kimura_Gamma(numCats);
+                    return Kimura_Gamma(numCats, closedForm);
             }
         }
         else
@@ -704,15 +959,15 @@ public class DNAModelFactory
             switch (model)
             {
                 case F81:
-                    return Felsenstein81();
+                    return Felsenstein81(closedForm);
                 case GTR:
                     return GTR();
                 case HKY:
-                    return HKY();
+                    return HKY(closedForm);
                 case JC:
-                    return JukesCantor();
+                    return JukesCantor(closedForm);
                 case K2P:
-                    return Kimura();
+                    return Kimura(closedForm);
             }
         }
         throw new UnexpectedError();
@@ -759,8 +1014,21 @@ public class DNAModelFactory
         throw new UnexpectedError();
     }
     
+    private static RateCategory rateCategory(String[][] ma, String[] freq, HashMap<String,Integer> map, boolean closedForm) throws RateException
+    {
+        if (closedForm)
+        {
+            return new HKYRateCategory(ma,freq,map);
+        }
+        else
+        {
+            return new RateCategory(ma,freq,map);
+        }
+    }
+
     private DNAModel model;
     private int numCats;
+    private boolean closedForm;
     
     /**
      * Represents the various types of DNA models
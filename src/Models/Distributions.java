@@ -22,6 +22,7 @@ import Maths.SquareMatrix;
 import Maths.SquareMatrix.SquareMatrixException;
 import Utils.Array1D;
 import Utils.Array2D;
+import Utils.Engine;
 
 /**
  * Class to calculate stationary and quasi-stationary distributions
@@ -41,13 +42,27 @@ public class Distributions
      */
     public static double[] quasiStationary(SquareMatrix m) throws DistributionsException
     {
-	switch (method)
+        return quasiStationary(m, Engine.getDefault());
+    }
+
+    /**
+     * Calculates a quasi-stationary distribution from a given rate matrix
+     * using the method and matrix exponentiation settings of the given engine.
+     * The state in position zero is assumed to be the sink state
+     * @param m The rate matrix
+     * @param engine The engine
+     * @return The quasi-stationary distribution
+     * @throws DistributionsException If the distribution can't be calculated
+     */
+    public static double[] quasiStationary(SquareMatrix m, Engine engine) throws DistributionsException
+    {
+	switch (engine.getDistributionsMethod())
 	{
 	    case EIGEN:
 		return quasiStationary_Eigen(m);
 	    case REPEAT:
 	    default:
-		return quasiStationary_Repeat(m);
+		return quasiStationary_Repeat(m, engine);
 	}
     }
 
@@ -91,7 +106,7 @@ public class Distributions
 	return qs;
     }
 
-    private static double[] quasiStationary_Repeat(SquareMatrix m) throws DistributionsException
+    private static double[] quasiStationary_Repeat(SquareMatrix m, Engine engine) throws DistributionsException
     {
         //Calculates the quasi-stationary distribution by repeatedly applying
         //a P-matrix to a distribution
@@ -100,7 +115,7 @@ public class Distributions
 	double[][] p;
 	try
 	{
-	    p = m.scalarMultiply(8.0).exp().getArray();
+	    p = m.scalarMultiply(8.0).exp(engine).getArray();
 	}
 	catch (SquareMatrixException e)
 	{
@@ -167,13 +182,26 @@ public class Distributions
      */
     public static double[] stationary(SquareMatrix m) throws DistributionsException
     {
-	switch (method)
+        return stationary(m, Engine.getDefault());
+    }
+
+    /**
+     * Calculates the stationary distribution from a given rate matrix using the
+     * method and matrix exponentiation settings of the given engine.
+     * @param m The rate matrix
+     * @param engine The engine
+     * @return The stationary distribution
+     * @throws DistributionsException If the distibution can't be calculated
+     */
+    public static double[] stationary(SquareMatrix m, Engine engine) throws DistributionsException
+    {
+	switch (engine.getDistributionsMethod())
 	{
 	    case EIGEN:
 		return stationary_Eigen(m);
 	    case REPEAT:
 	    default:
-		return stationary_Repeat(m);
+		return stationary_Repeat(m, engine);
 	}
     }
     
@@ -213,7 +241,7 @@ public class Distributions
 	return s;
     }
     
-    private static double[] stationary_Repeat(SquareMatrix m) throws DistributionsException
+    private static double[] stationary_Repeat(SquareMatrix m, Engine engine) throws DistributionsException
     {
         double max = -Double.MAX_VALUE;
         for (int i = 0; i < m.size(); i++)
@@ -228,7 +256,7 @@ public class Distributions
 	double[][] p;
 	try
 	{
-	    p = m.scalarMultiply(1/max).exp().getArray();
+	    p = m.scalarMultiply(1/max).exp(engine).getArray();
 	}
 	catch (SquareMatrixException e)
 	{
@@ -270,11 +298,12 @@ public class Distributions
 
     /**
      * Sets the calculation method to be used when calculating distributions
+     * by the default {@link Engine}
      * @param m The calculation method to be used
      */
     public static void setMethod(Calculation m)
     {
-	method = m;
+	Engine.getDefault().setDistributionsMethod(m);
     }
 
     private static boolean test(double[] a, double[] b, int start)
@@ -289,7 +318,6 @@ public class Distributions
         return (!test);
     }
 
-    private static Calculation method = Calculation.EIGEN;
     
     /**
      * Enumeration of the different methods of calculating a distribution
@@ -65,6 +65,25 @@ public class DuplicationModelFactory
      * of the parameters to be added by this method is already in use.
      */
     public static Model Parsimony(Parameters p, int num, boolean fixed) throws ParameterException
+    {
+        return Parsimony(p, num, fixed, false);
+    }
+
+    /**
+     * Creates a simple parsimony-style model
+     * @param p Parameters structure to add the model parameters to (none in
+     * this case but for consistency this is left here)
+     * @param num The maximum family size
+     * @param fixed Whether fixed branch lengths are being used (and so whether
+     * or not one parameter should have a fixed value)
+     * @param closedForm Whether to use {@link BirthDeathRateCategory} which
+     * calculates P-matrices and the stationary distribution directly from the
+     * birth-death structure of the rate matrix
+     * @return The model
+     * @throws Parameters.Parameters.ParameterException Thrown if the name of one
+     * of the parameters to be added by this method is already in use.
+     */
+    public static Model Parsimony(Parameters p, int num, boolean fixed, boolean closedForm) throws ParameterException
     {
         String[][] matrix = new String[num+1][num+1];
         HashMap<String,Integer> map = new HashMap<>();
@@ -90,7 +109,7 @@ public class DuplicationModelFactory
         Model m = null;
         try
         {
-            m = new Model(new RateCategory(matrix,RateCategory.FrequencyType.STATIONARY,map));
+            m = new Model(rateCategory(matrix,map,closedForm));
         }
         catch (RateException ex)
         {
@@ -140,6 +159,26 @@ public class DuplicationModelFactory
      * of the parameters to be added by this method is already in use.
      */
     public static Model Parsimony_Gamma(Parameters p, int num, int numCats, boolean fixed) throws ParameterException
+    {
+        return Parsimony_Gamma(p, num, numCats, fixed, false);
+    }
+
+    /**
+     * Creates a simple parsimony-style model with gamma-distributed rate
+     * across sites
+     * @param p Parameters structure to add the model parameters to
+     * @param num The maximum family size
+     * @param numCats The number of gamma categories to use
+     * @param fixed Whether fixed branch lengths are being used (and so whether
+     * or not one parameter should have a fixed value)
+     * @param closedForm Whether to use {@link BirthDeathRateCategory} which
+     * calculates P-matrices and the stationary distribution directly from the
+     * birth-death structure of the rate matrix
+     * @return The model
+     * @throws Parameters.Parameters.ParameterException Thrown if the name of one
+     * of the parameters to be added by this method is already in use.
+     */
+    public static Model Parsimony_Gamma(Parameters p, int num, int numCats, boolean fixed, boolean closedForm) throws ParameterException
     {
         String[][] matrix = new String[num+1][num+1];
         HashMap<String,Integer> map = new HashMap<>();
@@ -165,7 +204,7 @@ public class DuplicationModelFactory
         Model m = null;
         try
         {
-            m = Model.gammaRates(new RateCategory(matrix,RateCategory.FrequencyType.STATIONARY,map),"g",numCats);
+            m = Model.gammaRates(rateCategory(matrix,map,closedForm),"g",numCats);
         }
         catch (RateException ex)
         {
@@ -213,6 +252,24 @@ public class DuplicationModelFactory
      * of the parameters to be added by this method is already in use.
      */
     public static Model BDI(Parameters p, int num, boolean fixed)  throws ParameterException
+    {
+        return BDI(p, num, fixed, false);
+    }
+
+    /**
+     * Creates a simple BDI model
+     * @param p Parameters structure to add the model parameters to
+     * @param num The maximum family size
+     * @param fixed Whether fixed branch lengths are being used (and so whether
+     * or not one parameter should have a fixed value)
+     * @param closedForm Whether to use {@link BirthDeathRateCategory} which
+     * calculates P-matrices and the stationary distribution directly from the
+     * birth-death structure of the rate matrix
+     * @return The model
+     * @throws Parameters.Parameters.ParameterException Thrown if the name of one
+     * of the parameters to be added by this method is already in use.
+     */
+    public static Model BDI(Parameters p, int num, boolean fixed, boolean closedForm)  throws ParameterException
     {
         String[][] matrix = new String[num+1][num+1];
         HashMap<String,Integer> map = new HashMap<>();
@@ -243,7 +300,7 @@ public class DuplicationModelFactory
         Model m = null;
         try
         {
-            m = new Model(new RateCategory(matrix,RateCategory.FrequencyType.STATIONARY,map));
+            m = new Model(rateCategory(matrix,map,closedForm));
         }
         catch (RateException ex)
         {
@@ -302,6 +359,26 @@ public class DuplicationModelFactory
      * of the parameters to be added by this method is already in use.
      */
     public static Model BDI_Gamma(Parameters p, int num, int numCats, boolean fixed) throws ParameterException
+    {
+        return BDI_Gamma(p, num, numCats, fixed, false);
+    }
+
+    /**
+     * Creates a simple BDI model with gamma-distributed rate
+     * across sites
+     * @param p Parameters structure to add the model parameters to
+     * @param num The maximum family size
+     * @param numCats The number of gamma categories to use
+     * @param fixed Whether fixed branch lengths are being used (and so whether
+     * or not one parameter should have a fixed value)
+     * @param closedForm Whether to use {@link BirthDeathRateCategory} which
+     * calculates P-matrices and the stationary distribution directly from the
+     * birth-death structure of the rate matrix
+     * @return The model
+     * @throws Parameters.Parameters.ParameterException Thrown if the name of one
+     * of the parameters to be added by this method is already in use.
+     */
+    public static Model BDI_Gamma(Parameters p, int num, int numCats, boolean fixed, boolean closedForm) throws ParameterException
     {
         String[][] matrix = new String[num+1][num+1];
         HashMap<String,Integer> map = new HashMap<>();
@@ -332,7 +409,7 @@ public class DuplicationModelFactory
         Model m = null;
         try
         {
-            m = Model.gammaRates(new RateCategory(matrix,RateCategory.FrequencyType.STATIONARY,map),"g",numCats);
+            m = Model.gammaRates(rateCategory(matrix,map,closedForm),"g",numCats);
         }
         catch (RateException ex)
         {
@@ -389,6 +466,24 @@ public class DuplicationModelFactory
      * of the parameters to be added by this method is already in use.
      */    
     public static Model BD_NoZero(Parameters p, int num, boolean fixed) throws ParameterException
+    {
+        return BD_NoZero(p, num, fixed, false);
+    }
+
+    /**
+     * Creates a Birth Death model with no zero state.
+     * @param p Parameters structure to add the model parameters to
+     * @param num The maximum family size
+     * @param fixed Whether fixed branch lengths are being used (and so whether
+     * or not one parameter should have a fixed value)
+     * @param closedForm Whether to use {@link BirthDeathRateCategory} which
+     * calculates P-matrices and the stationary distribution directly from the
+     * birth-death structure of the rate matrix
+     * @return The model
+     * @throws Parameters.Parameters.ParameterException Thrown if the name of one
+     * of the parameters to be added by this method is already in use.
+     */    
+    public static Model BD_NoZero(Parameters p, int num, boolean fixed, boolean closedForm) throws ParameterException
     {
         String[][] matrix = new String[num][num];
         HashMap<String,Integer> map = new HashMap<>();
@@ -416,7 +511,7 @@ public class DuplicationModelFactory
         
         try
         {
-            m = new Model(new RateCategory(matrix,RateCategory.FrequencyType.STATIONARY,map));
+            m = new Model(rateCategory(matrix,map,closedForm));
         }
         catch (RateException ex)
         {
@@ -468,6 +563,26 @@ public class DuplicationModelFactory
      * of the parameters to be added by this method is already in use.
      */ 
     public static Model BD_NoZero_Gamma(Parameters p, int num, int numCats, boolean fixed) throws ParameterException
+    {
+        return BD_NoZero_Gamma(p, num, numCats, fixed, false);
+    }
+
+    /**
+     * Creates a Birth Death model with no zero state and gamma distributed
+     * rates-across sites.
+     * @param p Parameters structure to add the model parameters to
+     * @param num The maximum family size
+     * @param numCats The number of gamma categories to use
+     * @param fixed Whether fixed branch lengths are being used (and so whether
+     * or not one parameter should have a fixed value)
+     * @param closedForm Whether to use {@link BirthDeathRateCategory} which
+     * calculates P-matrices and the stationary distribution directly from the
+     * birth-death structure of the rate matrix
+     * @return The model
+     * @throws Parameters.Parameters.ParameterException Thrown if the name of one
+     * of the parameters to be added by this method is already in use.
+     */ 
+    public static Model BD_NoZero_Gamma(Parameters p, int num, int numCats, boolean fixed, boolean closedForm) throws ParameterException
     {
         String[][] matrix = new String[num][num];
         HashMap<String,Integer> map = new HashMap<>();
@@ -494,7 +609,7 @@ public class DuplicationModelFactory
         Model m = null;        
         try
         {
-            m = Model.gammaRates(new RateCategory(matrix,RateCategory.FrequencyType.STATIONARY,map),"g",numCats);
+            m = Model.gammaRates(rateCategory(matrix,map,closedForm),"g",numCats);
         }
         catch (RateException ex)
         {
@@ -532,6 +647,24 @@ public class DuplicationModelFactory
      * of the parameters to be added by this method is already in use.
      */
     public static Model BDIE(Parameters p, int num, boolean fixed) throws ParameterException
+    {
+        return BDIE(p, num, fixed, false);
+    }
+
+    /**
+     * Creates a simple BDIE model
+     * @param p Parameters structure to add the model parameters to
+     * @param num The maximum family size
+     * @param fixed Whether fixed branch lengths are being used (and so whether
+     * or not one parameter should have a fixed value)
+     * @param closedForm Whether to use {@link BirthDeathRateCategory} which
+     * calculates P-matrices and the stationary distribution directly from the
+     * birth-death structure of the rate matrix
+     * @return The model
+     * @throws Parameters.Parameters.ParameterException Thrown if the name of one
+     * of the parameters to be added by this method is already in use.
+     */
+    public static Model BDIE(Parameters p, int num, boolean fixed, boolean closedForm) throws ParameterException
     {
         String[][] matrix = new String[num+1][num+1];
         HashMap<String,Integer> map = new HashMap<>();
@@ -566,7 +699,7 @@ public class DuplicationModelFactory
         Model m = null;
         try
         {
-            m = new Model(new RateCategory(matrix,RateCategory.FrequencyType.STATIONARY,map));
+            m = new Model(rateCategory(matrix,map,closedForm));
         }
         catch (RateException ex)
         {
@@ -627,6 +760,26 @@ public class DuplicationModelFactory
      * of the parameters to be added by this method is already in use.
      */
     public static Model BDIE_Gamma(Parameters p, int num, int numCats, boolean fixed) throws ParameterException
+    {
+        return BDIE_Gamma(p, num, numCats, fixed, false);
+    }
+
+    /**
+     * Creates a simple BDIE model with gamma-distributed rate
+     * across sites
+     * @param p Parameters structure to add the model parameters to
+     * @param num The maximum family size
+     * @param numCats The number of gamma categories to use
+     * @param fixed Whether fixed branch lengths are being used (and so whether
+     * or not one parameter should have a fixed value)
+     * @param closedForm Whether to use {@link BirthDeathRateCategory} which
+     * calculates P-matrices and the stationary distribution directly from the
+     * birth-death structure of the rate matrix
+     * @return The model
+     * @throws Parameters.Parameters.ParameterException Thrown if the name of one
+     * of the parameters to be added by this method is already in use.
+     */
+    public static Model BDIE_Gamma(Parameters p, int num, int numCats, boolean fixed, boolean closedForm) throws ParameterException
     {
         String[][] matrix = new String[num+1][num+1];
         HashMap<String,Integer> map = new HashMap<>();
@@ -661,7 +814,7 @@ public class DuplicationModelFactory
         Model m = null;
         try
         {
-            m = Model.gammaRates(new RateCategory(matrix,RateCategory.FrequencyType.STATIONARY,map),"g",numCats);
+            m = Model.gammaRates(rateCategory(matrix,map,closedForm),"g",numCats);
         }
         catch (RateException ex)
         {
@@ -694,4 +847,19 @@ public class DuplicationModelFactory
         
         return m;
     }
+
+    //All the models here are birth-death chains so can always use the closed
+    //form category.  Which is used is chosen per call so models built both
+    //ways can be used side by side.
+    private static RateCategory rateCategory(String[][] matrix, HashMap<String,Integer> map, boolean closedForm) throws RateException
+    {
+        if (closedForm)
+        {
+            return new BirthDeathRateCategory(matrix,map);
+        }
+        else
+        {
+            return new RateCategory(matrix,RateCategory.FrequencyType.STATIONARY,map);
+        }
+    }
 }
@@ -0,0 +1,203 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Models;
+
+import Exceptions.UnexpectedError;
+import Maths.CompiledFunction;
+import Maths.SquareMatrix;
+import Maths.SquareMatrix.SquareMatrixException;
+import Utils.Engine;
+import java.util.Map;
+
+/**
+ * A nucleotide rate category whose rate matrix has the form of the HKY model,
+ * i.e. the rate to state j is &beta;&kappa;&pi;<sub>j</sub> for transitions and
+ * &beta;&pi;<sub>j</sub> for transversions.  The Jukes-Cantor, Kimura
+ * 2-parameter and Felsenstein 81 models are all special cases.  P-matrices are
+ * calculated using the closed form solution (Hasegawa et al 1985) rather than
+ * by matrix exponentiation.
+ * <br><br>
+ * &beta; and &kappa; are recovered from the scaled rate matrix so rescaling and
+ * gamma categories (see {@link Model#gammaRates(Models.RateCategory, java.lang.String, int)})
+ * work as normal.  An exception is thrown when a P-matrix is requested if
+ * the rate matrix, once evaluated, is not of HKY form.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class HKYRateCategory extends RateCategory
+{
+    /**
+     * Constructor.  The states must be T, C, A and G.
+     * @param rates Array representing the rate matrix
+     * @param freq Root frequency.
+     * @param map Map from State to position in matrix (0-index) or root frequency.
+     * @throws Models.RateCategory.RateException  If the rate matrix is not square,
+     * the frequency array is not the same length as the rate matrix or the
+     * states are not T, C, A and G.
+     */
+    public HKYRateCategory(String[][] rates, String[] freq, Map<String, Integer> map) throws RateException
+    {
+        super(rates, freq, map);
+        purine = purines(map);
+    }
+
+    private HKYRateCategory(CompiledFunction[][] rates, CompiledFunction[] freq, Map<String, Integer> map, boolean[] purine)
+    {
+        super(rates, FrequencyType.MODEL, freq, map);
+        this.purine = purine;
+    }
+
+    protected RateCategory newInstance(CompiledFunction[][] rates, FrequencyType freqType, CompiledFunction[] freq, Map<String, Integer> map)
+    {
+        return new HKYRateCategory(rates, freq, map, purine);
+    }
+
+    protected PCalculator pCalculator(SquareMatrix scaled, double[] freq, Engine engine) throws RateException
+    {
+        return new HKYCalculator(scaled.getArray(), freq);
+    }
+
+    private class HKYCalculator implements PCalculator
+    {
+        private HKYCalculator(double[][] q, double[] f) throws RateException
+        {
+            this.f = f;
+            extract(q, f);
+        }
+
+        public SquareMatrix getP(double length) throws RateException
+        {
+            double eb = Math.exp(-beta * length);
+
+            double[][] P = new double[4][4];
+            for (int j = 0; j < 4; j++)
+            {
+                double g = purine[j] ? fr : fy;
+                double ea = Math.exp(-beta * length * (1.0 + g * (kappa - 1.0)));
+                double same = f[j] + f[j] * (1.0 / g - 1.0) * eb;
+                for (int i = 0; i < 4; i++)
+                {
+                    if (i == j)
+                    {
+                        P[i][j] = same + ((g - f[j]) / g) * ea;
+                    }
+                    else if (purine[i] == purine[j])
+                    {
+                        P[i][j] = same - (f[j] / g) * ea;
+                    }
+                    else
+                    {
+                        P[i][j] = f[j] * (1.0 - eb);
+                    }
+                }
+            }
+
+            try
+            {
+                return new SquareMatrix(P);
+            }
+            catch (SquareMatrixException ex)
+            {
+                //P is square by construction
+                throw new UnexpectedError(ex);
+            }
+        }
+
+        private void extract(double[][] q, double[] f) throws RateException
+        {
+            fr = 0.0;
+            fy = 0.0;
+            double tv = 0.0;
+            double ts = 0.0;
+            for (int i = 0; i < 4; i++)
+            {
+                if (purine[i])
+                {
+                    fr += f[i];
+                }
+                else
+                {
+                    fy += f[i];
+                }
+            }
+            //Summing over all rows avoids dividing by a single, possibly zero,
+            //frequency
+            for (int i = 0; i < 4; i++)
+            {
+                for (int j = 0; j < 4; j++)
+                {
+                    if (i != j)
+                    {
+                        if (purine[i] == purine[j])
+                        {
+                            ts += q[i][j];
+                        }
+                        else
+                        {
+                            tv += q[i][j];
+                        }
+                    }
+                }
+            }
+            //Each row has the transversion rate to the two states of the other group
+            //and the transition rate to the other state of the same group so
+            //tv = 2 * beta * (fr + fy) and ts = beta * kappa * (fr + fy)
+            beta = tv / (2.0 * (fr + fy));
+            double bk = ts / (fr + fy);
+            kappa = bk / beta;
+
+            for (int i = 0; i < 4; i++)
+            {
+                for (int j = 0; j < 4; j++)
+                {
+                    if (i != j)
+                    {
+                        double e = ((purine[i] == purine[j]) ? bk : beta) * f[j];
+                        if (Math.abs(q[i][j] - e) > 1e-8 * (Math.abs(q[i][j]) + Math.abs(e)))
+                        {
+                            throw new RateException("Rate matrix is not of HKY form");
+                        }
+                    }
+                }
+            }
+        }
+
+        private final double[] f;
+        private double beta;
+        private double kappa;
+        private double fr;
+        private double fy;
+    }
+
+    private static boolean[] purines(Map<String, Integer> map) throws RateException
+    {
+        if ((map.size() != 4) || !map.containsKey("T") || !map.containsKey("C")
+                || !map.containsKey("A") || !map.containsKey("G"))
+        {
+            throw new RateException("HKY rate categories must have states T, C, A and G");
+        }
+        boolean[] p = new boolean[4];
+        p[map.get("A")] = true;
+        p[map.get("G")] = true;
+        return p;
+    }
+
+    private boolean[] purine;
+
+    private static final long serialVersionUID = 1;
+}
@@ -23,6 +23,7 @@ import Exceptions.UnexpectedError;
 import Maths.CompiledFunction;
 import Maths.CompiledFunction.Constant;
 import Maths.FunctionParser;
+import Maths.InvalidEquation;
 import Maths.MathsParse;
 import Maths.NoSuchFunction;
 import Maths.NoSuchVariable;
@@ -30,6 +31,7 @@ import Maths.WrongNumberOfVariables;
 import Models.RateCategory.RateException;
 import Parameters.Parameters;
 import Parameters.Parameters.ParameterException;
+import Utils.Engine;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -88,6 +90,11 @@ public class Model implements Iterable<RateCategory>
             {
                 this.freq.put(e.getKey(),mp.compileFunction(e.getValue()));
             }
+	    catch (InvalidEquation ex)
+	    {
+		throw new ModelException("Frequency" +
+			e.getValue() + ": " + ex.getMessage(), ex);
+	    }
 	    catch (NoSuchFunction ex)
 	    {
 		throw new ModelException("Frequency" +
@@ -175,9 +182,27 @@ public class Model implements Iterable<RateCategory>
      */
     public void setParameters(Parameters p) throws RateException, ModelException, ParameterException
     {
-	HashMap<String,Double> values = p.getValues();
-	for (RateCategory r: freq.keySet())
+        synchronized (this)
+        {
+            if (needed == null)
+            {
+                setDependencies();
+            }
+        }
+
+        //Only the parameters each frequency depends on are needed rather
+        //than a map of every parameter
+	for (int i = 0; i < cats.length; i++)
 	{
+            RateCategory r = cats[i];
+            Map<String,Double> values = new HashMap<>();
+            for (int d: freqDeps[i])
+            {
+                if (p.hasParam(needed[d]))
+                {
+                    values.put(needed[d], p.getValue(needed[d]));
+                }
+            }
             try
             {
                 f.put(r,freq.get(r).compute(values));
@@ -230,6 +255,199 @@ public class Model implements Iterable<RateCategory>
         }
     }
 
+    /**
+     * Evaluates the model at the given parameters without changing the model.
+     * The returned snapshot is independent of the model's current parameters
+     * and of any other snapshot so this may be called from more than one thread
+     * at the same time, for example to evaluate the likelihood at many
+     * parameter points in parallel.  Rate categories that do not depend on a
+     * parameter that has changed since the previous snapshot are reused,
+     * along with any P-matrices they have stored.
+     * @param p The parameter values
+     * @return The evaluated model
+     * @throws RateException If there is an error while evaluating one of the
+     * rate classes.
+     * @throws ModelException If there is an error while evaluating the
+     * frequency of the rate classes.
+     * @throws Parameters.Parameters.ParameterException If a parameter that needs to be set for this
+     * model has not been passed 
+     */
+    public ModelSnapshot snapshot(Parameters p) throws RateException, ModelException, ParameterException
+    {
+        return snapshot(p, Engine.getDefault());
+    }
+
+    /**
+     * As {@link #snapshot(Parameters.Parameters)} but using the settings
+     * (such as the matrix exponentiation method) from the given engine rather
+     * than the default engine.
+     * @param p The parameter values
+     * @param engine The engine
+     * @return The evaluated model
+     * @throws RateException If there is an error while evaluating one of the
+     * rate classes.
+     * @throws ModelException If there is an error while evaluating the
+     * frequency of the rate classes.
+     * @throws Parameters.Parameters.ParameterException If a parameter that needs to be set for this
+     * model has not been passed 
+     */
+    public ModelSnapshot snapshot(Parameters p, Engine engine) throws RateException, ModelException, ParameterException
+    {
+        synchronized (this)
+        {
+            if (needed == null)
+            {
+                setDependencies();
+            }
+        }
+
+        //Nothing is reused if a parameter is missing so the appropiate error
+        //is reported
+        ModelSnapshot previous = latest;
+        boolean reuse = (previous != null) && (previous.rescale == rescale)
+                && (previous.engine == engine);
+        double[] values = new double[needed.length];
+        long[] versions = new long[needed.length];
+        boolean[] present = new boolean[needed.length];
+        for (int i = 0; i < needed.length; i++)
+        {
+            present[i] = p.hasParam(needed[i]);
+            if (present[i])
+            {
+                int index = p.getIndex(needed[i]);
+                values[i] = p.getValue(index);
+                versions[i] = p.getVersion(index);
+            }
+            else
+            {
+                reuse = false;
+            }
+        }
+
+        double[] weights = new double[cats.length];
+        double total = 0.0;
+        for (int i = 0; i < cats.length; i++)
+        {
+            try
+            {
+                weights[i] = freq.get(cats[i]).compute(valueMap(values, present, freqDeps[i]));
+            }
+            catch (NoSuchVariable e)
+            {
+                throw new ModelException("Unable to calculate RateCategory frequencies - variable value not passed");
+            }
+            total += weights[i];
+        }
+        for (int i = 0; i < cats.length; i++)
+        {
+            weights[i] = weights[i] / total;
+        }
+
+        CategorySnapshot[] unscaled = new CategorySnapshot[cats.length];
+        for (int i = 0; i < cats.length; i++)
+        {
+            if (!reuse || changed(values, versions, previous, catDeps[i]))
+            {
+                unscaled[i] = cats[i].evaluate(p, engine);
+            }
+            else
+            {
+                unscaled[i] = previous.unscaled[i];
+            }
+        }
+
+        double s = 1.0;
+        CategorySnapshot[] sc = unscaled;
+        if (rescale)
+        {
+            double rate = 0.0;
+            for (int i = 0; i < cats.length; i++)
+            {
+                rate += weights[i] * unscaled[i].getTotalRate();
+            }
+            s = (rate == 0.0) ? 0.0 : 1.0 / rate;
+            sc = new CategorySnapshot[cats.length];
+            for (int i = 0; i < cats.length; i++)
+            {
+                if (reuse && (previous.unscaled[i] == unscaled[i]) && (previous.getScale() == s))
+                {
+                    sc[i] = previous.scaled[i];
+                }
+                else
+                {
+                    sc[i] = unscaled[i].scale(s);
+                }
+            }
+        }
+
+        ModelSnapshot ms = new ModelSnapshot(this, cats, weights, unscaled, sc, s, values, versions, rescale, engine);
+        latest = ms;
+        return ms;
+    }
+
+    //Works out which of the parameters used by the model each rate category
+    //and rate category frequency depends on
+    private void setDependencies()
+    {
+        cats = freq.keySet().toArray(new RateCategory[freq.size()]);
+        Map<String,Integer> index = new HashMap<>();
+        catDeps = new int[cats.length][];
+        freqDeps = new int[cats.length][];
+        for (int i = 0; i < cats.length; i++)
+        {
+            catDeps[i] = indices(cats[i].getParameterNames(), index);
+            freqDeps[i] = indices(freq.get(cats[i]).neededParams(), index);
+        }
+        needed = new String[index.size()];
+        for (Entry<String,Integer> e: index.entrySet())
+        {
+            needed[e.getValue()] = e.getKey();
+        }
+    }
+
+    private int[] indices(Set<String> names, Map<String,Integer> index)
+    {
+        int[] r = new int[names.size()];
+        int i = 0;
+        for (String n: names)
+        {
+            if (!index.containsKey(n))
+            {
+                index.put(n, index.size());
+            }
+            r[i++] = index.get(n);
+        }
+        return r;
+    }
+
+    //Whether any of the given parameters have changed since the previous
+    //snapshot.  A parameter with the same version as before has the same
+    //value so the value only needs comparing if the version is different.
+    private boolean changed(double[] values, long[] versions, ModelSnapshot previous, int[] deps)
+    {
+        for (int d: deps)
+        {
+            if ((versions[d] != previous.versions[d]) && (values[d] != previous.values[d]))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Map<String,Double> valueMap(double[] values, boolean[] present, int[] deps)
+    {
+        Map<String,Double> m = new HashMap<>();
+        for (int d: deps)
+        {
+            if (present[d])
+            {
+                m.put(needed[d], values[d]);
+            }
+        }
+        return m;
+    }
+
     /**
      * Gets the scale - the value the rate matrices need to be multiplied by
      * to ensure an average rate of 1.
@@ -414,6 +632,15 @@ public class Model implements Iterable<RateCategory>
     private Map<String,Integer> map;
     private boolean rescale = true;
 
+    //Dependencies from parameters to the parts of the model so only the parts
+    //affected by a change need evaluating for a new snapshot
+    private String[] needed;
+    private RateCategory[] cats;
+    private int[][] catDeps;
+    private int[][] freqDeps;
+    //The most recent snapshot so unchanged rate categories can be reused
+    private volatile ModelSnapshot latest;
+
     private static final Pattern gammaRE = Pattern.compile("^\\*\\*G\\s+(\\d+)\\s+(\\w+)");
     private static MathsParse mp = new MathsParse();
     
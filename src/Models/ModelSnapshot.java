@@ -0,0 +1,132 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Models;
+
+import Utils.Engine;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link Model} evaluated at one set of parameters.  Created by
+ * {@link Model#snapshot(Parameters.Parameters)}.  A snapshot never changes once
+ * created so many snapshots of the same model, at different parameters, can
+ * be used at the same time, including by different threads.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public final class ModelSnapshot implements Iterable<RateCategory>
+{
+    ModelSnapshot(Model model, RateCategory[] cats, double[] weights,
+            CategorySnapshot[] unscaled, CategorySnapshot[] scaled, double scale,
+            double[] values, long[] versions, boolean rescale, Engine engine)
+    {
+        this.engine = engine;
+        this.model = model;
+        this.cats = cats;
+        this.unscaled = unscaled;
+        this.scaled = scaled;
+        this.scale = scale;
+        this.values = values;
+        this.versions = versions;
+        this.rescale = rescale;
+        freq = new HashMap<>(cats.length);
+        snapshots = new HashMap<>(cats.length);
+        for (int i = 0; i < cats.length; i++)
+        {
+            freq.put(cats[i], weights[i]);
+            snapshots.put(cats[i], scaled[i]);
+        }
+    }
+
+    /**
+     * Gets the model this is a snapshot of
+     * @return The model
+     */
+    public Model getModel()
+    {
+        return model;
+    }
+
+    /**
+     * Gets the evaluated rate category
+     * @param r The rate category
+     * @return The evaluated rate category
+     */
+    public CategorySnapshot get(RateCategory r)
+    {
+        return snapshots.get(r);
+    }
+
+    /**
+     * Gets the frquency of a rate class
+     * @param r The rate class to get the frquency for
+     * @return The frequency of the rate class
+     */
+    public double getFreq(RateCategory r)
+    {
+        return freq.get(r);
+    }
+
+    /**
+     * Gets the scale - the value the rate matrices have been multiplied by
+     * to ensure an average rate of 1.
+     * @return The scale
+     */
+    public double getScale()
+    {
+        return scale;
+    }
+
+    /**
+     * Gets a set of rate classes in the model
+     * @return The set of rate classes in the model
+     */
+    public Set<RateCategory> getRates()
+    {
+        return model.getRates();
+    }
+
+    /**
+     * Gets the map from state to position in the rate matrices
+     * @return Map from state to position in matrix
+     */
+    public Map<String,Integer> getMap()
+    {
+        return model.getMap();
+    }
+
+    public Iterator<RateCategory> iterator()
+    {
+        return getRates().iterator();
+    }
+
+    final RateCategory[] cats;
+    final CategorySnapshot[] unscaled;
+    final CategorySnapshot[] scaled;
+    final double[] values;
+    final long[] versions;
+    final boolean rescale;
+    final Engine engine;
+
+    private final Model model;
+    private final Map<RateCategory,Double> freq;
+    private final Map<RateCategory,CategorySnapshot> snapshots;
+    private final double scale;
+}
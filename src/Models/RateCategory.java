@@ -25,16 +25,21 @@ import Likelihood.Root;
 import Likelihood.StandardRoot;
 import Maths.CompiledFunction;
 import Maths.CompiledFunction.Multiply;
+import Maths.Dual;
+import Maths.ExpMethodChooser;
+import Maths.FunctionProgram;
+import Maths.InvalidEquation;
 import Parameters.Parameters;
 import Maths.MathsParse;
 import Maths.NoSuchFunction;
 import Maths.NoSuchVariable;
 import Maths.WrongNumberOfVariables;
 import Maths.SquareMatrix;
+import Maths.SquareMatrix.Calculation;
 import Maths.SquareMatrix.SquareMatrixException;
 import Models.Distributions.DistributionsException;
-import Parameters.Parameter;
 import Parameters.Parameters.ParameterException;
+import Utils.Engine;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -141,6 +146,11 @@ public class RateCategory implements Serializable
                     {
                         this.rates[i][j] = mp.compileFunction(rates[i][j]);
                     }
+                    catch (InvalidEquation ex)
+                    {
+                        throw new RateException("Rate + [" + i + "," + j + "]",
+                                rates[i][j], ex.getMessage(), ex);
+                    }
                     catch (NoSuchFunction ex)
                     {
                         throw new RateException("Rate + [" + i + "," + j + "]",
@@ -168,6 +178,11 @@ public class RateCategory implements Serializable
                 {
                     this.freq[i] = mp.compileFunction(freq[i]);
                 }
+                catch (InvalidEquation ex)
+                {
+                    throw new RateException("Frequency + [" + i + "]",
+                            freq[i], ex.getMessage(), ex);
+                }
                 catch (NoSuchFunction ex)
                 {
                     throw new RateException("Frequency + [" + i + "]",
@@ -187,7 +202,16 @@ public class RateCategory implements Serializable
 	setNeeded();
     }
     
-    private RateCategory(CompiledFunction[][] rates, FrequencyType freqType, CompiledFunction[] freq, Map<String, Integer> map)
+    /**
+     * Constructor for use by {@link #multiplyBy(java.lang.String)} and by
+     * subclasses that need to create a new instance from already compiled
+     * functions.
+     * @param rates Array of compiled functions representing the rate matrix
+     * @param freqType How the root frequency is calculated
+     * @param freq Compiled root frequency functions (null unless freqType is MODEL)
+     * @param map Map from State to position in matrix (0-index).
+     */
+    protected RateCategory(CompiledFunction[][] rates, FrequencyType freqType, CompiledFunction[] freq, Map<String, Integer> map)
     {
         this.rates = rates;
         this.freqType = freqType;
@@ -245,6 +269,56 @@ public class RateCategory implements Serializable
                 }
             }
         }
+
+        //Give each parameter a position in the values array and compile the
+        //whole matrix, and the frequencies, into programs that read from that
+        //array.  This means sub-expressions shared between entries are only
+        //evaluated once.
+        Map<String,Integer> slots = new HashMap<>();
+        for (String p: paramValues.keySet())
+        {
+            slots.put(p, slots.size());
+        }
+        values = new double[slots.size()];
+        try
+        {
+            FunctionProgram.Builder rb = new FunctionProgram.Builder(slots);
+            for (int i = 0; i < rates.length; i++)
+            {
+                for (int j = 0; j < rates.length; j++)
+                {
+                    if (i != j)
+                    {
+                        rb.add(rates[i][j]);
+                    }
+                }
+            }
+            ratesProgram = rb.build();
+            if (freq != null)
+            {
+                FunctionProgram.Builder fb = new FunctionProgram.Builder(slots);
+                for (int i = 0; i < freq.length; i++)
+                {
+                    fb.add(freq[i]);
+                }
+                freqProgram = fb.build();
+            }
+        }
+        catch (NoSuchVariable e)
+        {
+            //Shouldn't reach here as slots contains every needed parameter
+            throw new UnexpectedError(e);
+        }
+
+        if (freqType == FrequencyType.MODEL)
+        {
+            freqSlots = new int[map.size()];
+            for (Entry<String,Integer> e: map.entrySet())
+            {
+                Integer slot = slots.get("_" + e.getKey());
+                freqSlots[e.getValue()] = (slot == null) ? -1 : slot;
+            }
+        }
     }
 
     /**
@@ -258,46 +332,23 @@ public class RateCategory implements Serializable
      */
     public void setParameters(Parameters p) throws RateException, ParameterException
     {
-        //Check if there are missing parameters...
-        Set<String> missing = new TreeSet<>();
-	for (String s : paramValues.keySet())
-	{
-	    boolean has = false;
-	    for (Parameter pp : p)
-	    {
-		if (s.equals(pp.getName()))
-		{
-		    has = true;
-		}
-	    }
-	    if (!has)
-	    {
-		missing.add(s);
-	    }
-	}
-        
-        //And if so thrown an exception
-	if (missing.size() > 0)
-	{
-	    StringBuilder miss = new StringBuilder();
-	    for (String s : missing)
-	    {
-		miss.append(s);
-		miss.append(", ");
-	    }
-	    throw new RateException( 
-                    "Parameters " + miss.substring(0, miss.length() - 2) + " have not been passed");
-	}
-        
+        checkMissing(p);
+
         boolean recalc = false;
+        int slot = 0;
         for (Entry<String,Double> e: paramValues.entrySet())
         {
-            double cv = p.getValue(e.getKey());
-            if (cv != e.getValue())
+            if (!e.getKey().startsWith("_"))
             {
-                recalc = true;
-                e.setValue(cv);
+                double cv = p.getValue(e.getKey());
+                if (cv != e.getValue())
+                {
+                    recalc = true;
+                    e.setValue(cv);
+                }
+                values[slot] = cv;
             }
+            slot++;
         }
         if (recalc || (m == null))
         {
@@ -307,28 +358,20 @@ public class RateCategory implements Serializable
             //need frequencies so just update matrix.  Else we need to update the matrix first
             //so that the (quasi-)stationary distribution is calculated on the right
             //matrix
-            //if (freqType == FrequencyType.MODEL)
-            //{
             switch (freqType)
             {
                 case MODEL:
-                    f = calculateFreq(p);
-                    m = calculateMatrix(p);
+                    f = calculateFreq(values, m, Engine.getDefault());
+                    m = calculateMatrix(values, f);
                     break;
                 case FITZJOHN:
-                    m = calculateMatrix(p);
+                    m = calculateMatrix(values, f);
                     break;
                 default:
-                    m = calculateMatrix(p);
-                    f = calculateFreq(p);
+                    m = calculateMatrix(values, f);
+                    f = calculateFreq(values, m, Engine.getDefault());
             }
 
-            //Since we have a new rate matrix we need a new cache.  This effectively
-            //stores P matrices for given lengths.  GoldenSection search will only
-            //update one length at a time why the others stay the same so no point
-            //recaluclating them all
-            cache = new HashMap<>();
-
             //Set the scaled matrix to the same as the normal matrix.  We need to set
             //the parameters, then calculate the rate at the model level (across all
             //categories) before setting the scale so we can't set this to it's final
@@ -337,6 +380,79 @@ public class RateCategory implements Serializable
         }
     }
     
+    /**
+     * Evaluates the rate category at the given parameters without changing
+     * the rate category.  Unlike {@link #setParameters(Parameters.Parameters)}
+     * this may be called from more than one thread at the same time.
+     * @param p The parameters
+     * @param engine The engine whose settings should be used
+     * @return The evaluated, unscaled, rate category
+     * @throws Models.RateCategory.RateException If the parameters passed does not
+     * include all the parameters in the model.
+     * @throws Parameters.Parameters.ParameterException If a parameter that needs to be set for this
+     * rate category has not been passed
+     */
+    CategorySnapshot evaluate(Parameters p, Engine engine) throws RateException, ParameterException
+    {
+        checkMissing(p);
+
+        double[] v = new double[values.length];
+        int slot = 0;
+        for (String s: paramValues.keySet())
+        {
+            if (!s.startsWith("_"))
+            {
+                v[slot] = p.getValue(s);
+            }
+            slot++;
+        }
+
+        //Same order of calculation as setParameters
+        SquareMatrix nm;
+        double[] nf = null;
+        switch (freqType)
+        {
+            case MODEL:
+                nf = calculateFreq(v, null, engine);
+                nm = calculateMatrix(v, nf);
+                break;
+            case FITZJOHN:
+                nm = calculateMatrix(v, null);
+                break;
+            default:
+                nm = calculateMatrix(v, null);
+                nf = calculateFreq(v, nm, engine);
+        }
+        return new CategorySnapshot(this, nm, nm, nf, 1.0, engine);
+    }
+
+    private void checkMissing(Parameters p) throws RateException
+    {
+        //Check if there are missing parameters...
+        Set<String> missing = new TreeSet<>();
+	for (String s : paramValues.keySet())
+	{
+            //Frequency parameters come from the frequencies not the parameters
+	    if (!s.startsWith("_") && !p.hasParam(s))
+	    {
+		missing.add(s);
+	    }
+	}
+        
+        //And if so thrown an exception
+	if (missing.size() > 0)
+	{
+	    StringBuilder miss = new StringBuilder();
+	    for (String s : missing)
+	    {
+		miss.append(s);
+		miss.append(", ");
+	    }
+	    throw new RateException( 
+                    "Parameters " + miss.substring(0, miss.length() - 2) + " have not been passed");
+	}
+    }
+
     /**
      * Sets the scale that should be used to ensure the enclosing model has an
      * average rate of 1.
@@ -344,12 +460,121 @@ public class RateCategory implements Serializable
      */
     void setScale(double scale)
     {
-        if (scale != this.scale)
+        //Nothing to do if neither the matrix nor the scale have changed since
+        //the scaled matrix was calculated.  Keeping the same scaled matrix
+        //means anything cached against it is still used.
+        if ((scale == this.scale) && (scaledFrom == m))
         {
-            cache = new HashMap<>();
+            return;
         }
         this.scale = scale;
 	sm = m.scalarMultiply(scale);
+        scaledFrom = m;
+    }
+
+    /**
+     * Gets the names of the parameters used by this rate category
+     * @return The parameter names
+     */
+    public Set<String> getParameterNames()
+    {
+        Set<String> names = new TreeSet<>();
+        for (String p: paramValues.keySet())
+        {
+            if (!p.startsWith("_"))
+            {
+                names.add(p);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Gets the derivative of the (unscaled) rate matrix with respect to a
+     * parameter at the current parameter values.  Calculated by automatic
+     * differentiation of the rate equations so is exact apart from for functions,
+     * such as gamma rates, whose derivative has to be calculated numerically.
+     * If the frequency type is MODEL then frequencies used in the matrix are
+     * also differentiated.
+     * <br><br>
+     * The derivative is of the matrix before it is rescaled by the enclosing
+     * model (see {@link #getScaledMatrix()}).  As the scale itself depends on
+     * the parameters callers that need the derivative of the scaled matrix
+     * must apply the model's rescaling, and its derivative, themselves.
+     * @param parameter The parameter
+     * @return The derivative of the rate matrix
+     * @throws Models.RateCategory.RateException If the parameters have not yet
+     * been set
+     */
+    public SquareMatrix getRateDerivative(String parameter) throws RateException
+    {
+        if (m == null)
+        {
+            throw new RateException("Parameters must be set before calculating derivatives");
+        }
+
+        Map<String,Double> values = new HashMap<>();
+        for (Entry<String,Double> e: paramValues.entrySet())
+        {
+            if (!e.getKey().startsWith("_"))
+            {
+                values.put(e.getKey(), e.getValue());
+            }
+        }
+        Map<String,Double> derivatives = new HashMap<>();
+        derivatives.put(parameter, 1.0);
+
+        try
+        {
+            if (freqType == FrequencyType.MODEL)
+            {
+                //Derivative of the frequencies after they are scaled to sum to
+                //one
+                Dual[] fr = new Dual[freq.length];
+                double total = 0.0;
+                double dtotal = 0.0;
+                for (int i = 0; i < freq.length; i++)
+                {
+                    fr[i] = freq[i].computeDual(values, derivatives);
+                    total += fr[i].getValue();
+                    dtotal += fr[i].getDerivative();
+                }
+                for (Entry<String,Integer> e: map.entrySet())
+                {
+                    Dual d = fr[e.getValue()];
+                    values.put("_" + e.getKey(), d.getValue() / total);
+                    derivatives.put("_" + e.getKey(),
+                            (d.getDerivative() * total - d.getValue() * dtotal) / (total * total));
+                }
+            }
+
+            double[][] n = new double[rates.length][rates.length];
+            for (int i = 0; i < rates.length; i++)
+            {
+                double total = 0.0;
+                for (int j = 0; j < rates.length; j++)
+                {
+                    if (i != j)
+                    {
+                        n[i][j] = rates[i][j].computeDual(values, derivatives).getDerivative();
+                        total += n[i][j];
+                    }
+                }
+                n[i][i] = -total;
+            }
+            return new SquareMatrix(n);
+        }
+        catch (NoSuchVariable e)
+        {
+            //Shoudln't reach here as we've already tested that we have
+            //all neccessary variable but just in case...
+            throw new UnexpectedError(e);
+        }
+        catch (SquareMatrixException e)
+        {
+            //n is square by construction
+            throw new UnexpectedError(e);
+        }
     }
 
     /**
@@ -357,6 +582,11 @@ public class RateCategory implements Serializable
      * @return The total rate
      */
     public double getTotalRate()
+    {
+        return totalRate(m, f);
+    }
+
+    static double totalRate(SquareMatrix m, double[] f)
     {
         double[][] old = m.getArray();
         double t = 0.0;
@@ -373,23 +603,29 @@ public class RateCategory implements Serializable
 	return t;
     }
 
-    private SquareMatrix calculateMatrix(Parameters params) throws RateException
+    private SquareMatrix calculateMatrix(double[] values, double[] f) throws RateException
     {
         //Calculate a rate matrix (of doubles) from the equations in the matrix
 	double[][] n = new double[rates.length][rates.length];
 
-	HashMap<String, Double> values = params.getValues();
-        
         //If freq type is MODEL then add the frequencies to the paramters
         //(with the name _state) so that threy can be used in the matrix
         if (freqType == FrequencyType.MODEL)
         {
-            for (Entry<String,Integer> e: map.entrySet())
+            for (int i = 0; i < freqSlots.length; i++)
             {
-                values.put("_" + e.getKey(), f[e.getValue()]);
+                if (freqSlots[i] >= 0)
+                {
+                    values[freqSlots[i]] = f[i];
+                }
             }
         }
 
+        //The off-diagonal entries in row order
+        double[] off = new double[ratesProgram.outputs()];
+        ratesProgram.compute(values, off);
+
+        int k = 0;
 	for (int i = 0; i < rates.length; i++)
 	{
 	    double total = 0.0;
@@ -399,17 +635,8 @@ public class RateCategory implements Serializable
                 //so ignore them here apart from to calculate the total
 		if (i != j)
 		{
-                    try
-                    {
-                        n[i][j] = rates[i][j].compute(values);
-                        total += n[i][j];
-                    }
-                    catch (NoSuchVariable e)
-                    {
-                        //Shoudln't reach here as we've already tested that we have
-                        //all neccessary variable but just in case...
-                        throw new UnexpectedError(e);
-                    }
+                    n[i][j] = off[k++];
+                    total += n[i][j];
 		}
 	    }
             //Set the diagonal entry
@@ -446,6 +673,11 @@ public class RateCategory implements Serializable
      * @return A root object
      */
     public Root getRoot()
+    {
+        return root(f);
+    }
+
+    Root root(double[] f)
     {
         if (freqType == FrequencyType.FITZJOHN)
         {
@@ -457,7 +689,7 @@ public class RateCategory implements Serializable
         }
     }
 
-    private double[] calculateFreq(Parameters params) throws RateException
+    private double[] calculateFreq(double[] values, SquareMatrix m, Engine engine) throws RateException
     {
         //Calculate the frequency either from the rate matrix or by evaluating
         //the equations in the array
@@ -465,19 +697,11 @@ public class RateCategory implements Serializable
 	switch (freqType)
 	{
 	    case STATIONARY:
-		try
-		{
-                     return Distributions.stationary(m);
-		}
-		catch (DistributionsException e)
-		{
-		    throw new RateException("Problem "
-                            + "calculating stationary distribution", e);
-		}
+                return stationary(m, engine);
 	    case QSTAT:
 		try
 		{
-                    return Distributions.quasiStationary(m);
+                    return Distributions.quasiStationary(m, engine);
 		}
 		catch (DistributionsException e)
 		{
@@ -486,21 +710,8 @@ public class RateCategory implements Serializable
 		}
 	    case MODEL:
 	    default:
-		HashMap<String, Double> values = params.getValues();
 		double[] fr = new double[freq.length];
-		for (int i = 0; i < freq.length; i++)
-		{
-                    try
-                    {
-                        fr[i] = freq[i].compute(values);
-                    }
-                    catch (NoSuchVariable e)
-                    {
-                        //Shoudln't reach here as we've already tested that we have
-                        //all neccessary variable but just in case...
-                        throw new UnexpectedError(e);
-                    }
-		}
+                freqProgram.compute(values, fr);
 		// Scale to total of 1.0
 		double total = 0.0;
 		for (double ff : fr)
@@ -515,6 +726,29 @@ public class RateCategory implements Serializable
 	}
     }
 
+    /**
+     * Calculates the stationary distribution of the given rate matrix.  Used
+     * when the frequency type is STATIONARY.  Subclasses that know the structure
+     * of their rate matrix may override this to avoid the general calculation.
+     * @param matrix The (unscaled) rate matrix
+     * @param engine The engine whose settings should be used
+     * @return The stationary distribution
+     * @throws Models.RateCategory.RateException If the distribution can't be
+     * calculated
+     */
+    protected double[] stationary(SquareMatrix matrix, Engine engine) throws RateException
+    {
+        try
+        {
+            return Distributions.stationary(matrix, engine);
+        }
+        catch (DistributionsException e)
+        {
+            throw new RateException("Problem "
+                    + "calculating stationary distribution", e);
+        }
+    }
+
     /**
      * Gets the number of states in the rate class
      * @return The number of states
@@ -560,6 +794,11 @@ public class RateCategory implements Serializable
         {
             cm = mp.compileFunction(mult);
         }
+        catch (InvalidEquation ex)
+        {
+            throw new RateException("Multiply by",
+                    mult, ex.getMessage(), ex);
+        }
         catch (NoSuchFunction ex)
         {
             throw new RateException("Multiply by",
@@ -579,7 +818,22 @@ public class RateCategory implements Serializable
 	    }
 	}
 
-        return new RateCategory(nr, freqType, freq, map);
+        return newInstance(nr, freqType, freq, map);
+    }
+
+    /**
+     * Creates a new rate category of the same type as this one.  Used by
+     * {@link #multiplyBy(java.lang.String)} so that subclasses are preserved
+     * when, for example, creating gamma categories.
+     * @param rates Array of compiled functions representing the rate matrix
+     * @param freqType How the root frequency is calculated
+     * @param freq Compiled root frequency functions (null unless freqType is MODEL)
+     * @param map Map from State to position in matrix (0-index).
+     * @return The new rate category
+     */
+    protected RateCategory newInstance(CompiledFunction[][] rates, FrequencyType freqType, CompiledFunction[] freq, Map<String, Integer> map)
+    {
+        return new RateCategory(rates, freqType, freq, map);
     }
 
     /**
@@ -592,25 +846,114 @@ public class RateCategory implements Serializable
      */
     public SquareMatrix getP(double length) throws RateException
     {
-        if (cache.containsKey(length))       
+        //The scaled matrix and frequencies are replaced whenever the parameters
+        //or scale change so use them to tell when the snapshot (and the P
+        //matrices it stores) is out of date.  GoldenSection search will only
+        //update one length at a time while the others stay the same so no
+        //point recaluclating them all.
+        if ((current == null) || (current.getScaledMatrix() != sm) || (current.freq() != f))
         {
-            return cache.get(length);
+            current = new CategorySnapshot(this, m, sm, f, scale, Engine.getDefault());
         }
-        else
+        return current.getP(length);
+    }
+
+    /**
+     * Creates the object used to calculate P-matrices for a scaled rate matrix.
+     * By default P-matrices are calculated by matrix exponentiation.  Subclasses
+     * that know the structure of their rate matrix may override this to use
+     * a closed form solution.  The returned calculator is only ever used by
+     * one thread at a time.
+     * @param scaled The scaled rate matrix
+     * @param freq The root frequencies
+     * @param engine The engine whose settings should be used
+     * @return The P-matrix calculator
+     * @throws Models.RateCategory.RateException If the rate matrix is not of
+     * the form required by the calculator
+     */
+    protected PCalculator pCalculator(SquareMatrix scaled, double[] freq, Engine engine) throws RateException
+    {
+        return new ExpCalculator(scaled, engine);
+    }
+
+    /**
+     * Calculates P-matrices for one scaled rate matrix
+     */
+    protected interface PCalculator
+    {
+        /**
+         * Gets the P-matrix for a given length
+         * @param length The length
+         * @return The probability matrix
+         * @throws Models.RateCategory.RateException Thrown if the matrix cannot be
+         * calculated.
+         */
+        public SquareMatrix getP(double length) throws RateException;
+    }
+
+    private class ExpCalculator implements PCalculator
+    {
+        private ExpCalculator(SquareMatrix sm, Engine engine)
+        {
+            this.sm = sm;
+            this.engine = engine;
+        }
+
+        public SquareMatrix getP(double length) throws RateException
         {
             try
             {
-                SquareMatrix P = sm.expMult(length);
-                cache.put(length,P);
-                return P;
+                if (engine.getExpMethod() == Calculation.AUTO)
+                {
+                    //Choose the method once per scaled matrix and time how long
+                    //it takes so the chooser can compare methods.  Choosing is
+                    //included as for the eigendecomposition method it does the
+                    //decomposition.
+                    long start = System.nanoTime();
+                    if (sample == null)
+                    {
+                        sample = chooser.choose(sm);
+                    }
+                    SquareMatrix P = sm.expMult(length, sample.getMethod(), engine);
+                    sample.time(System.nanoTime() - start);
+                    return P;
+                }
+                else
+                {
+                    return sm.expMult(length, engine);
+                }
             }
             catch (SquareMatrixException e)
             {
                 throw new RateException("Problem calculating P matrix",e);
             }
         }
+
+        private final SquareMatrix sm;
+        private final Engine engine;
+        private ExpMethodChooser.Sample sample;
     }
     
+    /**
+     * Gets the matrix exponentiation method chosen for this rate category when
+     * the method is set to {@link Calculation#AUTO}
+     * @return The method or null if one has not been chosen yet
+     */
+    public Calculation getExpMethod()
+    {
+        return chooser.getChosen();
+    }
+
+    /**
+     * Gets a description of why the matrix exponentiation method returned by
+     * {@link #getExpMethod()} was chosen
+     * @return The reason or null if a method has not been chosen yet
+     */
+    public String getExpMethodReason()
+    {
+        return chooser.getReason();
+    }
+
     /**
      * Gets the scaled rate matrix
      * @return The scaled rate matrix
@@ -653,8 +996,14 @@ public class RateCategory implements Serializable
 
 
     private SquareMatrix sm;    
-    private Map<Double,SquareMatrix> cache;
+    private SquareMatrix scaledFrom;
+    private transient CategorySnapshot current;
+    private ExpMethodChooser chooser = new ExpMethodChooser();
     private TreeMap<String,Double> paramValues;
+    private double[] values;
+    private int[] freqSlots;
+    private FunctionProgram freqProgram;
+    private FunctionProgram ratesProgram;
     private SquareMatrix m;
     private double[] f;
     private CompiledFunction[] freq;
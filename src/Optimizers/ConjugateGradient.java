@@ -20,8 +20,8 @@ package Optimizers;
 import Exceptions.GeneralException;
 import Exceptions.InputException;
 import Exceptions.OutputException;
+import Likelihood.Calculator;
 import Likelihood.Likelihood;
-import Likelihood.SiteLikelihood;
 import Parameters.Parameter;
 import Parameters.Parameters;
 import Parameters.Parameters.ParameterException;
@@ -35,7 +35,9 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
@@ -169,8 +171,6 @@ public class ConjugateGradient implements Optimizer
 
     private <R extends Likelihood> R maximise(Optimizable<R> c, PrintStream out, Data d) throws GeneralException
     {
-        // Don't keep the node likelihoods while we are optimizing
-        SiteLikelihood.optKeepNL(false);
         // Reset the timer
         timePassed.reset();
         maxPassed.reset();
@@ -244,8 +244,6 @@ public class ConjugateGradient implements Optimizer
         // Do this until we have only a small increase in likelihood between steps
         while (Math.abs(d.newML - d.oldML) > tol);
 
-        // Now store the node likelihoods
-        SiteLikelihood.optKeepNL(true);
         // And relcaulate the likelihood (storing the node likelihoods) for the
         // optimized parameters
         return c.calculate(d.params);
@@ -343,7 +341,7 @@ public class ConjugateGradient implements Optimizer
         }        
     }
     
-    private static double findStep(Optimizable c, Parameters params, Map<String, Double> direction, double grad1, double lastStep) throws GeneralException
+    private static double findStep(Optimizable<?> c, Parameters params, Map<String, Double> direction, double grad1, double lastStep) throws GeneralException
     {
         // Calculate the maximum step size without hititng a boundry
         double maxStep = getMaxStep(params, direction);
@@ -485,42 +483,43 @@ public class ConjugateGradient implements Optimizer
         return s;
     }
 
-    private static Map<String, Double> gradient(Optimizable c, Parameters params, double l) throws GeneralException
+    private static Map<String, Double> gradient(Optimizable<?> c, Parameters params, double l) throws GeneralException
     {
         // Calculates the gradient for a given point.  l is the likelihood at
         // that point (which saves us calculating it again).
-        Map<String, Double> grad = new HashMap<>();
-        Parameters ptemp = params.clone();
-        for (Parameter p : ptemp)
+        // BEAST uses the centered first derivative here by also calculatng
+        // a fxminus for oldv - SMALL_DIFF.  This however results in a lot
+        // of extra likelihood calculations so we use oldv and oldv + 
+        // SMALL_DIFF instead. (Unless we're near the upper bound in which
+        // case use oldv - SMALL_DIFF and oldv.  Evedience suggests this is 
+        // quicker.
+        // The points are calculated together as that is quicker than
+        // calculating them one at a time, a few at a time so we don't hold
+        // a full result for every parameter at once.
+        List<String> names = new ArrayList<>();
+        List<Double> diffs = new ArrayList<>();
+        List<Parameters> points = new ArrayList<>();
+        for (Parameter p : params)
         {
             // Don't bother with fixed parameters!
             if (p.getEstimate())
             {
-                double oldv = p.getValue();
-                // BEAST uses the centered first derivative here by also calculatng
-                // a fxminus for oldv - SMALL_DIFF.  This however results in a lot
-                // of extra likelihood calculations so we use oldv and oldv + 
-                // SMALL_DIFF instead. (Unless we're near the upper bound in which
-                // case use oldv - SMALL_DIFF and oldv.  Evedience suggests this is 
-                // quicker.
-                if (p.getValue() + SMALL_DIFF > p.getUpperBound())
-                {
-                    ptemp.setValue(p, oldv - SMALL_DIFF);
-                    double fxminus = -c.calculate(ptemp).getLikelihood();
-                                    ptemp.setValue(p, oldv);
-                    grad.put(p.getName(), (l - fxminus) / SMALL_DIFF);             
-                }
-                else
-                {
-                    ptemp.setValue(p, oldv + SMALL_DIFF);
-                    double fxplus = -c.calculate(ptemp).getLikelihood();
-                                    ptemp.setValue(p, oldv);
-                    grad.put(p.getName(), (fxplus - l) / SMALL_DIFF);
-                }
-
-                ptemp.setValue(p, oldv);
+                double diff = (p.getValue() + SMALL_DIFF > p.getUpperBound()) ? -SMALL_DIFF : SMALL_DIFF;
+                Parameters ptemp = params.clone();
+                ptemp.setValue(ptemp.getParam(p.getName()), p.getValue() + diff);
+                names.add(p.getName());
+                diffs.add(diff);
+                points.add(ptemp);
             }
         }
+
+        Map<String, Double> grad = new HashMap<>();
+        double[] ls = Calculator.logLikelihoods(c, points);
+        for (int i = 0; i < names.size(); i++)
+        {
+            double fx = -ls[i];
+            grad.put(names.get(i), (fx - l) / diffs.get(i));
+        }
         return grad;
     }
 
@@ -545,15 +544,19 @@ public class ConjugateGradient implements Optimizer
         return newParams;
     }
 
-    private static double gradient(Optimizable c, Parameters params, Map<String, Double> direction, double distance) throws GeneralException
+    private static double gradient(Optimizable<?> c, Parameters params, Map<String, Double> direction, double distance) throws GeneralException
     {
         // Calculates the gradient in the given direction for a point at the given 
         // distance from the current point (params) in the same direction
         
         // Use diff and diff - SMALL_DIFF as if diff is set to the maximum possible 
         // step then diff + SMALL_DIFF will result in an invalid parameter value
-        double u = -c.calculate(getPoint(params, direction, distance)).getLikelihood();
-        double l = -c.calculate(getPoint(params, direction, distance - SMALL_DIFF)).getLikelihood();
+        List<Parameters> points = new ArrayList<>();
+        points.add(getPoint(params, direction, distance));
+        points.add(getPoint(params, direction, distance - SMALL_DIFF));
+        double[] ls = Calculator.logLikelihoods(c, points);
+        double u = -ls[0];
+        double l = -ls[1];
         return (u - l) / SMALL_DIFF;
     }
 
@@ -21,7 +21,6 @@ import Exceptions.GeneralException;
 import Exceptions.InputException;
 import Exceptions.OutputException;
 import Likelihood.Likelihood;
-import Likelihood.SiteLikelihood;
 import Parameters.Parameter;
 import Parameters.Parameters;
 import Utils.TimePassed;
@@ -90,6 +89,26 @@ public class GoldenSection implements Optimizer
 	sdf = new SimpleDateFormat("ddHHmmss");
         timePassed = new TimePassed(365,TimeUnit.DAYS);
         maxPassed = new TimePassed(365,TimeUnit.DAYS);
+        startRigor = START_RIGOR;
+        startStep = START_STEP;
+    }
+
+    /**
+     * Sets where the optimisation starts from.  By default the rigour starts
+     * at 10.0 and is tightened as the optimisation proceeds and each parameter
+     * is initially bounded by searching 2.0 either side of its value.  When
+     * the parameters are already close to their optimum, for example when
+     * re-optimising after a few sites have been added (see
+     * {@link Likelihood.StandardCalculator#addSites(Alignments.Alignment, Likelihood.StandardLikelihood)}),
+     * starting with a tighter rigour and smaller step means fewer likelihood
+     * calculations are needed.  Does not affect restarting from a checkpoint.
+     * @param rigor The starting rigour
+     * @param step The starting step
+     */
+    public void setStart(double rigor, double step)
+    {
+        startRigor = rigor;
+        startStep = step;
     }
     
 
@@ -99,7 +118,7 @@ public class GoldenSection implements Optimizer
         {
             return l.calculate(params);
         }
-	return maximise(l,System.out,new Data(params));
+	return maximise(l,System.out,new Data(params,startRigor,startStep));
     }
 
     public <R extends Likelihood> R maximise(Optimizable<R> l, Parameters params, File log) throws GeneralException
@@ -111,7 +130,7 @@ public class GoldenSection implements Optimizer
         try
         {
             PrintStream ps = new PrintStream(new FileOutputStream(log));
-            R res = maximise(l,ps,new Data(params));
+            R res = maximise(l,ps,new Data(params,startRigor,startStep));
             ps.close();
             return res;
         }
@@ -126,8 +145,6 @@ public class GoldenSection implements Optimizer
     //initalised.
     private <R extends Likelihood> R maximise(Optimizable<R> l, PrintStream out, Data data) throws GeneralException
     {
-        //Don't keep Node Likelihoods while we are otimizing
-        SiteLikelihood.optKeepNL(false);
         //In this function two levels of progress output are the same so create
         //a boolean as to whether we're using one of those progress levels.
 	boolean progress = (progresslevel == ProgressLevel.CALCULATION ||
@@ -187,8 +204,6 @@ public class GoldenSection implements Optimizer
 	    }
 	}
 	while ((data.oldML == null) || ((data.e_diff >= rigor) || (data.newML.getLikelihood() - data.oldML.getLikelihood() > rigor)));
-        //Now keep NodeLikelihoods and calculate the resulting NodeLikelihoods
-        SiteLikelihood.optKeepNL(true);
         return l.calculate(data.newML.getParameters());
     }
 
@@ -503,11 +518,15 @@ public class GoldenSection implements Optimizer
 
     private static final double R = (Math.sqrt(5.0) - 1) / 2;
     private static final double E_DIFF = 10e-7;
+    private static final double START_RIGOR = 10.0;
+    private static final double START_STEP = 2.0;
     private Calendar cal;
     private SimpleDateFormat sdf;
     private File checkPoint;
     private TimePassed timePassed;
     private TimePassed maxPassed;
+    private double startRigor;
+    private double startStep;
     
     /**
      * Enumeration of the different levels of output
@@ -535,14 +554,14 @@ public class GoldenSection implements Optimizer
     private static class Data/*<R extends HasLikelihood>*/ implements Serializable
     {
         //Constructer initalises various parameters.
-        private Data(Parameters p)
+        private Data(Parameters p, double e_diff, double diff)
         {
             params = p.clone();
-            e_diff = 10.0;
+            this.e_diff = e_diff;
             diffs = new HashMap<>();
             for (Parameter pp : this.params)
             {
-                diffs.put(pp, 2.0);
+                diffs.put(pp, diff);
             }
             oldML = null;
             newML = null;
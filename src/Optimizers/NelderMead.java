@@ -20,10 +20,11 @@ package Optimizers;
 import Exceptions.GeneralException;
 import Exceptions.InputException;
 import Exceptions.OutputException;
+import Likelihood.Calculator;
 import Likelihood.Likelihood;
-import Likelihood.SiteLikelihood;
 import Parameters.Parameter;
 import Parameters.Parameters;
+import Parameters.Parameters.ParameterException;
 import Utils.TimePassed;
 import java.io.File;
 import java.io.FileInputStream;
@@ -34,7 +35,9 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -97,8 +100,6 @@ public class NelderMead implements Optimizer
     //initalised.
     private <R extends Likelihood> R maximise(Optimizable<R> l, PrintStream out, Data data) throws GeneralException
     {
-        //Don't keep Node Likelihoods while we are otimizing
-        SiteLikelihood.optKeepNL(false);
         //Reset the timer
         timePassed.reset();
         maxPassed.reset();
@@ -207,9 +208,10 @@ public class NelderMead implements Optimizer
 			data.simplexes[i][j] = (data.simplexes[i][j] + data.simplexes[imin][j]) / 2;
 		    }
 		}
+                List<R> vs = evaluate(data.simplexes,data,l);
 		for (int i=0; i < data.num+1; i++)
 		{
-		    data.values[i] = evaluate(data.simplexes[i],data,l);
+		    data.values[i] = vs.get(i);
                     if (-data.values[i].getLikelihood() < -data.vnew.getLikelihood())
                     {
                         data.vnew = data.values[i];
@@ -230,12 +232,30 @@ public class NelderMead implements Optimizer
 	}
 	while (-data.vold.getLikelihood() - -data.vnew.getLikelihood() > tol);
 
-        //Now keep NodeLikelihoods and calculate the resulting NodeLikelihoods
-        SiteLikelihood.optKeepNL(true);
         return l.calculate(data.vnew.getParameters());
     }
 
     private static <R extends Likelihood> R evaluate(double[] params, Data data, Optimizable<R> l) throws GeneralException
+    {
+        setPoint(params, data);
+        return l.calculate(data.params);
+    }
+
+    //Evaluates several points together which is quicker than evaluating them
+    //one at a time.  Only the likelihoods are used as the result returned is
+    //recalculated at the end so node likelihoods aren't kept.
+    private static <R extends Likelihood> List<R> evaluate(double[][] params, Data data, Optimizable<R> l) throws GeneralException
+    {
+        List<Parameters> points = new ArrayList<>(params.length);
+        for (double[] pa: params)
+        {
+            setPoint(pa, data);
+            points.add(data.params.clone());
+        }
+        return Calculator.calculate(l, points, false);
+    }
+
+    private static void setPoint(double[] params, Data data) throws ParameterException
     {
 	for (int i = 0; i < params.length; i++)
 	{
@@ -249,9 +269,6 @@ public class NelderMead implements Optimizer
 	    }
 	}
 	data.oldp = Arrays.copyOf(params, params.length);
-
-        return l.calculate(data.params);
-
     }
 
 
@@ -448,10 +465,7 @@ public class NelderMead implements Optimizer
                 simplexes[num][i] = 1.0;
             }
 
-            for (int i=0; i < num+1; i++)
-            {
-                values[i] = evaluate(simplexes[i],this,l);
-            }
+            values = evaluate(simplexes,this,l).toArray(values);
         }
         
         private Parameters params;
@@ -18,7 +18,10 @@
 package Parameters;
 
 import Parameters.Parameters.ParameterException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents a parameter of a model
@@ -35,11 +38,15 @@ public class Parameter implements Serializable
 	this.estimate = estimate;
 	this.lbound = lbound;
 	this.ubound = ubound;
+        version = VERSIONS.incrementAndGet();
     }
     
     public Parameter clone()
     {
-        return new Parameter(name,value,estimate,lbound,ubound);
+        Parameter c = new Parameter(name,value,estimate,lbound,ubound);
+        //Same value so same version
+        c.version = version;
+        return c;
     }
     
     /**
@@ -70,7 +77,23 @@ public class Parameter implements Serializable
         {
             throw new ParameterException("Attempt to set parameter to NaN");
         }
-	value = val;
+        if (val != value)
+        {
+            value = val;
+            version = VERSIONS.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the version of the parameter's value.  A new version is taken from
+     * a counter shared by all parameters whenever the value changes and a
+     * clone has the same version as the original.  So if two parameters have
+     * the same version they have the same value.
+     * @return The version
+     */
+    long getVersion()
+    {
+        return version;
     }
     
     /**
@@ -110,6 +133,17 @@ public class Parameter implements Serializable
     private boolean estimate;
     private double lbound;
     private double ubound;
+    private transient long version;
+
+    //Source of versions.  Versions aren't stored when serialized as they
+    //would be from a different counter
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        version = VERSIONS.incrementAndGet();
+    }
     
     /**
      * Creates a new parameter that has to be positive and is estimated.
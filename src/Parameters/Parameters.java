@@ -28,6 +28,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.PrintStream;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -36,7 +37,11 @@ import java.util.Iterator;
 import java.util.List;
 
 /**
- * Represents a set of parameters
+ * Represents a set of parameters.  Parameters are indexed by name so finding
+ * a parameter doesn't depend on how many there are.  Each parameter also has
+ * an index (its position in the order parameters were added) which gives
+ * quick access to its value and to its version, which changes whenever its
+ * value does, so users can cheaply tell what has changed.
  * @author Daniel Money
  * @version 2.0
  */
@@ -48,6 +53,7 @@ public class Parameters implements Iterable<Parameter>, Serializable
     public Parameters()
     {
 	params = new ArrayList<>();
+        index = new HashMap<>();
     }
 
     /**
@@ -58,7 +64,7 @@ public class Parameters implements Iterable<Parameter>, Serializable
      */
     public Parameters(List<Parameter> params) throws ParameterException
     {
-        this.params = new ArrayList<>();
+        this();
 	for (Parameter p: params)
         {
             addParameter(p);
@@ -95,6 +101,7 @@ public class Parameters implements Iterable<Parameter>, Serializable
             throw new ParameterException("Parameter with name " + p.getName() +
                     " already defined");
         }
+        index.put(p.getName(), params.size());
 	params.add(p);
     }
 
@@ -133,14 +140,101 @@ public class Parameters implements Iterable<Parameter>, Serializable
      */
     public double getValue(String name) throws ParameterException
     {
-	for (Parameter p : params)
-	{
-	    if (p.getName().equals(name))
-	    {
-		return p.getValue();
-	    }
-	}
-        throw new ParameterException("No paramter with the name \"" + name + "\" exists.");
+        return params.get(getIndex(name)).getValue();
+    }
+
+    /**
+     * Gets the index of a parameter
+     * @param name The parameter's name
+     * @return The index of the parameter
+     * @throws Parameters.Parameters.ParameterException Thrown if there is no
+     * parameter with that name
+     */
+    public int getIndex(String name) throws ParameterException
+    {
+        Integer i = index.get(name);
+        if (i == null)
+        {
+            throw new ParameterException("No paramter with the name \"" + name + "\" exists.");
+        }
+        return i;
+    }
+
+    /**
+     * Gets the value of the parameter with the given index
+     * @param i The index of the parameter
+     * @return The value of that parameter
+     */
+    public double getValue(int i)
+    {
+        return params.get(i).getValue();
+    }
+
+    /**
+     * Gets the version of the value of the parameter with the given index.
+     * The version changes whenever the value is changed and is kept when the
+     * parameters are cloned.  If the parameter with a given name has the same
+     * version in two sets of parameters (for example a set and a clone of it)
+     * it has the same value in both.
+     * @param i The index of the parameter
+     * @return The version
+     */
+    public long getVersion(int i)
+    {
+        return params.get(i).getVersion();
+    }
+
+    /**
+     * Gets the number of parameters
+     * @return The number of parameters
+     */
+    public int size()
+    {
+        return params.size();
+    }
+
+    /**
+     * Gets the values of the parameters that are to be estimated, in index
+     * order.  Changing the returned array does not change the parameters - use
+     * {@link #setEstimatedValues(double[])} for that.
+     * @return The values of the estimated parameters
+     */
+    public double[] getEstimatedValues()
+    {
+        double[] v = new double[numberEstimate()];
+        int j = 0;
+        for (Parameter p: params)
+        {
+            if (p.getEstimate())
+            {
+                v[j++] = p.getValue();
+            }
+        }
+        return v;
+    }
+
+    /**
+     * Sets the values of the parameters that are to be estimated, in index
+     * order, as returned by {@link #getEstimatedValues()}
+     * @param v The values
+     * @throws Parameters.Parameters.ParameterException Thrown if the number of
+     * values is not the number of estimated parameters or a value is outside
+     * its parameter's bounds
+     */
+    public void setEstimatedValues(double[] v) throws ParameterException
+    {
+        if (v.length != numberEstimate())
+        {
+            throw new ParameterException("Expected " + numberEstimate() + " values but got " + v.length);
+        }
+        int j = 0;
+        for (Parameter p: params)
+        {
+            if (p.getEstimate())
+            {
+                setValue(p, v[j++]);
+            }
+        }
     }
 
     /**
@@ -152,14 +246,7 @@ public class Parameters implements Iterable<Parameter>, Serializable
      */
     public Parameter getParam(String name) throws ParameterException
     {
-	for (Parameter p : params)
-	{
-	    if (p.getName().equals(name))
-	    {
-		return p;
-	    }
-	}
-        throw new ParameterException("No paramter with the name \"" + name + "\" exists.");
+        return params.get(getIndex(name));
     }
     
     /**
@@ -169,18 +256,13 @@ public class Parameters implements Iterable<Parameter>, Serializable
      */
     public final boolean hasParam(String name)
     {
-	for (Parameter p : params)
-	{
-	    if (p.getName().equals(name))
-	    {
-		return true;
-	    }
-	}
-        return false;
+        return index.containsKey(name);
     }
 
     /**
-     * Gets a map from parameter name to the value of that parameter
+     * Gets a map from parameter name to the value of that parameter.  A new
+     * map is built each call so where speed matters use {@link #getIndex(String)}
+     * and {@link #getValue(int)} instead.
      * @return Map from parameter name to parameter value
      */
     public HashMap<String, Double> getValues()
@@ -284,7 +366,19 @@ public class Parameters implements Iterable<Parameter>, Serializable
 	out.close();
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        //The index isn't stored so rebuild it
+        index = new HashMap<>();
+        for (int i = 0; i < params.size(); i++)
+        {
+            index.put(params.get(i).getName(), i);
+        }
+    }
+
     private ArrayList<Parameter> params;
+    private transient HashMap<String,Integer> index;
 
 
     /**
@@ -0,0 +1,284 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Utils;
+
+import Maths.RealFactory.RealType;
+import Maths.SquareMatrix;
+import Models.Distributions;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The settings and threads used when doing calculations.  Calculators
+ * (see {@link Likelihood.Calculator#setEngine(Utils.Engine)}) and models (see
+ * {@link Models.Model#snapshot(Parameters.Parameters, Utils.Engine)}) can be
+ * given their own engine so calculations with different settings can be run
+ * in the same JVM without interfering with each other.
+ * <br><br>
+ * Anything not given an engine uses the default engine, returned by
+ * {@link #getDefault()}.  The static setters elsewhere in the library, such
+ * as {@link SquareMatrix#setExpMethod(Maths.SquareMatrix.Calculation)}, change
+ * the default engine.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class Engine
+{
+    /**
+     * Creates an engine with the default settings using one thread per
+     * processor
+     */
+    public Engine()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an engine with the default settings
+     * @param threads The number of threads to use for likelihood calculations
+     * and for matrix multiplication
+     */
+    public Engine(int threads)
+    {
+        this.threads = threads;
+        this.matrixThreads = threads;
+    }
+
+    /**
+     * Gets the default engine
+     * @return The default engine
+     */
+    public static Engine getDefault()
+    {
+        return defaultEngine;
+    }
+
+    /**
+     * Sets the number of threads to be used for likelihood calculations.  The
+     * current threads are shut down once they have finished any calculations
+     * they are doing.
+     * @param threads Number of threads
+     */
+    public synchronized void setThreads(int threads)
+    {
+        this.threads = threads;
+        if (es != null)
+        {
+            es.shutdown();
+            es = null;
+        }
+    }
+
+    /**
+     * Gets the number of threads used for likelihood calculations
+     * @return The number of threads
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Gets the executor used to run likelihood calculations.  Its threads
+     * are marked as worker threads (see {@link WorkerThreadFactory}).
+     * @return The executor
+     */
+    public synchronized ExecutorService getExecutor()
+    {
+        if (es == null)
+        {
+            es = Executors.newFixedThreadPool(threads, new WorkerThreadFactory());
+        }
+        return es;
+    }
+
+    /**
+     * Sets the number of threads to be used when doing matrix multiplication
+     * @param threads Number of threads
+     */
+    public synchronized void setMatrixThreads(int threads)
+    {
+        this.matrixThreads = threads;
+        if (pool != null)
+        {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * Gets the pool used for matrix multiplication
+     * @return The pool
+     */
+    public synchronized ForkJoinPool getMatrixPool()
+    {
+        if (pool == null)
+        {
+            pool = new ForkJoinPool(matrixThreads);
+        }
+        return pool;
+    }
+
+    /**
+     * Shuts down the threads owned by this engine once they have finished any
+     * calculations they are doing.  The engine can still be used afterwards
+     * in which case new threads will be created.
+     */
+    public synchronized void shutdown()
+    {
+        if (es != null)
+        {
+            es.shutdown();
+            es = null;
+        }
+        if (pool != null)
+        {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * Sets the real type to be used during likelihood calculations, either
+     * {@link Maths.SmallDouble} or {@link Maths.StandardDouble}.
+     * @param type The double type to use
+     */
+    public void setRealType(RealType type)
+    {
+        this.realType = type;
+    }
+
+    /**
+     * Gets the real type used during likelihood calculations
+     * @return The real type
+     */
+    public RealType getRealType()
+    {
+        return realType;
+    }
+
+    /**
+     * Sets the real type to be used during joint ancestral reconstruction
+     * (see {@link Ancestors.AncestralJointDP}).
+     * @param type The double type to use
+     */
+    public void setAncestralRealType(RealType type)
+    {
+        this.ancestralRealType = type;
+    }
+
+    /**
+     * Gets the real type used during joint ancestral reconstruction
+     * @return The real type
+     */
+    public RealType getAncestralRealType()
+    {
+        return ancestralRealType;
+    }
+
+    /**
+     * Sets whether to store the node likelihoods after they've been used.
+     * Setting this to false can save significant amounts of memory
+     * @param keep Whether to keep the node likelihoods
+     */
+    public void setKeepNodeLikelihoods(boolean keep)
+    {
+        this.keepNL = keep;
+    }
+
+    /**
+     * Gets whether node likelihoods are stored after they've been used
+     * @return Whether node likelihoods are kept
+     */
+    public boolean getKeepNodeLikelihoods()
+    {
+        return keepNL;
+    }
+
+    /**
+     * Sets the method to be used for matrix exponentiation
+     * @param method The method to be used
+     */
+    public void setExpMethod(SquareMatrix.Calculation method)
+    {
+        this.expMethod = method;
+    }
+
+    /**
+     * Gets the method used for matrix exponentiation
+     * @return The method
+     */
+    public SquareMatrix.Calculation getExpMethod()
+    {
+        return expMethod;
+    }
+
+    /**
+     * Sets the minimum number of repeating squaring that will be performed
+     * when using the Taylor method of matrix exponentiation
+     * @param force The minimum number
+     */
+    public void setForce(int force)
+    {
+        this.force = force;
+    }
+
+    /**
+     * Gets the minimum number of repeating squaring that will be performed
+     * when using the Taylor method of matrix exponentiation
+     * @return The minimum number
+     */
+    public int getForce()
+    {
+        return force;
+    }
+
+    /**
+     * Sets the method used to calculate stationary and quasi-stationary
+     * distributions
+     * @param method The method
+     */
+    public void setDistributionsMethod(Distributions.Calculation method)
+    {
+        this.distributionsMethod = method;
+    }
+
+    /**
+     * Gets the method used to calculate stationary and quasi-stationary
+     * distributions
+     * @return The method
+     */
+    public Distributions.Calculation getDistributionsMethod()
+    {
+        return distributionsMethod;
+    }
+
+    private int threads;
+    private int matrixThreads;
+    private ExecutorService es;
+    private ForkJoinPool pool;
+    private volatile RealType realType = RealType.STANDARD_DOUBLE;
+    private volatile RealType ancestralRealType = RealType.STANDARD_DOUBLE;
+    private volatile boolean keepNL = true;
+    private volatile SquareMatrix.Calculation expMethod = SquareMatrix.Calculation.TAYLOR;
+    private volatile int force = 0;
+    private volatile Distributions.Calculation distributionsMethod = Distributions.Calculation.EIGEN;
+
+    private static final Engine defaultEngine = new Engine();
+}
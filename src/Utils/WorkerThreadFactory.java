@@ -0,0 +1,53 @@
+/*
+ * This file is part of GeLL.
+ *
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Utils;
+
+/**
+ * A thread factory that creates daemon threads which are marked as likelihood
+ * workers.  Code that could itself run in parallel (for example matrix
+ * multiplication) can use {@link #inWorker()} to tell whether the cores are
+ * already being kept busy by the workers and if so run serially instead.
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class WorkerThreadFactory extends DaemonThreadFactory
+{
+    public Thread newThread(Runnable r)
+    {
+        Thread t = new WorkerThread(r);
+        t.setDaemon(true);
+        return t;
+    }
+
+    /**
+     * Whether the current thread was created by this factory
+     * @return True if the current thread is a worker thread
+     */
+    public static boolean inWorker()
+    {
+        return Thread.currentThread() instanceof WorkerThread;
+    }
+
+    private static class WorkerThread extends Thread
+    {
+        private WorkerThread(Runnable r)
+        {
+            super(r);
+        }
+    }
+}
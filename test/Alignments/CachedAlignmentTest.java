@@ -0,0 +1,209 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Alignments;
+
+import Exceptions.InputException;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests alignments are written to and read from cache files correctly
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class CachedAlignmentTest
+{
+    /**
+     * Tests a cached alignment read back is equal to the original and has
+     * the same unique sites and unique site indices, whichever entry point is
+     * used to read it
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        Alignment a = PhylipAlignment.fromFile(new File("test/PAML/Likelihood/brown.nuc"));
+        File f = cache(a);
+
+        for (Alignment b : new Alignment[] {CachedAlignment.fromFile(f), PhylipAlignment.fromFile(f),
+            FastaAlignment.fromFile(f), GenericAlignment.fromFile(f)})
+        {
+            assertEquals(a, b);
+            assertEquals(b, a);
+            assertEquals(new ArrayList<>(a.getTaxa()), new ArrayList<>(b.getTaxa()));
+            assertTrue(Arrays.equals(a.getUniqueSiteIndices(), b.getUniqueSiteIndices()));
+            assertUniqueSites(a, b);
+        }
+        f.delete();
+    }
+
+    /**
+     * Tests site IDs, site classes and ambiguous states survive a round trip
+     * and that the alignment read back can be used like any other
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testClasses() throws Exception
+    {
+        Map<String,Set<String>> am = new HashMap<>();
+        am.put("N", new HashSet<>(Arrays.asList("A", "C", "G", "T")));
+        Ambiguous ambig = new Ambiguous(am);
+
+        Random r = new Random(44);
+        List<Site> sites = new ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+        {
+            LinkedHashMap<String,String> m = new LinkedHashMap<>();
+            for (int t = 0; t < 4; t++)
+            {
+                m.put("t" + t, String.valueOf("ACN".charAt(r.nextInt(3))));
+            }
+            sites.add(new Site((i % 3 == 0) ? "id" + i : null, m, ambig, Integer.toString(i % 2)));
+        }
+        Alignment a = new Alignment(sites);
+        File f = cache(a);
+        Alignment b = CachedAlignment.fromFile(f, ambig);
+        f.delete();
+
+        assertEquals(a, b);
+        assertTrue(Arrays.equals(a.getUniqueSiteIndices(), b.getUniqueSiteIndices()));
+        assertUniqueSites(a, b);
+        for (int i = 0; i < a.getLength(); i++)
+        {
+            assertEquals(a.getSite(i).getID(), b.getSite(i).getID());
+            assertEquals(a.getSite(i).getSiteClass(), b.getSite(i).getSiteClass());
+            assertEquals(a.getSite(i).getCharacter("t0"), b.getSite(i).getCharacter("t0"));
+        }
+        assertEquals(a.getClassSize("0"), b.getClassSize("0"));
+        assertEquals(a.getClassSize("1"), b.getClassSize("1"));
+        assertEquals(a.limitToClass("1"), b.limitToClass("1"));
+        List<String> limit = Arrays.asList("t0", "t2");
+        assertEquals(a.limitToTaxa(limit), b.limitToTaxa(limit));
+        assertUniqueSites(a.limitToTaxa(limit), b.limitToTaxa(limit));
+    }
+
+    /**
+     * Tests files that are not complete cache files are rejected
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testInvalid() throws Exception
+    {
+        try
+        {
+            CachedAlignment.fromFile(new File("test/PAML/Likelihood/brown.nuc"));
+            fail("Expected InputException");
+        }
+        catch (InputException e)
+        {
+        }
+
+        File f = cache(PhylipAlignment.fromFile(new File("test/PAML/Likelihood/brown.nuc")));
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw"))
+        {
+            raf.setLength(raf.length() / 2);
+        }
+        try
+        {
+            CachedAlignment.fromFile(f);
+            fail("Expected InputException");
+        }
+        catch (InputException e)
+        {
+        }
+        f.delete();
+    }
+
+    /**
+     * Tests a cache is only current for the source and type it was written
+     * from and not once the source has changed
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testCurrent() throws Exception
+    {
+        File source = File.createTempFile("alignment", ".nuc");
+        source.deleteOnExit();
+        Files.copy(new File("test/PAML/Likelihood/brown.nuc").toPath(), source.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        Alignment a = PhylipAlignment.fromFile(source);
+        File f = File.createTempFile("alignment", ".cache");
+        f.deleteOnExit();
+
+        assertFalse(CachedAlignment.isCurrent(new File(f.getPath() + ".missing"), source, "Sequence"));
+        assertFalse(CachedAlignment.isCurrent(source, source, "Sequence"));
+
+        CachedAlignment.writeFile(a, f);
+        assertFalse(CachedAlignment.isCurrent(f, source, "Sequence"));
+
+        CachedAlignment.writeFile(a, f, source, "Sequence");
+        assertTrue(CachedAlignment.isCurrent(f, source, "Sequence"));
+        assertFalse(CachedAlignment.isCurrent(f, source, "Generic"));
+        assertFalse(CachedAlignment.isCurrent(f, new File("test/PAML/Likelihood/brown.nuc"), "Sequence"));
+        assertEquals(a, CachedAlignment.fromFile(f));
+
+        source.setLastModified(source.lastModified() - 10000);
+        assertFalse(CachedAlignment.isCurrent(f, source, "Sequence"));
+
+        CachedAlignment.writeFile(a, f, source, "Sequence");
+        assertTrue(CachedAlignment.isCurrent(f, source, "Sequence"));
+        long modified = source.lastModified();
+        try (RandomAccessFile raf = new RandomAccessFile(source, "rw"))
+        {
+            raf.setLength(raf.length() - 1);
+        }
+        source.setLastModified(modified);
+        assertFalse(CachedAlignment.isCurrent(f, source, "Sequence"));
+
+        f.delete();
+        source.delete();
+    }
+
+    private void assertUniqueSites(Alignment a, Alignment b)
+    {
+        List<UniqueSite> ua = a.getUniqueSites();
+        List<UniqueSite> ub = b.getUniqueSites();
+        assertEquals(ua.size(), ub.size());
+        for (int i = 0; i < ua.size(); i++)
+        {
+            assertEquals(ua.get(i), ub.get(i));
+            assertEquals(ua.get(i).getCount(), ub.get(i).getCount());
+        }
+    }
+
+    private File cache(Alignment a) throws Exception
+    {
+        File f = File.createTempFile("alignment", ".cache");
+        f.deleteOnExit();
+        CachedAlignment.writeFile(a, f);
+        return f;
+    }
+}
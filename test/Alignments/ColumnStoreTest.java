@@ -0,0 +1,141 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Alignments;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the encoded column storage behind alignments
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class ColumnStoreTest
+{
+    /**
+     * Tests sites read back the states they were created with, including
+     * ambiguous states, over several storage blocks
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testSites() throws Exception
+    {
+        Map<String,Set<String>> am = new HashMap<>();
+        am.put("N", new HashSet<>(Arrays.asList("A", "C", "G", "T")));
+        am.put("R", new HashSet<>(Arrays.asList("A", "G")));
+        Ambiguous ambig = new Ambiguous(am);
+
+        String[] states = {"A", "C", "G", "T", "N", "R", "-"};
+        Random r = new Random(41);
+        int length = ColumnStore.getBlockSize() * 2 + 17;
+        List<LinkedHashMap<String,String>> raw = new ArrayList<>();
+        List<Site> sites = new ArrayList<>();
+        for (int i = 0; i < length; i++)
+        {
+            LinkedHashMap<String,String> m = new LinkedHashMap<>();
+            for (int t = 0; t < 5; t++)
+            {
+                m.put("t" + t, states[r.nextInt(states.length)]);
+            }
+            raw.add(m);
+            sites.add(new Site(m, ambig, Integer.toString(i % 3)));
+        }
+        Alignment a = new Alignment(sites);
+
+        assertEquals(length, a.getLength());
+        assertEquals(new ArrayList<>(raw.get(0).keySet()), new ArrayList<>(a.getTaxa()));
+        for (int i = 0; i < length; i++)
+        {
+            Site s = a.getSite(i);
+            assertEquals(Integer.toString(i % 3), s.getSiteClass());
+            for (Map.Entry<String,String> e : raw.get(i).entrySet())
+            {
+                assertEquals(e.getValue(), s.getRawCharacter(e.getKey()));
+                assertEquals(ambig.getPossible(e.getValue()), s.getCharacter(e.getKey()));
+            }
+            assertEquals(sites.get(i), s);
+            assertEquals(sites.get(i).hashCode(), s.hashCode());
+        }
+    }
+
+    /**
+     * Tests the store widens its codes once there are too many states to fit
+     * in a byte, without changing the states already stored
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testWiden() throws Exception
+    {
+        Alphabet alphabet = new Alphabet(new Ambiguous());
+        ColumnStore store = new ColumnStore(Arrays.asList("a", "b", "c"), alphabet);
+        int length = 70000;
+        for (int i = 0; i < length; i++)
+        {
+            store.addColumn(new int[] {alphabet.encode("s" + i), alphabet.encode("s" + (i / 2)),
+                alphabet.encode("x")}, null, null);
+        }
+        assertEquals(length, store.getLength());
+        for (int i = 0; i < length; i++)
+        {
+            assertEquals("s" + i, store.getState(i, 0));
+            assertEquals("s" + (i / 2), store.getState(i, 1));
+            assertEquals("x", store.getState(i, 2));
+        }
+    }
+
+    /**
+     * Tests equal columns compare and hash equal while different columns
+     * do not, whatever the storage width
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testSamePattern() throws Exception
+    {
+        Alphabet alphabet = new Alphabet(new Ambiguous());
+        ColumnStore store = new ColumnStore(Arrays.asList("a", "b"), alphabet);
+        String[][] columns = {{"A", "C"}, {"C", "A"}, {"A", "C"}, {"A", "A"}};
+        for (String[] c : columns)
+        {
+            store.addColumn(new int[] {alphabet.encode(c[0]), alphabet.encode(c[1])}, null, null);
+        }
+        assertTrue(store.samePattern(0, 2));
+        assertFalse(store.samePattern(0, 1));
+        assertFalse(store.samePattern(0, 3));
+        assertEquals(store.patternHash(0), store.patternHash(2));
+        assertFalse(store.patternHash(0) == store.patternHash(1));
+
+        //Force the store to widen then check again
+        for (int i = 0; i < 300; i++)
+        {
+            store.addColumn(new int[] {alphabet.encode("s" + i), alphabet.encode("A")}, null, null);
+        }
+        assertTrue(store.samePattern(0, 2));
+        assertFalse(store.samePattern(0, 1));
+        assertEquals(store.patternHash(0), store.patternHash(2));
+        assertEquals("C", store.getState(2, 1));
+    }
+}
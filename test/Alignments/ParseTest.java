@@ -0,0 +1,178 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Alignments;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests alignments are read correctly from the supported file formats
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class ParseTest
+{
+    /**
+     * Tests reading a FASTA file with sequences split over several lines,
+     * blank lines, names containing "|" and a site class line
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testFasta() throws Exception
+    {
+        String text = ">Human|first\nACGT\nAC\n\n>Chimp\nACG\nTAG\n>Gorilla\nAAGTAC\n" +
+                ">*Class*\n0011\n22";
+        assertEquals(expected(true), FastaAlignment.fromFile(write(text, false, false)));
+        assertEquals(expected(true), FastaAlignment.fromFile(write(text, true, false)));
+        assertEquals(expected(true), FastaAlignment.fromFile(write(text, false, true)));
+        assertEquals(expected(true), FastaAlignment.fromFile(write(text, true, true)));
+    }
+
+    /**
+     * Tests reading a Phylip file with whitespace in the sequences
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testPhylip() throws Exception
+    {
+        String text = "\n3 6\nHuman   ACG TAC\n\n  Chimp\tACGTAG\nGorilla AAGTAC\n";
+        assertEquals(expected(false), PhylipAlignment.fromFile(write(text, false, false)));
+        assertEquals(expected(false), PhylipAlignment.fromFile(write(text, true, false)));
+        assertEquals(expected(false), PhylipAlignment.fromFile(write(text, false, true)));
+        assertEquals(expected(false), PhylipAlignment.fromFile(write(text, true, true)));
+    }
+
+    /**
+     * Tests reading a generic file with multi-character states
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testGeneric() throws Exception
+    {
+        String text = "Human AAA CCT\n\nChimp AAA  GGT\nGorilla\tAAC CCT\n*Class* 1 2";
+        String[] taxa = {"Human", "Chimp", "Gorilla"};
+        String[][] columns = {{"AAA", "AAA", "AAC"}, {"CCT", "GGT", "CCT"}};
+        Alignment e = alignment(taxa, columns, new String[] {"1", "2"});
+        assertEquals(e, GenericAlignment.fromFile(write(text, false, false)));
+        assertEquals(e, GenericAlignment.fromFile(write(text, true, false)));
+        assertEquals(e, GenericAlignment.fromFile(write(text, false, true)));
+        assertEquals(e, GenericAlignment.fromFile(write(text, true, true)));
+    }
+
+    /**
+     * Tests writing an alignment in each format and reading it back gives
+     * the same alignment
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        Alignment a = PhylipAlignment.fromFile(new File("test/PAML/Likelihood/brown.nuc"));
+        assertEquals(5, a.getTaxa().size());
+        assertEquals(895, a.getLength());
+
+        File f = File.createTempFile("parse", ".aln");
+        f.deleteOnExit();
+        FastaAlignment.writeFile(a, f);
+        assertEquals(a, FastaAlignment.fromFile(f));
+        PhylipAlignment.writeFile(a, f);
+        assertEquals(a, PhylipAlignment.fromFile(f));
+        GenericAlignment.writeFile(a, f);
+        assertEquals(a, GenericAlignment.fromFile(f));
+        f.delete();
+    }
+
+    /**
+     * Tests badly formed alignments are rejected
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testErrors() throws Exception
+    {
+        assertInvalid(">a\nACGT\n>b\nACG\n");
+        assertInvalid(">a\nACGT\n>a\nACGT\n");
+        assertInvalid(">a\nACGT\n>b\n\n>c\nACGT\n");
+        assertInvalid(">a\nACGT\n");
+        assertInvalid(">a\nACGT\n>b\nACGT\n>*Class*\n0000\n>*Class*\n1111\n");
+    }
+
+    private void assertInvalid(String text) throws Exception
+    {
+        try
+        {
+            FastaAlignment.fromFile(write(text, false, false));
+            fail("Expected AlignmentException");
+        }
+        catch (AlignmentException e)
+        {
+        }
+    }
+
+    private Alignment expected(boolean classes) throws AlignmentException
+    {
+        String[] taxa = {"Human", "Chimp", "Gorilla"};
+        String[] seqs = {"ACGTAC", "ACGTAG", "AAGTAC"};
+        String[][] columns = new String[6][3];
+        for (int i = 0; i < 6; i++)
+        {
+            for (int t = 0; t < 3; t++)
+            {
+                columns[i][t] = seqs[t].substring(i, i + 1);
+            }
+        }
+        return alignment(taxa, columns, classes ? new String[] {"0", "0", "1", "1", "2", "2"} : null);
+    }
+
+    private Alignment alignment(String[] taxa, String[][] columns, String[] classes) throws AlignmentException
+    {
+        List<Site> sites = new ArrayList<>();
+        for (int i = 0; i < columns.length; i++)
+        {
+            LinkedHashMap<String,String> m = new LinkedHashMap<>();
+            for (int t = 0; t < taxa.length; t++)
+            {
+                m.put(taxa[t], columns[i][t]);
+            }
+            sites.add(classes == null ? new Site(m) : new Site(m, classes[i]));
+        }
+        return new Alignment(sites);
+    }
+
+    private File write(String text, boolean crlf, boolean gzip) throws IOException
+    {
+        File f = File.createTempFile("parse", gzip ? ".aln.gz" : ".aln");
+        f.deleteOnExit();
+        OutputStream out = new FileOutputStream(f);
+        if (gzip)
+        {
+            out = new GZIPOutputStream(out);
+        }
+        out.write((crlf ? text.replace("\n", "\r\n") : text).getBytes(StandardCharsets.US_ASCII));
+        out.close();
+        return f;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Alignments;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the compression of alignment columns into patterns
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class PatternIndexTest
+{
+    /**
+     * Tests compressing a large alignment in parallel, in one go and in
+     * several steps, gives the same patterns in the same order as compressing
+     * it serially and as a brute force count
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testParallel() throws Exception
+    {
+        Alphabet alphabet = new Alphabet(new Ambiguous());
+        List<String> taxa = new ArrayList<>();
+        for (int t = 0; t < 12; t++)
+        {
+            taxa.add("t" + t);
+        }
+        ColumnStore store = new ColumnStore(taxa, alphabet);
+
+        //Half the taxa only have two states so there are plenty of repeated
+        //patterns, but also plenty of distinct ones
+        String[] states = {"A", "C", "G", "T"};
+        String[] classes = {null, "x", "y"};
+        Random r = new Random(43);
+        int length = 200000;
+        int[] codes = new int[taxa.size()];
+        List<String> keys = new ArrayList<>(length);
+        for (int c = 0; c < length; c++)
+        {
+            StringBuilder key = new StringBuilder();
+            for (int t = 0; t < codes.length; t++)
+            {
+                String s = states[(t < 6) ? r.nextInt(2) : r.nextInt(4)];
+                codes[t] = alphabet.encode(s);
+                key.append(s);
+            }
+            String cl = classes[(c % 101 == 0) ? 1 + r.nextInt(2) : 0];
+            key.append('/').append(cl);
+            keys.add(key.toString());
+            store.addColumn(codes, cl, null);
+        }
+
+        PatternIndex serial = new PatternIndex(store);
+        serial.update(length, null, 1);
+
+        ExecutorService es = Executors.newFixedThreadPool(4);
+        PatternIndex parallel = new PatternIndex(store);
+        PatternIndex steps = new PatternIndex(store);
+        try
+        {
+            parallel.update(length, es, 4);
+            steps.update(50000, es, 4);
+            steps.update(50001, null, 1);
+            steps.update(120000, es, 3);
+            steps.update(length, es, 4);
+        }
+        finally
+        {
+            es.shutdown();
+        }
+
+        //Brute force
+        Map<String,Integer> index = new HashMap<>();
+        List<Integer> first = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        int[] patterns = new int[length];
+        for (int c = 0; c < length; c++)
+        {
+            Integer p = index.get(keys.get(c));
+            if (p == null)
+            {
+                p = first.size();
+                index.put(keys.get(c), p);
+                first.add(c);
+                counts.add(0);
+            }
+            counts.set(p, counts.get(p) + 1);
+            patterns[c] = p;
+        }
+
+        assertTrue(first.size() > 1000);
+        for (PatternIndex pi : new PatternIndex[] {serial, parallel, steps})
+        {
+            assertEquals(length, pi.getColumns());
+            assertEquals(first.size(), pi.getNumberPatterns());
+            for (int p = 0; p < first.size(); p++)
+            {
+                assertEquals((long) first.get(p), pi.getFirst(p));
+                assertEquals((long) counts.get(p), pi.getCount(p));
+            }
+            assertTrue(Arrays.equals(patterns, pi.getPatterns()));
+        }
+    }
+
+    /**
+     * Tests the unique sites of an alignment match its sites
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testUniqueSites() throws Exception
+    {
+        String[] states = {"A", "C"};
+        Random r = new Random(143);
+        List<Site> sites = new ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+        {
+            LinkedHashMap<String,String> m = new LinkedHashMap<>();
+            for (int t = 0; t < 5; t++)
+            {
+                m.put("t" + t, (r.nextInt(5) == 0) ? "-" : states[r.nextInt(2)]);
+            }
+            sites.add(new Site(m));
+        }
+        Alignment a = new Alignment(sites);
+
+        List<UniqueSite> us = a.getUniqueSites();
+        int[] indices = a.getUniqueSiteIndices();
+        int total = 0;
+        for (UniqueSite u : us)
+        {
+            total += u.getCount();
+        }
+        assertEquals(a.getLength(), total);
+        int[] seen = new int[us.size()];
+        for (int i = 0; i < a.getLength(); i++)
+        {
+            assertEquals(indices[i], a.getUniqueSiteIndex(i));
+            assertEquals(a.getSite(i), us.get(indices[i]));
+            seen[indices[i]]++;
+            //Patterns are numbered in the order they first occur
+            if (seen[indices[i]] == 1)
+            {
+                assertTrue((indices[i] == 0) || (seen[indices[i] - 1] > 0));
+            }
+        }
+        for (int p = 0; p < us.size(); p++)
+        {
+            assertEquals(us.get(p).getCount(), seen[p]);
+        }
+    }
+}
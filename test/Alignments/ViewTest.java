@@ -0,0 +1,204 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Alignments;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests alignments limited to some taxa, sites or classes and recoded
+ * alignments behave the same as the equivalent copied alignment
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class ViewTest
+{
+    /**
+     * Reads the alignment used by the tests
+     * @throws Exception Thrown if something went wrong!
+     */
+    @BeforeClass
+    public static void setUp() throws Exception
+    {
+        alignment = PhylipAlignment.fromFile(new File("test/PAML/Likelihood/brown.nuc"));
+        ry = new HashMap<>();
+        ry.put("A", "R");
+        ry.put("G", "R");
+        ry.put("C", "Y");
+        ry.put("T", "Y");
+    }
+
+    /**
+     * Tests limiting to taxa and recoding, singly and chained
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testTaxaAndRecode() throws Exception
+    {
+        List<String> limit = Arrays.asList("Human", "Gorilla", "Gibbon");
+        assertEquivalent(copy(alignment.limitToTaxa(limit)), alignment.limitToTaxa(limit));
+        assertEquivalent(copy(alignment.recode(ry)), alignment.recode(ry));
+        assertEquivalent(copy(copy(alignment.limitToTaxa(limit)).recode(ry)), alignment.limitToTaxa(limit).recode(ry));
+        assertEquivalent(copy(copy(alignment.recode(ry)).limitToTaxa(limit)), alignment.recode(ry).limitToTaxa(limit));
+        assertEquals(new ArrayList<>(limit), new ArrayList<>(alignment.limitToTaxa(limit).getTaxa()));
+        assertTrue(alignment.recode(ry).getUniqueSites().size() < alignment.getUniqueSites().size());
+    }
+
+    /**
+     * Tests limiting to sites, including repeated sites, on its own and
+     * combined with the other views
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testSites() throws Exception
+    {
+        int[] sites = {5, 4, 3, 3, 100, 800, 0};
+        Alignment v = alignment.limitToSites(sites);
+        assertEquals(sites.length, v.getLength());
+        for (int i = 0; i < sites.length; i++)
+        {
+            assertEquals(alignment.getSite(sites[i]), v.getSite(i));
+        }
+        assertEquivalent(copy(v), v);
+
+        List<String> limit = Arrays.asList("Human", "Gibbon");
+        int[] again = {1, 2, 3, 2, 1};
+        Alignment w = alignment.recode(ry).limitToTaxa(limit).limitToSites(sites).limitToSites(again);
+        assertEquivalent(copy(copy(copy(alignment.recode(ry)).limitToTaxa(limit)).limitToSites(sites)).limitToSites(again), w);
+
+        try
+        {
+            alignment.limitToSites(new int[] {-1});
+            fail("Expected IndexOutOfBoundsException");
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+        }
+        try
+        {
+            alignment.limitToSites(new int[] {alignment.getLength()});
+            fail("Expected IndexOutOfBoundsException");
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+        }
+    }
+
+    /**
+     * Tests limiting to a site class keeps the classes of the sites
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testClasses() throws Exception
+    {
+        Random r = new Random(45);
+        List<Site> sites = new ArrayList<>();
+        for (int i = 0; i < 300; i++)
+        {
+            LinkedHashMap<String,String> m = new LinkedHashMap<>();
+            for (int t = 0; t < 4; t++)
+            {
+                m.put("t" + t, String.valueOf("ACGT".charAt(r.nextInt(4))));
+            }
+            sites.add(new Site(m, Integer.toString(i % 3)));
+        }
+        Alignment a = new Alignment(sites);
+        Alignment c = a.limitToClass("1");
+        assertEquals(100, c.getLength());
+        assertEquals(100, c.getClassSize("1"));
+        assertEquals(0, c.getClassSize("0"));
+        assertEquivalent(copy(c), c);
+
+        List<String> limit = Arrays.asList("t1", "t3");
+        assertEquivalent(copy(copy(copy(a).limitToTaxa(limit)).recode(ry)).limitToClass("1"),
+                a.limitToClass("1").recode(ry).limitToTaxa(limit));
+    }
+
+    /**
+     * Tests recoding and limiting a single site
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testSite() throws Exception
+    {
+        List<String> limit = Arrays.asList("Human", "Gorilla", "Gibbon");
+        Alignment recoded = copy(alignment.recode(ry));
+        Alignment limited = copy(alignment.limitToTaxa(limit));
+        for (int i = 0; i < 50; i++)
+        {
+            Site s = alignment.getSite(i);
+            assertEquals(recoded.getSite(i), s.recode(ry));
+            assertEquals(recoded.getSite(i).hashCode(), s.recode(ry).hashCode());
+            assertEquals(limited.getSite(i), s.limitToTaxa(limit));
+            assertEquals(limited.getSite(i).hashCode(), s.limitToTaxa(limit).hashCode());
+            assertEquals(new ArrayList<>(limit), new ArrayList<>(s.limitToTaxa(limit).getTaxa()));
+        }
+    }
+
+    //Checks a view behaves the same as the equivalent copied alignment
+    private static void assertEquivalent(Alignment expected, Alignment view) throws Exception
+    {
+        assertEquals(expected, view);
+        assertEquals(view, expected);
+        assertEquals(expected.getLength(), view.getLength());
+        assertEquals(new ArrayList<>(expected.getTaxa()), new ArrayList<>(view.getTaxa()));
+        for (int i = 0; i < expected.getLength(); i++)
+        {
+            assertEquals(expected.getSite(i), view.getSite(i));
+            assertEquals(expected.getSite(i).getSiteClass(), view.getSite(i).getSiteClass());
+        }
+        List<UniqueSite> ue = expected.getUniqueSites();
+        List<UniqueSite> uv = view.getUniqueSites();
+        assertEquals(ue.size(), uv.size());
+        for (int i = 0; i < ue.size(); i++)
+        {
+            assertEquals(ue.get(i), uv.get(i));
+            assertEquals(ue.get(i).getCount(), uv.get(i).getCount());
+            assertEquals(ue.get(i).getSiteClass(), uv.get(i).getSiteClass());
+        }
+        assertTrue(Arrays.equals(expected.getUniqueSiteIndices(), view.getUniqueSiteIndices()));
+    }
+
+    //Creates a copy of an alignment that shares nothing with it
+    private static Alignment copy(Alignment a) throws Exception
+    {
+        List<Site> sites = new ArrayList<>();
+        for (Site s : a)
+        {
+            LinkedHashMap<String,String> m = new LinkedHashMap<>();
+            for (String t : s.getTaxa())
+            {
+                m.put(t, s.getRawCharacter(t));
+            }
+            sites.add(new Site(s.getID(), m, s.getAmbiguous(), s.getSiteClass()));
+        }
+        return new Alignment(sites);
+    }
+
+    private static Alignment alignment;
+    private static Map<String,String> ry;
+}
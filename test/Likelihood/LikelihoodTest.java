@@ -30,11 +30,18 @@ import org.junit.Test;
 import org.junit.BeforeClass;
 import Alignments.Alignment;
 import Alignments.PhylipAlignment;
+import Models.DNAModelFactory;
+import Models.DNAModelFactory.DNAModel;
+import Models.HKYRateCategory;
 import Models.Model;
 import Models.RateCategory;
 import Parameters.Parameter;
 import Parameters.Parameters;
 import Trees.Tree;
+import Maths.RealFactory.RealType;
+import Maths.SmallDouble;
+import Maths.SquareMatrix;
+import Utils.Engine;
 import java.io.File;
 import java.util.HashMap;
 import static org.junit.Assert.*;
@@ -80,6 +87,9 @@ public class LikelihoodTest
         p.addParameter(Parameter.newFixedParameter("g", 0.19249));
 
         l = c.calculate(p);
+        model = m;
+        tree = t;
+        params = p;
     }
     
     /**
@@ -226,6 +236,91 @@ public class LikelihoodTest
         assertTrue(Math.abs(l1 + l2 - la) < 1e-10);
     }
     
+    /**
+     * Tests the closed form HKY rate categories by comparing the likelihood
+     * to that calculated using matrix exponentiation for each of the models
+     * that can use them
+     * @throws Exception
+     */
+    @Test
+    public void testClosedFormLikelihood() throws Exception
+    {
+        Tree t = Tree.fromNewickString("(((Human: 0.057987, Chimpanzee: 0.074612)A: 0.035490, Gorilla: 0.074352)B: 0.131394, Orangutan: 0.350156, Gibbon: 0.544601)C;");
+
+        for (DNAModel dm: new DNAModel[] {DNAModel.JC, DNAModel.K2P, DNAModel.F81, DNAModel.HKY})
+        {
+            for (int cats: new int[] {1, 4})
+            {
+                DNAModelFactory mf = new DNAModelFactory(dm, cats, false);
+                DNAModelFactory cf = new DNAModelFactory(dm, cats, true);
+                Model mg = mf.getModel();
+                Model mc = cf.getModel();
+                assertTrue(mc.getRates().iterator().next() instanceof HKYRateCategory);
+                assertFalse(mg.getRates().iterator().next() instanceof HKYRateCategory);
+
+                Parameters p = t.getParameters();
+                p.addParameters(mf.getParameters());
+                for (Parameter pp: p)
+                {
+                    switch (pp.getName())
+                    {
+                        case "k":
+                            p.setValue(pp, 2.7);
+                            break;
+                        case "g":
+                            p.setValue(pp, 0.4);
+                            break;
+                        case "pC":
+                            p.setValue(pp, 1.3);
+                            break;
+                        case "pA":
+                            p.setValue(pp, 1.1);
+                            break;
+                        case "pG":
+                            p.setValue(pp, 0.45);
+                            break;
+                    }
+                }
+
+                double lg = new StandardCalculator(mg,a,t).calculate(p).getLikelihood();
+                double lc = new StandardCalculator(mc,a,t).calculate(p.clone()).getLikelihood();
+
+                assertTrue(dm + " " + cats, Math.abs(lg - lc) < 1e-8);
+            }
+        }
+    }
+
+    /**
+     * Tests a calculator using its own engine gives the same likelihood as
+     * one using the default engine
+     * @throws Exception
+     */
+    @Test
+    public void testEngine() throws Exception
+    {
+        Engine e = new Engine(2);
+        e.setRealType(RealType.SMALL_DOUBLE);
+        e.setExpMethod(SquareMatrix.Calculation.EIGEN);
+        try
+        {
+            StandardCalculator c = new StandardCalculator(model,a,tree);
+            c.setEngine(e);
+            StandardLikelihood le = c.calculate(params.clone());
+            assertTrue(Math.abs(l.getLikelihood() - le.getLikelihood()) < 1e-8);
+            for (Site s: a.getUniqueSites())
+            {
+                assertTrue(le.getSiteLikelihood(s).getLikelihood() instanceof SmallDouble);
+            }
+        }
+        finally
+        {
+            e.shutdown();
+        }
+    }
+
     private static StandardLikelihood l;
     private static Alignment a;
+    private static Model model;
+    private static Tree tree;
+    private static Parameters params;
 }
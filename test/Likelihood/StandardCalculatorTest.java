@@ -0,0 +1,348 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Likelihood;
+
+import Alignments.Alignment;
+import Alignments.AlignmentException;
+import Alignments.PhylipAlignment;
+import Alignments.Site;
+import Exceptions.GeneralException;
+import Likelihood.SiteLikelihood.LikelihoodException;
+import Models.DNAModelFactory;
+import Models.Model;
+import Models.RateCategory;
+import Optimizers.GoldenSection;
+import Optimizers.Optimizable;
+import Parameters.Parameter;
+import Parameters.Parameters;
+import Trees.Tree;
+import Utils.Engine;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests adding sites to a calculator and weighting its sites
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class StandardCalculatorTest
+{
+    /**
+     * Reads the alignment used by the tests
+     * @throws Exception Thrown if something went wrong!
+     */
+    @BeforeClass
+    public static void setUpClass() throws Exception
+    {
+        alignment = PhylipAlignment.fromFile(new File("test/PAML/Likelihood/brown.nuc"));
+    }
+
+    /**
+     * Tests a calculator that has had sites added gives the same likelihood,
+     * both in total and for each site, as a new calculator for the whole
+     * alignment
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testAddSites() throws Exception
+    {
+        Tree t = tree();
+        Parameters p = t.getParametersForEstimation();
+        Model m = DNAModelFactory.HKY_Gamma(p, 4);
+        setValues(p);
+
+        StandardLikelihood fresh = new StandardCalculator(m, alignment, t).calculate(p);
+
+        StandardCalculator c = new StandardCalculator(m, alignment.limitToSites(range(0, 500)), t);
+        c.addSites(alignment.limitToSites(range(500, 700)));
+        StandardLikelihood previous = c.calculate(p);
+        StandardLikelihood added = c.addSites(alignment.limitToSites(range(700, alignment.getLength())), previous);
+
+        assertEquals(alignment.getLength(), c.getAlignmentLength());
+        assertEquals(alignment.getLength(), sum(c.getCounts()));
+        assertEquals(fresh.getLikelihood(), added.getLikelihood(), 1e-8);
+        assertEquals(fresh.getLikelihood(), c.calculate(p).getLikelihood(), 1e-8);
+        for (int i = 0; i < alignment.getLength(); i++)
+        {
+            assertEquals(fresh.getSiteLikelihood(alignment.getSite(i)).getLikelihood().ln(),
+                    added.getSiteLikelihood(alignment.getSite(i)).getLikelihood().ln(), 1e-10);
+        }
+
+        try
+        {
+            c.addSites(alignment.limitToTaxa(Arrays.asList("Human", "Chimpanzee", "Gorilla")));
+            fail("Expected AlignmentException");
+        }
+        catch (AlignmentException e)
+        {
+        }
+    }
+
+    /**
+     * Tests re-optimising from the previous optimum after adding about 1% more
+     * sites, with a tighter start, finds the same optimum as a fresh
+     * optimisation using at most 60% of the likelihood calculations
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testWarmStart() throws Exception
+    {
+        Tree t = tree();
+        Parameters p = t.getParametersForEstimation();
+        Model m = DNAModelFactory.HKY(p);
+        StandardCalculator c = new StandardCalculator(m, alignment.limitToSites(range(0, 886)), t);
+        StandardLikelihood first = new GoldenSection(GoldenSection.ProgressLevel.NONE).maximise(c, p);
+        StandardLikelihood added = c.addSites(alignment.limitToSites(range(886, alignment.getLength())), first);
+
+        GoldenSection warm = new GoldenSection(GoldenSection.ProgressLevel.NONE);
+        warm.setStart(0.01, 0.05);
+        Counter<StandardLikelihood> wc = new Counter<>(c);
+        StandardLikelihood w = warm.maximise(wc, added.getParameters());
+
+        Parameters cp = t.getParametersForEstimation();
+        Model cm = DNAModelFactory.HKY(cp);
+        Counter<StandardLikelihood> cc = new Counter<>(new StandardCalculator(cm, alignment, t));
+        StandardLikelihood cold = new GoldenSection(GoldenSection.ProgressLevel.NONE).maximise(cc, cp);
+
+        assertEquals(cold.getLikelihood(), w.getLikelihood(), 1e-4);
+        assertTrue(wc.calls + " warm v " + cc.calls + " cold", wc.calls < 0.6 * cc.calls);
+    }
+
+    /**
+     * Tests using how often each site occurs as weights doesn't change the
+     * likelihood and that bootstrap weights give the same likelihood as
+     * the equivalent replicate alignment
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testWeights() throws Exception
+    {
+        Tree t = tree();
+        Parameters p = t.getParametersForEstimation();
+        Model m = DNAModelFactory.HKY_Gamma(p, 4);
+        setValues(p);
+
+        StandardCalculator c = new StandardCalculator(m, alignment, t);
+        double base = c.calculate(p).getLikelihood();
+        int[] counts = c.getCounts();
+        double[] w = new double[counts.length];
+        for (int i = 0; i < w.length; i++)
+        {
+            w[i] = counts[i];
+        }
+        c.setWeights(w);
+        assertEquals(base, c.calculate(p).getLikelihood(), 1e-8);
+
+        //A bootstrap replicate as an alignment and as weights
+        Random r = new Random(49);
+        int[] sites = new int[alignment.getLength()];
+        int[] index = alignment.getUniqueSiteIndices();
+        double[] bw = new double[counts.length];
+        for (int i = 0; i < sites.length; i++)
+        {
+            sites[i] = r.nextInt(sites.length);
+            bw[index[sites[i]]]++;
+        }
+        c.setWeights(bw);
+        StandardLikelihood weighted = c.calculate(p);
+        double replicate = new StandardCalculator(m, alignment.limitToSites(sites), t).calculate(p).getLikelihood();
+        assertEquals(replicate, weighted.getLikelihood(), 1e-8);
+        //Sites with zero weight aren't calculated
+        for (int i = 0; i < bw.length; i++)
+        {
+            assertEquals(bw[i] > 0.0, weighted.getSiteLikelihoods().containsKey(alignment.getUniqueSites().get(i)));
+        }
+
+        c.setWeights(null);
+        assertEquals(base, c.calculate(p).getLikelihood(), 1e-8);
+
+        try
+        {
+            c.setWeights(new double[3]);
+            fail("Expected CalculatorException");
+        }
+        catch (Calculator.CalculatorException e)
+        {
+        }
+        w[0] = -1.0;
+        try
+        {
+            c.setWeights(w);
+            fail("Expected CalculatorException");
+        }
+        catch (Calculator.CalculatorException e)
+        {
+        }
+    }
+
+    /**
+     * Tests the resampler's bootstrap and jackknife weights
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testResampler() throws Exception
+    {
+        int[] counts = {5, 1, 3, 10, 1};
+        Resampler rs = new Resampler(counts);
+        assertEquals(20, rs.getLength());
+
+        Random r = new Random(149);
+        for (int i = 0; i < 100; i++)
+        {
+            double[] b = rs.bootstrap(r);
+            assertEquals(counts.length, b.length);
+            assertEquals(20.0, sum(b), 0.0);
+            assertEquals(7.0, sum(rs.bootstrap(7, r)), 0.0);
+
+            int delete = i % 21;
+            double[] j = rs.jackknife(delete, r);
+            assertEquals(20.0 - delete, sum(j), 0.0);
+            for (int k = 0; k < counts.length; k++)
+            {
+                assertTrue((j[k] >= 0.0) && (j[k] <= counts[k]));
+            }
+        }
+    }
+
+    /**
+     * Tests calculating many points together without keeping node
+     * likelihoods, and in groups the size of the engine's thread count, gives
+     * the same likelihoods as calculating each point on its own
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testBatch() throws Exception
+    {
+        Tree t = tree();
+        Parameters p = t.getParametersForEstimation();
+        Model m = DNAModelFactory.HKY_Gamma(p, 4);
+        setValues(p);
+        StandardCalculator c = new StandardCalculator(m, alignment, t);
+
+        List<Parameters> points = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+        {
+            Parameters pp = p.clone();
+            pp.setValue(pp.getParam("k"), 0.5 + i);
+            points.add(pp);
+        }
+
+        Engine e = new Engine(2);
+        try
+        {
+            c.setEngine(e);
+            List<StandardLikelihood> batch = c.calculate(points, false);
+            double[] ls = Calculator.logLikelihoods(c, points);
+            for (int i = 0; i < points.size(); i++)
+            {
+                StandardLikelihood single = c.calculate(points.get(i));
+                assertEquals(single.getLikelihood(), batch.get(i).getLikelihood(), 1e-10);
+                assertEquals(single.getLikelihood(), ls[i], 1e-10);
+
+                Site s = alignment.getSite(0);
+                RateCategory rc = m.getRates().iterator().next();
+                single.getSiteLikelihood(s).getRateLikelihood(rc).getNodeLikelihood("A");
+                try
+                {
+                    batch.get(i).getSiteLikelihood(s).getRateLikelihood(rc).getNodeLikelihood("A");
+                    fail("Expected LikelihoodException");
+                }
+                catch (LikelihoodException ex)
+                {
+                }
+            }
+        }
+        finally
+        {
+            e.shutdown();
+        }
+    }
+
+    private static Tree tree() throws Exception
+    {
+        return Tree.fromNewickString("(((Human, Chimpanzee)A, Gorilla)B, Orangutan, Gibbon)C;");
+    }
+
+    private static void setValues(Parameters params) throws Exception
+    {
+        for (Parameter p : params)
+        {
+            if (!(params.getValue(p.getName()) > 0.0))
+            {
+                params.setValue(p, 0.3);
+            }
+        }
+    }
+
+    private static int[] range(int from, int to)
+    {
+        int[] r = new int[to - from];
+        for (int i = 0; i < r.length; i++)
+        {
+            r[i] = from + i;
+        }
+        return r;
+    }
+
+    private static double sum(double[] a)
+    {
+        double s = 0.0;
+        for (double v : a)
+        {
+            s += v;
+        }
+        return s;
+    }
+
+    private static int sum(int[] a)
+    {
+        int s = 0;
+        for (int v : a)
+        {
+            s += v;
+        }
+        return s;
+    }
+
+    //Counts how many likelihood calculations an optimizer does
+    private static class Counter<R extends Likelihood> implements Optimizable<R>
+    {
+        Counter(Optimizable<R> o)
+        {
+            this.o = o;
+            calls = 0;
+        }
+
+        public R calculate(Parameters p) throws GeneralException
+        {
+            calls++;
+            return o.calculate(p);
+        }
+
+        private final Optimizable<R> o;
+        private int calls;
+    }
+
+    private static Alignment alignment;
+}
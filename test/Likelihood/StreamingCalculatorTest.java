@@ -0,0 +1,196 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Likelihood;
+
+import Alignments.Alignment;
+import Alignments.AlignmentException;
+import Alignments.PhylipAlignment;
+import Alignments.Site;
+import Exceptions.OutputException;
+import Models.DNAModelFactory;
+import Models.Model;
+import Parameters.Parameter;
+import Parameters.Parameters;
+import Trees.Tree;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the streaming calculator gives the same results as the standard
+ * calculator
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class StreamingCalculatorTest
+{
+    /**
+     * Creates the model, tree and alignment used by the tests and calculates
+     * the likelihood using the standard calculator
+     * @throws Exception Thrown if something went wrong!
+     */
+    @BeforeClass
+    public static void setUpClass() throws Exception
+    {
+        tree = Tree.fromNewickString("(((Human, Chimpanzee)A, Gorilla)B, Orangutan, Gibbon)C;");
+        alignment = PhylipAlignment.fromFile(new File("test/PAML/Likelihood/brown.nuc"));
+        params = tree.getParametersForEstimation();
+        model = DNAModelFactory.HKY_Gamma(params, 4);
+        for (Parameter p : params)
+        {
+            double v = params.getValue(p.getName());
+            if (!(v > 0.0))
+            {
+                params.setValue(p, 0.3);
+            }
+        }
+        standard = new StandardCalculator(model, alignment, tree).calculate(params);
+    }
+
+    /**
+     * Tests the likelihood of each site, and the total, are the same as the
+     * standard calculator's for a variety of chunk and cache sizes
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testSites() throws Exception
+    {
+        int[][] sizes = {{7, 3}, {7, 1000}, {100, 3}, {100000, 1000}};
+        for (int[] s : sizes)
+        {
+            StreamingCalculator sc = new StreamingCalculator(model, tree, params);
+            sc.setChunkSize(s[0]);
+            sc.setCacheSize(s[1]);
+            sc.setQueueSize(1);
+            //The writer is called on another thread so just record what it's
+            //given and check it here
+            final List<Long> positions = new ArrayList<>();
+            final List<Site> sites = new ArrayList<>();
+            final List<Double> results = new ArrayList<>();
+            final long[] closed = {0};
+            double total = sc.calculate(alignment, new StreamingCalculator.SiteWriter()
+            {
+                public void write(long position, Site site, double l)
+                {
+                    positions.add(position);
+                    sites.add(site);
+                    results.add(l);
+                }
+
+                public void close()
+                {
+                    closed[0]++;
+                }
+            });
+
+            assertEquals(1, closed[0]);
+            assertEquals(alignment.getLength(), results.size());
+            for (int i = 0; i < alignment.getLength(); i++)
+            {
+                assertEquals(i, (long) positions.get(i));
+                assertEquals(alignment.getSite(i), sites.get(i));
+                double e = standard.getSiteLikelihood(alignment.getSite(i)).getLikelihood().ln();
+                assertEquals(e, results.get(i), 1e-10);
+            }
+            assertEquals(standard.getLikelihood(), total, 1e-8);
+        }
+    }
+
+    /**
+     * Tests an error from the writer is passed back to the caller
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testWriterError() throws Exception
+    {
+        StreamingCalculator sc = new StreamingCalculator(model, tree, params);
+        sc.setChunkSize(5);
+        sc.setQueueSize(1);
+        try
+        {
+            sc.calculate(alignment, new StreamingCalculator.SiteWriter()
+            {
+                public void write(long position, Site site, double l) throws OutputException
+                {
+                    if (position == 12)
+                    {
+                        throw new OutputException("test", "Test error", null);
+                    }
+                }
+
+                public void close()
+                {
+                }
+            });
+            fail("Expected OutputException");
+        }
+        catch (OutputException e)
+        {
+        }
+    }
+
+    /**
+     * Tests the likelihood of each window is the sum of the likelihoods of
+     * the sites in it, for overlapping windows, windows that exactly tile the
+     * alignment, windows with gaps between them and windows as long as the
+     * alignment
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testWindows() throws Exception
+    {
+        int[][] sizes = {{100, 10}, {100, 100}, {50, 100}, {300, 299}, {1, 1}, {895, 1}, {900, 1}};
+        StreamingCalculator sc = new StreamingCalculator(model, tree, params);
+        for (int[] s : sizes)
+        {
+            int window = s[0];
+            int step = s[1];
+            double[] l = sc.calculateWindows(alignment, window, step);
+
+            int expected = (alignment.getLength() < window) ? 0 : (alignment.getLength() - window) / step + 1;
+            assertEquals(expected, l.length);
+            for (int w = 0; w < l.length; w++)
+            {
+                double e = 0.0;
+                for (int i = w * step; i < w * step + window; i++)
+                {
+                    e += standard.getSiteLikelihood(alignment.getSite(i)).getLikelihood().ln();
+                }
+                assertEquals(e, l[w], 1e-8);
+            }
+        }
+
+        try
+        {
+            sc.calculateWindows(alignment, 10, 0);
+            fail("Expected AlignmentException");
+        }
+        catch (AlignmentException e)
+        {
+        }
+    }
+
+    private static Tree tree;
+    private static Alignment alignment;
+    private static Parameters params;
+    private static Model model;
+    private static StandardLikelihood standard;
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Maths;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the derivatives calculated by compiled functions
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class CompiledFunctionTest
+{
+    /**
+     * Tests derivatives of the arithmetic operators against central
+     * differences
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testOperators() throws Exception
+    {
+        assertDual("a + b");
+        assertDual("a - 2 * b");
+        assertDual("a * b");
+        assertDual("a * b * c");
+        assertDual("a / (b + c)");
+        assertDual("-a * b");
+    }
+
+    /**
+     * Tests derivatives of powers with a constant exponent, a constant base
+     * and a variable exponent
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testPower() throws Exception
+    {
+        assertDual("a ^ 3");
+        assertDual("2 ^ a");
+        assertDual("a ^ b");
+        assertDual("(a * c) ^ (b - a)");
+    }
+
+    /**
+     * Tests derivatives of built in functions, including gamma rates whose
+     * partial derivative is itself calculated numerically
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testFunctions() throws Exception
+    {
+        assertDual("ln[a]");
+        assertDual("ln[a * b] ^ 2");
+        assertDual("g[a,1,4]");
+        assertDual("g[b,4,4] * c");
+        assertDual("g[a * b,2,4] + ln[c]");
+    }
+
+    //Checks the value and derivative in two directions, one variable on its
+    //own and a mix of all of them
+    private void assertDual(String equation) throws Exception
+    {
+        CompiledFunction f = parser.compileFunction(equation);
+        Map<String,Double> values = new HashMap<>();
+        values.put("a", 1.3);
+        values.put("b", 0.7);
+        values.put("c", 2.1);
+
+        Map<String,Double> single = new HashMap<>();
+        single.put("a", 1.0);
+        Map<String,Double> mixed = new HashMap<>();
+        mixed.put("a", 0.4);
+        mixed.put("b", -0.9);
+        mixed.put("c", 0.3);
+
+        assertDual(equation, f, values, single);
+        assertDual(equation, f, values, mixed);
+    }
+
+    private void assertDual(String equation, CompiledFunction f, Map<String,Double> values,
+            Map<String,Double> derivatives) throws Exception
+    {
+        Dual d = f.computeDual(values, derivatives);
+        assertEquals(equation, f.compute(values), d.getValue(), 1e-12);
+
+        double up = f.compute(move(values, derivatives, H));
+        double down = f.compute(move(values, derivatives, -H));
+        double expected = (up - down) / (2 * H);
+        assertEquals(equation, expected, d.getDerivative(),
+                1e-6 * Math.max(1.0, Math.abs(expected)));
+    }
+
+    private Map<String,Double> move(Map<String,Double> values, Map<String,Double> direction, double h)
+    {
+        Map<String,Double> moved = new HashMap<>(values);
+        for (Map.Entry<String,Double> e: direction.entrySet())
+        {
+            moved.put(e.getKey(), values.get(e.getKey()) + h * e.getValue());
+        }
+        return moved;
+    }
+
+    private final MathsParse parser = new MathsParse();
+
+    private static final double H = 1e-5;
+}
@@ -0,0 +1,236 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Maths;
+
+import Maths.SquareMatrix.Calculation;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the automatic choice of matrix exponentiation method
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class ExpMethodChooserTest
+{
+    /**
+     * Tests Taylor is chosen when it is cheaper per matrix once the cost of the
+     * eigendecomposition is included even though each eigendecomposition
+     * exponentiation is cheaper than a Taylor one
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testChooseTaylor() throws Exception
+    {
+        assertEquals(Calculation.TAYLOR, run(100, 1000, 10));
+    }
+
+    /**
+     * Tests the eigendecomposition method is chosen when it is cheaper per
+     * matrix
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testChooseEigen() throws Exception
+    {
+        assertEquals(Calculation.EIGEN, run(100, 150, 10));
+    }
+
+    /**
+     * Tests timings of matrices exponentiated at the same time are kept
+     * separate
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testInterleaved() throws Exception
+    {
+        ExpMethodChooser c = new ExpMethodChooser();
+        SquareMatrix m = jc();
+        //Each sample is timed after the next has been requested, as happens
+        //when several threads share the chooser.  Only time recorded before
+        //the next matrix is requested counts so every Taylor matrix costs 300
+        //and every eigendecomposition matrix 1000.
+        ExpMethodChooser.Sample previous = null;
+        while (c.getChosen() == null)
+        {
+            ExpMethodChooser.Sample s = c.choose(m);
+            s.time(s.getMethod() == Calculation.TAYLOR ? 300 : 1000);
+            if (previous != null)
+            {
+                previous.time(100000);
+            }
+            previous = s;
+        }
+        assertEquals(Calculation.TAYLOR, c.getChosen());
+    }
+
+    /**
+     * Tests Taylor is chosen for a matrix with complex eigenvalues
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testComplex() throws Exception
+    {
+        ExpMethodChooser c = new ExpMethodChooser();
+        SquareMatrix m = new SquareMatrix(new double[][] {
+            {-1.0, 1.0, 0.0, 0.0},
+            {0.0, -1.0, 1.0, 0.0},
+            {0.0, 0.0, -1.0, 1.0},
+            {1.0, 0.0, 0.0, -1.0}});
+        while (c.getChosen() == null)
+        {
+            c.choose(m).time(1);
+        }
+        assertEquals(Calculation.TAYLOR, c.getChosen());
+        assertTrue(c.getReason().contains("complex"));
+    }
+
+    /**
+     * Tests the eigendecomposition method is chosen without timing for a
+     * large reversible (but not symmetric) matrix
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testPriorEigen() throws Exception
+    {
+        ExpMethodChooser c = new ExpMethodChooser();
+        ExpMethodChooser.Sample s = c.choose(gtr(25, new Random(30)));
+        assertEquals(Calculation.EIGEN, s.getMethod());
+        assertEquals(Calculation.EIGEN, c.getChosen());
+        assertTrue(c.getReason().contains("reversible"));
+    }
+
+    /**
+     * Tests the Taylor method is chosen without timing for tiny and for very
+     * sparse matrices with a small norm
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testPriorTaylor() throws Exception
+    {
+        ExpMethodChooser c = new ExpMethodChooser();
+        c.choose(new SquareMatrix(new double[][] {{-0.5, 0.5}, {1.0, -1.0}}));
+        assertEquals(Calculation.TAYLOR, c.getChosen());
+        assertTrue(c.getReason().contains("tiny"));
+
+        //A pure birth process is sparse but not reversible
+        int n = 10;
+        double[][] a = new double[n][n];
+        for (int i = 0; i < n - 1; i++)
+        {
+            a[i][i] = -1.0;
+            a[i][i + 1] = 1.0;
+        }
+        c = new ExpMethodChooser();
+        c.choose(new SquareMatrix(a));
+        assertEquals(Calculation.TAYLOR, c.getChosen());
+        assertTrue(c.getReason().contains("sparse"));
+        assertFalse(c.getReason().contains("reversible"));
+    }
+
+    /**
+     * Tests the choice is left to timing when the matrix's properties don't
+     * make it clear, including for a large matrix that is not reversible
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testPriorTimed() throws Exception
+    {
+        ExpMethodChooser c = new ExpMethodChooser();
+        c.choose(jc());
+        assertNull(c.getChosen());
+
+        //Break reversibility by changing one rate
+        double[][] a = gtr(25, new Random(31)).getArray();
+        a[0][1] = a[0][1] * 2;
+        a[0][0] = 0.0;
+        for (int j = 1; j < a.length; j++)
+        {
+            a[0][0] -= a[0][j];
+        }
+        c = new ExpMethodChooser();
+        c.choose(new SquareMatrix(a));
+        assertNull(c.getChosen());
+    }
+
+    //Times three branch lengths per matrix.  Taylor costs the same for each,
+    //eigendecomposition has an extra cost on the first for the decomposition.
+    private Calculation run(long taylor, long eigenFirst, long eigen) throws Exception
+    {
+        ExpMethodChooser c = new ExpMethodChooser();
+        SquareMatrix m = jc();
+        while (c.getChosen() == null)
+        {
+            ExpMethodChooser.Sample s = c.choose(m);
+            for (int i = 0; i < 3; i++)
+            {
+                if (s.getMethod() == Calculation.TAYLOR)
+                {
+                    s.time(taylor);
+                }
+                else
+                {
+                    s.time((i == 0) ? eigenFirst : eigen);
+                }
+            }
+        }
+        assertNotNull(c.getReason());
+        return c.getChosen();
+    }
+
+    //A random general time reversible rate matrix
+    private SquareMatrix gtr(int n, Random r) throws Exception
+    {
+        double[] pi = new double[n];
+        for (int i = 0; i < n; i++)
+        {
+            pi[i] = 0.5 + r.nextDouble();
+        }
+        double[][] a = new double[n][n];
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = i + 1; j < n; j++)
+            {
+                double e = r.nextDouble() / n;
+                a[i][j] = e * pi[j];
+                a[j][i] = e * pi[i];
+            }
+        }
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                if (j != i)
+                {
+                    a[i][i] -= a[i][j];
+                }
+            }
+        }
+        return new SquareMatrix(a);
+    }
+
+    private SquareMatrix jc() throws Exception
+    {
+        return new SquareMatrix(new double[][] {
+            {-1.0, 1.0 / 3.0, 1.0 / 3.0, 1.0 / 3.0},
+            {1.0 / 3.0, -1.0, 1.0 / 3.0, 1.0 / 3.0},
+            {1.0 / 3.0, 1.0 / 3.0, -1.0, 1.0 / 3.0},
+            {1.0 / 3.0, 1.0 / 3.0, 1.0 / 3.0, -1.0}});
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Maths;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the cached gamma rates
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class GammaTest
+{
+    /**
+     * Tests cached rates are the same as calculated rates while sweeping
+     * alpha, returning to earlier values and mixing numbers of categories
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testRate() throws Exception
+    {
+        for (int i = 0; i < 200; i++)
+        {
+            //Goes back to values from a few steps earlier, and some from long
+            //ago which will have been dropped from the cache
+            double alpha = 0.05 + 0.01 * ((i % 3 == 0) ? i / 2 : i);
+            for (int categories : new int[] {4, 8})
+            {
+                double[] r = Gamma.rates(alpha, categories);
+                for (int c = 1; c <= categories; c++)
+                {
+                    assertEquals(r[c - 1], Gamma.rate(alpha, c, categories), 0.0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Maths;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests equations are parsed correctly
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class MathsParseTest
+{
+    /**
+     * Tests operator precedence and brackets
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testPrecedence() throws Exception
+    {
+        assertEquals(14.0, eval("2 + 3 * 4"), 1e-12);
+        assertEquals(20.0, eval("(2 + 3) * 4"), 1e-12);
+        assertEquals(1.0, eval("7 - 3 * 2"), 1e-12);
+        assertEquals(11.0, eval("2 * 3 + 10 / 2"), 1e-12);
+        assertEquals(18.0, eval("2 * 3 ^ 2"), 1e-12);
+        assertEquals(36.0, eval("(2 * 3) ^ 2"), 1e-12);
+        assertEquals(4.0, eval("a * b - c / a"), 1e-12);
+    }
+
+    /**
+     * Tests operators of the same precedence are left associative
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testAssociativity() throws Exception
+    {
+        assertEquals(-4.0, eval("1 - 2 - 3"), 1e-12);
+        assertEquals(1.0, eval("12 / 3 / 4"), 1e-12);
+        //^ is left associative, i.e. (2^3)^2 not 2^(3^2)
+        assertEquals(64.0, eval("2 ^ 3 ^ 2"), 1e-12);
+        assertEquals(512.0, eval("2 ^ (3 ^ 2)"), 1e-12);
+        assertEquals(729.0, eval("b ^ a ^ b"), 1e-12);
+    }
+
+    /**
+     * Tests unary minus
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testUnaryMinus() throws Exception
+    {
+        assertEquals(-2.0, eval("-a"), 1e-12);
+        assertEquals(-4.0, eval("-a^2"), 1e-12);
+        assertEquals(4.0, eval("(-a)^2"), 1e-12);
+        assertEquals(-6.0, eval("b * -a"), 1e-12);
+        assertEquals(5.0, eval("b - -a"), 1e-12);
+        assertEquals(1.0, eval("-a + b"), 1e-12);
+        assertEquals(2.0, eval("+a"), 1e-12);
+        assertEquals(-1.5, eval("-1.5"), 1e-12);
+    }
+
+    /**
+     * Tests numbers and variable names
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testTokens() throws Exception
+    {
+        assertEquals(0.025, eval("2.5e-2"), 1e-12);
+        assertEquals(300.0, eval("3E2"), 1e-12);
+        assertEquals(7.0, eval("_x1 + a"), 1e-12);
+        assertEquals(5.0, eval("  a+b  "), 1e-12);
+    }
+
+    /**
+     * Tests function calls, including user defined functions and functions
+     * whose inputs are expressions
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testFunctions() throws Exception
+    {
+        assertEquals(Math.log(2.0), eval("ln[a]"), 1e-12);
+        assertEquals(Math.log(6.0) * 2.0, eval("ln[a * b] * 2"), 1e-12);
+        assertEquals(3.0, eval("max[a, b]"), 1e-12);
+        assertEquals(5.0, eval("max[a + b, ln[a]]"), 1e-12);
+        assertEquals(-3.0, eval("-max[a, b]"), 1e-12);
+        assertEquals(9.0, eval("max[a, b] ^ 2"), 1e-12);
+
+        CompiledFunction f = parser.compileFunction("max[a, c] + b");
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), f.neededParams());
+
+        //Gamma rates average to one
+        double total = 0.0;
+        for (int i = 1; i <= 4; i++)
+        {
+            total += eval("g[0.5," + i + ",4]");
+        }
+        assertEquals(4.0, total, 1e-8);
+    }
+
+    /**
+     * Tests the position and message of errors for malformed equations
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testInvalid() throws Exception
+    {
+        assertInvalid("a +", 3);
+        assertInvalid("a + * b", 4);
+        assertInvalid("(a + b", 6);
+        assertInvalid("a + b)", 5);
+        assertInvalid("max[a, b", 8);
+        assertInvalid("a $ b", 2);
+        assertInvalid("", 0);
+        assertInvalid("a b", 2);
+        assertInvalid("max[a,]", 6);
+
+        //Callers written against the original signatures catch NoSuchFunction
+        try
+        {
+            parser.compileFunction("(a");
+            fail("Expected NoSuchFunction");
+        }
+        catch (NoSuchFunction e)
+        {
+            assertTrue(e instanceof InvalidEquation);
+            assertEquals("Expected ')' but reached end of equation at position 3 in \"(a\"", e.getMessage());
+        }
+    }
+
+    /**
+     * Tests undefined functions, missing variables and the wrong number of
+     * inputs are reported
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testErrors() throws Exception
+    {
+        try
+        {
+            eval("foo[a]");
+            fail("Expected NoSuchFunction");
+        }
+        catch (NoSuchFunction e)
+        {
+        }
+        try
+        {
+            eval("max[a]");
+            fail("Expected WrongNumberOfVariables");
+        }
+        catch (WrongNumberOfVariables e)
+        {
+        }
+        try
+        {
+            eval("a + d");
+            fail("Expected NoSuchVariable");
+        }
+        catch (NoSuchVariable e)
+        {
+        }
+    }
+
+    private void assertInvalid(String equation, int position) throws Exception
+    {
+        try
+        {
+            parser.compileFunction(equation);
+            fail("Expected InvalidEquation for \"" + equation + "\"");
+        }
+        catch (InvalidEquation e)
+        {
+            assertEquals(equation, position, e.getPosition());
+            assertTrue(e.getMessage().contains("position " + (position + 1)));
+        }
+    }
+
+    private double eval(String equation) throws Exception
+    {
+        Map<String,Double> values = new HashMap<>();
+        values.put("a", 2.0);
+        values.put("b", 3.0);
+        values.put("c", 4.0);
+        values.put("_x1", 5.0);
+        return parser.parseEquation(equation, values);
+    }
+
+    private static class Max implements FunctionParser
+    {
+        public double evaluate(String function, Double[] variables) throws WrongNumberOfVariables, NoSuchFunction
+        {
+            if (!function.equals("max"))
+            {
+                throw new NoSuchFunction(function);
+            }
+            if (variables.length != 2)
+            {
+                throw new WrongNumberOfVariables(function, 2, variables.length);
+            }
+            return Math.max(variables[0], variables[1]);
+        }
+
+        public int numberInputs(String function) throws NoSuchFunction
+        {
+            if (!function.equals("max"))
+            {
+                throw new NoSuchFunction(function);
+            }
+            return 2;
+        }
+
+        public List<String> implemented()
+        {
+            return Arrays.asList("max");
+        }
+    }
+
+    private final MathsParse parser = new MathsParse(new Max());
+}
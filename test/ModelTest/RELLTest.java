@@ -0,0 +1,218 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ModelTest;
+
+import Alignments.Alignment;
+import Alignments.PhylipAlignment;
+import Likelihood.StandardCalculator;
+import Likelihood.StandardLikelihood;
+import Models.DNAModelFactory;
+import Models.Model;
+import Parameters.Parameter;
+import Parameters.Parameters;
+import Trees.Tree;
+import Utils.Engine;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the RELL based topology tests
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class RELLTest
+{
+    /**
+     * Tests the p-values for two trees against the normal approximation.
+     * The second tree is worse than the first by 1.5 standard deviations of
+     * the difference in likelihood so the KH and SH p-values, the bootstrap
+     * probability and, as there is no curvature with two trees, the AU p-value
+     * should all be close to 1 - Phi(1.5).
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testTwoTrees() throws Exception
+    {
+        int n = 1000;
+        Random r = new Random(50);
+        double[] g = new double[n];
+        double mean = 0.0;
+        for (int i = 0; i < n; i++)
+        {
+            g[i] = r.nextGaussian();
+            mean += g[i];
+        }
+        mean = mean / n;
+        double var = 0.0;
+        for (int i = 0; i < n; i++)
+        {
+            var += (g[i] - mean) * (g[i] - mean);
+        }
+        double sd = Math.sqrt(var / n);
+
+        //Per site differences with standard deviation one and a total
+        //difference of 1.5 times the standard deviation of the total
+        double[][] pl = new double[2][n];
+        int[] counts = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            pl[0][i] = -2.0 - r.nextDouble();
+            pl[1][i] = pl[0][i] - ((g[i] - mean) / sd + 1.5 / Math.sqrt(n));
+            counts[i] = 1;
+        }
+
+        int reps = 10000;
+        TopologyTest tt = new TopologyTest(pl, counts, reps, SCALES, new Random(150), new Engine(1));
+        double expected = 0.0668072;
+
+        assertEquals(0, tt.getBest());
+        assertEquals(1.5 * Math.sqrt(n), tt.getLikelihoods()[0] - tt.getLikelihoods()[1], 1e-8);
+        assertEquals(1.0, tt.getKH()[0], 0.0);
+        assertEquals(1.0, tt.getSH()[0], 0.0);
+        assertEquals(1.0, tt.getBP()[0] + tt.getBP()[1], 1e-12);
+        assertEquals(expected, tt.getKH()[1], 0.015);
+        assertEquals(tt.getKH()[1], tt.getSH()[1], 2.0 / reps);
+        assertEquals(expected, tt.getBP()[1], 0.015);
+        assertEquals(expected, tt.getAU()[1], 0.02);
+        assertTrue(tt.getAU()[0] > 0.9);
+    }
+
+    /**
+     * Tests with several trees that a much worse tree is rejected, trees
+     * close to the best are not and that the SH test is more conservative
+     * than the KH test.  Also tests the same seed gives the same results
+     * whatever the number of threads.
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testSeveralTrees() throws Exception
+    {
+        int patterns = 300;
+        Random r = new Random(250);
+        double[][] pl = new double[4][patterns];
+        int[] counts = new int[patterns];
+        double[] shift = {0.0, 0.005, 0.01, 0.5};
+        //Patterns come in pairs with the same count and opposite noise so
+        //each tree is worse than the first by exactly its shift per site
+        for (int p = 0; p < patterns; p += 2)
+        {
+            counts[p] = 1 + r.nextInt(5);
+            counts[p + 1] = counts[p];
+            pl[0][p] = -2.0 - r.nextDouble();
+            pl[0][p + 1] = -2.0 - r.nextDouble();
+            for (int i = 1; i < 4; i++)
+            {
+                double noise = 0.3 * r.nextGaussian();
+                pl[i][p] = pl[0][p] + noise - shift[i];
+                pl[i][p + 1] = pl[0][p + 1] - noise - shift[i];
+            }
+        }
+
+        TopologyTest tt = new TopologyTest(pl, counts, 2000, SCALES, new Random(350), new Engine(1));
+        assertEquals(0, tt.getBest());
+        double[] kh = tt.getKH();
+        double[] sh = tt.getSH();
+        double[] au = tt.getAU();
+        for (int i = 1; i < 3; i++)
+        {
+            assertTrue(kh[i] > 0.05);
+            assertTrue(sh[i] > 0.05);
+            assertTrue(au[i] > 0.05);
+        }
+        assertTrue(kh[3] < 0.01);
+        assertTrue(sh[3] < 0.01);
+        assertTrue(au[3] < 0.01);
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(sh[i] >= kh[i]);
+        }
+        double total = 0.0;
+        for (double b : tt.getBP())
+        {
+            total += b;
+        }
+        assertEquals(1.0, total, 1e-12);
+
+        Engine e = new Engine(3);
+        try
+        {
+            TopologyTest threaded = new TopologyTest(pl, counts, 2000, SCALES, new Random(350), e);
+            assertTrue(Arrays.equals(tt.getBP(), threaded.getBP()));
+            assertTrue(Arrays.equals(kh, threaded.getKH()));
+            assertTrue(Arrays.equals(sh, threaded.getSH()));
+            assertTrue(Arrays.equals(au, threaded.getAU()));
+        }
+        finally
+        {
+            e.shutdown();
+        }
+    }
+
+    /**
+     * Tests the tests can be run on the results of calculations on an
+     * alignment
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testResults() throws Exception
+    {
+        Alignment a = PhylipAlignment.fromFile(new File("test/PAML/Likelihood/brown.nuc"));
+        String[] trees = {"(((Human: 0.06, Chimpanzee: 0.07)A: 0.04, Gorilla: 0.07)B: 0.13, Orangutan: 0.35, Gibbon: 0.54)C;",
+            "(((Human: 0.06, Gorilla: 0.07)A: 0.04, Chimpanzee: 0.07)B: 0.13, Orangutan: 0.35, Gibbon: 0.54)C;",
+            "(((Human: 0.06, Orangutan: 0.35)A: 0.04, Gorilla: 0.07)B: 0.13, Chimpanzee: 0.07, Gibbon: 0.54)C;"};
+        List<StandardLikelihood> results = new ArrayList<>();
+        for (String s : trees)
+        {
+            Tree t = Tree.fromNewickString(s);
+            Parameters p = t.getParameters();
+            Model m = DNAModelFactory.HKY(p);
+            for (Parameter q : p)
+            {
+                if (!(p.getValue(q.getName()) > 0.0))
+                {
+                    p.setValue(q, 0.3);
+                }
+            }
+            results.add(new StandardCalculator(m, a, t).calculate(p));
+        }
+
+        TopologyTest tt = new TopologyTest(a, results, 200);
+        assertEquals(0, tt.getBest());
+        for (int i = 0; i < trees.length; i++)
+        {
+            assertEquals(results.get(i).getLikelihood(), tt.getLikelihoods()[i], 1e-8);
+        }
+        assertEquals(a.getUniqueSites().size(), TopologyTest.getPatternLikelihoods(a, results.get(0)).length);
+        //This constructor isn't seeded so only check the p-values are valid
+        assertEquals(1.0, tt.getKH()[0], 0.0);
+        for (double[] pv : new double[][] {tt.getBP(), tt.getKH(), tt.getSH(), tt.getAU()})
+        {
+            for (double v : pv)
+            {
+                assertTrue((v >= 0.0) && (v <= 1.0));
+            }
+        }
+    }
+
+    private static final double[] SCALES = {0.5, 0.6, 0.7, 0.8, 0.9, 1.0, 1.1, 1.2, 1.3, 1.4};
+}
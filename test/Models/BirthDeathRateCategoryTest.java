@@ -0,0 +1,159 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Models;
+
+import Alignments.Alignment;
+import Alignments.Site;
+import Likelihood.StandardCalculator;
+import Parameters.Parameter;
+import Parameters.Parameters;
+import Simulations.Simulate;
+import Trees.Tree;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the birth-death rate category gives the same results as the general
+ * rate category
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class BirthDeathRateCategoryTest
+{
+    /**
+     * Tests P-matrices, stationary distributions and the likelihood are the
+     * same whether the duplication models are built using the birth-death rate
+     * category or the general rate category, both with and without gamma rates
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testClosedForm() throws Exception
+    {
+        Tree t = Tree.fromNewickString("(((A: 0.12, B: 0.31): 0.08, C: 0.45): 0.21, D: 0.6, E: 1.3);");
+
+        for (String type: new String[] {"Parsimony", "BDI", "BD_NoZero", "BDIE"})
+        {
+            for (int cats: new int[] {1, 4})
+            {
+                Parameters pg = t.getParameters();
+                Parameters pc = t.getParameters();
+                Model mg = model(type, pg, cats, false);
+                Model mc = model(type, pc, cats, true);
+                assertTrue(mc.getRates().iterator().next() instanceof BirthDeathRateCategory);
+                assertFalse(mg.getRates().iterator().next() instanceof BirthDeathRateCategory);
+                setValues(pg);
+                setValues(pc);
+
+                String test = type + " " + cats;
+                mg.setParameters(pg);
+                mc.setParameters(pc);
+                Map<String,RateCategory> closed = new HashMap<>();
+                for (RateCategory r: mc.getRates())
+                {
+                    closed.put(r.getName(), r);
+                }
+                for (RateCategory rg: mg.getRates())
+                {
+                    RateCategory rc = closed.get(rg.getName());
+                    double[] fg = rg.getFreq();
+                    double[] fc = rc.getFreq();
+                    for (int i = 0; i < fg.length; i++)
+                    {
+                        assertEquals(test, fg[i], fc[i], 1e-10);
+                    }
+                    for (double length: new double[] {0.05, 0.7, 4.0})
+                    {
+                        double[][] pmg = rg.getP(length).getArray();
+                        double[][] pmc = rc.getP(length).getArray();
+                        for (int i = 0; i < pmg.length; i++)
+                        {
+                            for (int j = 0; j < pmg.length; j++)
+                            {
+                                assertEquals(test, pmg[i][j], pmc[i][j], 1e-9);
+                            }
+                        }
+                    }
+                }
+
+                Alignment a = simulate(mg, t, pg);
+                double lg = new StandardCalculator(mg, a, t).calculate(pg).getLikelihood();
+                double lc = new StandardCalculator(mc, a, t).calculate(pc).getLikelihood();
+                assertEquals(test, lg, lc, 1e-8);
+            }
+        }
+    }
+
+    private Model model(String type, Parameters p, int cats, boolean closedForm) throws Exception
+    {
+        switch (type)
+        {
+            case "Parsimony":
+                return (cats == 1) ? DuplicationModelFactory.Parsimony(p, NUM, false, closedForm)
+                        : DuplicationModelFactory.Parsimony_Gamma(p, NUM, cats, false, closedForm);
+            case "BDI":
+                return (cats == 1) ? DuplicationModelFactory.BDI(p, NUM, false, closedForm)
+                        : DuplicationModelFactory.BDI_Gamma(p, NUM, cats, false, closedForm);
+            case "BD_NoZero":
+                return (cats == 1) ? DuplicationModelFactory.BD_NoZero(p, NUM, false, closedForm)
+                        : DuplicationModelFactory.BD_NoZero_Gamma(p, NUM, cats, false, closedForm);
+            default:
+                return (cats == 1) ? DuplicationModelFactory.BDIE(p, NUM, false, closedForm)
+                        : DuplicationModelFactory.BDIE_Gamma(p, NUM, cats, false, closedForm);
+        }
+    }
+
+    private void setValues(Parameters p) throws Exception
+    {
+        for (Parameter pp: p)
+        {
+            switch (pp.getName())
+            {
+                case "d":
+                    p.setValue(pp, 0.8);
+                    break;
+                case "i":
+                    p.setValue(pp, 0.3);
+                    break;
+                case "e":
+                    p.setValue(pp, 0.45);
+                    break;
+                case "g":
+                    p.setValue(pp, 0.6);
+                    break;
+            }
+        }
+    }
+
+    private Alignment simulate(Model m, Tree t, Parameters p) throws Exception
+    {
+        Simulate sim = new Simulate(m, t, p);
+        List<Site> sites = new ArrayList<>();
+        for (int s = 0; s < 200; s++)
+        {
+            sites.add(sim.getSite());
+        }
+        return new Alignment(sites);
+    }
+
+    //Maximum family size
+    private static final int NUM = 8;
+}
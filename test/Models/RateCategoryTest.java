@@ -0,0 +1,142 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Models;
+
+import Maths.SquareMatrix;
+import Models.RateCategory.FrequencyType;
+import Parameters.Parameter;
+import Parameters.Parameters;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests rate categories
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class RateCategoryTest
+{
+    /**
+     * Tests the derivative of the rate matrix against a central difference
+     * when the frequencies are given by the model and used in the matrix, so
+     * the derivative includes that of the normalised frequencies
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testRateDerivativeModel() throws Exception
+    {
+        String[][] rates = new String[4][4];
+        rates[0][0] = "-"; rates[0][1] = "k * _C"; rates[0][2] = "_A"; rates[0][3] = "_G";
+        rates[1][0] = "k * _T"; rates[1][1] = "-"; rates[1][2] = "_A"; rates[1][3] = "_G";
+        rates[2][0] = "_T"; rates[2][1] = "_C"; rates[2][2] = "-"; rates[2][3] = "k * _G";
+        rates[3][0] = "_T"; rates[3][1] = "_C"; rates[3][2] = "k * _A"; rates[3][3] = "-";
+        //Frequencies don't sum to one so need to be normalised
+        String[] freq = {"pT", "pC", "pA", "1"};
+
+        RateCategory rc = new RateCategory(rates, freq, map());
+
+        Map<String,Double> values = new HashMap<>();
+        values.put("k", 2.5);
+        values.put("pT", 0.8);
+        values.put("pC", 1.4);
+        values.put("pA", 0.6);
+
+        assertRateDerivative(rc, values, "k");
+        assertRateDerivative(rc, values, "pT");
+        assertRateDerivative(rc, values, "pA");
+    }
+
+    /**
+     * Tests the derivative of the rate matrix against a central difference
+     * when the frequencies are the stationary distribution, including rates
+     * using functions and powers
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testRateDerivativeStationary() throws Exception
+    {
+        String[][] rates = new String[4][4];
+        rates[0][0] = "-"; rates[0][1] = "a * b"; rates[0][2] = "b ^ a"; rates[0][3] = "0.1";
+        rates[1][0] = "g[a,1,4]"; rates[1][1] = "-"; rates[1][2] = "ln[1 + b]"; rates[1][3] = "a / b";
+        rates[2][0] = "1"; rates[2][1] = "a"; rates[2][2] = "-"; rates[2][3] = "g[b,4,4] * a";
+        rates[3][0] = "b"; rates[3][1] = "0.5"; rates[3][2] = "a ^ 2"; rates[3][3] = "-";
+
+        HashMap<String,Integer> map = map();
+        RateCategory rc = new RateCategory(rates, FrequencyType.STATIONARY, map);
+
+        Map<String,Double> values = new HashMap<>();
+        values.put("a", 0.7);
+        values.put("b", 1.9);
+
+        assertRateDerivative(rc, values, "a");
+        assertRateDerivative(rc, values, "b");
+    }
+
+    private void assertRateDerivative(RateCategory rc, Map<String,Double> values, String parameter)
+            throws Exception
+    {
+        rc.setParameters(parameters(values, parameter, 0.0));
+        SquareMatrix d = rc.getRateDerivative(parameter);
+
+        //Without a model the matrix is never rescaled so the "scaled" matrix
+        //is the unscaled matrix the derivative is of
+        rc.setParameters(parameters(values, parameter, H));
+        double[][] up = rc.getScaledMatrix().getArray();
+        rc.setParameters(parameters(values, parameter, -H));
+        double[][] down = rc.getScaledMatrix().getArray();
+
+        for (int i = 0; i < up.length; i++)
+        {
+            for (int j = 0; j < up.length; j++)
+            {
+                double expected = (up[i][j] - down[i][j]) / (2 * H);
+                assertEquals(parameter + " " + i + "," + j, expected, d.getPosition(i, j),
+                        1e-6 * Math.max(1.0, Math.abs(expected)));
+            }
+        }
+    }
+
+    private Parameters parameters(Map<String,Double> values, String moved, double h) throws Exception
+    {
+        Parameters p = new Parameters();
+        for (Map.Entry<String,Double> e: values.entrySet())
+        {
+            double v = e.getValue();
+            if (e.getKey().equals(moved))
+            {
+                v += h;
+            }
+            p.addParameter(Parameter.newFixedParameter(e.getKey(), v));
+        }
+        return p;
+    }
+
+    private HashMap<String,Integer> map()
+    {
+        HashMap<String,Integer> map = new HashMap<>();
+        map.put("T", 0);
+        map.put("C", 1);
+        map.put("A", 2);
+        map.put("G", 3);
+        return map;
+    }
+
+    private static final double H = 1e-5;
+}
@@ -0,0 +1,217 @@
+/*
+ * This file is part of GeLL.
+ * 
+ * GeLL is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GeLL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with GeLL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Parameters;
+
+import Parameters.Parameters.ParameterException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests looking up parameters by name and index and the versions of their
+ * values
+ * @author Daniel Money
+ * @version 2.0
+ */
+public class ParametersTest
+{
+    /**
+     * Tests parameters can be found by name
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testLookup() throws Exception
+    {
+        Parameters p = create();
+        check(p);
+
+        Parameters c = p.clone();
+        check(c);
+        c.setValue(c.getParam("b5"), 7.0);
+        assertEquals(7.0, c.getValue("b5"), 0.0);
+        assertEquals(5.0, p.getValue("b5"), 0.0);
+    }
+
+    /**
+     * Tests parameters can still be found by name after being serialized and
+     * deserialized, i.e. that the index is rebuilt
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testSerialization() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(create());
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Parameters p = (Parameters) in.readObject();
+        in.close();
+
+        check(p);
+        p.addParameter(Parameter.newFixedParameter("new", 1.0));
+        assertEquals(1.0, p.getValue("new"), 0.0);
+        assertEquals(9.0, p.getValue("b9"), 0.0);
+    }
+
+    /**
+     * Tests parameters can be found by index
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testIndex() throws Exception
+    {
+        Parameters p = create();
+        assertEquals(11, p.size());
+        for (int i = 0; i < 10; i++)
+        {
+            int j = p.getIndex("b" + i);
+            assertEquals(i, p.getValue(j), 0.0);
+        }
+        assertEquals(2.5, p.getValue(p.getIndex("k")), 0.0);
+        try
+        {
+            p.getIndex("x");
+            fail("Expected ParameterException");
+        }
+        catch (ParameterException e)
+        {
+        }
+    }
+
+    /**
+     * Tests versions change when, and only when, a value changes and are kept
+     * when parameters are cloned
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testVersions() throws Exception
+    {
+        Parameters p = create();
+        int i = p.getIndex("b5");
+        long v = p.getVersion(i);
+        assertFalse(v == p.getVersion(p.getIndex("b6")));
+
+        p.setValue(p.getParam("b5"), 5.0);
+        assertEquals(v, p.getVersion(i));
+        p.setValue(p.getParam("b5"), 6.0);
+        assertFalse(v == p.getVersion(i));
+        v = p.getVersion(i);
+
+        Parameters c = p.clone();
+        assertEquals(v, c.getVersion(i));
+        c.setValue(c.getParam("b5"), 7.0);
+        assertFalse(v == c.getVersion(i));
+        assertEquals(v, p.getVersion(i));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(p);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Parameters d = (Parameters) in.readObject();
+        in.close();
+        assertEquals(6.0, d.getValue(i), 0.0);
+        assertFalse(v == d.getVersion(i));
+    }
+
+    /**
+     * Tests getting and setting the values of the estimated parameters
+     * @throws Exception Thrown if something went wrong!
+     */
+    @Test
+    public void testEstimated() throws Exception
+    {
+        Parameters p = create();
+        double[] v = p.getEstimatedValues();
+        assertEquals(10, v.length);
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(i, v[i], 0.0);
+            v[i] = i + 0.5;
+        }
+        assertEquals(3.0, p.getValue("b3"), 0.0);
+
+        p.setEstimatedValues(v);
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(i + 0.5, p.getValue("b" + i), 0.0);
+        }
+        assertEquals(2.5, p.getValue("k"), 0.0);
+
+        try
+        {
+            p.setEstimatedValues(new double[9]);
+            fail("Expected ParameterException");
+        }
+        catch (ParameterException e)
+        {
+        }
+        v[3] = -1.0;
+        try
+        {
+            p.setEstimatedValues(v);
+            fail("Expected ParameterException");
+        }
+        catch (ParameterException e)
+        {
+        }
+    }
+
+    private static Parameters create() throws ParameterException
+    {
+        Parameters p = new Parameters();
+        for (int i = 0; i < 10; i++)
+        {
+            p.addParameter(Parameter.newEstimatedPositiveParameter("b" + i, i));
+        }
+        p.addParameter(Parameter.newFixedParameter("k", 2.5));
+        return p;
+    }
+
+    private static void check(Parameters p) throws ParameterException
+    {
+        for (int i = 0; i < 10; i++)
+        {
+            assertTrue(p.hasParam("b" + i));
+            assertEquals(i, p.getValue("b" + i), 0.0);
+            assertEquals("b" + i, p.getParam("b" + i).getName());
+        }
+        assertEquals(2.5, p.getValue("k"), 0.0);
+        assertFalse(p.hasParam("x"));
+        try
+        {
+            p.getValue("x");
+            fail("Expected ParameterException");
+        }
+        catch (ParameterException e)
+        {
+        }
+        try
+        {
+            p.addParameter(Parameter.newFixedParameter("b3", 1.0));
+            fail("Expected ParameterException");
+        }
+        catch (ParameterException e)
+        {
+        }
+    }
+}